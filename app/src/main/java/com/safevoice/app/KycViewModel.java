@@ -0,0 +1,863 @@
+package com.safevoice.app;
+
+import android.annotation.SuppressLint;
+import android.app.Application;
+import android.graphics.Rect;
+import android.media.Image;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.text.Text;
+import com.google.mlkit.vision.text.TextRecognizer;
+import com.safevoice.app.utils.FaceMatchAccumulator;
+import com.safevoice.app.utils.FaceQualityGate;
+import com.safevoice.app.utils.FaceTemplate;
+import com.safevoice.app.utils.FaceTemplateStore;
+import com.safevoice.app.utils.FaceTracker;
+import com.safevoice.app.utils.FaceVerifier;
+import com.safevoice.app.utils.FrameScheduler;
+import com.safevoice.app.utils.IdCardLocator;
+import com.safevoice.app.utils.IdFieldExtractor;
+import com.safevoice.app.utils.LivenessChecker;
+import com.safevoice.app.utils.PowerGovernor;
+import com.safevoice.app.utils.PowerPolicy;
+import com.safevoice.app.utils.VisionModelRegistry;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A KYC session: the state machine, the name and ID face found so far, and the analysis
+ * pipeline that finds them. It lives in a ViewModel so that rotation and other configuration
+ * changes recreate only {@link KycActivity}'s views and camera binding; the user never has to
+ * scan the ID again, and the models and executors are not rebuilt.
+ *
+ * Frames flow through three stages, none of them on the main thread until the end:
+ * 1. Detection: the analyzer submits the frame to ML Kit, and the results are handled
+ *    back on the analysis executor.
+ * 2. Inference: the face crop and TFLite embedding run on the registry's inference executor.
+ *    Its queue holds a single frame; when it is full, new frames are dropped (and closed)
+ *    instead of piling up behind a slow model.
+ * 3. Results: embeddings are posted to the main thread, which owns the KYC state transitions.
+ *
+ * A {@link FrameScheduler} admits frames into the pipeline so detection stays within
+ * ANALYSIS_CPU_BUDGET. While scanning the ID, an {@link IdCardLocator} finds the card around
+ * the guide box and only the rectified card is sent to text recognition and face detection.
+ *
+ * The live face must match the ID face and also pass a {@link LivenessChecker} challenge
+ * (blink or turn), so a photo held up to the camera is not accepted. The challenge is watched
+ * on every detected frame, including the still ones that skip the embedding, and it is bound
+ * to one tracked face: a different face gets a new challenge and a new match.
+ *
+ * After a successful verification the ID face is kept as an encrypted {@link FaceTemplate}.
+ * When one is stored for the signed-in user, the session skips the ID stage and re-verifies
+ * with a single live-face pass against it.
+ *
+ * While the device is hot or low on battery, {@link PowerGovernor} lowers the analysis CPU
+ * budget and caps the interpreter threads; {@link #getPowerLevel()} tells the activity to
+ * analyze smaller frames. Everything is restored when conditions recover.
+ *
+ * The activity binds {@link #getAnalyzer()}, the same instance for every camera binding,
+ * observes {@link #getState()} and {@link #getOutcome()}, and reports each binding through
+ * {@link #onCameraBound(String)} so the time to the first analyzed frame is logged.
+ */
+public class KycViewModel extends AndroidViewModel {
+
+    private static final String TAG = "KycViewModel";
+    // Cosine similarity above which two faces match. It applies to whole-face embeddings,
+    // one face per 112x112 model slot; FaceVerifier refuses models with any other input geometry.
+    private static final double FACE_MATCH_THRESHOLD = 0.8;
+    // Live frames compared with the ID face: at least this many before deciding early...
+    private static final int LIVE_MIN_FRAMES = 2;
+    // ...and at most this many, or for this long, before the mean similarity decides.
+    private static final int LIVE_MAX_FRAMES = 8;
+    private static final long LIVE_TIME_BUDGET_MS = 4000;
+    private static final double ANALYSIS_CPU_BUDGET = 0.5;  // Fraction of time detection may be busy.
+    private static final long MODEL_LOAD_RETRY_MS = 100;    // Wait before retrying a rejected model load.
+
+    private static final int RECTIFIED_CARD_WIDTH = 640;    // Long side of the card image sent to OCR.
+    // Search prior when the guide box has not been laid out yet: centered, with the card's aspect.
+    private static final float DEFAULT_PRIOR_WIDTH_SHARE = 0.8f;
+    private static final float CARD_ASPECT = 85.60f / 53.98f;
+    // OCR frames after which the leading name is accepted even if it has not settled.
+    private static final int MAX_OCR_FRAMES = 12;
+
+    private static final String STAGE_LOCATE_CARD = "locate_card";
+    private static final String STAGE_DETECT_ID = "detect_id";
+    private static final String STAGE_DETECT_FACE = "detect_face";
+    private static final String STAGE_INFERENCE = "inference";
+    private static final String STAGE_LIVENESS = "liveness";
+
+    public enum KycState {
+        SCANNING_ID,
+        SCANNING_FACE,
+        VERIFYING,
+        COMPLETE
+    }
+
+    /**
+     * How the session ended, with the message to show the user. The LiveData holding it
+     * re-delivers it to the activity recreated after a rotation, so it is handled only once.
+     */
+    public static final class Outcome {
+        public final boolean verified;
+        public final String message;
+        // Only used on the main thread.
+        private boolean handled = false;
+
+        Outcome(boolean verified, String message) {
+            this.verified = verified;
+            this.message = message;
+        }
+
+        /**
+         * @return true the first time it is called, false once the outcome has been handled.
+         */
+        public boolean markHandled() {
+            if (handled) {
+                return false;
+            }
+            handled = true;
+            return true;
+        }
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService analysisExecutor = Executors.newSingleThreadExecutor();
+    // App-scoped models and the inference thread; held for the lifetime of the session.
+    private final VisionModelRegistry modelRegistry;
+    private final ThreadPoolExecutor inferenceExecutor;
+    private FaceVerifier faceVerifier;
+    private final KycImageAnalyzer analyzer;
+
+    private final MutableLiveData<KycState> state = new MutableLiveData<>(KycState.SCANNING_ID);
+    private final MutableLiveData<Boolean> modelLoaded = new MutableLiveData<>();
+    private final MutableLiveData<Outcome> outcome = new MutableLiveData<>();
+    private final MutableLiveData<LivenessChecker.Challenge> challenge = new MutableLiveData<>();
+    private final MutableLiveData<PowerPolicy.Level> powerLevel = new MutableLiveData<>();
+    private final PowerGovernor powerGovernor;
+    private final PowerGovernor.Listener powerListener = this::onPowerLevelChanged;
+
+    // Written on the main thread, read by the detection stage to decide what work is still needed.
+    private volatile KycState currentState = KycState.SCANNING_ID;
+    // The ID face, unit length so each live frame is compared in one pass.
+    private volatile FaceTemplate idTemplate = null;
+    private volatile String verifiedName = null;
+    // Whether the ID face came from a stored template rather than a scan; only used on the main thread.
+    private boolean reverifying = false;
+
+    private final FrameScheduler frameScheduler = new FrameScheduler(ANALYSIS_CPU_BUDGET);
+    // Only used on the main thread.
+    private final FaceMatchAccumulator faceMatch = new FaceMatchAccumulator(FACE_MATCH_THRESHOLD,
+            LIVE_MIN_FRAMES, LIVE_MAX_FRAMES, TimeUnit.MILLISECONDS.toNanos(LIVE_TIME_BUDGET_MS));
+    // Tracking id of the face the live scores belong to; only used on the main thread.
+    private int liveTrackingId = FaceTracker.NO_TRACKING_ID;
+    // Whether, and for which tracked face, the liveness challenge was passed; only used on the main thread.
+    private boolean livenessPassed = false;
+    private int livenessTrackingId = FaceTracker.NO_TRACKING_ID;
+    // Guide box position in the preview: left, top, right, bottom, preview width, preview height.
+    private volatile float[] guideBoxInPreview = null;
+    // Only touched on the inference thread, which FaceVerifier is confined to. The registry may
+    // replace the verifier between inferences, and the batch belongs to one verifier. The
+    // embedding rows are reused for every result.
+    private FaceVerifier.FaceBatch inferenceBatch;
+    private FaceVerifier inferenceBatchVerifier;
+    private final float[][] inferenceEmbeddings = new float[1][FaceVerifier.EMBEDDING_SIZE];
+    private volatile boolean cleared = false;
+
+    // When the camera was last bound, and why; cleared by the first frame analyzed after it.
+    private volatile String cameraTransition;
+    private volatile long cameraBoundNanos = 0;
+
+    private final AtomicBoolean isProcessing = new AtomicBoolean(false);
+
+    public KycViewModel(@NonNull Application application) {
+        super(application);
+        modelRegistry = VisionModelRegistry.getInstance(application);
+        modelRegistry.acquire();
+        // One worker with a bounded queue: submissions beyond it are rejected, and the frame is dropped.
+        inferenceExecutor = modelRegistry.getInferenceExecutor();
+        analyzer = new KycImageAnalyzer();
+        challenge.setValue(analyzer.livenessChecker.getChallenge());
+        powerGovernor = PowerGovernor.getInstance(application);
+        powerGovernor.addListener(powerListener);
+
+        // The stored template is read in the background; the verifier is then loaded on the
+        // inference thread, since FaceVerifier is confined to the thread that first uses it.
+        analysisExecutor.execute(() -> {
+            FaceTemplate stored = loadStoredTemplate();
+            mainHandler.post(() -> loadFaceVerifier(stored));
+        });
+    }
+
+    /**
+     * true once the face model is loaded and the camera can start; false if it failed to load.
+     */
+    public LiveData<Boolean> getModelLoaded() {
+        return modelLoaded;
+    }
+
+    public LiveData<KycState> getState() {
+        return state;
+    }
+
+    public KycState getCurrentState() {
+        return currentState;
+    }
+
+    /**
+     * The liveness action the user is asked for while the face is scanned.
+     */
+    public LiveData<LivenessChecker.Challenge> getChallenge() {
+        return challenge;
+    }
+
+    /**
+     * Set once, when the session ends. See {@link Outcome#markHandled()}.
+     */
+    public LiveData<Outcome> getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * The power level in force; the activity scales its analysis resolution by it.
+     */
+    public LiveData<PowerPolicy.Level> getPowerLevel() {
+        return powerLevel;
+    }
+
+    public ExecutorService getAnalysisExecutor() {
+        return analysisExecutor;
+    }
+
+    public ImageAnalysis.Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    /**
+     * Records where the guide box sits on the preview: left, top, right, bottom, preview width
+     * and height. The analyzer uses it as the prior for locating the ID card.
+     */
+    public void setGuideBoxInPreview(float[] guideBox) {
+        guideBoxInPreview = guideBox;
+    }
+
+    /**
+     * Called on the main thread right after the camera was bound for the current state.
+     *
+     * @param transition What caused the binding, for the log.
+     */
+    public void onCameraBound(String transition) {
+        // Latencies measured for the previous stage or camera say nothing about this one.
+        frameScheduler.reset();
+        cameraTransition = transition;
+        cameraBoundNanos = System.nanoTime();
+    }
+
+    private void onPowerLevelChanged(PowerPolicy.Level level) {
+        frameScheduler.setCpuBudget(ANALYSIS_CPU_BUDGET * level.cpuBudgetFactor);
+        modelRegistry.setInferenceThreadCap(level.maxInferenceThreads);
+        powerLevel.setValue(level);
+    }
+
+    /**
+     * Gets the verifier on the inference thread. Usually warmed up from the home screen already;
+     * if not, the first load calibrates the interpreter on this device.
+     */
+    private void loadFaceVerifier(FaceTemplate stored) {
+        try {
+            inferenceExecutor.execute(() -> {
+                if (cleared) {
+                    return;
+                }
+                try {
+                    FaceVerifier verifier = modelRegistry.getFaceVerifier();
+                    mainHandler.post(() -> {
+                        faceVerifier = verifier;
+                        if (stored != null) {
+                            startReverification(stored);
+                        }
+                        modelLoaded.setValue(true);
+                    });
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to load FaceVerifier model.", e);
+                    mainHandler.post(() -> modelLoaded.setValue(false));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // A warm-up or release holds the inference thread and its queue; try again shortly.
+            mainHandler.postDelayed(() -> loadFaceVerifier(stored), MODEL_LOAD_RETRY_MS);
+        }
+    }
+
+    private FaceTemplate loadStoredTemplate() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) {
+            return null;
+        }
+        return FaceTemplateStore.getInstance(getApplication()).load(user.getUid());
+    }
+
+    /**
+     * Takes the ID face and name from the stored template and goes straight to the live face.
+     */
+    private void startReverification(FaceTemplate stored) {
+        Log.d(TAG, "Stored face template found; re-verifying with the live face only.");
+        reverifying = true;
+        idTemplate = stored;
+        verifiedName = stored.getLabel();
+        maybeProceedToFaceScan();
+    }
+
+    private void setState(KycState newState) {
+        currentState = newState;
+        state.setValue(newState);
+    }
+
+    private void proceedToFaceScan() {
+        Log.d(TAG, "Proceeding to face scan.");
+        faceMatch.start(System.nanoTime());
+        liveTrackingId = FaceTracker.NO_TRACKING_ID;
+        setState(KycState.SCANNING_FACE);
+    }
+
+    private class KycImageAnalyzer implements ImageAnalysis.Analyzer {
+        // Shared clients, owned by the registry.
+        private final TextRecognizer textRecognizer = modelRegistry.getTextRecognizer();
+        private final FaceDetector faceDetector = modelRegistry.getFaceDetector();
+        private final FaceDetector liveFaceDetector = modelRegistry.getLiveFaceDetector();
+
+        // ID card localization; only used on the analysis thread.
+        private final IdCardLocator cardLocator = new IdCardLocator(RECTIFIED_CARD_WIDTH);
+        private final IdCardLocator.Quad cardQuad = new IdCardLocator.Quad();
+        private final float[] prior = new float[4];
+        private final float[] mappedPoint = new float[2];
+
+        // Votes on the ID fields across frames; only used on the analysis thread.
+        private final IdFieldExtractor idFieldExtractor = new IdFieldExtractor();
+        private final List<String> ocrLines = new ArrayList<>();
+
+        // Scores live faces before they are embedded; only used on the analysis thread.
+        private final FaceQualityGate faceQualityGate = new FaceQualityGate();
+        private final FaceQualityGate.Quality faceQuality = new FaceQualityGate.Quality();
+        private final FaceTracker faceTracker = new FaceTracker();
+
+        // The liveness challenge and the face answering it; only used on the analysis thread.
+        private final LivenessChecker livenessChecker = new LivenessChecker(new SecureRandom());
+        private int livenessCheckerTrackingId = FaceTracker.NO_TRACKING_ID;
+
+        @Override
+        @SuppressLint("UnsafeOptInUsageError")
+        public void analyze(@NonNull ImageProxy imageProxy) {
+            if (currentState != KycState.SCANNING_ID && currentState != KycState.SCANNING_FACE) {
+                imageProxy.close();
+                return;
+            }
+
+            long startNanos = System.nanoTime();
+            long boundNanos = cameraBoundNanos;
+            if (boundNanos != 0) {
+                cameraBoundNanos = 0;
+                Log.i(TAG, "First frame analyzed " + (startNanos - boundNanos) / 1_000_000 + " ms after " + cameraTransition);
+            }
+            FrameScheduler.Stats stats = frameScheduler.pollStats(startNanos);
+            if (stats != null) {
+                Log.d(TAG, "Analysis " + currentState + ": " + stats);
+                String quality = faceQualityGate.pollSummary();
+                if (quality != null) {
+                    Log.d(TAG, "Live face quality: " + quality);
+                }
+            }
+            if (!frameScheduler.shouldProcess(startNanos)) {
+                imageProxy.close();
+                return;
+            }
+
+            if (currentState == KycState.SCANNING_ID) {
+                processIdCardImage(rectifyIdCard(imageProxy), imageProxy, startNanos);
+                return;
+            }
+
+            Image mediaImage = imageProxy.getImage();
+            if (mediaImage == null) {
+                imageProxy.close();
+                return;
+            }
+
+            InputImage image = InputImage.fromMediaImage(mediaImage, imageProxy.getImageInfo().getRotationDegrees());
+
+            if (currentState == KycState.SCANNING_FACE) {
+                processLiveFaceImage(image, imageProxy, startNanos);
+            } else {
+                imageProxy.close();
+            }
+        }
+
+        /**
+         * Locates the card around the guide box and returns just the card, deskewed, as an
+         * upright image. Falls back to the guide box region when no card outline is found.
+         * The image wraps the locator's buffer, which is only reused once this frame is closed.
+         */
+        private InputImage rectifyIdCard(ImageProxy imageProxy) {
+            long startNanos = System.nanoTime();
+            ImageProxy.PlaneProxy yPlane = imageProxy.getPlanes()[0];
+            int width = imageProxy.getWidth();
+            int height = imageProxy.getHeight();
+            int rotation = imageProxy.getImageInfo().getRotationDegrees();
+            boolean swapped = (rotation == 90 || rotation == 270);
+            int uprightWidth = swapped ? height : width;
+            int uprightHeight = swapped ? width : height;
+
+            float[] guideBox = guideBoxInPreview;
+            if (guideBox != null) {
+                IdCardLocator.viewRectToFrame(guideBox[4], guideBox[5], guideBox[0], guideBox[1],
+                        guideBox[2], guideBox[3], uprightWidth, uprightHeight, prior);
+            } else {
+                float priorWidth = uprightWidth * DEFAULT_PRIOR_WIDTH_SHARE;
+                float priorHeight = Math.min(uprightHeight, priorWidth / CARD_ASPECT);
+                prior[0] = (uprightWidth - priorWidth) / 2f;
+                prior[1] = (uprightHeight - priorHeight) / 2f;
+                prior[2] = prior[0] + priorWidth;
+                prior[3] = prior[1] + priorHeight;
+            }
+
+            cardLocator.locate(yPlane.getBuffer(), yPlane.getRowStride(), yPlane.getPixelStride(),
+                    width, height, rotation, prior[0], prior[1], prior[2], prior[3], cardQuad);
+            byte[] card = cardLocator.rectify(yPlane.getBuffer(), yPlane.getRowStride(), yPlane.getPixelStride(),
+                    width, height, rotation, cardQuad);
+            frameScheduler.recordStageLatency(STAGE_LOCATE_CARD, System.nanoTime() - startNanos);
+            return InputImage.fromByteArray(card, cardLocator.getRectifiedWidth(), cardLocator.getRectifiedHeight(),
+                    0, InputImage.IMAGE_FORMAT_NV21);
+        }
+
+        /**
+         * Maps a face box found on the rectified card back onto the camera frame,
+         * so the embedding is cropped from the full-resolution colour frame.
+         */
+        private Rect mapCardRectToFrame(Rect cardRect) {
+            float left = Float.MAX_VALUE;
+            float top = Float.MAX_VALUE;
+            float right = -Float.MAX_VALUE;
+            float bottom = -Float.MAX_VALUE;
+            for (int corner = 0; corner < 4; corner++) {
+                float x = (corner == 1 || corner == 2) ? cardRect.right : cardRect.left;
+                float y = (corner >= 2) ? cardRect.bottom : cardRect.top;
+                cardLocator.mapToFrame(x, y, mappedPoint);
+                left = Math.min(left, mappedPoint[0]);
+                top = Math.min(top, mappedPoint[1]);
+                right = Math.max(right, mappedPoint[0]);
+                bottom = Math.max(bottom, mappedPoint[1]);
+            }
+            return new Rect(Math.round(left), Math.round(top), Math.round(right), Math.round(bottom));
+        }
+
+        /**
+         * Detection stage for the ID card. Each frame is closed exactly once: here, or by the
+         * inference stage if a face crop was handed over to it.
+         */
+        private void processIdCardImage(InputImage image, ImageProxy imageProxy, long startNanos) {
+            Task<Text> textRecognitionTask = (verifiedName == null) ? textRecognizer.process(image) : Tasks.forResult(null);
+            Task<List<Face>> faceDetectionTask = (idTemplate == null) ? faceDetector.process(image) : Tasks.forResult(null);
+
+            // Listen on the analysis executor; the default listener executor is the main thread.
+            Tasks.whenAll(textRecognitionTask, faceDetectionTask).addOnCompleteListener(analysisExecutor, task -> {
+                frameScheduler.onFrameProcessed(STAGE_DETECT_ID, startNanos, System.nanoTime());
+                if (!task.isSuccessful()) {
+                    imageProxy.close();
+                    return;
+                }
+
+                if (verifiedName == null) {
+                    Text visionText = textRecognitionTask.getResult();
+                    if (visionText != null) {
+                        String name = voteOnName(visionText);
+                        if (name != null) {
+                            mainHandler.post(() -> onIdNameFound(name));
+                        }
+                    }
+                }
+
+                List<Face> faces = faceDetectionTask.getResult();
+                if (idTemplate == null && faces != null && !faces.isEmpty()) {
+                    Rect faceInFrame = mapCardRectToFrame(faces.get(0).getBoundingBox());
+                    submitEmbedding(imageProxy, faceInFrame, KycViewModel.this::onIdEmbedding);
+                } else {
+                    imageProxy.close();
+                }
+            });
+        }
+
+        /**
+         * Adds a frame's OCR lines to the vote. Once the name has settled, or no value has
+         * settled after MAX_OCR_FRAMES, the name is returned; text recognition stops once
+         * the UI thread has stored it in verifiedName.
+         *
+         * @return The name in display form, or null while the vote is still open.
+         */
+        private String voteOnName(Text visionText) {
+            ocrLines.clear();
+            for (Text.TextBlock block : visionText.getTextBlocks()) {
+                for (Text.Line line : block.getLines()) {
+                    ocrLines.add(line.getText());
+                }
+            }
+            idFieldExtractor.addFrame(ocrLines);
+            String name = idFieldExtractor.getSettled(IdFieldExtractor.FIELD_NAME);
+            if (name == null && idFieldExtractor.getFramesSeen() >= MAX_OCR_FRAMES) {
+                name = idFieldExtractor.getLeader(IdFieldExtractor.FIELD_NAME);
+            }
+            if (name == null) {
+                return null;
+            }
+            Log.d(TAG, "ID name decided after " + idFieldExtractor.getFramesSeen() + " OCR frames");
+            return IdFieldExtractor.toDisplayName(name);
+        }
+
+        /**
+         * Detection stage for the live face.
+         */
+        private void processLiveFaceImage(InputImage image, ImageProxy imageProxy, long startNanos) {
+            liveFaceDetector.process(image).addOnCompleteListener(analysisExecutor, task -> {
+                frameScheduler.onFrameProcessed(STAGE_DETECT_FACE, startNanos, System.nanoTime());
+                List<Face> faces = task.isSuccessful() ? task.getResult() : null;
+                faceTracker.nextFrame();
+                if (faces == null || faces.isEmpty()) {
+                    imageProxy.close();
+                    return;
+                }
+                if (faces.size() > 1) {
+                    // Whose face would be verified is ambiguous; wait for a frame with only one.
+                    Log.v(TAG, "Live frame rejected: " + faces.size() + " faces");
+                    imageProxy.close();
+                    return;
+                }
+
+                Face face = faces.get(0);
+                Rect box = face.getBoundingBox();
+                Integer trackingId = face.getTrackingId();
+                FaceTracker.Track track = faceTracker.observe(
+                        trackingId == null ? FaceTracker.NO_TRACKING_ID : trackingId,
+                        box.left, box.top, box.right, box.bottom);
+                // Every frame counts for liveness: a blink barely moves the face box.
+                checkLiveness(face, track.trackingId);
+                if (!track.needsRecompute() || !isProcessing.get()) {
+                    // The face has not moved since it was last scored, or an embedding is in flight.
+                    imageProxy.close();
+                    return;
+                }
+
+                // Only faces that pass the quality gate are worth the model; drop the rest.
+                boolean passed = isGoodQuality(imageProxy, face);
+                // isProcessing is true here. compareAndSet to false to prevent re-entry.
+                if (passed && isProcessing.compareAndSet(true, false)) {
+                    track.markComputed(box.left, box.top, box.right, box.bottom, faceQuality.verdict);
+                    if (!submitEmbedding(imageProxy, box, embedding -> {
+                        track.setEmbedding(embedding);
+                        onLiveEmbedding(track.trackingId, embedding);
+                    })) {
+                        // Dropped under load: let the next frame try again.
+                        isProcessing.set(true);
+                    }
+                } else {
+                    if (!passed) {
+                        track.markComputed(box.left, box.top, box.right, box.bottom, faceQuality.verdict);
+                    }
+                    imageProxy.close();
+                }
+            });
+        }
+
+        /**
+         * Feeds the face's eye and pose signals to the liveness challenge. A face with a different
+         * tracking id than the one the challenge was issued to gets a new challenge.
+         */
+        private void checkLiveness(Face face, int trackingId) {
+            long startNanos = System.nanoTime();
+            if (trackingId != livenessCheckerTrackingId) {
+                if (livenessCheckerTrackingId != FaceTracker.NO_TRACKING_ID) {
+                    LivenessChecker.Challenge next = livenessChecker.reset();
+                    mainHandler.post(() -> onLivenessChallenge(next));
+                }
+                livenessCheckerTrackingId = trackingId;
+            } else if (livenessChecker.getDecision() != LivenessChecker.Decision.PENDING) {
+                return;
+            }
+            Float leftEyeOpen = face.getLeftEyeOpenProbability();
+            Float rightEyeOpen = face.getRightEyeOpenProbability();
+            LivenessChecker.Decision decision = livenessChecker.update(startNanos, face.getHeadEulerAngleY(),
+                    leftEyeOpen == null ? Float.NaN : leftEyeOpen,
+                    rightEyeOpen == null ? Float.NaN : rightEyeOpen);
+            frameScheduler.recordStageLatency(STAGE_LIVENESS, System.nanoTime() - startNanos);
+            if (decision != LivenessChecker.Decision.PENDING) {
+                String summary = livenessChecker.toString();
+                mainHandler.post(() -> onLivenessDecided(trackingId, decision, summary));
+            }
+        }
+
+        private boolean isGoodQuality(ImageProxy imageProxy, Face face) {
+            ImageProxy.PlaneProxy luma = imageProxy.getPlanes()[0];
+            Rect box = face.getBoundingBox();
+            boolean passed = faceQualityGate.evaluate(luma.getBuffer(), luma.getRowStride(), luma.getPixelStride(),
+                    imageProxy.getWidth(), imageProxy.getHeight(), imageProxy.getImageInfo().getRotationDegrees(),
+                    box.left, box.top, box.right, box.bottom,
+                    face.getHeadEulerAngleY(), face.getHeadEulerAngleZ(), faceQuality);
+            if (!passed) {
+                Log.v(TAG, "Live face rejected: " + faceQuality);
+            }
+            return passed;
+        }
+    }
+
+    /** Receives an embedding on the UI thread; null if the face could not be cropped. */
+    private interface EmbeddingCallback {
+        void onEmbedding(float[] embedding);
+    }
+
+    /**
+     * Inference stage: hands the frame to the inference executor, which crops the face,
+     * closes the frame, runs the model and posts the embedding to the UI thread.
+     *
+     * @return false if the inference queue was full; the frame has then been closed.
+     */
+    private boolean submitEmbedding(ImageProxy imageProxy, Rect faceRect, EmbeddingCallback callback) {
+        try {
+            inferenceExecutor.execute(() -> {
+                if (cleared) {
+                    // Queued before this session ended; the models may be released already.
+                    imageProxy.close();
+                    return;
+                }
+                long startNanos = System.nanoTime();
+                FaceVerifier verifier;
+                try {
+                    // Usually loaded already; reloaded after a thread cap change.
+                    verifier = modelRegistry.getFaceVerifier();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to reload FaceVerifier model.", e);
+                    imageProxy.close();
+                    return;
+                }
+                if (inferenceBatch == null || inferenceBatchVerifier != verifier) {
+                    inferenceBatch = verifier.newBatch(1);
+                    inferenceBatchVerifier = verifier;
+                }
+                inferenceBatch.clear();
+                boolean cropped;
+                try {
+                    cropped = inferenceBatch.add(imageProxy, faceRect);
+                } finally {
+                    // The crop has been copied into the batch; the camera can have its buffer back.
+                    imageProxy.close();
+                }
+                float[] embedding = null;
+                if (cropped) {
+                    verifier.getFaceEmbeddings(inferenceBatch, inferenceEmbeddings);
+                    // The row is reused by the next frame; the UI thread gets its own copy.
+                    embedding = inferenceEmbeddings[0].clone();
+                }
+                frameScheduler.recordStageLatency(STAGE_INFERENCE, System.nanoTime() - startNanos);
+                float[] result = embedding;
+                mainHandler.post(() -> callback.onEmbedding(result));
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            imageProxy.close();
+            frameScheduler.recordDropped();
+            return false;
+        }
+    }
+
+    private void onIdNameFound(String name) {
+        if (verifiedName == null) {
+            verifiedName = name;
+            maybeProceedToFaceScan();
+        }
+    }
+
+    private void onIdEmbedding(float[] embedding) {
+        if (embedding != null && idTemplate == null) {
+            try {
+                idTemplate = FaceTemplate.fromEmbedding(embedding, "", true);
+            } catch (IllegalArgumentException e) {
+                // An all-zero embedding; wait for another frame.
+                return;
+            }
+            maybeProceedToFaceScan();
+        }
+    }
+
+    private void maybeProceedToFaceScan() {
+        if (verifiedName != null && idTemplate != null) {
+            // Use compareAndSet to ensure this block runs only ONCE.
+            if (isProcessing.compareAndSet(false, true)) {
+                proceedToFaceScan();
+            }
+        }
+    }
+
+    private void onLiveEmbedding(int trackingId, float[] liveEmbedding) {
+        if (currentState != KycState.SCANNING_FACE) {
+            return;
+        }
+        if (liveEmbedding == null) {
+            // The crop fell outside the frame; try again with the next one.
+            isProcessing.set(true);
+            return;
+        }
+        if (trackingId != liveTrackingId) {
+            // A different face: scores of the previous one say nothing about it.
+            if (liveTrackingId != FaceTracker.NO_TRACKING_ID) {
+                Log.d(TAG, "Live face changed from track " + liveTrackingId + " to " + trackingId);
+                faceMatch.start(System.nanoTime());
+            }
+            liveTrackingId = trackingId;
+        }
+
+        double similarity = faceVerifier.calculateSimilarity(idTemplate, liveEmbedding);
+        FaceMatchAccumulator.Decision decision = faceMatch.add(similarity, System.nanoTime());
+        Log.d(TAG, "Face similarity score: " + similarity + ", frame " + faceMatch.getFramesUsed());
+        if (decision == FaceMatchAccumulator.Decision.PENDING) {
+            // Not confident yet: let the next frame with a face contribute.
+            isProcessing.set(true);
+            return;
+        }
+        if (decision == FaceMatchAccumulator.Decision.NO_MATCH) {
+            setState(KycState.VERIFYING);
+            Log.i(TAG, "Face verification " + faceMatch);
+            handleVerificationFailure("Face does not match ID.");
+            return;
+        }
+        // Matched; no more embeddings are needed, the liveness challenge may still be open.
+        maybeCompleteFaceScan();
+    }
+
+    private void onLivenessChallenge(LivenessChecker.Challenge next) {
+        if (currentState != KycState.SCANNING_FACE) {
+            return;
+        }
+        livenessPassed = false;
+        challenge.setValue(next);
+        if (faceMatch.getDecision() != FaceMatchAccumulator.Decision.PENDING) {
+            // The match was decided for the previous face; the new one has to be matched too.
+            Log.d(TAG, "Live face changed after the match; matching again.");
+            faceMatch.start(System.nanoTime());
+            liveTrackingId = FaceTracker.NO_TRACKING_ID;
+            isProcessing.set(true);
+        }
+    }
+
+    private void onLivenessDecided(int trackingId, LivenessChecker.Decision decision, String summary) {
+        if (currentState != KycState.SCANNING_FACE) {
+            return;
+        }
+        Log.i(TAG, "Liveness " + summary);
+        if (decision == LivenessChecker.Decision.FAILED) {
+            setState(KycState.VERIFYING);
+            handleVerificationFailure("Liveness check failed.");
+            return;
+        }
+        livenessPassed = true;
+        livenessTrackingId = trackingId;
+        maybeCompleteFaceScan();
+    }
+
+    /**
+     * Completes the session once the same tracked face has both matched the ID and passed
+     * the liveness challenge.
+     */
+    private void maybeCompleteFaceScan() {
+        if (faceMatch.getDecision() != FaceMatchAccumulator.Decision.MATCH) {
+            return;
+        }
+        if (!livenessPassed || livenessTrackingId != liveTrackingId) {
+            Log.d(TAG, "Face matched; waiting for the liveness challenge.");
+            return;
+        }
+        setState(KycState.VERIFYING);
+        Log.i(TAG, "Face verification " + faceMatch);
+        handleVerificationSuccess();
+    }
+
+    private void handleVerificationSuccess() {
+        Log.i(TAG, "Verification SUCCESSFUL. Name: " + verifiedName);
+        setState(KycState.COMPLETE);
+
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user != null && !reverifying) {
+            saveTemplate(user.getUid(), idTemplate.withLabel(verifiedName));
+        }
+        if (user != null) {
+            Map<String, Object> userData = new HashMap<>();
+            userData.put("isVerified", true);
+            userData.put("verifiedName", verifiedName);
+            // Use set with merge to create the document if it doesn't exist, or update it if it does.
+            // This is safer than using update(), which can fail if the document doesn't exist yet.
+            FirebaseFirestore.getInstance().collection("users").document(user.getUid())
+                    .set(userData, SetOptions.merge())
+                    .addOnSuccessListener(aVoid -> outcome.setValue(new Outcome(true, "Verification successful!")))
+                    .addOnFailureListener(e -> outcome.setValue(
+                            new Outcome(true, "Verification successful, but failed to save.")));
+        } else {
+            outcome.setValue(new Outcome(true, "Verification successful, but no signed-in user found."));
+        }
+    }
+
+    /**
+     * Keeps the verified ID face for later re-verification, off the main thread.
+     */
+    private void saveTemplate(String userId, FaceTemplate template) {
+        // Runs even if the session is cleared meanwhile: shutdown() lets queued tasks finish.
+        analysisExecutor.execute(() -> {
+            try {
+                FaceTemplateStore.getInstance(getApplication()).save(userId, template);
+            } catch (GeneralSecurityException | IOException e) {
+                Log.e(TAG, "Failed to save the face template.", e);
+            }
+        });
+    }
+
+    private void handleVerificationFailure(String reason) {
+        Log.e(TAG, "Verification FAILED. Reason: " + reason);
+        setState(KycState.COMPLETE);
+        outcome.setValue(new Outcome(false, "Verification Failed: " + reason));
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        cleared = true;
+        powerGovernor.removeListener(powerListener);
+        analysisExecutor.shutdown();
+        mainHandler.removeCallbacksAndMessages(null);
+        // The inference executor belongs to the registry; queued frames still run and are closed.
+        modelRegistry.release();
+    }
+}
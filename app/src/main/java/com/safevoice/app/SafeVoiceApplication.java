@@ -3,12 +3,15 @@ package com.safevoice.app;
 import android.app.Application;
 
 import com.safevoice.app.firebase.FirebaseManager;
+import com.safevoice.app.utils.ContactsManager;
+import com.safevoice.app.utils.VisionModelRegistry;
 
 /**
  * The custom Application class for Safe Voice.
  * This is the entry point of the application process.
  * Its main responsibility is to initialize components that are needed globally,
- * such as our dynamic Firebase configuration.
+ * such as our dynamic Firebase configuration and the contacts cache.
+ * It also hands memory pressure on to the shared verification models.
  */
 public class SafeVoiceApplication extends Application {
 
@@ -21,5 +24,16 @@ public class SafeVoiceApplication extends Application {
         // and if it doesn't find one, it will fall back to the one bundled with the app.
         // This single line of code enables the dynamic Firebase backend feature.
         FirebaseManager.initialize(this);
+
+        // Start loading the saved contacts in the background, so the Contacts screen
+        // and the emergency service never have to parse them on the UI thread.
+        ContactsManager.getInstance(this).prefetch();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // The verification models hold native memory; drop them when nobody is using them.
+        VisionModelRegistry.getInstance(this).onTrimMemory(level);
     }
 }
@@ -2,9 +2,13 @@ package com.safevoice.app.models;
 
 import androidx.annotation.Nullable;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * A simple data model class (POJO) to represent an emergency contact.
  * It includes helper methods for converting the object to and from a JSONObject,
@@ -41,6 +45,45 @@ public class Contact {
         this.phoneNumber = phoneNumber;
     }
 
+    /**
+     * Reduces a phone number to a canonical form so that the same number written
+     * in different styles ("+1 (555) 010-9999" vs "+15550109999") compares equal.
+     * Only digits are kept, plus a single leading '+' if the original had one.
+     *
+     * @param phoneNumber The raw phone number as entered or imported.
+     * @return The normalized number, or null if it contains fewer than 3 digits.
+     */
+    @Nullable
+    public static String normalizePhoneNumber(@Nullable String phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        StringBuilder normalized = new StringBuilder(phoneNumber.length());
+        int digits = 0;
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                normalized.append(c);
+                digits++;
+            } else if (c == '+' && normalized.length() == 0) {
+                normalized.append(c);
+            }
+        }
+        return (digits < 3) ? null : normalized.toString();
+    }
+
+    /**
+     * The key that identifies this contact in a list: its normalized number, or the number as
+     * entered if it has too few digits to normalize. ContactsManager keeps the keys of the
+     * priority contacts unique.
+     *
+     * @return The identity key; never null for a contact with a phone number.
+     */
+    public String getNumberKey() {
+        String normalized = normalizePhoneNumber(phoneNumber);
+        return (normalized != null) ? normalized : phoneNumber.trim();
+    }
+
     /**
      * Converts this Contact object into a JSONObject.
      *
@@ -77,6 +120,45 @@ public class Contact {
         }
     }
 
+    /**
+     * Converts a list of contacts into the JSON array string they are stored as.
+     * Contacts that cannot be converted are left out.
+     *
+     * @param contacts The contacts to convert.
+     * @return The JSON array as a string.
+     */
+    public static String toJSONArrayString(List<Contact> contacts) {
+        JSONArray jsonArray = new JSONArray();
+        for (Contact contact : contacts) {
+            JSONObject contactJson = contact.toJSONObject();
+            if (contactJson != null) {
+                jsonArray.put(contactJson);
+            }
+        }
+        return jsonArray.toString();
+    }
+
+    /**
+     * Parses a JSON array string written by {@link #toJSONArrayString(List)}.
+     * Entries that are not valid contacts are skipped.
+     *
+     * @param json The JSON array as a string.
+     * @return The parsed contacts, in order.
+     * @throws JSONException If the string is not a JSON array.
+     */
+    public static List<Contact> listFromJSONArrayString(String json) throws JSONException {
+        JSONArray jsonArray = new JSONArray(json);
+        List<Contact> contacts = new ArrayList<>(jsonArray.length());
+        for (int i = 0; i < jsonArray.length(); i++) {
+            JSONObject contactJson = jsonArray.optJSONObject(i);
+            Contact contact = (contactJson != null) ? fromJSONObject(contactJson) : null;
+            if (contact != null) {
+                contacts.add(contact);
+            }
+        }
+        return contacts;
+    }
+
     // Overriding equals and hashCode is important for managing lists of contacts,
     // for example, to correctly find and remove a specific contact.
     @Override
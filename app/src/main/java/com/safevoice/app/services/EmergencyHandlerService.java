@@ -5,11 +5,12 @@ import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.location.Location;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.telephony.SmsManager;
 import android.util.Log;
 import android.widget.Toast;
@@ -21,6 +22,7 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.safevoice.app.models.Contact;
 import com.safevoice.app.utils.ContactsManager;
+import com.safevoice.app.utils.EmergencyDispatcher;
 import com.safevoice.app.utils.LocationHelper;
 
 import java.util.ArrayList;
@@ -29,12 +31,15 @@ import java.util.List;
 /**
  * This service is responsible for handling the emergency alert logic.
  * It is started by VoiceRecognitionService upon detecting the trigger phrase.
- * It fetches the location, checks network connectivity, and dispatches alerts.
+ * It checks network connectivity and hands the contacts to an {@link EmergencyDispatcher},
+ * which calls the primary contact at once and texts the priority contacts once the location
+ * is known or has timed out. The service stops itself when the last alert went out.
  */
 public class EmergencyHandlerService extends Service {
 
     private static final String TAG = "EmergencyHandlerService";
 
+    private final Handler handler = new Handler(Looper.getMainLooper());
     private LocationHelper locationHelper;
 
     @Override
@@ -54,58 +59,39 @@ public class EmergencyHandlerService extends Service {
             return START_NOT_STICKY;
         }
 
-        locationHelper.getCurrentLocation(new LocationHelper.LocationResultCallback() {
-            @Override
-            public void onLocationResult(Location location) {
-                if (location != null) {
-                    Log.d(TAG, "Location acquired: " + location.getLatitude() + ", " + location.getLongitude());
-                    executeEmergencyActions(location);
-                } else {
-                    Log.e(TAG, "Failed to acquire location. Sending alerts without it.");
-                    executeEmergencyActions(null);
-                }
-                stopSelf();
-            }
-        });
-
-        return START_NOT_STICKY;
-    }
-
-    /**
-     * Executes the main emergency logic (calling, sending SMS) based on network state.
-     *
-     * @param location The user's current location. Can be null if fetching failed.
-     */
-    private void executeEmergencyActions(Location location) {
-        // --- THIS IS THE FIX ---
-        // Get the singleton instance of the ContactsManager.
+        // Get the singleton instance of the ContactsManager and retrieve the saved contacts.
         ContactsManager contactsManager = ContactsManager.getInstance(this);
-
-        // Retrieve the saved contacts instead of using hardcoded placeholders.
         Contact primaryContact = contactsManager.getPrimaryContact();
         List<Contact> priorityContacts = contactsManager.getPriorityContacts();
-
-        // Make the primary phone call.
-        if (primaryContact != null) {
-            makePhoneCall(primaryContact.getPhoneNumber());
-        } else {
+        if (primaryContact == null) {
             Log.w(TAG, "No primary contact set. Cannot make emergency call.");
         }
-
         // Check for internet connectivity (though SMS doesn't strictly need it, it's good practice).
-        if (isOnline()) {
-            Log.d(TAG, "Device is online. Sending SMS alerts.");
-            // Send SMS alerts to all priority contacts.
-            if (priorityContacts != null && !priorityContacts.isEmpty()) {
-                for (Contact contact : priorityContacts) {
-                    sendSmsAlert(contact.getPhoneNumber(), location);
-                }
+        boolean online = isOnline();
+        if (!online) {
+            Log.d(TAG, "Device is offline. Only the primary phone call will be made.");
+        } else if (priorityContacts.isEmpty()) {
+            Log.w(TAG, "No priority contacts set. Cannot send SMS alerts.");
+        }
+
+        // The call goes out right away; the texts wait for the location, up to a timeout.
+        EmergencyDispatcher dispatcher = new EmergencyDispatcher(
+                this::getCurrentLocation, this::makePhoneCall, this::sendSmsAlert, handler::postDelayed);
+        dispatcher.dispatch(primaryContact, priorityContacts, getUserName(), online, this::stopSelf);
+
+        return START_NOT_STICKY;
+    }
+
+    private void getCurrentLocation(EmergencyDispatcher.LocationCallback callback) {
+        locationHelper.getCurrentLocation(location -> {
+            if (location != null) {
+                Log.d(TAG, "Location acquired: " + location.getLatitude() + ", " + location.getLongitude());
+                callback.onLocation(new EmergencyDispatcher.Position(location.getLatitude(), location.getLongitude()));
             } else {
-                Log.w(TAG, "No priority contacts set. Cannot send SMS alerts.");
+                Log.e(TAG, "Failed to acquire location. Sending alerts without it.");
+                callback.onLocation(null);
             }
-        } else {
-            Log.d(TAG, "Device is offline. Only primary phone call was made.");
-        }
+        });
     }
 
     /**
@@ -114,11 +100,6 @@ public class EmergencyHandlerService extends Service {
      * @param phoneNumber The number to call.
      */
     private void makePhoneCall(String phoneNumber) {
-        if (phoneNumber == null || phoneNumber.isEmpty()) {
-            Log.e(TAG, "Phone number is invalid. Cannot make call.");
-            return;
-        }
-
         Intent callIntent = new Intent(Intent.ACTION_CALL);
         callIntent.setData(Uri.parse("tel:" + phoneNumber));
         callIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
@@ -137,31 +118,9 @@ public class EmergencyHandlerService extends Service {
      * Sends an SMS alert to the specified number.
      *
      * @param phoneNumber The number to send the SMS to.
-     * @param location    The user's location, used to generate a map link.
+     * @param message     The alert text, with a map link if the location is known.
      */
-    private void sendSmsAlert(String phoneNumber, Location location) {
-        if (phoneNumber == null || phoneNumber.isEmpty()) {
-            Log.e(TAG, "Priority contact phone number is invalid. Cannot send SMS.");
-            return;
-        }
-        
-        // --- THIS IS THE FIX ---
-        // Get the user's name dynamically for a personalized message.
-        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
-        String userName = "the user"; // Default name
-        if (currentUser != null && currentUser.getDisplayName() != null && !currentUser.getDisplayName().isEmpty()) {
-            // We use the Google display name. In a more advanced version,
-            // you would fetch the "verifiedName" from Firestore.
-            userName = currentUser.getDisplayName();
-        }
-
-        String message = "EMERGENCY: This is an automated alert from Safe Voice for " + userName + ". They may be in trouble.";
-
-        if (location != null) {
-            String mapLink = "https://maps.google.com/?q=" + location.getLatitude() + "," + location.getLongitude();
-            message += "\n\nTheir last known location is:\n" + mapLink;
-        }
-
+    private void sendSmsAlert(String phoneNumber, String message) {
         try {
             SmsManager smsManager = SmsManager.getDefault();
             ArrayList<String> messageParts = smsManager.divideMessage(message);
@@ -172,6 +131,19 @@ public class EmergencyHandlerService extends Service {
         }
     }
 
+    /**
+     * Gets the user's name dynamically for a personalized message.
+     */
+    private String getUserName() {
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (currentUser != null && currentUser.getDisplayName() != null && !currentUser.getDisplayName().isEmpty()) {
+            // We use the Google display name. In a more advanced version,
+            // you would fetch the "verifiedName" from Firestore.
+            return currentUser.getDisplayName();
+        }
+        return "the user"; // Default name
+    }
+
     private boolean isOnline() {
         ConnectivityManager cm = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
         if (cm == null) return false;
@@ -9,7 +9,9 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.speech.RecognitionListener;
 import android.speech.RecognizerIntent;
 import android.speech.SpeechRecognizer;
@@ -20,6 +22,9 @@ import androidx.core.app.NotificationCompat;
 
 import com.safevoice.app.MainActivity;
 import com.safevoice.app.R;
+import com.safevoice.app.utils.PowerGovernor;
+import com.safevoice.app.utils.PowerPolicy;
+import com.safevoice.app.utils.TriggerPhraseMatcher;
 
 import java.util.ArrayList;
 import java.util.Locale;
@@ -28,6 +33,8 @@ import java.util.Locale;
  * A foreground service that continuously listens for the voice trigger "Help Help".
  * It uses Android's built-in SpeechRecognizer. To achieve continuous listening,
  * it restarts the recognizer every time it stops (either on a result or an error).
+ * While the device is hot or low on battery, {@link PowerGovernor} slows the restarts after
+ * errors (mostly silence), so an idle recognizer does not spin; results still restart at once.
  */
 public class VoiceRecognitionService extends Service {
 
@@ -37,6 +44,12 @@ public class VoiceRecognitionService extends Service {
 
     private SpeechRecognizer speechRecognizer;
     private Intent speechRecognizerIntent;
+    private final TriggerPhraseMatcher triggerMatcher = new TriggerPhraseMatcher(TriggerPhraseMatcher.DEFAULT_PHRASE);
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable restartListening = this::startListening;
+    private PowerGovernor powerGovernor;
+    private PowerPolicy.Level powerLevel = PowerPolicy.Level.FULL;
+    private final PowerGovernor.Listener powerListener = level -> powerLevel = level;
 
     // A public static flag to allow UI components (like HomeFragment) to check if the service is active.
     public static boolean isServiceRunning = false;
@@ -55,6 +68,9 @@ public class VoiceRecognitionService extends Service {
         speechRecognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
         speechRecognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, Locale.getDefault());
         speechRecognizerIntent.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, true);
+
+        powerGovernor = PowerGovernor.getInstance(this);
+        powerGovernor.addListener(powerListener);
     }
 
     @Override
@@ -74,6 +90,8 @@ public class VoiceRecognitionService extends Service {
     public void onDestroy() {
         super.onDestroy();
         isServiceRunning = false;
+        handler.removeCallbacks(restartListening);
+        powerGovernor.removeListener(powerListener);
         if (speechRecognizer != null) {
             speechRecognizer.stopListening();
             speechRecognizer.destroy();
@@ -138,8 +156,8 @@ public class VoiceRecognitionService extends Service {
             if (matches != null) {
                 for (String result : matches) {
                     Log.d(TAG, "Heard: " + result);
-                    // Check if the recognized text contains the trigger phrase (case-insensitive)
-                    if (result.toLowerCase().contains("help help")) {
+                    // Check if the recognized text contains the trigger phrase (case and punctuation are ignored)
+                    if (triggerMatcher.matches(result)) {
                         Log.i(TAG, "TRIGGER PHRASE DETECTED!");
 
                         // Launch the EmergencyHandlerService to handle the alert
@@ -163,8 +181,16 @@ public class VoiceRecognitionService extends Service {
         public void onError(int error) {
             // Most errors are normal (e.g., no speech detected). We just restart the listener.
             Log.d(TAG, "Speech recognizer error: " + error);
-            // Restart listening after any error to ensure continuity.
-            startListening();
+            // Restart listening after any error to ensure continuity. Only a busy recognizer, which
+            // fails again at once, is given a pause if the power level asks for one: pausing after
+            // silence would leave gaps in which the trigger phrase is missed.
+            handler.removeCallbacks(restartListening);
+            long delay = (error == SpeechRecognizer.ERROR_RECOGNIZER_BUSY) ? powerLevel.listenRestartDelayMillis : 0;
+            if (delay > 0) {
+                handler.postDelayed(restartListening, delay);
+            } else {
+                startListening();
+            }
         }
 
         // --- Other listener methods (can be left empty for this implementation) ---
@@ -1,46 +1,77 @@
 package com.safevoice.app.ui.contacts;
 
-import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageButton;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.safevoice.app.R;
 import com.safevoice.app.models.Contact;
+import com.safevoice.app.utils.AvatarLoader;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The Adapter for the RecyclerView in ContactsFragment.
  * It takes a list of Contact objects and binds them to the item_contact.xml layout.
+ * New lists are diffed on a background thread by ListAdapter, so only rows that
+ * actually changed are rebound.
  */
-public class ContactsAdapter extends RecyclerView.Adapter<ContactsAdapter.ContactViewHolder> {
+public class ContactsAdapter extends ListAdapter<Contact, ContactsAdapter.ContactViewHolder> {
 
-    private List<Contact> contactList;
     private final OnContactOptionsClickListener optionsClickListener;
+    // Stable row ids, handed out in order the first time a number is seen.
+    private final Map<String, Long> stableIds = new HashMap<>();
+    private AvatarLoader avatarLoader;
+    private int avatarSizePx;
 
     /**
      * Interface to handle clicks on the options menu (three dots) for a contact item.
      * The Fragment will implement this to show an Edit/Delete menu.
      */
     public interface OnContactOptionsClickListener {
-        void onContactOptionsClicked(Contact contact);
+        void onContactOptionsClicked(Contact contact, View anchorView);
     }
 
-    public ContactsAdapter(List<Contact> contactList, OnContactOptionsClickListener listener) {
-        this.contactList = contactList;
+    /**
+     * Two rows are the same contact if they share a number key, which ContactsManager keeps
+     * unique; their contents are the same if name and number are unchanged.
+     */
+    private static final DiffUtil.ItemCallback<Contact> DIFF_CALLBACK = new DiffUtil.ItemCallback<Contact>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Contact oldItem, @NonNull Contact newItem) {
+            return oldItem.getNumberKey().equals(newItem.getNumberKey());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Contact oldItem, @NonNull Contact newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    public ContactsAdapter(OnContactOptionsClickListener listener) {
+        super(DIFF_CALLBACK);
         this.optionsClickListener = listener;
+        setHasStableIds(true);
     }
 
     @NonNull
     @Override
     public ContactViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        if (avatarLoader == null) {
+            avatarLoader = AvatarLoader.getInstance(parent.getContext());
+            avatarSizePx = parent.getResources().getDimensionPixelSize(R.dimen.contact_avatar_size);
+        }
         // Inflate the item_contact.xml layout for each new item in the list.
         View itemView = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_contact, parent, false);
@@ -49,56 +80,78 @@ public class ContactsAdapter extends RecyclerView.Adapter<ContactsAdapter.Contac
 
     @Override
     public void onBindViewHolder(@NonNull ContactViewHolder holder, int position) {
-        // Get the contact at the current position.
-        Contact currentContact = contactList.get(position);
-
         // Bind the contact's data to the views in the ViewHolder.
+        Contact currentContact = getItem(position);
         holder.nameTextView.setText(currentContact.getName());
         holder.phoneTextView.setText(currentContact.getPhoneNumber());
+        avatarLoader.load(currentContact, holder.avatarImageView, avatarSizePx);
+    }
 
-        // Set up the click listener for the options button.
-        // This will call the interface method implemented by the fragment.
-        holder.optionsButton.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                if (optionsClickListener != null) {
-                    optionsClickListener.onContactOptionsClicked(currentContact);
-                }
-            }
-        });
+    @Override
+    public void onViewRecycled(@NonNull ContactViewHolder holder) {
+        super.onViewRecycled(holder);
+        // Stop any queued decode for a row that has scrolled off screen.
+        avatarLoader.cancel(holder.avatarImageView);
     }
 
     @Override
-    public int getItemCount() {
-        // Return the total number of contacts in the list.
-        return contactList.size();
+    public long getItemId(int position) {
+        return stableIdOf(getItem(position));
     }
 
     /**
-     * Updates the list of contacts in the adapter and refreshes the RecyclerView.
+     * Submits a new list of contacts. The diff runs off the main thread and
+     * the RecyclerView is updated with fine-grained change notifications.
      *
      * @param newContactList The new list of contacts to display.
      */
     public void updateContacts(List<Contact> newContactList) {
-        this.contactList = newContactList;
-        // Notify the RecyclerView that the data has changed and it needs to redraw itself.
-        notifyDataSetChanged();
+        // ListAdapter needs a fresh list instance to detect a change.
+        submitList(new ArrayList<>(newContactList));
+    }
+
+    /**
+     * The stable row id of a contact: one id per number key, assigned the first time the key is
+     * seen and kept for the adapter's lifetime, so distinct contacts never share an id.
+     */
+    private long stableIdOf(Contact contact) {
+        String key = contact.getNumberKey();
+        Long id = stableIds.get(key);
+        if (id == null) {
+            id = (long) stableIds.size();
+            stableIds.put(key, id);
+        }
+        return id;
     }
 
     /**
      * The ViewHolder class holds references to the UI views for a single list item.
      * This improves performance by avoiding repeated calls to findViewById().
+     * The options click listener is created once per holder and resolves the contact
+     * from the holder's current adapter position.
      */
-    static class ContactViewHolder extends RecyclerView.ViewHolder {
+    class ContactViewHolder extends RecyclerView.ViewHolder {
         final TextView nameTextView;
         final TextView phoneTextView;
         final ImageButton optionsButton;
+        final ImageView avatarImageView;
 
         ContactViewHolder(@NonNull View itemView) {
             super(itemView);
             nameTextView = itemView.findViewById(R.id.text_contact_name);
             phoneTextView = itemView.findViewById(R.id.text_contact_phone);
             optionsButton = itemView.findViewById(R.id.button_contact_options);
+            avatarImageView = itemView.findViewById(R.id.image_contact_avatar);
+
+            optionsButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    int position = getBindingAdapterPosition();
+                    if (position != RecyclerView.NO_POSITION && optionsClickListener != null) {
+                        optionsClickListener.onContactOptionsClicked(getItem(position), v);
+                    }
+                }
+            });
         }
     }
 }
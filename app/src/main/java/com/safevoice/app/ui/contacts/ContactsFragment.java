@@ -1,8 +1,14 @@
 package com.safevoice.app.ui.contacts;
 
+import android.Manifest;
 import android.content.DialogInterface;
+import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
@@ -10,20 +16,31 @@ import android.view.ViewGroup;
 import android.widget.EditText;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultCallback;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.widget.PopupMenu;
+import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.Observer;
 import androidx.recyclerview.widget.LinearLayoutManager;
 
 import com.safevoice.app.R;
 import com.safevoice.app.databinding.FragmentContactsBinding;
 import com.safevoice.app.models.Contact;
+import com.safevoice.app.utils.AvatarLoader;
+import com.safevoice.app.utils.ContactSearchIndex;
 import com.safevoice.app.utils.ContactsManager;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The fragment for the "Contacts" screen.
@@ -34,7 +51,43 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
     private FragmentContactsBinding binding;
     private ContactsManager contactsManager;
     private ContactsAdapter contactsAdapter;
-    private List<Contact> priorityContactList;
+    private ActivityResultLauncher<String> contactsPermissionLauncher;
+    // Set once the user declined READ_CONTACTS for good; the system no longer shows the prompt.
+    private boolean contactsPermissionDenied = false;
+
+    // Search state, scoped to the view. The index is only touched on searchExecutor's thread.
+    private ContactSearchIndex searchIndex;
+    private final AtomicInteger searchGeneration = new AtomicInteger();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private ExecutorService searchExecutor;
+    private Future<?> pendingSearch;
+    private List<Contact> allPriorityContacts = Collections.emptyList();
+    private String currentQuery = "";
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        // READ_CONTACTS is optional: it only lets the avatars show device contact photos.
+        // When it is granted, the initials drawn so far are replaced by photos.
+        contactsPermissionLauncher = registerForActivityResult(
+                new ActivityResultContracts.RequestPermission(),
+                new ActivityResultCallback<Boolean>() {
+                    @Override
+                    public void onActivityResult(Boolean granted) {
+                        if (granted) {
+                            AvatarLoader.getInstance(requireContext()).clearMemoryCache();
+                        } else if (!shouldShowRequestPermissionRationale(Manifest.permission.READ_CONTACTS)) {
+                            contactsPermissionDenied = true;
+                        }
+                        if (binding != null) {
+                            if (granted) {
+                                contactsAdapter.notifyItemRangeChanged(0, contactsAdapter.getItemCount());
+                            }
+                            updateContactPhotosButton();
+                        }
+                    }
+                });
+    }
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater,
@@ -48,11 +101,12 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
         super.onViewCreated(view, savedInstanceState);
 
         contactsManager = ContactsManager.getInstance(requireContext());
-        priorityContactList = new ArrayList<>();
+        searchExecutor = Executors.newSingleThreadExecutor();
+        searchIndex = new ContactSearchIndex();
 
         // Setup RecyclerView
         binding.recyclerViewContacts.setLayoutManager(new LinearLayoutManager(getContext()));
-        contactsAdapter = new ContactsAdapter(priorityContactList, this);
+        contactsAdapter = new ContactsAdapter(this);
         binding.recyclerViewContacts.setAdapter(contactsAdapter);
 
         // Setup button click listeners
@@ -69,21 +123,119 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
                 showAddEditContactDialog(null, false); // false for priority contact
             }
         });
+
+        binding.buttonShowContactPhotos.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                contactsPermissionLauncher.launch(Manifest.permission.READ_CONTACTS);
+            }
+        });
+
+        // Subscribe to the cached contacts. The current value is delivered immediately,
+        // and every later change (edits, deletes, imports) is pushed to us.
+        contactsManager.getPrimaryContactLiveData().observe(getViewLifecycleOwner(), new Observer<Contact>() {
+            @Override
+            public void onChanged(Contact primaryContact) {
+                showPrimaryContact(primaryContact);
+            }
+        });
+
+        contactsManager.getPriorityContactsLiveData().observe(getViewLifecycleOwner(), new Observer<List<Contact>>() {
+            @Override
+            public void onChanged(final List<Contact> priorityContacts) {
+                allPriorityContacts = priorityContacts;
+                updateContactPhotosButton();
+                // Apply the change to the search index in the background, then refresh the
+                // visible list (the full list, or the results of the active query).
+                final ContactSearchIndex index = searchIndex;
+                searchExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        index.setContacts(priorityContacts);
+                    }
+                });
+                runSearch(currentQuery);
+            }
+        });
+
+        binding.editTextSearchContacts.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) { /* Do nothing */ }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) { /* Do nothing */ }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                runSearch(s.toString());
+            }
+        });
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        // Reload contacts every time the fragment is shown to ensure data is fresh.
-        loadContacts();
+        // The permission may have been granted or revoked in the system settings meanwhile.
+        updateContactPhotosButton();
+    }
+
+    /**
+     * Offers the READ_CONTACTS prompt while there are avatars that could show device photos.
+     * The prompt is only ever shown when the user taps the button.
+     */
+    private void updateContactPhotosButton() {
+        boolean granted = ContextCompat.checkSelfPermission(requireContext(), Manifest.permission.READ_CONTACTS)
+                == PackageManager.PERMISSION_GRANTED;
+        boolean show = !granted && !contactsPermissionDenied && !allPriorityContacts.isEmpty();
+        binding.buttonShowContactPhotos.setVisibility(show ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * Runs a search on the background thread and shows its results.
+     * Each call supersedes the previous one: a query that has not started yet is
+     * cancelled, and results of an older query are never displayed.
+     *
+     * @param query The text in the search box. A blank query shows all contacts.
+     */
+    private void runSearch(final String query) {
+        currentQuery = query;
+        final int generation = searchGeneration.incrementAndGet();
+        if (pendingSearch != null) {
+            pendingSearch.cancel(false);
+            pendingSearch = null;
+        }
+
+        if (query.trim().isEmpty()) {
+            contactsAdapter.updateContacts(allPriorityContacts);
+            return;
+        }
+
+        final ContactSearchIndex index = searchIndex;
+        pendingSearch = searchExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != searchGeneration.get()) {
+                    return; // A newer query was typed before this one started.
+                }
+                final List<Contact> results = index.search(query);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (binding != null && generation == searchGeneration.get()) {
+                            contactsAdapter.updateContacts(results);
+                        }
+                    }
+                });
+            }
+        });
     }
 
     /**
-     * Loads all contacts from the ContactsManager and updates the UI.
+     * Displays the primary contact card, or the "no primary contact" message.
+     *
+     * @param primaryContact The current primary contact, or null if none is set.
      */
-    private void loadContacts() {
-        // Load and display the primary contact
-        Contact primaryContact = contactsManager.getPrimaryContact();
+    private void showPrimaryContact(@Nullable Contact primaryContact) {
         if (primaryContact != null) {
             binding.textPrimaryContactName.setText(primaryContact.getName());
             binding.textPrimaryContactPhone.setText(primaryContact.getPhoneNumber());
@@ -95,10 +247,6 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
             binding.textPrimaryContactName.setVisibility(View.GONE);
             binding.textPrimaryContactPhone.setVisibility(View.GONE);
         }
-
-        // Load and display the list of priority contacts
-        priorityContactList = contactsManager.getPriorityContacts();
-        contactsAdapter.updateContacts(priorityContactList);
     }
 
     /**
@@ -142,13 +290,14 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
                 if (isPrimary) {
                     contactsManager.savePrimaryContact(newContact);
                 } else {
-                    if (existingContact != null) {
-                        // For editing, we remove the old one and add the updated one.
-                        contactsManager.deletePriorityContact(existingContact);
+                    boolean saved = (existingContact != null)
+                            ? contactsManager.replacePriorityContact(existingContact, newContact)
+                            : contactsManager.addPriorityContact(newContact);
+                    if (!saved) {
+                        Toast.makeText(getContext(), "A contact with this number already exists.", Toast.LENGTH_SHORT).show();
                     }
-                    contactsManager.addPriorityContact(newContact);
                 }
-                loadContacts(); // Refresh the UI
+                // No manual refresh needed: the LiveData observers update the UI.
             }
         });
 
@@ -164,11 +313,11 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
     /**
      * This method is called from the ContactsAdapter when the user clicks the options button.
      *
-     * @param contact The contact for which the options were clicked.
+     * @param contact    The contact for which the options were clicked.
+     * @param anchorView The options button that was clicked, used to anchor the popup menu.
      */
     @Override
-    public void onContactOptionsClicked(final Contact contact) {
-        View anchorView = binding.recyclerViewContacts.findViewHolderForAdapterPosition(priorityContactList.indexOf(contact)).itemView.findViewById(R.id.button_contact_options);
+    public void onContactOptionsClicked(final Contact contact, View anchorView) {
         PopupMenu popup = new PopupMenu(requireContext(), anchorView);
         popup.getMenuInflater().inflate(R.menu.contact_options_menu, popup.getMenu());
 
@@ -181,7 +330,6 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
                     return true;
                 } else if (itemId == R.id.action_delete_contact) {
                     contactsManager.deletePriorityContact(contact);
-                    loadContacts();
                     Toast.makeText(getContext(), "Contact deleted.", Toast.LENGTH_SHORT).show();
                     return true;
                 }
@@ -195,6 +343,10 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        searchGeneration.incrementAndGet();
+        if (searchExecutor != null) {
+            searchExecutor.shutdown();
+        }
         binding = null;
     }
           }
@@ -16,6 +16,7 @@ import com.safevoice.app.KycActivity;
 import com.safevoice.app.R;
 import com.safevoice.app.databinding.FragmentHomeBinding;
 import com.safevoice.app.services.VoiceRecognitionService;
+import com.safevoice.app.utils.VisionModelRegistry;
 
 /**
  * The fragment for the "Home" screen.
@@ -99,6 +100,10 @@ public class HomeFragment extends Fragment {
         } else {
             binding.textVerificationStatus.setText(R.string.home_verification_status);
             binding.buttonVerifyIdentity.setVisibility(View.VISIBLE);
+            // Verification is likely next: load its models in the background now.
+            if (getContext() != null) {
+                VisionModelRegistry.getInstance(getContext()).warmUp();
+            }
         }
     }
 
@@ -8,6 +8,9 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -25,8 +28,18 @@ import androidx.fragment.app.Fragment;
 import com.safevoice.app.R;
 import com.safevoice.app.databinding.FragmentSettingsBinding;
 import com.safevoice.app.firebase.FirebaseManager;
+import com.safevoice.app.models.Contact;
+import com.safevoice.app.utils.ContactFileParser;
+import com.safevoice.app.utils.ContactImporter;
+import com.safevoice.app.utils.ContactsManager;
 
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The fragment for the "Settings" screen.
@@ -34,8 +47,15 @@ import java.io.InputStream;
  */
 public class SettingsFragment extends Fragment {
 
+    private static final String TAG = "SettingsFragment";
+    private static final String[] CONTACT_FILE_MIME_TYPES = {
+            "text/vcard", "text/x-vcard", "text/csv", "text/comma-separated-values", "text/plain"
+    };
+
     private FragmentSettingsBinding binding;
     private ActivityResultLauncher<Intent> filePickerLauncher;
+    private ActivityResultLauncher<Intent> contactFilePickerLauncher;
+    private ExecutorService importExecutor;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater,
@@ -64,6 +84,23 @@ public class SettingsFragment extends Fragment {
                     }
                 });
 
+        // The contacts file picker follows the same pattern, but the result is imported in the background.
+        contactFilePickerLauncher = registerForActivityResult(
+                new ActivityResultContracts.StartActivityForResult(),
+                new ActivityResultCallback<ActivityResult>() {
+                    @Override
+                    public void onActivityResult(ActivityResult result) {
+                        if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null) {
+                            Uri uri = result.getData().getData();
+                            if (uri != null) {
+                                importContactsFromUri(uri);
+                            }
+                        }
+                    }
+                });
+
+        importExecutor = Executors.newSingleThreadExecutor();
+
         // Setup button click listeners
         binding.buttonUploadFirebaseJson.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -72,6 +109,13 @@ public class SettingsFragment extends Fragment {
             }
         });
 
+        binding.buttonImportContacts.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                openContactFilePicker();
+            }
+        });
+
         binding.buttonShowRules.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -105,6 +149,129 @@ public class SettingsFragment extends Fragment {
         filePickerLauncher.launch(intent);
     }
 
+    /**
+     * Launches the system file picker for a vCard or CSV contact list.
+     */
+    private void openContactFilePicker() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("*/*");
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, CONTACT_FILE_MIME_TYPES);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        contactFilePickerLauncher.launch(intent);
+    }
+
+    /**
+     * Reads the selected contact file on a background thread, then asks the user to confirm
+     * before the contacts are added. Every priority contact receives the emergency SMS, so a
+     * file is never turned into alert recipients without the user seeing how many it holds.
+     * The file is parsed record by record and only its new contacts are kept; on confirmation
+     * they are saved with a single write of the priority list.
+     *
+     * @param uri The URI of the user-selected vCard or CSV file.
+     */
+    private void importContactsFromUri(final Uri uri) {
+        final Context appContext = requireContext().getApplicationContext();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        binding.buttonImportContacts.setEnabled(false);
+        Toast.makeText(getContext(), R.string.settings_import_contacts_running, Toast.LENGTH_SHORT).show();
+
+        importExecutor.execute(() -> {
+            ContactImporter.Result result = null;
+            final List<Contact> pending = new ArrayList<>();
+            ContactsManager contactsManager = ContactsManager.getInstance(appContext);
+            try (InputStream inputStream = appContext.getContentResolver().openInputStream(uri)) {
+                if (inputStream != null) {
+                    // Numbers already saved as the primary or a priority contact are skipped.
+                    List<Contact> existing = contactsManager.getPriorityContacts();
+                    Contact primary = contactsManager.getPrimaryContact();
+                    if (primary != null) {
+                        existing.add(primary);
+                    }
+                    ContactFileParser parser = new ContactFileParser(
+                            new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+                    ContactImporter importer = new ContactImporter(existing, ContactImporter.DEFAULT_BATCH_SIZE);
+                    result = importer.run(parser, new ContactImporter.BatchSink() {
+                        @Override
+                        public void writeBatch(List<Contact> batch) {
+                            pending.addAll(batch);
+                        }
+                    });
+                    Log.i(TAG, "Contact file read (" + parser.getFormat() + "): " + result);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Contact import failed.", e);
+            }
+
+            final ContactImporter.Result finalResult = result;
+            mainHandler.post(() -> onContactFileRead(finalResult, pending));
+        });
+    }
+
+    private void onContactFileRead(@Nullable final ContactImporter.Result result, final List<Contact> pending) {
+        if (binding == null || !isAdded()) {
+            return;
+        }
+        if (result == null) {
+            binding.buttonImportContacts.setEnabled(true);
+            Toast.makeText(getContext(), "Error reading the selected file.", Toast.LENGTH_LONG).show();
+            return;
+        }
+        if (pending.isEmpty()) {
+            binding.buttonImportContacts.setEnabled(true);
+            String message = getString(R.string.settings_import_contacts_done, 0, result.duplicates);
+            Toast.makeText(getContext(), message, Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle(R.string.settings_import_contacts_confirm_title)
+                .setMessage(getString(R.string.settings_import_contacts_confirm_message, pending.size()))
+                .setPositiveButton(R.string.settings_import_contacts_confirm_button, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        saveImportedContacts(pending, result.duplicates);
+                    }
+                })
+                .setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        dialog.dismiss();
+                    }
+                })
+                .setOnDismissListener(new DialogInterface.OnDismissListener() {
+                    @Override
+                    public void onDismiss(DialogInterface dialog) {
+                        if (binding != null) {
+                            binding.buttonImportContacts.setEnabled(true);
+                        }
+                    }
+                })
+                .show();
+    }
+
+    /**
+     * Adds the confirmed contacts in one write, off the main thread.
+     */
+    private void saveImportedContacts(final List<Contact> pending, final int duplicatesInFile) {
+        if (binding == null || importExecutor.isShutdown()) {
+            return;
+        }
+        final Context appContext = requireContext().getApplicationContext();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        importExecutor.execute(() -> {
+            // Contacts saved while the dialog was open are skipped here as well.
+            final int imported = ContactsManager.getInstance(appContext).addPriorityContacts(pending);
+            final int duplicates = duplicatesInFile + pending.size() - imported;
+            Log.i(TAG, "Contact import saved: " + imported + " contacts.");
+            mainHandler.post(() -> {
+                if (binding != null && isAdded()) {
+                    String message = getString(R.string.settings_import_contacts_done, imported, duplicates);
+                    Toast.makeText(getContext(), message, Toast.LENGTH_LONG).show();
+                }
+            });
+        });
+    }
+
     /**
      * Takes the URI of the selected file, opens an InputStream, and passes it
      * to the FirebaseManager to be saved.
@@ -162,6 +329,10 @@ public class SettingsFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        if (importExecutor != null) {
+            // A running import is allowed to finish; it only touches application-scoped objects.
+            importExecutor.shutdown();
+        }
         binding = null;
     }
   }
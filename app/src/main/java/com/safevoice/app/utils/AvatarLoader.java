@@ -0,0 +1,404 @@
+package com.safevoice.app.utils;
+
+import android.Manifest;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.safevoice.app.R;
+import com.safevoice.app.models.Contact;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A Singleton that loads round contact avatars into ImageViews.
+ *
+ * If READ_CONTACTS has been granted and the number matches a device contact with a photo,
+ * the photo is decoded at the requested size. Otherwise the contact's initials are drawn
+ * on a coloured circle. Photo avatars are kept in a size-bounded memory LRU and a small
+ * disk LRU in the cache directory; initials are cheap to draw and only use the memory cache.
+ *
+ * The disk cache is only read after the permission check and the device lookup, and its entries
+ * are named after a SHA-1 of the key, the photo URI and the contact's last-updated time. A
+ * revoked permission therefore shows no cached photo, and a photo changed in the Contacts app
+ * is decoded again instead of being served from a stale file.
+ *
+ * Each request is tied to its ImageView, so calling {@link #cancel(ImageView)} when a row
+ * is recycled stops queued decodes for rows that have scrolled away.
+ */
+public class AvatarLoader {
+
+    private static final String TAG = "AvatarLoader";
+    private static final String DISK_CACHE_DIR = "avatars";
+    private static final long DISK_CACHE_MAX_BYTES = 4L * 1024 * 1024;
+    // Largest size served by the provider's thumbnail; bigger requests use the full photo.
+    private static final int THUMBNAIL_MAX_SIZE = 96;
+
+    private static final int[] BACKGROUND_COLORS = {
+            0xFFE57373, 0xFFF06292, 0xFFBA68C8, 0xFF9575CD, 0xFF7986CB, 0xFF64B5F6,
+            0xFF4DB6AC, 0xFF81C784, 0xFFFFB74D, 0xFFA1887F, 0xFF90A4AE
+    };
+
+    private static AvatarLoader instance;
+
+    private final ContentResolver contentResolver;
+    private final Context appContext;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final File diskCacheDir;
+    private final ExecutorService decodeExecutor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Object diskLock = new Object();
+    private long diskCacheBytes = -1; // Computed lazily on the first disk access.
+
+    // Private constructor to enforce the Singleton pattern.
+    private AvatarLoader(Context context) {
+        appContext = context.getApplicationContext();
+        contentResolver = appContext.getContentResolver();
+        diskCacheDir = new File(appContext.getCacheDir(), DISK_CACHE_DIR);
+
+        // Use 1/16th of the available heap, measured in kilobytes.
+        int maxKilobytes = (int) (Runtime.getRuntime().maxMemory() / 1024 / 16);
+        memoryCache = new LruCache<String, Bitmap>(maxKilobytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+    }
+
+    public static synchronized AvatarLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new AvatarLoader(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Shows the avatar for a contact in the given view, loading it in the background if needed.
+     * Any earlier request for the same view is cancelled.
+     *
+     * @param contact   The contact to show.
+     * @param imageView The target view.
+     * @param sizePx    The target width and height in pixels; the avatar is decoded at this size.
+     */
+    public void load(final Contact contact, final ImageView imageView, final int sizePx) {
+        cancel(imageView);
+
+        final String number = Contact.normalizePhoneNumber(contact.getPhoneNumber());
+        final String key = (number != null ? number : contact.getPhoneNumber()) + "|" + contact.getName() + "@" + sizePx;
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+
+        imageView.setImageDrawable(null);
+        final Future<?> request = decodeExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap avatar = loadAvatar(contact, number, key, sizePx);
+                if (avatar == null || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                memoryCache.put(key, avatar);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Only apply the result if the view still wants this avatar.
+                        if (key.equals(imageView.getTag(R.id.tag_avatar_key))) {
+                            imageView.setTag(R.id.tag_avatar_request, null);
+                            imageView.setImageBitmap(avatar);
+                        }
+                    }
+                });
+            }
+        });
+        imageView.setTag(R.id.tag_avatar_key, key);
+        imageView.setTag(R.id.tag_avatar_request, request);
+    }
+
+    /**
+     * Cancels any pending load for the view. Safe to call on views with no request.
+     */
+    public void cancel(ImageView imageView) {
+        Object request = imageView.getTag(R.id.tag_avatar_request);
+        if (request instanceof Future) {
+            ((Future<?>) request).cancel(true);
+        }
+        imageView.setTag(R.id.tag_avatar_request, null);
+        imageView.setTag(R.id.tag_avatar_key, null);
+    }
+
+    /**
+     * Drops every in-memory avatar. The disk cache is kept.
+     */
+    public void clearMemoryCache() {
+        memoryCache.evictAll();
+    }
+
+    /**
+     * A device contact's photo, and when the contact was last changed.
+     */
+    private static final class DevicePhoto {
+        final String uri;
+        final long lastUpdated;
+
+        DevicePhoto(String uri, long lastUpdated) {
+            this.uri = uri;
+            this.lastUpdated = lastUpdated;
+        }
+    }
+
+    /**
+     * Runs on a decode thread: the device photo, from the disk cache if it is unchanged, then initials.
+     */
+    private Bitmap loadAvatar(Contact contact, @Nullable String number, String key, int sizePx) {
+        DevicePhoto devicePhoto = (number != null) ? findDevicePhoto(number, sizePx) : null;
+        if (devicePhoto != null) {
+            File diskFile = new File(diskCacheDir,
+                    diskFileName(key + "|" + devicePhoto.uri + "|" + devicePhoto.lastUpdated));
+            Bitmap avatar = readFromDisk(diskFile);
+            if (avatar != null) {
+                return avatar;
+            }
+            Bitmap photo = decodeSampled(Uri.parse(devicePhoto.uri), sizePx);
+            if (photo != null) {
+                avatar = toCircle(photo, sizePx);
+                photo.recycle();
+                writeToDisk(diskFile, avatar);
+                return avatar;
+            }
+        }
+        return drawInitials(contact.getName(), number, sizePx);
+    }
+
+    /**
+     * Looks the number up in the device contacts. Returns null without READ_CONTACTS,
+     * or if the matching contact has no photo.
+     */
+    @Nullable
+    private DevicePhoto findDevicePhoto(String number, int sizePx) {
+        if (ContextCompat.checkSelfPermission(appContext, Manifest.permission.READ_CONTACTS)
+                != PackageManager.PERMISSION_GRANTED) {
+            return null;
+        }
+        String column = (sizePx <= THUMBNAIL_MAX_SIZE)
+                ? ContactsContract.PhoneLookup.PHOTO_THUMBNAIL_URI
+                : ContactsContract.PhoneLookup.PHOTO_URI;
+        String[] projection = {column, ContactsContract.PhoneLookup.CONTACT_LAST_UPDATED_TIMESTAMP};
+        Uri lookupUri = Uri.withAppendedPath(ContactsContract.PhoneLookup.CONTENT_FILTER_URI, Uri.encode(number));
+        try (Cursor cursor = contentResolver.query(lookupUri, projection, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                String uri = cursor.getString(0);
+                return (uri != null) ? new DevicePhoto(uri, cursor.getLong(1)) : null;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Contact photo lookup failed.", e);
+        }
+        return null;
+    }
+
+    /**
+     * A file name that is unique for the full cache key: its SHA-1 in hex.
+     */
+    private static String diskFileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2 + 4);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return name.append(".png").toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android runtime provides SHA-1.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes the photo with the largest power-of-two subsampling that still covers sizePx,
+     * so a full-resolution photo is never decoded just to show a 40dp avatar.
+     */
+    @Nullable
+    private Bitmap decodeSampled(Uri uri, int sizePx) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = contentResolver.openInputStream(uri)) {
+            BitmapFactory.decodeStream(in, null, options);
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Could not read contact photo bounds.", e);
+            return null;
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        int shortSide = Math.min(options.outWidth, options.outHeight);
+        while (shortSide / (sampleSize * 2) >= sizePx) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        try (InputStream in = contentResolver.openInputStream(uri)) {
+            return BitmapFactory.decodeStream(in, null, options);
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Could not decode contact photo.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Centre-crops the photo into a circle of exactly sizePx.
+     */
+    private static Bitmap toCircle(Bitmap source, int sizePx) {
+        Bitmap output = Bitmap.createBitmap(sizePx, sizePx, Bitmap.Config.ARGB_8888);
+        BitmapShader shader = new BitmapShader(source, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        float scale = (float) sizePx / Math.min(source.getWidth(), source.getHeight());
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.postTranslate((sizePx - source.getWidth() * scale) / 2f, (sizePx - source.getHeight() * scale) / 2f);
+        shader.setLocalMatrix(matrix);
+
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+        paint.setShader(shader);
+        new Canvas(output).drawCircle(sizePx / 2f, sizePx / 2f, sizePx / 2f, paint);
+        return output;
+    }
+
+    private static Bitmap drawInitials(String name, @Nullable String number, int sizePx) {
+        Bitmap output = Bitmap.createBitmap(sizePx, sizePx, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(output);
+        String seed = (number != null) ? number : String.valueOf(name);
+        int color = BACKGROUND_COLORS[(seed.hashCode() & 0x7fffffff) % BACKGROUND_COLORS.length];
+
+        Paint circlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        circlePaint.setColor(color);
+        canvas.drawCircle(sizePx / 2f, sizePx / 2f, sizePx / 2f, circlePaint);
+
+        Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(sizePx * 0.4f);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setFakeBoldText(true);
+        float baseline = sizePx / 2f - (textPaint.descent() + textPaint.ascent()) / 2f;
+        canvas.drawText(initialsOf(name), sizePx / 2f, baseline, textPaint);
+        return output;
+    }
+
+    private static String initialsOf(String name) {
+        StringBuilder initials = new StringBuilder(2);
+        if (name != null) {
+            for (String word : name.trim().split("\\s+")) {
+                if (!word.isEmpty() && initials.length() < 2) {
+                    initials.appendCodePoint(Character.toUpperCase(word.codePointAt(0)));
+                }
+            }
+        }
+        return (initials.length() > 0) ? initials.toString() : "?";
+    }
+
+    // --- Disk LRU ---
+
+    @Nullable
+    private Bitmap readFromDisk(File file) {
+        synchronized (diskLock) {
+            if (!file.exists()) {
+                return null;
+            }
+            // Touch the file so trimming treats it as recently used.
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return BitmapFactory.decodeFile(file.getAbsolutePath());
+    }
+
+    private void writeToDisk(File file, Bitmap avatar) {
+        synchronized (diskLock) {
+            if (!diskCacheDir.exists() && !diskCacheDir.mkdirs()) {
+                return;
+            }
+            if (diskCacheBytes < 0) {
+                diskCacheBytes = 0;
+                File[] files = diskCacheDir.listFiles();
+                if (files != null) {
+                    for (File existing : files) {
+                        diskCacheBytes += existing.length();
+                    }
+                }
+            }
+
+            File tempFile = new File(diskCacheDir, file.getName() + ".tmp");
+            try (OutputStream out = new FileOutputStream(tempFile)) {
+                avatar.compress(Bitmap.CompressFormat.PNG, 100, out);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not write avatar to disk cache.", e);
+                tempFile.delete();
+                return;
+            }
+            long previousLength = file.exists() ? file.length() : 0;
+            if (tempFile.renameTo(file)) {
+                diskCacheBytes += file.length() - previousLength;
+                trimDiskCache();
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the cache is under its size limit.
+     */
+    private void trimDiskCache() {
+        if (diskCacheBytes <= DISK_CACHE_MAX_BYTES) {
+            return;
+        }
+        File[] files = diskCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (diskCacheBytes <= DISK_CACHE_MAX_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                diskCacheBytes -= length;
+            }
+        }
+    }
+}
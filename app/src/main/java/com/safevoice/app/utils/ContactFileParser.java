@@ -0,0 +1,351 @@
+package com.safevoice.app.utils;
+
+import androidx.annotation.Nullable;
+
+import com.safevoice.app.models.Contact;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A streaming parser for contact list files (vCard or CSV).
+ * Records are pulled one at a time with {@link #next()}, so only the record currently
+ * being parsed is held in memory, no matter how large the file is.
+ * The format is detected automatically from the first non-empty line.
+ *
+ * This class has no Android dependencies so it can be benchmarked on a plain JVM.
+ */
+public class ContactFileParser implements Closeable {
+
+    public enum Format {
+        VCARD,
+        CSV
+    }
+
+    // Size of the look-ahead window used to sniff the format.
+    private static final int SNIFF_LIMIT = 8192;
+
+    private static final String[] CSV_NAME_HEADERS = {"name", "full name", "display name", "contact name"};
+    private static final String[] CSV_FIRST_NAME_HEADERS = {"first name", "given name"};
+    private static final String[] CSV_LAST_NAME_HEADERS = {"last name", "family name", "surname"};
+    private static final String[] CSV_PHONE_HEADERS = {"phone", "phone number", "mobile", "mobile phone", "cell", "number", "tel", "telephone"};
+
+    private final BufferedReader reader;
+    private final Format format;
+
+    // vCard state: a folded-line look-ahead buffer.
+    private String pendingLine;
+
+    // CSV state: column indexes resolved from the header row, and reusable scratch objects.
+    private final List<String> csvFields = new ArrayList<>();
+    private final StringBuilder csvField = new StringBuilder();
+    private int nameColumn = 0;
+    private int firstNameColumn = -1;
+    private int lastNameColumn = -1;
+    private int phoneColumn = 1;
+    private boolean csvHeaderChecked = false;
+
+    /**
+     * Creates a parser over the given reader and detects its format.
+     *
+     * @param source The character stream of the file. It is closed by {@link #close()}.
+     * @throws IOException If the stream cannot be read.
+     */
+    public ContactFileParser(Reader source) throws IOException {
+        this.reader = (source instanceof BufferedReader) ? (BufferedReader) source : new BufferedReader(source);
+        this.format = detectFormat(reader);
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Reads the next contact record from the file.
+     * Records without a usable name or phone number are skipped.
+     *
+     * @return The next Contact, or null when the end of the file is reached.
+     * @throws IOException If the stream cannot be read.
+     */
+    @Nullable
+    public Contact next() throws IOException {
+        return (format == Format.VCARD) ? nextVCard() : nextCsv();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Peeks at the first non-empty line without consuming it.
+     */
+    private static Format detectFormat(BufferedReader reader) throws IOException {
+        reader.mark(SNIFF_LIMIT);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = stripBom(line).trim();
+                if (!line.isEmpty()) {
+                    return line.regionMatches(true, 0, "BEGIN:VCARD", 0, 11) ? Format.VCARD : Format.CSV;
+                }
+            }
+            return Format.CSV;
+        } finally {
+            reader.reset();
+        }
+    }
+
+    private static String stripBom(String line) {
+        return (!line.isEmpty() && line.charAt(0) == '\uFEFF') ? line.substring(1) : line;
+    }
+
+    // --- vCard ---
+
+    @Nullable
+    private Contact nextVCard() throws IOException {
+        String line;
+        boolean inCard = false;
+        String fullName = null;
+        String structuredName = null;
+        String phone = null;
+        boolean phoneIsMobile = false;
+
+        while ((line = readUnfoldedLine()) != null) {
+            if (!inCard) {
+                if (line.regionMatches(true, 0, "BEGIN:VCARD", 0, 11)) {
+                    inCard = true;
+                }
+                continue;
+            }
+
+            if (line.regionMatches(true, 0, "END:VCARD", 0, 9)) {
+                String name = (fullName != null && !fullName.isEmpty()) ? fullName : structuredName;
+                if (name != null && !name.isEmpty() && phone != null && !phone.isEmpty()) {
+                    return new Contact(name, phone);
+                }
+                // Incomplete card: reset and keep looking for the next one.
+                inCard = false;
+                fullName = null;
+                structuredName = null;
+                phone = null;
+                phoneIsMobile = false;
+                continue;
+            }
+
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            // Property names may carry a group prefix ("item1.TEL") and parameters ("TEL;TYPE=CELL").
+            String property = line.substring(0, colon);
+            int dot = property.indexOf('.');
+            if (dot >= 0) {
+                property = property.substring(dot + 1);
+            }
+            String value = line.substring(colon + 1).trim();
+
+            if (startsWithProperty(property, "FN")) {
+                fullName = unescapeVCard(value);
+            } else if (startsWithProperty(property, "N")) {
+                structuredName = structuredNameToDisplay(value);
+            } else if (startsWithProperty(property, "TEL")) {
+                boolean isMobile = property.toUpperCase(Locale.ROOT).contains("CELL");
+                // Keep the first number, but prefer a mobile one since alerts are sent by SMS.
+                if (phone == null || (isMobile && !phoneIsMobile)) {
+                    phone = value.startsWith("tel:") ? value.substring(4) : value;
+                    phoneIsMobile = isMobile;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a logical vCard line, joining RFC 6350 folded continuation lines.
+     */
+    @Nullable
+    private String readUnfoldedLine() throws IOException {
+        String line = (pendingLine != null) ? pendingLine : reader.readLine();
+        pendingLine = null;
+        if (line == null) {
+            return null;
+        }
+        String next;
+        StringBuilder unfolded = null;
+        while ((next = reader.readLine()) != null
+                && !next.isEmpty() && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+            if (unfolded == null) {
+                unfolded = new StringBuilder(line);
+            }
+            unfolded.append(next, 1, next.length());
+        }
+        pendingLine = next;
+        return stripBom(unfolded != null ? unfolded.toString() : line);
+    }
+
+    private static boolean startsWithProperty(String property, String name) {
+        int length = name.length();
+        return property.regionMatches(true, 0, name, 0, length)
+                && (property.length() == length || property.charAt(length) == ';');
+    }
+
+    /**
+     * Turns "Family;Given;Middle;Prefix;Suffix" into "Given Family".
+     */
+    private static String structuredNameToDisplay(String value) {
+        String[] parts = value.split(";", -1);
+        String family = parts.length > 0 ? unescapeVCard(parts[0]).trim() : "";
+        String given = parts.length > 1 ? unescapeVCard(parts[1]).trim() : "";
+        return (given + " " + family).trim();
+    }
+
+    private static String unescapeVCard(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        return value.replace("\\,", ",").replace("\\;", ";").replace("\\n", " ").replace("\\N", " ");
+    }
+
+    // --- CSV ---
+
+    @Nullable
+    private Contact nextCsv() throws IOException {
+        while (readCsvRecord()) {
+            if (!csvHeaderChecked) {
+                csvHeaderChecked = true;
+                if (resolveCsvHeader()) {
+                    continue;
+                }
+            }
+
+            String name;
+            if (firstNameColumn >= 0 || lastNameColumn >= 0) {
+                name = (csvValue(firstNameColumn) + " " + csvValue(lastNameColumn)).trim();
+            } else {
+                name = csvValue(nameColumn);
+            }
+            String phone = csvValue(phoneColumn);
+            if (!name.isEmpty() && !phone.isEmpty()) {
+                return new Contact(name, phone);
+            }
+        }
+        return null;
+    }
+
+    private String csvValue(int column) {
+        return (column >= 0 && column < csvFields.size()) ? csvFields.get(column).trim() : "";
+    }
+
+    /**
+     * Looks at the first record to see whether it is a header row.
+     * If recognised column names are found, they are used to locate the name and phone fields.
+     *
+     * @return true if the record was a header row and should not be treated as data.
+     */
+    private boolean resolveCsvHeader() {
+        int name = -1, first = -1, last = -1, phone = -1;
+        for (int i = 0; i < csvFields.size(); i++) {
+            String header = csvFields.get(i).trim().toLowerCase(Locale.ROOT);
+            if (name < 0 && matchesAny(header, CSV_NAME_HEADERS)) {
+                name = i;
+            } else if (first < 0 && matchesAny(header, CSV_FIRST_NAME_HEADERS)) {
+                first = i;
+            } else if (last < 0 && matchesAny(header, CSV_LAST_NAME_HEADERS)) {
+                last = i;
+            } else if (phone < 0 && (matchesAny(header, CSV_PHONE_HEADERS) || header.startsWith("phone"))) {
+                phone = i;
+            }
+        }
+        if (phone < 0 || (name < 0 && first < 0 && last < 0)) {
+            // No recognisable header: assume "name,phone" and treat this row as data.
+            return false;
+        }
+        phoneColumn = phone;
+        if (name >= 0) {
+            nameColumn = name;
+        } else {
+            firstNameColumn = first;
+            lastNameColumn = last;
+        }
+        return true;
+    }
+
+    private static boolean matchesAny(String value, String[] candidates) {
+        for (String candidate : candidates) {
+            if (candidate.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads one RFC 4180 record into {@link #csvFields}.
+     * Quoted fields may contain commas, escaped quotes ("") and line breaks.
+     *
+     * @return false when the end of the file is reached and no record was read.
+     */
+    private boolean readCsvRecord() throws IOException {
+        csvFields.clear();
+        csvField.setLength(0);
+        boolean inQuotes = false;
+        boolean sawAnything = false;
+        int c;
+
+        while ((c = reader.read()) != -1) {
+            if (c == '\uFEFF' && !sawAnything && !csvHeaderChecked) {
+                // A byte order mark at the start of the file, ahead of a header or of the first contact.
+                continue;
+            }
+            sawAnything = true;
+            if (inQuotes) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int peek = reader.read();
+                    if (peek == '"') {
+                        csvField.append('"');
+                    } else {
+                        inQuotes = false;
+                        if (peek != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    csvField.append((char) c);
+                }
+            } else if (c == '"' && csvField.length() == 0) {
+                inQuotes = true;
+            } else if (c == ',') {
+                csvFields.add(csvField.toString());
+                csvField.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r') {
+                    reader.mark(1);
+                    if (reader.read() != '\n') {
+                        reader.reset();
+                    }
+                }
+                if (csvFields.isEmpty() && csvField.length() == 0) {
+                    // Blank line: keep going.
+                    continue;
+                }
+                csvFields.add(csvField.toString());
+                return true;
+            } else {
+                csvField.append((char) c);
+            }
+        }
+
+        if (!sawAnything || (csvFields.isEmpty() && csvField.length() == 0)) {
+            return false;
+        }
+        csvFields.add(csvField.toString());
+        return true;
+    }
+}
@@ -0,0 +1,109 @@
+package com.safevoice.app.utils;
+
+import com.safevoice.app.models.Contact;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Drives a {@link ContactFileParser} record by record, drops duplicates and hands the
+ * remaining contacts to a {@link BatchSink} in fixed-size batches.
+ *
+ * The importer itself keeps only one batch and the set of known normalized numbers, so its
+ * own memory depends on the number of unique contacts, not on the file size. What the sink
+ * keeps is up to the sink: the settings screen collects every batch until the user confirms
+ * the import, so there the whole list of new contacts is held in memory.
+ * Like the parser, this class has no Android dependencies.
+ */
+public class ContactImporter {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * Receives each batch of new, de-duplicated contacts.
+     */
+    public interface BatchSink {
+        void writeBatch(List<Contact> batch) throws IOException;
+    }
+
+    /**
+     * Summary of a finished import.
+     */
+    public static class Result {
+        public int parsed;
+        public int imported;
+        public int duplicates;
+        public int invalid;
+
+        @Override
+        public String toString() {
+            return "parsed=" + parsed + ", imported=" + imported
+                    + ", duplicates=" + duplicates + ", invalid=" + invalid;
+        }
+    }
+
+    private final Set<String> knownNumbers;
+    private final int batchSize;
+
+    /**
+     * @param existingContacts Contacts that are already saved; their numbers are used for de-duplication.
+     * @param batchSize        How many contacts to collect before handing them to the sink.
+     */
+    public ContactImporter(Collection<Contact> existingContacts, int batchSize) {
+        this.knownNumbers = new HashSet<>();
+        this.batchSize = Math.max(1, batchSize);
+        for (Contact contact : existingContacts) {
+            String normalized = Contact.normalizePhoneNumber(contact.getPhoneNumber());
+            if (normalized != null) {
+                knownNumbers.add(normalized);
+            }
+        }
+    }
+
+    /**
+     * Reads the whole file and writes every new contact to the sink.
+     * Contacts are stored with their normalized number. The parser is not closed.
+     *
+     * @param parser The parser to drain.
+     * @param sink   The destination for each batch.
+     * @return Counts describing what happened to the records in the file.
+     * @throws IOException If reading the file or writing a batch fails.
+     */
+    public Result run(ContactFileParser parser, BatchSink sink) throws IOException {
+        Result result = new Result();
+        List<Contact> batch = new ArrayList<>(batchSize);
+        Contact contact;
+
+        while ((contact = parser.next()) != null) {
+            result.parsed++;
+            String normalized = Contact.normalizePhoneNumber(contact.getPhoneNumber());
+            if (normalized == null) {
+                result.invalid++;
+                continue;
+            }
+            if (!knownNumbers.add(normalized)) {
+                result.duplicates++;
+                continue;
+            }
+            contact.setName(contact.getName().trim());
+            contact.setPhoneNumber(normalized);
+            batch.add(contact);
+
+            if (batch.size() >= batchSize) {
+                sink.writeBatch(batch);
+                result.imported += batch.size();
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            sink.writeBatch(batch);
+            result.imported += batch.size();
+        }
+        return result;
+    }
+}
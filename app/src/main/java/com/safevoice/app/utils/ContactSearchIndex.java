@@ -0,0 +1,337 @@
+package com.safevoice.app.utils;
+
+import com.safevoice.app.models.Contact;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory search index over contact names and phone numbers.
+ *
+ * - Name words go into a prefix trie, so "jo sm" finds "John Smith". Names and queries are
+ *   split into words at anything that is not a letter or digit.
+ * - Normalized numbers are split into 1-, 2- and 3-grams, so any run of digits
+ *   ("0100", "555") finds numbers containing it.
+ *
+ * The index is updated incrementally with {@link #setContacts(Collection)}: only
+ * contacts that were added or removed since the last call touch the index. Results come
+ * in the order of the list last passed to it, so an edited contact keeps its place.
+ * This class is not thread-safe; callers should confine it to a single thread.
+ * It has no Android dependencies.
+ */
+public class ContactSearchIndex {
+
+    private static final int MAX_GRAM = 3;
+
+    private static final Comparator<Entry> BY_POSITION = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            return Integer.compare(a.position, b.position);
+        }
+    };
+
+    private static class TrieNode {
+        final Map<Character, TrieNode> children = new HashMap<>(4);
+        // Ids of every entry that has a word starting with the prefix leading to this node.
+        final Set<Integer> ids = new HashSet<>();
+    }
+
+    private static class Entry {
+        final Contact contact;
+        final List<String> words;
+        final String digits;
+        // Place in the contact list; results are sorted by it.
+        int position;
+
+        Entry(Contact contact, List<String> words, String digits, int position) {
+            this.contact = contact;
+            this.words = words;
+            this.digits = digits;
+            this.position = position;
+        }
+    }
+
+    private final TrieNode nameRoot = new TrieNode();
+    private final Map<String, Set<Integer>> numberGrams = new HashMap<>();
+    private final Map<Contact, Integer> idsByContact = new HashMap<>();
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private int nextId = 0;
+    // Position given to contacts added one by one: after everything indexed so far.
+    private int nextPosition = 0;
+
+    /**
+     * Brings the index in line with the given contacts, adding and removing only the differences.
+     *
+     * @param contacts The full, current list of contacts.
+     */
+    public void setContacts(Collection<Contact> contacts) {
+        Set<Contact> wanted = new HashSet<>(contacts);
+
+        Iterator<Map.Entry<Contact, Integer>> iterator = idsByContact.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Contact, Integer> indexed = iterator.next();
+            if (!wanted.contains(indexed.getKey())) {
+                removeEntry(indexed.getValue());
+                iterator.remove();
+            }
+        }
+
+        for (Contact contact : contacts) {
+            if (!idsByContact.containsKey(contact)) {
+                add(contact);
+            }
+        }
+
+        // A contact edited in place was removed and re-added above; it keeps its place in the list.
+        int position = 0;
+        for (Contact contact : contacts) {
+            entries.get(idsByContact.get(contact)).position = position++;
+        }
+        nextPosition = position;
+    }
+
+    /**
+     * Adds a single contact after all others. Adding a contact that is already indexed has no effect.
+     */
+    public void add(Contact contact) {
+        if (idsByContact.containsKey(contact)) {
+            return;
+        }
+        int id = nextId++;
+        Entry entry = new Entry(contact, tokenizeName(contact.getName()), digitsOf(contact.getPhoneNumber()),
+                nextPosition++);
+        entries.put(id, entry);
+        idsByContact.put(contact, id);
+
+        for (String word : entry.words) {
+            TrieNode node = nameRoot;
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                TrieNode child = node.children.get(c);
+                if (child == null) {
+                    child = new TrieNode();
+                    node.children.put(c, child);
+                }
+                child.ids.add(id);
+                node = child;
+            }
+        }
+
+        for (String gram : gramsOf(entry.digits)) {
+            Set<Integer> posting = numberGrams.get(gram);
+            if (posting == null) {
+                posting = new HashSet<>();
+                numberGrams.put(gram, posting);
+            }
+            posting.add(id);
+        }
+    }
+
+    /**
+     * Removes a single contact if it is indexed.
+     */
+    public void remove(Contact contact) {
+        Integer id = idsByContact.remove(contact);
+        if (id != null) {
+            removeEntry(id);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Finds contacts matching every whitespace-separated term of the query.
+     * Terms made of digits and phone punctuation match anywhere in the number;
+     * other terms are split into words the same way names are, and every word must
+     * match the start of a word of the name, so "mary-jane" finds "Mary-Jane Smith".
+     *
+     * @param query The text typed by the user.
+     * @return Matching contacts in list order. Empty for a blank query.
+     */
+    public List<Contact> search(String query) {
+        List<String> nameTerms = new ArrayList<>();
+        List<String> numberTerms = new ArrayList<>();
+        for (String term : query.trim().toLowerCase(Locale.ROOT).split("\\s+")) {
+            if (isNumberTerm(term)) {
+                numberTerms.add(digitsOf(term));
+            } else {
+                nameTerms.addAll(tokenizeName(term));
+            }
+        }
+
+        List<Set<Integer>> termMatches = new ArrayList<>();
+        Set<Integer> smallest = null;
+        for (int i = 0; i < nameTerms.size() + numberTerms.size(); i++) {
+            Set<Integer> matches = (i < nameTerms.size())
+                    ? matchNamePrefix(nameTerms.get(i))
+                    : matchNumber(numberTerms.get(i - nameTerms.size()));
+            if (matches.isEmpty()) {
+                return Collections.emptyList();
+            }
+            termMatches.add(matches);
+            if (smallest == null || matches.size() < smallest.size()) {
+                smallest = matches;
+            }
+        }
+        if (smallest == null) {
+            return Collections.emptyList();
+        }
+
+        // Walk the most selective term's matches and keep ids that every other term also matched.
+        List<Entry> result = new ArrayList<>();
+        for (Integer id : smallest) {
+            boolean matchesAll = true;
+            for (Set<Integer> matches : termMatches) {
+                if (matches != smallest && !matches.contains(id)) {
+                    matchesAll = false;
+                    break;
+                }
+            }
+            if (matchesAll) {
+                result.add(entries.get(id));
+            }
+        }
+
+        Collections.sort(result, BY_POSITION);
+        List<Contact> contacts = new ArrayList<>(result.size());
+        for (Entry entry : result) {
+            contacts.add(entry.contact);
+        }
+        return contacts;
+    }
+
+    private void removeEntry(int id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        for (String word : entry.words) {
+            removeFromTrie(nameRoot, word, 0, id);
+        }
+        for (String gram : gramsOf(entry.digits)) {
+            Set<Integer> posting = numberGrams.get(gram);
+            if (posting != null) {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    numberGrams.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the id along the word's path and prunes nodes that no longer index anything.
+     */
+    private static void removeFromTrie(TrieNode node, String word, int index, int id) {
+        if (index == word.length()) {
+            return;
+        }
+        char c = word.charAt(index);
+        TrieNode child = node.children.get(c);
+        if (child == null) {
+            return;
+        }
+        child.ids.remove(id);
+        removeFromTrie(child, word, index + 1, id);
+        if (child.ids.isEmpty()) {
+            node.children.remove(c);
+        }
+    }
+
+    private Set<Integer> matchNamePrefix(String prefix) {
+        TrieNode node = nameRoot;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        return (node == null) ? Collections.<Integer>emptySet() : node.ids;
+    }
+
+    private Set<Integer> matchNumber(String digits) {
+        if (digits.isEmpty()) {
+            return Collections.emptySet();
+        }
+        if (digits.length() <= MAX_GRAM) {
+            Set<Integer> posting = numberGrams.get(digits);
+            return (posting == null) ? Collections.<Integer>emptySet() : posting;
+        }
+
+        // Intersect the trigram postings, starting with the smallest, then verify the full substring.
+        List<Set<Integer>> postings = new ArrayList<>();
+        for (int i = 0; i + MAX_GRAM <= digits.length(); i++) {
+            Set<Integer> posting = numberGrams.get(digits.substring(i, i + MAX_GRAM));
+            if (posting == null) {
+                return Collections.emptySet();
+            }
+            postings.add(posting);
+        }
+        Set<Integer> smallest = postings.get(0);
+        for (Set<Integer> posting : postings) {
+            if (posting.size() < smallest.size()) {
+                smallest = posting;
+            }
+        }
+        Set<Integer> result = new HashSet<>();
+        for (Integer id : smallest) {
+            if (entries.get(id).digits.contains(digits)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isNumberTerm(String term) {
+        boolean hasDigit = false;
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigit = true;
+            } else if (c != '+' && c != '-' && c != '(' && c != ')' && c != '.') {
+                return false;
+            }
+        }
+        return hasDigit;
+    }
+
+    private static List<String> tokenizeName(String name) {
+        List<String> words = new ArrayList<>();
+        if (name == null) {
+            return words;
+        }
+        for (String word : name.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty() && !words.contains(word)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static String digitsOf(String phoneNumber) {
+        String normalized = Contact.normalizePhoneNumber(phoneNumber);
+        if (normalized == null) {
+            // Short numbers are still searchable; keep whatever digits there are.
+            normalized = (phoneNumber == null) ? "" : phoneNumber.replaceAll("[^0-9]", "");
+        }
+        return normalized.startsWith("+") ? normalized.substring(1) : normalized;
+    }
+
+    private static Set<String> gramsOf(String digits) {
+        Set<String> grams = new HashSet<>();
+        for (int length = 1; length <= MAX_GRAM; length++) {
+            for (int i = 0; i + length <= digits.length(); i++) {
+                grams.add(digits.substring(i, i + length));
+            }
+        }
+        return grams;
+    }
+}
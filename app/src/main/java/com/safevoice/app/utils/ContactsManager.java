@@ -4,19 +4,32 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
 import com.safevoice.app.models.Contact;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * A Singleton class to manage CRUD (Create, Read, Update, Delete) operations
  * for emergency contacts. It persists the contacts using SharedPreferences by
  * converting Contact objects to and from JSON strings.
+ *
+ * The parsed contacts are cached in memory and published through LiveData.
+ * {@link #prefetch()} loads them on a background thread when the app starts, so
+ * screens can render the cached value immediately instead of parsing JSON on the
+ * UI thread every time they are shown.
  */
 public class ContactsManager {
 
@@ -26,11 +39,23 @@ public class ContactsManager {
     private static final String KEY_PRIORITY_CONTACTS = "priority_contacts";
 
     private static ContactsManager instance;
-    private final SharedPreferences sharedPreferences;
+    private final Context appContext;
+    private SharedPreferences sharedPreferences;
+
+    // Single background thread for loading contacts from disk.
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+
+    // In-memory cache. Guarded by 'this'; the priority list is never mutated once published.
+    private volatile boolean isLoaded = false;
+    private Contact cachedPrimaryContact;
+    private List<Contact> cachedPriorityContacts = Collections.emptyList();
+
+    private final MutableLiveData<Contact> primaryContactLiveData = new MutableLiveData<>();
+    private final MutableLiveData<List<Contact>> priorityContactsLiveData = new MutableLiveData<>();
 
     // Private constructor to enforce the Singleton pattern.
     private ContactsManager(Context context) {
-        sharedPreferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        appContext = context.getApplicationContext();
     }
 
     /**
@@ -46,12 +71,45 @@ public class ContactsManager {
         return instance;
     }
 
+    /**
+     * Starts loading the stored contacts on a background thread.
+     * Called once from SafeVoiceApplication so the cache is warm before any screen needs it.
+     */
+    public void prefetch() {
+        if (isLoaded) {
+            return;
+        }
+        loadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ensureLoaded();
+            }
+        });
+    }
+
+    /**
+     * @return Observable primary contact. Emits null when none is set.
+     */
+    public LiveData<Contact> getPrimaryContactLiveData() {
+        prefetch();
+        return primaryContactLiveData;
+    }
+
+    /**
+     * @return Observable, read-only list of priority contacts.
+     */
+    public LiveData<List<Contact>> getPriorityContactsLiveData() {
+        prefetch();
+        return priorityContactsLiveData;
+    }
+
     /**
      * Saves the primary contact. Overwrites any existing primary contact.
      *
      * @param contact The Contact object to be saved as the primary contact.
      */
-    public void savePrimaryContact(Contact contact) {
+    public synchronized void savePrimaryContact(Contact contact) {
+        ensureLoaded();
         SharedPreferences.Editor editor = sharedPreferences.edit();
         if (contact != null) {
             JSONObject contactJson = contact.toJSONObject();
@@ -62,6 +120,9 @@ public class ContactsManager {
             editor.remove(KEY_PRIMARY_CONTACT);
         }
         editor.apply();
+
+        cachedPrimaryContact = contact;
+        primaryContactLiveData.postValue(contact);
     }
 
     /**
@@ -69,18 +130,9 @@ public class ContactsManager {
      *
      * @return The saved primary Contact object, or null if none is set.
      */
-    public Contact getPrimaryContact() {
-        String contactJsonString = sharedPreferences.getString(KEY_PRIMARY_CONTACT, null);
-        if (contactJsonString != null) {
-            try {
-                JSONObject contactJson = new JSONObject(contactJsonString);
-                return Contact.fromJSONObject(contactJson);
-            } catch (JSONException e) {
-                Log.e(TAG, "Error parsing primary contact JSON", e);
-                return null;
-            }
-        }
-        return null;
+    public synchronized Contact getPrimaryContact() {
+        ensureLoaded();
+        return cachedPrimaryContact;
     }
 
     /**
@@ -88,66 +140,185 @@ public class ContactsManager {
      *
      * @return An ArrayList of Contact objects. Returns an empty list if none are saved.
      */
-    public List<Contact> getPriorityContacts() {
-        List<Contact> contacts = new ArrayList<>();
-        String contactsJsonString = sharedPreferences.getString(KEY_PRIORITY_CONTACTS, null);
-        if (contactsJsonString != null) {
-            try {
-                JSONArray contactsJsonArray = new JSONArray(contactsJsonString);
-                for (int i = 0; i < contactsJsonArray.length(); i++) {
-                    JSONObject contactJson = contactsJsonArray.getJSONObject(i);
-                    Contact contact = Contact.fromJSONObject(contactJson);
-                    if (contact != null) {
-                        contacts.add(contact);
-                    }
-                }
-            } catch (JSONException e) {
-                Log.e(TAG, "Error parsing priority contacts JSON array", e);
-            }
-        }
-        return contacts;
+    public synchronized List<Contact> getPriorityContacts() {
+        ensureLoaded();
+        // Callers are free to modify the returned list, so hand out a copy of the cache.
+        return new ArrayList<>(cachedPriorityContacts);
     }
 
     /**
      * Adds a new priority contact to the existing list.
+     * Numbers are unique within the list, so a contact whose number is already saved is not added.
      *
      * @param newContact The new Contact to add.
+     * @return true if the contact was added, false if its number is already in the list.
      */
-    public void addPriorityContact(Contact newContact) {
+    public synchronized boolean addPriorityContact(Contact newContact) {
         List<Contact> currentContacts = getPriorityContacts();
+        if (indexOfNumber(currentContacts, newContact.getNumberKey()) >= 0) {
+            return false;
+        }
         currentContacts.add(newContact);
         savePriorityContactsList(currentContacts);
+        return true;
     }
 
+    /**
+     * Replaces a priority contact with an edited version in a single write, keeping its position.
+     *
+     * @param oldContact The contact being edited.
+     * @param newContact The edited contact.
+     * @return true if the contact was replaced, false if the new number belongs to another contact.
+     */
+    public synchronized boolean replacePriorityContact(Contact oldContact, Contact newContact) {
+        List<Contact> currentContacts = getPriorityContacts();
+        int index = currentContacts.indexOf(oldContact);
+        int sameNumber = indexOfNumber(currentContacts, newContact.getNumberKey());
+        if (sameNumber >= 0 && sameNumber != index) {
+            return false;
+        }
+        if (index >= 0) {
+            currentContacts.set(index, newContact);
+        } else {
+            currentContacts.add(newContact);
+        }
+        savePriorityContactsList(currentContacts);
+        return true;
+    }
 
+    /**
+     * Appends several priority contacts with a single read and write of the stored list.
+     * Used by bulk imports, which collect the whole file first and persist it once.
+     * Contacts whose number is already saved, as the primary or as a priority contact,
+     * are left out, as are repeated numbers within the list.
+     *
+     * @param newContacts The contacts to add.
+     * @return How many contacts were added.
+     */
+    public synchronized int addPriorityContacts(List<Contact> newContacts) {
+        if (newContacts == null || newContacts.isEmpty()) {
+            return 0;
+        }
+        List<Contact> currentContacts = getPriorityContacts();
+        Set<String> knownNumbers = new HashSet<>();
+        addNumberKey(knownNumbers, cachedPrimaryContact);
+        for (Contact contact : currentContacts) {
+            addNumberKey(knownNumbers, contact);
+        }
+        int added = 0;
+        for (Contact contact : newContacts) {
+            if (knownNumbers.add(contact.getNumberKey())) {
+                currentContacts.add(contact);
+                added++;
+            }
+        }
+        if (added > 0) {
+            savePriorityContactsList(currentContacts);
+        }
+        return added;
+    }
 
     /**
      * Deletes a specific priority contact from the list.
      *
      * @param contactToDelete The Contact object to be removed.
      */
-    public void deletePriorityContact(Contact contactToDelete) {
+    public synchronized void deletePriorityContact(Contact contactToDelete) {
         List<Contact> currentContacts = getPriorityContacts();
         // The .equals() method in the Contact class is crucial for this to work correctly.
         currentContacts.remove(contactToDelete);
         savePriorityContactsList(currentContacts);
     }
-    
+
     /**
-     * Private helper method to save the entire list of priority contacts.
-     *
-     * @param contacts The list of Contact objects to save.
+     * Reads and parses both keys from SharedPreferences the first time it is called.
+     * Later calls return immediately.
      */
-    private void savePriorityContactsList(List<Contact> contacts) {
-        JSONArray contactsJsonArray = new JSONArray();
+    private synchronized void ensureLoaded() {
+        if (isLoaded) {
+            return;
+        }
+        sharedPreferences = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        cachedPrimaryContact = readPrimaryContact();
+        cachedPriorityContacts = Collections.unmodifiableList(readPriorityContacts());
+        isLoaded = true;
+
+        primaryContactLiveData.postValue(cachedPrimaryContact);
+        priorityContactsLiveData.postValue(cachedPriorityContacts);
+        Log.d(TAG, "Contacts loaded: " + cachedPriorityContacts.size() + " priority contacts.");
+    }
+
+    private static void addNumberKey(Set<String> numbers, @Nullable Contact contact) {
+        if (contact != null) {
+            numbers.add(contact.getNumberKey());
+        }
+    }
+
+    private static int indexOfNumber(List<Contact> contacts, String numberKey) {
+        for (int i = 0; i < contacts.size(); i++) {
+            if (contacts.get(i).getNumberKey().equals(numberKey)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Contact readPrimaryContact() {
+        String contactJsonString = sharedPreferences.getString(KEY_PRIMARY_CONTACT, null);
+        if (contactJsonString != null) {
+            try {
+                JSONObject contactJson = new JSONObject(contactJsonString);
+                return Contact.fromJSONObject(contactJson);
+            } catch (JSONException e) {
+                Log.e(TAG, "Error parsing primary contact JSON", e);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private List<Contact> readPriorityContacts() {
+        String contactsJsonString = sharedPreferences.getString(KEY_PRIORITY_CONTACTS, null);
+        if (contactsJsonString != null) {
+            try {
+                return withUniqueNumbers(Contact.listFromJSONArrayString(contactsJsonString));
+            } catch (JSONException e) {
+                Log.e(TAG, "Error parsing priority contacts JSON array", e);
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Lists saved before numbers were kept unique may repeat one; only its first contact is kept.
+     * The stored list is cleaned up by the next write.
+     */
+    private static List<Contact> withUniqueNumbers(List<Contact> contacts) {
+        Set<String> seen = new HashSet<>();
+        List<Contact> unique = new ArrayList<>(contacts.size());
         for (Contact contact : contacts) {
-            JSONObject contactJson = contact.toJSONObject();
-            if (contactJson != null) {
-                contactsJsonArray.put(contactJson);
+            if (seen.add(contact.getNumberKey())) {
+                unique.add(contact);
             }
         }
+        if (unique.size() < contacts.size()) {
+            Log.w(TAG, "Dropped " + (contacts.size() - unique.size()) + " priority contacts with repeated numbers.");
+        }
+        return unique;
+    }
+
+    /**
+     * Private helper method to save the entire list of priority contacts
+     * and publish it to observers.
+     *
+     * @param contacts The list of Contact objects to save.
+     */
+    private void savePriorityContactsList(List<Contact> contacts) {
         SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString(KEY_PRIORITY_CONTACTS, contactsJsonArray.toString());
+        editor.putString(KEY_PRIORITY_CONTACTS, Contact.toJSONArrayString(contacts));
         editor.apply();
+
+        cachedPriorityContacts = Collections.unmodifiableList(contacts);
+        priorityContactsLiveData.postValue(cachedPriorityContacts);
     }
-          }
+}
@@ -0,0 +1,138 @@
+package com.safevoice.app.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Pure math on face embeddings, shared by FaceVerifier and the JVM benchmarks.
+ * This class has no Android dependencies.
+ */
+public final class EmbeddingMath {
+
+    /**
+     * How far a quantized model's similarity score may drift from the float model's for the
+     * same pair of faces. The KYC match threshold was chosen with the float model, so a
+     * quantized asset has to stay within this margin for the threshold to keep its meaning.
+     *
+     * Unverified on a real model: no int8 asset ships with the app, so 0.02 has only been
+     * checked against float embeddings quantized synthetically (QuantizedModelBenchmark),
+     * which leaves out the error of int8 weights and activations. The int8 model's on-device
+     * latency has not been measured either. Both need re-checking once a real asset exists.
+     */
+    public static final double QUANTIZED_SIMILARITY_TOLERANCE = 0.02;
+
+    // Private constructor to prevent instantiation of this utility class.
+    private EmbeddingMath() {}
+
+    /**
+     * Cosine similarity of two equally long vectors, from -1 (opposite) to 1 (identical).
+     *
+     * @return The similarity, or 0 if either vector is all zeros.
+     */
+    public static double cosineSimilarity(float[] a, float[] b, int length) {
+        double dotProduct = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+
+        for (int i = 0; i < length; i++) {
+            dotProduct += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+
+        if (normA == 0.0 || normB == 0.0) {
+            return 0.0;
+        }
+
+        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    /**
+     * Cosine similarity of a unit-length vector and any vector of the same length, in one pass.
+     * The unit vector's norm is known to be 1, so only the other vector's norm is computed.
+     *
+     * @return The similarity, or 0 if b is all zeros.
+     */
+    public static double cosineSimilarityToUnit(float[] unit, float[] b, int length) {
+        double dotProduct = 0.0;
+        double normB = 0.0;
+
+        for (int i = 0; i < length; i++) {
+            dotProduct += unit[i] * b[i];
+            normB += b[i] * b[i];
+        }
+
+        if (normB == 0.0) {
+            return 0.0;
+        }
+
+        return dotProduct / Math.sqrt(normB);
+    }
+
+    /**
+     * @return The Euclidean norm of the first length values.
+     */
+    public static double norm(float[] a, int length) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += a[i] * a[i];
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Quantizes values symmetrically to int8: q = round(value / scale), with scale chosen so
+     * the largest magnitude maps to 127. Zero stays exactly zero, so dot products of two
+     * quantized vectors need no zero-point correction.
+     *
+     * @param out Receives the quantized values, starting at index 0.
+     * @return The scale; real = scale * q. 0 if all values are zero.
+     */
+    public static float quantizeSymmetric(float[] values, int length, byte[] out) {
+        float maxAbs = 0f;
+        for (int i = 0; i < length; i++) {
+            maxAbs = Math.max(maxAbs, Math.abs(values[i]));
+        }
+        if (maxAbs == 0f) {
+            Arrays.fill(out, 0, length, (byte) 0);
+            return 0f;
+        }
+        float scale = maxAbs / 127f;
+        for (int i = 0; i < length; i++) {
+            out[i] = (byte) Math.max(-127, Math.min(127, Math.round(values[i] / scale)));
+        }
+        return scale;
+    }
+
+    /**
+     * Dot product of two int8 vectors, exact in int arithmetic. Multiply by both scales
+     * to get the dot product of the real values.
+     */
+    public static int dotInt8(byte[] a, byte[] b, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Reads quantized values and converts them to floats: real = scale * (q - zeroPoint).
+     *
+     * @param source    Buffer holding one byte per value; read with absolute gets.
+     * @param offset    Index of the first byte to read.
+     * @param count     Number of values.
+     * @param scale     The tensor's quantization scale.
+     * @param zeroPoint The tensor's zero point.
+     * @param signed    true for INT8 tensors, false for UINT8.
+     * @param out       Receives the values, starting at index 0.
+     */
+    public static void dequantize(ByteBuffer source, int offset, int count,
+                                  float scale, int zeroPoint, boolean signed, float[] out) {
+        for (int i = 0; i < count; i++) {
+            byte raw = source.get(offset + i);
+            int q = signed ? raw : (raw & 0xFF);
+            out[i] = scale * (q - zeroPoint);
+        }
+    }
+}
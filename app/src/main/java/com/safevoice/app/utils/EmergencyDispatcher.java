@@ -0,0 +1,149 @@
+package com.safevoice.app.utils;
+
+import com.safevoice.app.models.Contact;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the emergency sequence once the trigger phrase was heard: calls the primary contact and
+ * texts every priority contact, with a map link when the location is known.
+ *
+ * The call goes out at once, since it does not need the location. The location is requested
+ * right after, and the texts are sent as soon as it arrives, or without it once
+ * LOCATION_TIMEOUT_MILLIS have passed, whichever comes first. A location that arrives after the
+ * texts went out is ignored, so every contact is texted exactly once, and a location provider
+ * that never answers cannot hold the alerts back.
+ *
+ * The telephony, location and timing come from the caller: EmergencyHandlerService plugs in the
+ * Android APIs; EmergencyDispatcherTest and the simulation in the benchmark module plug in
+ * recording fakes and a manual or virtual clock. A dispatcher runs one sequence. This class has no Android dependencies.
+ */
+public class EmergencyDispatcher {
+
+    public static final long LOCATION_TIMEOUT_MILLIS = 20_000;
+    private static final String MAP_LINK_PREFIX = "https://maps.google.com/?q=";
+
+    /**
+     * A latitude/longitude pair.
+     */
+    public static final class Position {
+        public final double latitude;
+        public final double longitude;
+
+        public Position(double latitude, double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    /**
+     * Fetches the current location once.
+     */
+    public interface LocationSource {
+        void getCurrentLocation(LocationCallback callback);
+    }
+
+    public interface LocationCallback {
+        /**
+         * @param position The location, or null if it could not be determined.
+         */
+        void onLocation(Position position);
+    }
+
+    public interface CallSink {
+        void call(String phoneNumber);
+    }
+
+    public interface SmsSink {
+        void send(String phoneNumber, String message);
+    }
+
+    /**
+     * Runs a task after a delay, on the thread the location callback arrives on.
+     */
+    public interface Timer {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    private final LocationSource locationSource;
+    private final CallSink callSink;
+    private final SmsSink smsSink;
+    private final Timer timer;
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicBoolean textsSent = new AtomicBoolean(false);
+
+    public EmergencyDispatcher(LocationSource locationSource, CallSink callSink, SmsSink smsSink, Timer timer) {
+        this.locationSource = locationSource;
+        this.callSink = callSink;
+        this.smsSink = smsSink;
+        this.timer = timer;
+    }
+
+    /**
+     * Starts the sequence. Contacts without a phone number are skipped.
+     *
+     * @param primaryContact   The contact to call, or null if none is set.
+     * @param priorityContacts The contacts to text; may be empty.
+     * @param userName         How the texts refer to the user.
+     * @param online           Whether to send the texts at all; only the call is made when offline.
+     * @param onComplete       Run once, after the last alert went out.
+     * @throws IllegalStateException If this dispatcher already ran.
+     */
+    public void dispatch(Contact primaryContact, List<Contact> priorityContacts, String userName,
+                         boolean online, Runnable onComplete) {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("A dispatcher runs one emergency sequence.");
+        }
+        List<String> textNumbers = new ArrayList<>();
+        if (online && priorityContacts != null) {
+            for (Contact contact : priorityContacts) {
+                if (isValidNumber(contact.getPhoneNumber())) {
+                    textNumbers.add(contact.getPhoneNumber());
+                }
+            }
+        }
+        // The call first: a location source may answer synchronously, and the texts must not
+        // go out ahead of the call.
+        if (primaryContact != null && isValidNumber(primaryContact.getPhoneNumber())) {
+            callSink.call(primaryContact.getPhoneNumber());
+        }
+        if (textNumbers.isEmpty()) {
+            onComplete.run();
+            return;
+        }
+        timer.schedule(() -> sendTexts(textNumbers, userName, null, onComplete), LOCATION_TIMEOUT_MILLIS);
+        locationSource.getCurrentLocation(position -> sendTexts(textNumbers, userName, position, onComplete));
+    }
+
+    /**
+     * The text sent to priority contacts.
+     *
+     * @param position The user's location, or null if unknown.
+     */
+    public static String buildMessage(String userName, Position position) {
+        String message = "EMERGENCY: This is an automated alert from Safe Voice for " + userName + ". They may be in trouble.";
+        if (position != null) {
+            message += "\n\nTheir last known location is:\n" + MAP_LINK_PREFIX + position.latitude + "," + position.longitude;
+        }
+        return message;
+    }
+
+    private void sendTexts(List<String> numbers, String userName, Position position, Runnable onComplete) {
+        // Whichever of the location and the timeout comes first sends the texts.
+        if (!textsSent.compareAndSet(false, true)) {
+            return;
+        }
+        String message = buildMessage(userName, position);
+        for (String number : numbers) {
+            smsSink.send(number, message);
+        }
+        onComplete.run();
+    }
+
+    private static boolean isValidNumber(String phoneNumber) {
+        return phoneNumber != null && !phoneNumber.isEmpty();
+    }
+}
@@ -0,0 +1,710 @@
+package com.safevoice.app.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An on-device 1:N index of face embeddings, to find who of the enrolled people (the user,
+ * household members) is on camera.
+ *
+ * Embeddings are stored unit length, one row after another in a single buffer, as floats or,
+ * in int8 mode, as symmetric int8 with one scale per row (a quarter of the memory, scores
+ * within about 0.002 of the float ones). Scoring a row is a dot product with the normalized
+ * query, unrolled four ways over the contiguous row.
+ *
+ * Search is exhaustive until {@link #cluster(int, int, Random)} is called. That groups the rows
+ * with spherical k-means and reorders them so every cluster is one contiguous range; a search
+ * then scores the centroids and scans only the rows of the best few clusters. Rows added after
+ * clustering are assigned to their nearest centroid and kept in a per-cluster overflow list
+ * until the next cluster() or save.
+ *
+ * The file format keeps the matrix as it is in memory, so {@link #load(File)} memory-maps it and
+ * searches the mapping in place: large indexes do not count against the heap. The file is not
+ * encrypted; keep it in app-private storage. Several rows may share a label (several embeddings
+ * of one person). Row numbers change when the index is clustered or saved.
+ *
+ * Nothing in the app uses it yet. It is meant for recognizing enrolled household members, which
+ * needs an enrollment screen first; the user's own face stays a 1:1 {@link FaceTemplate} in
+ * FaceTemplateStore, which is encrypted, unlike this file.
+ *
+ * Not thread-safe. This class has no Android dependencies.
+ */
+public class FaceIndex {
+
+    private static final int MAGIC = 0x53564649;   // "SVFI"
+    private static final int VERSION = 1;
+    private static final int FLAG_INT8 = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int INITIAL_CAPACITY = 16;
+    // k-means trains on at most this many rows per cluster; the rest are only assigned.
+    private static final int TRAINING_ROWS_PER_CLUSTER = 32;
+
+    /**
+     * One search result.
+     */
+    public static final class Match {
+        public final int row;
+        public final String label;
+        public final float similarity;
+
+        Match(int row, String label, float similarity) {
+            this.row = row;
+            this.label = label;
+            this.similarity = similarity;
+        }
+
+        @Override
+        public String toString() {
+            return label + " (" + similarity + ")";
+        }
+    }
+
+    private final int dimensions;
+    private final boolean int8;
+    private final int rowBytes;
+
+    private int size = 0;
+    private int capacity = 0;
+    // The matrix, little-endian. Read-only while it is the mapping of a loaded file.
+    private ByteBuffer rows;
+    private FloatBuffer floatRows;
+    private boolean mapped = false;
+    private float[] scales;          // Per-row int8 scale; only in int8 mode.
+    private String[] labels;
+
+    // Clustering: rows [clusterStart[c], clusterStart[c + 1]) belong to cluster c,
+    // plus the rows in overflow[c] that were added later.
+    private int clusterCount = 0;
+    private float[] centroids;
+    private int[] clusterStart;
+    private int[][] overflow;
+    private int[] overflowSize;
+
+    // Search scratch.
+    private final float[] query;
+    private final byte[] quantizedQuery;
+    private float[] centroidScores = new float[0];
+
+    /**
+     * @param dimensions Length of the embeddings, e.g. FaceVerifier.EMBEDDING_SIZE.
+     * @param int8       Whether to store rows as int8 instead of floats.
+     */
+    public FaceIndex(int dimensions, boolean int8) {
+        this.dimensions = dimensions;
+        this.int8 = int8;
+        this.rowBytes = int8 ? dimensions : dimensions * 4;
+        this.query = new float[dimensions];
+        this.quantizedQuery = new byte[dimensions];
+        this.labels = new String[0];
+        this.scales = new float[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public boolean isInt8() {
+        return int8;
+    }
+
+    public int getClusterCount() {
+        return clusterCount;
+    }
+
+    /**
+     * Adds an embedding; it is normalized on the way in and the array is left untouched.
+     *
+     * @return The row it was stored in.
+     * @throws IllegalArgumentException If it has the wrong length or is all zeros.
+     */
+    public int add(float[] embedding, String label) {
+        if (embedding.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " values, got " + embedding.length);
+        }
+        double norm = EmbeddingMath.norm(embedding, dimensions);
+        if (norm == 0.0) {
+            throw new IllegalArgumentException("Cannot index a zero embedding.");
+        }
+        for (int i = 0; i < dimensions; i++) {
+            query[i] = (float) (embedding[i] / norm);
+        }
+        return addUnit(query, label);
+    }
+
+    /**
+     * Adds a face template under its own label.
+     */
+    public int add(FaceTemplate template) {
+        if (template.getDimensions() != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " values, got " + template.getDimensions());
+        }
+        template.copyUnitTo(query, 0);
+        return addUnit(query, template.getLabel());
+    }
+
+    /**
+     * Groups the rows into clusters for sub-linear search and reorders them cluster by cluster.
+     * A good choice is about sqrt(size()) clusters. Costs roughly iterations x clusters x
+     * TRAINING_ROWS_PER_CLUSTER dot products to train, plus size() x clusters to assign.
+     */
+    public void cluster(int clusters, int iterations, Random random) {
+        if (clusters < 1 || clusters > size) {
+            throw new IllegalArgumentException("Cannot make " + clusters + " clusters of " + size + " rows.");
+        }
+        float[] unit = new float[dimensions];
+
+        // Train on a random sample, seeded with distinct random rows.
+        int[] sample = sampleRows(Math.min(size, clusters * TRAINING_ROWS_PER_CLUSTER), random);
+        float[] trained = new float[clusters * dimensions];
+        for (int c = 0; c < clusters; c++) {
+            readUnitRow(sample[c], unit);
+            System.arraycopy(unit, 0, trained, c * dimensions, dimensions);
+        }
+        int[] sampleCluster = new int[sample.length];
+        float[] sums = new float[clusters * dimensions];
+        int[] counts = new int[clusters];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            Arrays.fill(sums, 0f);
+            Arrays.fill(counts, 0);
+            for (int s = 0; s < sample.length; s++) {
+                readUnitRow(sample[s], unit);
+                int c = nearest(trained, clusters, unit);
+                sampleCluster[s] = c;
+                counts[c]++;
+                for (int i = 0, offset = c * dimensions; i < dimensions; i++) {
+                    sums[offset + i] += unit[i];
+                }
+            }
+            for (int c = 0; c < clusters; c++) {
+                if (counts[c] > 0) {
+                    normalizeInto(sums, c * dimensions, trained);
+                }
+                // An empty cluster keeps its centroid.
+            }
+        }
+
+        // Assign every row and reorder the matrix cluster by cluster.
+        int[] assignment = new int[size];
+        int[] clusterSizes = new int[clusters];
+        for (int row = 0; row < size; row++) {
+            readUnitRow(row, unit);
+            assignment[row] = nearest(trained, clusters, unit);
+            clusterSizes[assignment[row]]++;
+        }
+        int[] start = new int[clusters + 1];
+        for (int c = 0; c < clusters; c++) {
+            start[c + 1] = start[c] + clusterSizes[c];
+        }
+        int[] order = new int[size];
+        int[] next = Arrays.copyOf(start, clusters);
+        for (int row = 0; row < size; row++) {
+            order[next[assignment[row]]++] = row;
+        }
+        permute(order, size);
+
+        clusterCount = clusters;
+        centroids = trained;
+        clusterStart = start;
+        overflow = new int[clusters][];
+        overflowSize = new int[clusters];
+    }
+
+    /**
+     * Finds the best matching rows for a raw query embedding.
+     *
+     * @param k      Number of results wanted.
+     * @param probes Clusters to scan, best centroids first; 0 or at least the cluster count
+     *               scans every row.
+     * @return Up to k matches, best first.
+     */
+    public List<Match> search(float[] embedding, int k, int probes) {
+        List<Match> matches = new ArrayList<>(k);
+        if (size == 0 || k < 1) {
+            return matches;
+        }
+        float queryScale = prepareQuery(embedding);
+        int[] topRows = new int[k];
+        float[] topScores = new float[k];
+        Arrays.fill(topScores, Float.NEGATIVE_INFINITY);
+        Arrays.fill(topRows, -1);
+
+        if (clusterCount == 0 || probes <= 0 || probes >= clusterCount) {
+            scanRange(0, size, queryScale, topRows, topScores);
+        } else {
+            for (int c : bestClusters(probes)) {
+                scanRange(clusterStart[c], clusterStart[c + 1], queryScale, topRows, topScores);
+                int[] extra = overflow[c];
+                for (int i = 0; i < overflowSize[c]; i++) {
+                    offer(extra[i], score(extra[i], queryScale), topRows, topScores);
+                }
+            }
+        }
+        for (int i = 0; i < k && topRows[i] >= 0; i++) {
+            matches.add(new Match(topRows[i], labels[topRows[i]], topScores[i]));
+        }
+        return matches;
+    }
+
+    /**
+     * Writes the index, clusters included, to a file, replacing it atomically. Rows are written
+     * cluster by cluster, so overflow rows join their cluster's range when loaded back.
+     */
+    public void save(File file) throws IOException {
+        int[] order = new int[size];
+        int[] start = null;
+        if (clusterCount > 0) {
+            start = new int[clusterCount + 1];
+            int position = 0;
+            for (int c = 0; c < clusterCount; c++) {
+                start[c] = position;
+                for (int row = clusterStart[c]; row < clusterStart[c + 1]; row++) {
+                    order[position++] = row;
+                }
+                for (int i = 0; i < overflowSize[c]; i++) {
+                    order[position++] = overflow[c][i];
+                }
+            }
+            start[clusterCount] = position;
+        } else {
+            for (int row = 0; row < size; row++) {
+                order[row] = row;
+            }
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             FileChannel channel = stream.getChannel()) {
+            ChunkWriter out = new ChunkWriter(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(dimensions);
+            out.putInt(size);
+            out.putInt(int8 ? FLAG_INT8 : 0);
+            out.putInt(clusterCount);
+            out.putInt(0);
+            out.putInt(0);
+            for (int row : order) {
+                out.putRow(rows, row * rowBytes, rowBytes);
+            }
+            out.pad();
+            if (int8) {
+                for (int row : order) {
+                    out.putFloat(scales[row]);
+                }
+            }
+            if (clusterCount > 0) {
+                for (float value : centroids) {
+                    out.putFloat(value);
+                }
+                for (int value : start) {
+                    out.putInt(value);
+                }
+            }
+            for (int row : order) {
+                byte[] label = labels[row].getBytes(StandardCharsets.UTF_8);
+                out.putInt(label.length);
+                out.putBytes(label);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    /**
+     * Memory-maps an index written by {@link #save(File)}. The matrix is searched straight from
+     * the mapping; the first add() copies it to memory.
+     *
+     * @throws IOException If the file cannot be read or is not a valid index.
+     */
+    public static FaceIndex load(File file) throws IOException {
+        MappedByteBuffer mapping;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed.
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buffer = mapping.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a face index: " + file);
+            }
+            int dimensions = buffer.getInt(8);
+            int count = buffer.getInt(12);
+            boolean int8 = (buffer.getInt(16) & FLAG_INT8) != 0;
+            int clusters = buffer.getInt(20);
+
+            FaceIndex index = new FaceIndex(dimensions, int8);
+            int matrixBytes = count * index.rowBytes;
+            index.setRows(slice(buffer, HEADER_BYTES, matrixBytes), count);
+            index.mapped = true;
+            index.size = count;
+
+            buffer.position(HEADER_BYTES + align(matrixBytes));
+            if (int8) {
+                index.scales = new float[count];
+                buffer.asFloatBuffer().get(index.scales);
+                buffer.position(buffer.position() + count * 4);
+            }
+            if (clusters > 0) {
+                index.clusterCount = clusters;
+                index.centroids = new float[clusters * dimensions];
+                buffer.asFloatBuffer().get(index.centroids);
+                buffer.position(buffer.position() + index.centroids.length * 4);
+                index.clusterStart = new int[clusters + 1];
+                buffer.asIntBuffer().get(index.clusterStart);
+                buffer.position(buffer.position() + index.clusterStart.length * 4);
+                index.overflow = new int[clusters][];
+                index.overflowSize = new int[clusters];
+            }
+            index.labels = new String[count];
+            for (int row = 0; row < count; row++) {
+                byte[] label = new byte[buffer.getInt()];
+                buffer.get(label);
+                index.labels[row] = new String(label, StandardCharsets.UTF_8);
+            }
+            return index;
+        } catch (RuntimeException e) {
+            // Truncated or inconsistent sections.
+            throw new IOException("Corrupt face index: " + file, e);
+        }
+    }
+
+    private int addUnit(float[] unit, String label) {
+        ensureCapacity(size + 1);
+        int row = size;
+        int offset = row * rowBytes;
+        if (int8) {
+            scales[row] = EmbeddingMath.quantizeSymmetric(unit, dimensions, quantizedQuery);
+            for (int i = 0; i < dimensions; i++) {
+                rows.put(offset + i, quantizedQuery[i]);
+            }
+        } else {
+            for (int i = 0; i < dimensions; i++) {
+                floatRows.put(row * dimensions + i, unit[i]);
+            }
+        }
+        labels[row] = label;
+        size++;
+        if (clusterCount > 0) {
+            int c = nearest(centroids, clusterCount, unit);
+            if (overflow[c] == null) {
+                overflow[c] = new int[4];
+            } else if (overflowSize[c] == overflow[c].length) {
+                overflow[c] = Arrays.copyOf(overflow[c], overflow[c].length * 2);
+            }
+            overflow[c][overflowSize[c]++] = row;
+        }
+        return row;
+    }
+
+    /**
+     * Normalizes the query into the scratch arrays.
+     *
+     * @return The int8 query's scale in int8 mode, otherwise 1.
+     */
+    private float prepareQuery(float[] embedding) {
+        double norm = EmbeddingMath.norm(embedding, dimensions);
+        double inverse = norm == 0.0 ? 0.0 : 1.0 / norm;
+        for (int i = 0; i < dimensions; i++) {
+            query[i] = (float) (embedding[i] * inverse);
+        }
+        return int8 ? EmbeddingMath.quantizeSymmetric(query, dimensions, quantizedQuery) : 1f;
+    }
+
+    private void scanRange(int from, int to, float queryScale, int[] topRows, float[] topScores) {
+        for (int row = from; row < to; row++) {
+            offer(row, score(row, queryScale), topRows, topScores);
+        }
+    }
+
+    private float score(int row, float queryScale) {
+        if (int8) {
+            return scales[row] * queryScale * dotInt8(rows, row * rowBytes, quantizedQuery, dimensions);
+        }
+        return dot(floatRows, row * dimensions, query, dimensions);
+    }
+
+    /**
+     * Keeps the k best scores, sorted best first, by insertion.
+     */
+    private static void offer(int row, float score, int[] topRows, float[] topScores) {
+        int last = topScores.length - 1;
+        if (score <= topScores[last]) {
+            return;
+        }
+        int i = last;
+        while (i > 0 && topScores[i - 1] < score) {
+            topScores[i] = topScores[i - 1];
+            topRows[i] = topRows[i - 1];
+            i--;
+        }
+        topScores[i] = score;
+        topRows[i] = row;
+    }
+
+    private int[] bestClusters(int probes) {
+        if (centroidScores.length != clusterCount) {
+            centroidScores = new float[clusterCount];
+        }
+        int[] best = new int[probes];
+        float[] bestScores = new float[probes];
+        Arrays.fill(bestScores, Float.NEGATIVE_INFINITY);
+        for (int c = 0; c < clusterCount; c++) {
+            offer(c, dot(centroids, c * dimensions, query, dimensions), best, bestScores);
+        }
+        return best;
+    }
+
+    private int nearest(float[] centers, int count, float[] unit) {
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < count; c++) {
+            float score = dot(centers, c * dimensions, unit, dimensions);
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private void normalizeInto(float[] source, int offset, float[] target) {
+        double sum = 0.0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += source[offset + i] * source[offset + i];
+        }
+        double inverse = sum == 0.0 ? 0.0 : 1.0 / Math.sqrt(sum);
+        for (int i = 0; i < dimensions; i++) {
+            target[offset + i] = (float) (source[offset + i] * inverse);
+        }
+    }
+
+    /**
+     * Reads a row back as floats (dequantized in int8 mode).
+     */
+    private void readUnitRow(int row, float[] out) {
+        if (int8) {
+            float scale = scales[row];
+            int offset = row * rowBytes;
+            for (int i = 0; i < dimensions; i++) {
+                out[i] = scale * rows.get(offset + i);
+            }
+        } else {
+            floatRows.position(row * dimensions);
+            floatRows.get(out, 0, dimensions);
+        }
+    }
+
+    private int[] sampleRows(int count, Random random) {
+        // Partial Fisher-Yates shuffle of the row numbers.
+        int[] all = new int[size];
+        for (int i = 0; i < size; i++) {
+            all[i] = i;
+        }
+        for (int i = 0; i < count; i++) {
+            int j = i + random.nextInt(size - i);
+            int swap = all[i];
+            all[i] = all[j];
+            all[j] = swap;
+        }
+        return Arrays.copyOf(all, count);
+    }
+
+    /**
+     * Rewrites the first count rows in the given order: new row i is old row order[i].
+     */
+    private void permute(int[] order, int count) {
+        ByteBuffer reordered = allocate(Math.max(capacity, count) * rowBytes);
+        ByteBuffer source = rows.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        String[] newLabels = new String[labels.length];
+        float[] newScales = int8 ? new float[scales.length] : scales;
+        for (int i = 0; i < count; i++) {
+            int row = order[i];
+            source.limit(row * rowBytes + rowBytes).position(row * rowBytes);
+            reordered.position(i * rowBytes);
+            reordered.put(source);
+            newLabels[i] = labels[row];
+            if (int8) {
+                newScales[i] = scales[row];
+            }
+        }
+        reordered.clear();
+        setRows(reordered, Math.max(capacity, count));
+        mapped = false;
+        labels = newLabels;
+        scales = newScales;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= capacity && !mapped) {
+            return;
+        }
+        int newCapacity = Math.max(Math.max(INITIAL_CAPACITY, needed), capacity * 2);
+        ByteBuffer grown = allocate(newCapacity * rowBytes);
+        if (rows != null) {
+            ByteBuffer source = rows.duplicate();
+            source.clear().limit(size * rowBytes);
+            grown.put(source);
+            grown.clear();
+        }
+        setRows(grown, newCapacity);
+        mapped = false;
+        labels = Arrays.copyOf(labels, newCapacity);
+        if (int8) {
+            scales = Arrays.copyOf(scales, newCapacity);
+        }
+    }
+
+    private void setRows(ByteBuffer buffer, int rowCapacity) {
+        rows = buffer;
+        floatRows = int8 ? null : buffer.asFloatBuffer();
+        capacity = rowCapacity;
+    }
+
+    /**
+     * Dot product of a matrix row and a vector, with four independent accumulators so the
+     * additions do not wait on each other.
+     */
+    static float dot(FloatBuffer matrix, int offset, float[] vector, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += matrix.get(offset + i) * vector[i];
+            s1 += matrix.get(offset + i + 1) * vector[i + 1];
+            s2 += matrix.get(offset + i + 2) * vector[i + 2];
+            s3 += matrix.get(offset + i + 3) * vector[i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += matrix.get(offset + i) * vector[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static float dot(float[] matrix, int offset, float[] vector, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += matrix[offset + i] * vector[i];
+            s1 += matrix[offset + i + 1] * vector[i + 1];
+            s2 += matrix[offset + i + 2] * vector[i + 2];
+            s3 += matrix[offset + i + 3] * vector[i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += matrix[offset + i] * vector[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static int dotInt8(ByteBuffer matrix, int offset, byte[] vector, int length) {
+        int s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += matrix.get(offset + i) * vector[i];
+            s1 += matrix.get(offset + i + 1) * vector[i + 1];
+            s2 += matrix.get(offset + i + 2) * vector[i + 2];
+            s3 += matrix.get(offset + i + 3) * vector[i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += matrix.get(offset + i) * vector[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int align(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+
+    /**
+     * Writes little-endian values to a channel through a fixed-size buffer.
+     */
+    private static final class ChunkWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        private long written = 0;
+
+        ChunkWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putFloat(float value) throws IOException {
+            ensure(4);
+            buffer.putFloat(value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            for (int offset = 0; offset < bytes.length; ) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void putRow(ByteBuffer source, int offset, int length) throws IOException {
+            ensure(length);
+            ByteBuffer row = source.duplicate();
+            row.limit(offset + length).position(offset);
+            buffer.put(row);
+        }
+
+        /**
+         * Pads with zeros to a multiple of 4 bytes, so the next section can be read as floats.
+         */
+        void pad() throws IOException {
+            while ((written + buffer.position()) % 4 != 0) {
+                ensure(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.safevoice.app.utils;
+
+import java.util.Locale;
+
+/**
+ * Decides a face match from the similarity scores of several live frames instead of one.
+ *
+ * Scores are averaged as they arrive. Once at least minFrames have been seen, the decision
+ * is made as soon as the mean is confidently on one side of the threshold: its distance to
+ * the threshold must exceed Z standard errors. The spread of a handful of scores says little,
+ * so it is never taken to be below MIN_STD_DEV, the frame-to-frame noise of a steady face.
+ * A clear match or mismatch is decided in two frames; a borderline one takes more frames,
+ * up to the frame or time budget, at which point the mean alone decides.
+ *
+ * Not thread-safe. Times are System.nanoTime() values. This class has no Android dependencies.
+ */
+public class FaceMatchAccumulator {
+
+    public enum Decision {
+        PENDING,
+        MATCH,
+        NO_MATCH
+    }
+
+    // Standard errors the mean has to clear the threshold by.
+    private static final double Z = 2.0;
+    // Lower bound on the per-frame standard deviation of similarity scores.
+    private static final double MIN_STD_DEV = 0.05;
+
+    private final double threshold;
+    private final int minFrames;
+    private final int maxFrames;
+    private final long timeBudgetNanos;
+
+    private long startNanos;
+    private long decisionNanos;
+    private Decision decision = Decision.PENDING;
+    // Welford's running mean and sum of squared deviations.
+    private int count;
+    private double mean;
+    private double m2;
+
+    /**
+     * @param threshold       Similarity above which two faces match.
+     * @param minFrames       Frames needed before an early decision, at least 1.
+     * @param maxFrames       Frames after which the mean decides.
+     * @param timeBudgetNanos Time after {@link #start(long)} after which the mean decides.
+     */
+    public FaceMatchAccumulator(double threshold, int minFrames, int maxFrames, long timeBudgetNanos) {
+        if (minFrames < 1 || maxFrames < minFrames) {
+            throw new IllegalArgumentException("Invalid frame budget: " + minFrames + ".." + maxFrames);
+        }
+        this.threshold = threshold;
+        this.minFrames = minFrames;
+        this.maxFrames = maxFrames;
+        this.timeBudgetNanos = timeBudgetNanos;
+    }
+
+    /**
+     * Starts a new decision; the time budget counts from here.
+     */
+    public void start(long nowNanos) {
+        startNanos = nowNanos;
+        decisionNanos = 0;
+        decision = Decision.PENDING;
+        count = 0;
+        mean = 0;
+        m2 = 0;
+    }
+
+    /**
+     * Adds the similarity of one live frame to the ID face.
+     *
+     * @return The decision so far; once decided, further scores are ignored.
+     */
+    public Decision add(double similarity, long nowNanos) {
+        if (decision != Decision.PENDING) {
+            return decision;
+        }
+        count++;
+        double delta = similarity - mean;
+        mean += delta / count;
+        m2 += delta * (similarity - mean);
+
+        if (count >= maxFrames || nowNanos - startNanos >= timeBudgetNanos) {
+            decide(mean > threshold, nowNanos);
+        } else if (count >= minFrames) {
+            double margin = Z * getStandardError();
+            if (mean - margin > threshold) {
+                decide(true, nowNanos);
+            } else if (mean + margin < threshold) {
+                decide(false, nowNanos);
+            }
+        }
+        return decision;
+    }
+
+    public Decision getDecision() {
+        return decision;
+    }
+
+    public int getFramesUsed() {
+        return count;
+    }
+
+    public double getAggregateSimilarity() {
+        return mean;
+    }
+
+    /**
+     * @return Milliseconds from {@link #start(long)} to the decision, or -1 while pending.
+     */
+    public double getMillisToDecision() {
+        return decision == Decision.PENDING ? -1 : (decisionNanos - startNanos) / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: mean similarity %.3f over %d frames, decided in %.0f ms",
+                decision, mean, count, getMillisToDecision());
+    }
+
+    private double getStandardError() {
+        double stdDev = count > 1 ? Math.sqrt(m2 / (count - 1)) : 0;
+        return Math.max(stdDev, MIN_STD_DEV) / Math.sqrt(count);
+    }
+
+    private void decide(boolean match, long nowNanos) {
+        decision = match ? Decision.MATCH : Decision.NO_MATCH;
+        decisionNanos = nowNanos;
+    }
+}
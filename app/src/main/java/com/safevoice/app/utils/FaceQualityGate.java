@@ -0,0 +1,245 @@
+package com.safevoice.app.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Decides whether a detected face is good enough to be worth embedding.
+ *
+ * The checks run cheapest first and stop at the first failure:
+ * - face size, from the bounding box;
+ * - head pose, from the yaw and roll angles ML Kit reports;
+ * - brightness and contrast, as the mean and standard deviation of the luma inside the face;
+ * - sharpness, as the variance of the Laplacian of the luma inside the face.
+ * The pixel checks read a grid of at most GRID x GRID luma samples from the central part of the
+ * face box, so their cost does not depend on the face size. The Laplacian uses the neighbouring
+ * grid samples, i.e. it measures the sharpness of the face as seen at grid resolution.
+ *
+ * The scores of recent faces are kept so their distribution can be logged, which is what the
+ * thresholds below should be tuned from. Not thread-safe. This class has no Android dependencies.
+ */
+public class FaceQualityGate {
+
+    public enum Verdict {
+        PASS,
+        TOO_SMALL,
+        BAD_POSE,
+        TOO_DARK,
+        TOO_BRIGHT,
+        LOW_CONTRAST,
+        BLURRY
+    }
+
+    // Initial thresholds; tune them from the logged distributions.
+    private static final int MIN_FACE_SIZE = 80;          // Shorter side of the face box, in pixels.
+    private static final float MAX_YAW_DEGREES = 20f;
+    private static final float MAX_ROLL_DEGREES = 20f;
+    private static final float MIN_BRIGHTNESS = 40f;      // Mean luma, 0-255.
+    private static final float MAX_BRIGHTNESS = 220f;
+    private static final float MIN_CONTRAST = 15f;        // Standard deviation of luma.
+    private static final float MIN_SHARPNESS = 30f;       // Variance of the Laplacian.
+
+    private static final int GRID = 48;
+    // Share of the face box, per side, left out of the pixel checks (hair, background).
+    private static final float MARGIN = 0.15f;
+    private static final int HISTORY = 256;
+
+    /**
+     * The scores of one face. Pixel scores are NaN if an earlier check already failed.
+     */
+    public static final class Quality {
+        public Verdict verdict;
+        public int faceSize;
+        public float yaw;
+        public float roll;
+        public float brightness;
+        public float contrast;
+        public float sharpness;
+
+        public boolean passed() {
+            return verdict == Verdict.PASS;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: size %d, yaw %.0f, roll %.0f, brightness %.0f, contrast %.1f, sharpness %.0f",
+                    verdict, faceSize, yaw, roll, brightness, contrast, sharpness);
+        }
+    }
+
+    private final float[] grid = new float[GRID * GRID];
+
+    // Recent scores, as ring buffers, and verdict counts since the last summary.
+    private final float[] sizeHistory = new float[HISTORY];
+    private final float[] brightnessHistory = new float[HISTORY];
+    private final float[] contrastHistory = new float[HISTORY];
+    private final float[] sharpnessHistory = new float[HISTORY];
+    private int pixelSamples = 0;
+    private int sizeSamples = 0;
+    private final int[] verdictCounts = new int[Verdict.values().length];
+
+    /**
+     * Scores a face and records the scores for the distribution summary.
+     *
+     * @param yPlane          Luma plane; read with absolute gets from its current position.
+     * @param rowStride       Bytes between luma rows.
+     * @param pixelStride     Bytes between luma pixels.
+     * @param frameWidth      Width of the frame as delivered by the sensor.
+     * @param frameHeight     Height of the frame as delivered by the sensor.
+     * @param rotationDegrees Clockwise rotation that makes the frame upright: 0, 90, 180 or 270.
+     * @param left            Face box in upright coordinates, as ML Kit reports it.
+     * @param yaw             Head Euler angle Y, in degrees.
+     * @param roll            Head Euler angle Z, in degrees.
+     * @param out             Receives the scores.
+     * @return Whether the face passed.
+     */
+    public boolean evaluate(ByteBuffer yPlane, int rowStride, int pixelStride,
+                            int frameWidth, int frameHeight, int rotationDegrees,
+                            int left, int top, int right, int bottom,
+                            float yaw, float roll, Quality out) {
+        out.faceSize = Math.min(right - left, bottom - top);
+        out.yaw = yaw;
+        out.roll = roll;
+        out.brightness = Float.NaN;
+        out.contrast = Float.NaN;
+        out.sharpness = Float.NaN;
+        sizeHistory[sizeSamples++ % HISTORY] = out.faceSize;
+
+        if (out.faceSize < MIN_FACE_SIZE) {
+            return finish(Verdict.TOO_SMALL, out);
+        }
+        if (Math.abs(yaw) > MAX_YAW_DEGREES || Math.abs(roll) > MAX_ROLL_DEGREES) {
+            return finish(Verdict.BAD_POSE, out);
+        }
+
+        // Shrink to the central part of the face, then map the upright box onto the sensor.
+        int insetX = Math.round((right - left) * MARGIN);
+        int insetY = Math.round((bottom - top) * MARGIN);
+        int l = left + insetX;
+        int t = top + insetY;
+        int r = right - insetX;
+        int b = bottom - insetY;
+        int x0, x1, y0, y1;
+        switch (rotationDegrees) {
+            case 90:
+                x0 = t; x1 = b; y0 = frameHeight - r; y1 = frameHeight - l;
+                break;
+            case 180:
+                x0 = frameWidth - r; x1 = frameWidth - l; y0 = frameHeight - b; y1 = frameHeight - t;
+                break;
+            case 270:
+                x0 = frameWidth - b; x1 = frameWidth - t; y0 = l; y1 = r;
+                break;
+            default:
+                x0 = l; x1 = r; y0 = t; y1 = b;
+                break;
+        }
+        x0 = Math.max(x0, 0);
+        y0 = Math.max(y0, 0);
+        x1 = Math.min(x1, frameWidth);
+        y1 = Math.min(y1, frameHeight);
+        int columns = Math.min(GRID, x1 - x0);
+        int rows = Math.min(GRID, y1 - y0);
+        if (columns < 3 || rows < 3) {
+            return finish(Verdict.TOO_SMALL, out);
+        }
+
+        // Sample the grid, accumulating the mean and variance on the way.
+        int base = yPlane.position();
+        double sum = 0;
+        double sumSquares = 0;
+        for (int gy = 0; gy < rows; gy++) {
+            int rowOffset = base + (y0 + gy * (y1 - y0) / rows) * rowStride;
+            for (int gx = 0; gx < columns; gx++) {
+                int luma = yPlane.get(rowOffset + (x0 + gx * (x1 - x0) / columns) * pixelStride) & 0xFF;
+                grid[gy * GRID + gx] = luma;
+                sum += luma;
+                sumSquares += luma * luma;
+            }
+        }
+        int count = columns * rows;
+        double mean = sum / count;
+        out.brightness = (float) mean;
+        out.contrast = (float) Math.sqrt(Math.max(0, sumSquares / count - mean * mean));
+
+        // Variance of the 4-neighbour Laplacian over the grid's interior.
+        double lapSum = 0;
+        double lapSquares = 0;
+        for (int gy = 1; gy < rows - 1; gy++) {
+            int row = gy * GRID;
+            for (int gx = 1; gx < columns - 1; gx++) {
+                int i = row + gx;
+                float laplacian = grid[i - 1] + grid[i + 1] + grid[i - GRID] + grid[i + GRID] - 4 * grid[i];
+                lapSum += laplacian;
+                lapSquares += laplacian * laplacian;
+            }
+        }
+        int interior = (columns - 2) * (rows - 2);
+        double lapMean = lapSum / interior;
+        out.sharpness = (float) (lapSquares / interior - lapMean * lapMean);
+
+        int slot = pixelSamples++ % HISTORY;
+        brightnessHistory[slot] = out.brightness;
+        contrastHistory[slot] = out.contrast;
+        sharpnessHistory[slot] = out.sharpness;
+
+        if (out.brightness < MIN_BRIGHTNESS) {
+            return finish(Verdict.TOO_DARK, out);
+        }
+        if (out.brightness > MAX_BRIGHTNESS) {
+            return finish(Verdict.TOO_BRIGHT, out);
+        }
+        if (out.contrast < MIN_CONTRAST) {
+            return finish(Verdict.LOW_CONTRAST, out);
+        }
+        if (out.sharpness < MIN_SHARPNESS) {
+            return finish(Verdict.BLURRY, out);
+        }
+        return finish(Verdict.PASS, out);
+    }
+
+    /**
+     * Summarizes the verdicts since the last call and the 10th, 50th and 90th percentile of
+     * every score over the last HISTORY faces, then resets the verdict counts.
+     *
+     * @return The summary, or null if no face was scored since the last call.
+     */
+    public String pollSummary() {
+        int total = 0;
+        StringBuilder builder = new StringBuilder();
+        for (Verdict verdict : Verdict.values()) {
+            int count = verdictCounts[verdict.ordinal()];
+            if (count > 0) {
+                builder.append(builder.length() == 0 ? "" : ", ").append(verdict).append(' ').append(count);
+                total += count;
+            }
+        }
+        if (total == 0) {
+            return null;
+        }
+        Arrays.fill(verdictCounts, 0);
+        appendPercentiles(builder, "size", sizeHistory, sizeSamples);
+        appendPercentiles(builder, "brightness", brightnessHistory, pixelSamples);
+        appendPercentiles(builder, "contrast", contrastHistory, pixelSamples);
+        appendPercentiles(builder, "sharpness", sharpnessHistory, pixelSamples);
+        return builder.toString();
+    }
+
+    private boolean finish(Verdict verdict, Quality out) {
+        out.verdict = verdict;
+        verdictCounts[verdict.ordinal()]++;
+        return verdict == Verdict.PASS;
+    }
+
+    private static void appendPercentiles(StringBuilder builder, String name, float[] history, int samples) {
+        int count = Math.min(samples, HISTORY);
+        if (count == 0) {
+            return;
+        }
+        float[] sorted = Arrays.copyOf(history, count);
+        Arrays.sort(sorted);
+        builder.append(String.format(Locale.US, "; %s p10/p50/p90 %.1f/%.1f/%.1f", name,
+                sorted[count / 10], sorted[count / 2], sorted[count * 9 / 10]));
+    }
+}
@@ -0,0 +1,226 @@
+package com.safevoice.app.utils;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A face embedding prepared for repeated comparison: scaled to unit length once, so comparing
+ * it with a live embedding needs a single pass that only computes the live side's norm. The
+ * norm of the original embedding is kept, and so, optionally, is an int8 copy of the unit
+ * vector for compact storage and integer dot products. A label names whose face it is.
+ *
+ * Templates are immutable and serialize to a compact binary form, little-endian:
+ *   int   MAGIC
+ *   byte  VERSION
+ *   byte  flags (FLAG_INT8 if the int8 copy follows the floats)
+ *   short dimensions
+ *   float norm of the original embedding
+ *   short label length in bytes, then the label in UTF-8
+ *   float[dimensions] unit vector
+ *   float int8 scale, then byte[dimensions] int8 vector   (only with FLAG_INT8)
+ * The bytes are not encrypted here; see FaceTemplateStore. This class has no Android dependencies.
+ */
+public final class FaceTemplate {
+
+    private static final int MAGIC = 0x53564654;   // "SVFT"
+    private static final byte VERSION = 1;
+    private static final byte FLAG_INT8 = 1;
+
+    private final String label;
+    private final float[] unit;
+    private final float norm;
+    // Symmetric int8 copy of unit, or null.
+    private final byte[] quantized;
+    private final float quantizedScale;
+
+    private FaceTemplate(String label, float[] unit, float norm, byte[] quantized, float quantizedScale) {
+        this.label = label;
+        this.unit = unit;
+        this.norm = norm;
+        this.quantized = quantized;
+        this.quantizedScale = quantizedScale;
+    }
+
+    /**
+     * Builds a template from a raw embedding, which is left untouched.
+     *
+     * @param label    Whose face it is; may be empty, not null.
+     * @param withInt8 Whether to also keep the int8 copy.
+     * @throws IllegalArgumentException If the embedding is all zeros.
+     */
+    public static FaceTemplate fromEmbedding(float[] embedding, String label, boolean withInt8) {
+        double norm = EmbeddingMath.norm(embedding, embedding.length);
+        if (norm == 0.0) {
+            throw new IllegalArgumentException("Cannot build a template from a zero embedding.");
+        }
+        float[] unit = new float[embedding.length];
+        for (int i = 0; i < unit.length; i++) {
+            unit[i] = (float) (embedding[i] / norm);
+        }
+        byte[] quantized = null;
+        float scale = 0f;
+        if (withInt8) {
+            quantized = new byte[unit.length];
+            scale = EmbeddingMath.quantizeSymmetric(unit, unit.length, quantized);
+        }
+        return new FaceTemplate(label, unit, (float) norm, quantized, scale);
+    }
+
+    /**
+     * @return A copy of this template under another label; the vectors are shared.
+     */
+    public FaceTemplate withLabel(String newLabel) {
+        return new FaceTemplate(newLabel, unit, norm, quantized, quantizedScale);
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public int getDimensions() {
+        return unit.length;
+    }
+
+    /**
+     * @return The norm of the embedding the template was built from.
+     */
+    public float getNorm() {
+        return norm;
+    }
+
+    public boolean hasInt8() {
+        return quantized != null;
+    }
+
+    /**
+     * Cosine similarity with a raw live embedding of the same size, in one pass.
+     */
+    public double similarity(float[] embedding) {
+        return EmbeddingMath.cosineSimilarityToUnit(unit, embedding, unit.length);
+    }
+
+    /**
+     * Cosine similarity with another template: a plain dot product of the unit vectors.
+     */
+    public double similarity(FaceTemplate other) {
+        float[] otherUnit = other.unit;
+        double dotProduct = 0.0;
+        for (int i = 0; i < unit.length; i++) {
+            dotProduct += unit[i] * otherUnit[i];
+        }
+        return dotProduct;
+    }
+
+    /**
+     * Approximate cosine similarity with another template from the int8 copies alone, in
+     * integer arithmetic. Both templates must have been built with the int8 copy.
+     */
+    public double similarityInt8(FaceTemplate other) {
+        if (quantized == null || other.quantized == null) {
+            throw new IllegalStateException("Template has no int8 copy.");
+        }
+        return (double) quantizedScale * other.quantizedScale
+                * EmbeddingMath.dotInt8(quantized, other.quantized, unit.length);
+    }
+
+    /**
+     * Copies the unit vector into out, starting at offset.
+     */
+    public void copyUnitTo(float[] out, int offset) {
+        System.arraycopy(unit, 0, out, offset, unit.length);
+    }
+
+    /**
+     * Copies the int8 vector into out, starting at offset, and returns its scale.
+     */
+    public float copyInt8To(byte[] out, int offset) {
+        if (quantized == null) {
+            throw new IllegalStateException("Template has no int8 copy.");
+        }
+        System.arraycopy(quantized, 0, out, offset, quantized.length);
+        return quantizedScale;
+    }
+
+    public byte[] toBytes() {
+        byte[] labelBytes = label.getBytes(StandardCharsets.UTF_8);
+        int size = 4 + 1 + 1 + 2 + 4 + 2 + labelBytes.length + unit.length * 4
+                + (quantized != null ? 4 + quantized.length : 0);
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.put(quantized != null ? FLAG_INT8 : 0);
+        buffer.putShort((short) unit.length);
+        buffer.putFloat(norm);
+        buffer.putShort((short) labelBytes.length);
+        buffer.put(labelBytes);
+        for (float value : unit) {
+            buffer.putFloat(value);
+        }
+        if (quantized != null) {
+            buffer.putFloat(quantizedScale);
+            buffer.put(quantized);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Parses the form written by {@link #toBytes()}.
+     *
+     * @throws IllegalArgumentException If the bytes are not a template of a known version.
+     */
+    public static FaceTemplate fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a face template.");
+            }
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported face template version " + version);
+            }
+            boolean withInt8 = (buffer.get() & FLAG_INT8) != 0;
+            int dimensions = buffer.getShort() & 0xFFFF;
+            float norm = buffer.getFloat();
+            byte[] labelBytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(labelBytes);
+            float[] unit = new float[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                unit[i] = buffer.getFloat();
+            }
+            byte[] quantized = null;
+            float scale = 0f;
+            if (withInt8) {
+                scale = buffer.getFloat();
+                quantized = new byte[dimensions];
+                buffer.get(quantized);
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing bytes after face template.");
+            }
+            return new FaceTemplate(new String(labelBytes, StandardCharsets.UTF_8), unit, norm, quantized, scale);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated face template.", e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FaceTemplate)) {
+            return false;
+        }
+        FaceTemplate other = (FaceTemplate) o;
+        return norm == other.norm && quantizedScale == other.quantizedScale && label.equals(other.label)
+                && Arrays.equals(unit, other.unit) && Arrays.equals(quantized, other.quantized);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * label.hashCode() + Arrays.hashCode(unit);
+    }
+}
@@ -0,0 +1,149 @@
+package com.safevoice.app.utils;
+
+import android.content.Context;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * A Singleton that keeps the verified user's face template on the device, so identity can be
+ * re-checked with a single live-face pass instead of scanning the ID again.
+ *
+ * The template is encrypted with AES-GCM under a key that never leaves the Android Keystore.
+ * The user id is bound in as associated data, so a template saved for one account does not
+ * decrypt for another. The file holds the IV length, the IV, then the ciphertext and tag.
+ * A template that no longer decrypts or parses (key invalidated, file corrupted, other user)
+ * is treated as absent.
+ */
+public class FaceTemplateStore {
+
+    private static final String TAG = "FaceTemplateStore";
+    private static final String FILE_NAME = "face_template.bin";
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String KEY_ALIAS = "safevoice_face_template";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int KEY_SIZE_BITS = 256;
+    private static final int TAG_SIZE_BITS = 128;
+
+    private static FaceTemplateStore instance;
+    private final AtomicFile file;
+
+    // Private constructor to enforce the Singleton pattern.
+    private FaceTemplateStore(Context context) {
+        file = new AtomicFile(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * Gets the single instance of the FaceTemplateStore.
+     *
+     * @param context Any context; only the application context is kept.
+     * @return The singleton instance of FaceTemplateStore.
+     */
+    public static synchronized FaceTemplateStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new FaceTemplateStore(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Encrypts and stores the template for the given user, replacing any previous one.
+     * Uses the Keystore and disk, so never call this on the UI thread.
+     */
+    public synchronized void save(String userId, FaceTemplate template) throws GeneralSecurityException, IOException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        // The Keystore picks a fresh random IV for every encryption.
+        cipher.init(Cipher.ENCRYPT_MODE, getOrCreateKey());
+        cipher.updateAAD(userId.getBytes(StandardCharsets.UTF_8));
+        byte[] ciphertext = cipher.doFinal(template.toBytes());
+        byte[] iv = cipher.getIV();
+
+        FileOutputStream out = file.startWrite();
+        try {
+            out.write(iv.length);
+            out.write(iv);
+            out.write(ciphertext);
+            file.finishWrite(out);
+        } catch (IOException e) {
+            file.failWrite(out);
+            throw e;
+        }
+        Log.d(TAG, "Face template saved: " + ciphertext.length + " bytes.");
+    }
+
+    /**
+     * Reads the stored template of the given user. Uses the Keystore and disk, so never call
+     * this on the UI thread.
+     *
+     * @return The template, or null if there is none for this user.
+     */
+    public synchronized FaceTemplate load(String userId) {
+        byte[] bytes;
+        try {
+            bytes = file.readFully();
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read the face template.", e);
+            return null;
+        }
+        try {
+            int ivLength = bytes[0] & 0xFF;
+            byte[] iv = Arrays.copyOfRange(bytes, 1, 1 + ivLength);
+            KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+            keyStore.load(null);
+            SecretKey key = (SecretKey) keyStore.getKey(KEY_ALIAS, null);
+            if (key == null) {
+                return null;
+            }
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE_BITS, iv));
+            cipher.updateAAD(userId.getBytes(StandardCharsets.UTF_8));
+            byte[] plaintext = cipher.doFinal(bytes, 1 + ivLength, bytes.length - 1 - ivLength);
+            return FaceTemplate.fromBytes(plaintext);
+        } catch (GeneralSecurityException | IOException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            // Another user's template, a reset key or a damaged file: there is nothing usable.
+            Log.w(TAG, "Stored face template is not usable.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the stored template.
+     */
+    public synchronized void clear() {
+        file.delete();
+    }
+
+    private SecretKey getOrCreateKey() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        keyStore.load(null);
+        SecretKey key = (SecretKey) keyStore.getKey(KEY_ALIAS, null);
+        if (key != null) {
+            return key;
+        }
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(KEY_SIZE_BITS)
+                .build());
+        return generator.generateKey();
+    }
+}
@@ -0,0 +1,140 @@
+package com.safevoice.app.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Remembers what was last computed for each tracked face, so frames in which a face has not
+ * moved can skip the quality check and the embedding.
+ *
+ * A face counts as still while its box overlaps the box of its last computed frame by at least
+ * STILL_IOU. A still face's frame would give nearly the same quality score and embedding as
+ * before, and a repeated embedding adds no independent evidence to a multi-frame decision, so
+ * it is skipped. After MAX_SKIPPED_FRAMES skips the face is recomputed anyway, so slow changes
+ * such as lighting are picked up.
+ *
+ * Tracks are keyed by ML Kit's tracking id. Faces without one get a fresh track every frame
+ * and are always recomputed. Not thread-safe, except for a track's embedding, which may be
+ * set from another thread. This class has no Android dependencies.
+ */
+public class FaceTracker {
+
+    public static final int NO_TRACKING_ID = -1;
+
+    private static final float STILL_IOU = 0.9f;
+    private static final int MAX_SKIPPED_FRAMES = 3;
+    // Tracks not seen for this many frames are forgotten.
+    private static final int MAX_MISSED_FRAMES = 30;
+
+    /**
+     * What was last computed for one tracked face.
+     */
+    public static final class Track {
+        public final int trackingId;
+        // Box of the last computed frame (the last crop), in upright coordinates.
+        private int left, top, right, bottom;
+        private boolean computed;
+        private FaceQualityGate.Verdict verdict;
+        private volatile float[] embedding;
+        private boolean needsRecompute;
+        private int skippedFrames;
+        private int lastSeenFrame;
+
+        Track(int trackingId) {
+            this.trackingId = trackingId;
+        }
+
+        /**
+         * @return Whether this frame has to be scored and embedded, or can be skipped.
+         */
+        public boolean needsRecompute() {
+            return needsRecompute;
+        }
+
+        /**
+         * Records that the frame's face box was cropped and scored.
+         */
+        public void markComputed(int left, int top, int right, int bottom, FaceQualityGate.Verdict verdict) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.verdict = verdict;
+            computed = true;
+            skippedFrames = 0;
+        }
+
+        public FaceQualityGate.Verdict getVerdict() {
+            return verdict;
+        }
+
+        public void setEmbedding(float[] embedding) {
+            this.embedding = embedding;
+        }
+
+        /**
+         * @return The embedding of the last computed frame that got one, or null.
+         */
+        public float[] getEmbedding() {
+            return embedding;
+        }
+    }
+
+    private final Map<Integer, Track> tracks = new HashMap<>();
+    private int frame = 0;
+
+    /**
+     * Looks up the track of a face seen in the current frame and decides whether it needs to be
+     * recomputed. Call {@link #nextFrame()} once per frame before the first call.
+     */
+    public Track observe(int trackingId, int left, int top, int right, int bottom) {
+        if (trackingId == NO_TRACKING_ID) {
+            Track untracked = new Track(NO_TRACKING_ID);
+            untracked.needsRecompute = true;
+            return untracked;
+        }
+        Track track = tracks.get(trackingId);
+        if (track == null) {
+            track = new Track(trackingId);
+            tracks.put(trackingId, track);
+        }
+        track.lastSeenFrame = frame;
+        boolean still = track.computed
+                && intersectionOverUnion(track.left, track.top, track.right, track.bottom, left, top, right, bottom) >= STILL_IOU;
+        track.needsRecompute = !still || track.skippedFrames >= MAX_SKIPPED_FRAMES;
+        if (!track.needsRecompute) {
+            track.skippedFrames++;
+        }
+        return track;
+    }
+
+    /**
+     * Starts a new frame and forgets tracks that have not been seen for a while.
+     */
+    public void nextFrame() {
+        frame++;
+        Iterator<Track> iterator = tracks.values().iterator();
+        while (iterator.hasNext()) {
+            if (frame - iterator.next().lastSeenFrame > MAX_MISSED_FRAMES) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public void reset() {
+        tracks.clear();
+        frame = 0;
+    }
+
+    static float intersectionOverUnion(int l1, int t1, int r1, int b1, int l2, int t2, int r2, int b2) {
+        long width = Math.min(r1, r2) - Math.max(l1, l2);
+        long height = Math.min(b1, b2) - Math.max(t1, t2);
+        if (width <= 0 || height <= 0) {
+            return 0f;
+        }
+        long intersection = width * height;
+        long union = (long) (r1 - l1) * (b1 - t1) + (long) (r2 - l2) * (b2 - t2) - intersection;
+        return union <= 0 ? 0f : (float) intersection / union;
+    }
+}
@@ -4,9 +4,16 @@ import android.content.Context;
 import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.util.Log;
 
+import androidx.camera.core.ImageProxy;
+
+import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
 
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -14,37 +21,331 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * A helper class for interacting with the mobilefacenet.tflite model.
  * It handles loading the model, pre-processing input images, running inference,
  * and calculating the similarity between two faces.
+ *
+ * All buffers needed for inference are allocated once, in an {@link InferenceContext}
+ * that is confined to the first thread that runs the model. The "Into" variants of the
+ * embedding methods write into a caller-owned array and allocate nothing.
+ *
+ * The model's first dimension is a batch of face slots, one embedding per slot.
+ * A single face only fills slot 0; use a {@link FaceBatch} to embed several faces
+ * (the ID photo plus live frames, say) in one interpreter invocation.
+ *
+ * If the quantized model variant is bundled, it is used instead of the float model.
+ * The path is chosen from the input tensor's type: for UINT8/INT8 inputs, faces are
+ * preprocessed straight to one byte per channel and the output embedding is dequantized
+ * with the output tensor's scale and zero point, so callers always get floats. Similarity
+ * scores from the quantized model must stay within {@link EmbeddingMath#QUANTIZED_SIMILARITY_TOLERANCE}
+ * of the float model's for the same pair of faces; a quantized asset that drifts further
+ * needs FACE_MATCH_THRESHOLD re-tuned.
  */
 public class FaceVerifier {
 
     private static final String TAG = "FaceVerifier";
     private static final String MODEL_FILE = "mobilefacenet.tflite";
+    private static final String QUANTIZED_MODEL_FILE = "mobilefacenet_int8.tflite";
 
-    // Model-specific configuration
-    private static final int INPUT_IMAGE_WIDTH = 112;
-    private static final int INPUT_IMAGE_HEIGHT = 224;
-    
-    private static final int EMBEDDING_SIZE = 192;   // The size of the output vector.
-    private static final int BYTES_PER_CHANNEL = 4;  // Float size
+    public static final int EMBEDDING_SIZE = 192;    // The size of the output vector.
+    private static final int CHANNELS = 3;           // RGB
+    // One face per batch slot, as MobileFaceNet expects. FACE_MATCH_THRESHOLD is only
+    // meaningful for embeddings of faces at this geometry, so other models are rejected.
+    public static final int FACE_INPUT_SIZE = 112;
 
     private final Interpreter tflite;
+    // Runs tflite on preallocated bindings and reads the embeddings back.
+    private final InferenceRunner runner;
+    private final int outputRowBytes;
+
+    // Read from the model's input tensor, shaped [batch, height, width, channels].
+    private final int modelBatchSize;
+    private final int inputWidth;
+    private final int inputHeight;
+    private final int slotBytes;
+
+    private final InferenceContext context;
+
+    // Batch size the interpreter's tensors are currently allocated for.
+    private int currentBatchSize;
+    // Cleared the first time the model refuses a resized batch; batches then run in native-size chunks.
+    private boolean canResizeBatch = true;
+    private volatile boolean closed = false;
+
+    /**
+     * Everything one inference needs, preallocated and reused for every call.
+     * The Interpreter is not thread-safe, so the context is bound to the first thread
+     * that uses it and any other thread is rejected.
+     */
+    private static final class InferenceContext {
+        // One model-sized batch; single faces are written to slot 0.
+        final InferenceRunner.Binding binding;
+
+        // Bitmap path scratch: a fixed-size target bitmap, drawn into with filtering.
+        final Bitmap scaledBitmap;
+        final Canvas scaledCanvas;
+        final Rect scaledBounds;
+        final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        final int[] pixels;
+
+        // Camera-frame path: crops straight from YUV.
+        final YuvTensorConverter yuvConverter;
+
+        private Thread owner;
+
+        InferenceContext(int width, int height, int batchSize, int slotBytes, int outputRowBytes) {
+            binding = new InferenceRunner.Binding(InferenceRunner.allocate(batchSize * slotBytes),
+                    InferenceRunner.allocate(batchSize * outputRowBytes));
+            scaledBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            scaledCanvas = new Canvas(scaledBitmap);
+            scaledBounds = new Rect(0, 0, width, height);
+            pixels = new int[width * height];
+            yuvConverter = new YuvTensorConverter(width, height);
+        }
+
+        void checkThread() {
+            Thread current = Thread.currentThread();
+            if (owner == null) {
+                owner = current;
+            } else if (owner != current) {
+                throw new IllegalStateException("FaceVerifier is confined to thread '" + owner.getName()
+                        + "' but was called from '" + current.getName() + "'.");
+            }
+        }
+    }
+
+    /**
+     * Face crops waiting to be embedded together by {@link #getFaceEmbeddings(FaceBatch, float[][])}.
+     *
+     * Each add() preprocesses the face into the batch's own input buffer right away,
+     * so camera frames can be closed as soon as they have been added. A batch is meant
+     * to be kept and reused: clear() it instead of creating a new one for every frame.
+     * Like the FaceVerifier that created it, a batch is confined to the inference thread.
+     */
+    public final class FaceBatch {
+        private final int capacity;
+        private final ByteBuffer inputBuffer;
+        private final ByteBuffer outputBuffer;
+        // Views over the buffers, created on first use: by face count, and by native-size chunk.
+        private final InferenceRunner.Binding[] bindingsBySize;
+        private final InferenceRunner.Binding[] bindingsByChunk;
+        private int size;
+
+        private FaceBatch(int capacity) {
+            this.capacity = capacity;
+            // Round up to whole native batches so the chunked fallback never runs past the end.
+            int chunks = (capacity + modelBatchSize - 1) / modelBatchSize;
+            int slots = chunks * modelBatchSize;
+            inputBuffer = InferenceRunner.allocate(slots * slotBytes);
+            outputBuffer = InferenceRunner.allocate(slots * outputRowBytes);
+            bindingsBySize = new InferenceRunner.Binding[capacity + 1];
+            bindingsByChunk = new InferenceRunner.Binding[chunks];
+        }
+
+        /**
+         * Crops a face from an open camera frame into the next free slot.
+         *
+         * @return false if the batch is full or the crop is outside the frame.
+         */
+        public boolean add(ImageProxy imageProxy, Rect faceRect) {
+            context.checkThread();
+            if (size == capacity) {
+                return false;
+            }
+            inputBuffer.position(size * slotBytes);
+            if (!ImageUtils.cropToTensor(imageProxy, faceRect, context.yuvConverter, inputBuffer)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+        /**
+         * Scales a cropped face bitmap into the next free slot.
+         *
+         * @return false if the batch is full.
+         */
+        public boolean add(Bitmap faceBitmap) {
+            context.checkThread();
+            if (size == capacity) {
+                return false;
+            }
+            inputBuffer.position(size * slotBytes);
+            preprocessImage(faceBitmap, inputBuffer);
+            size++;
+            return true;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int capacity() {
+            return capacity;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        InferenceRunner.Binding bindingForSize(int faces) {
+            if (bindingsBySize[faces] == null) {
+                bindingsBySize[faces] = slice(0, faces);
+            }
+            return bindingsBySize[faces];
+        }
+
+        InferenceRunner.Binding bindingForChunk(int chunk) {
+            if (bindingsByChunk[chunk] == null) {
+                bindingsByChunk[chunk] = slice(chunk * modelBatchSize, modelBatchSize);
+            }
+            return bindingsByChunk[chunk];
+        }
+
+        /**
+         * Views of the slots [firstSlot, firstSlot + slots). The interpreter requires buffers
+         * of exactly the tensor's size, in native order.
+         */
+        private InferenceRunner.Binding slice(int firstSlot, int slots) {
+            return new InferenceRunner.Binding(
+                    view(inputBuffer, firstSlot * slotBytes, slots * slotBytes),
+                    view(outputBuffer, firstSlot * outputRowBytes, slots * outputRowBytes));
+        }
+    }
 
     /**
-     * Loads the TFLite model from the assets folder.
+     * Loads the TFLite model from the assets folder, using the CPU configuration
+     * {@link InferenceTuner} found fastest on this device.
      * Throws an IOException if the model file cannot be loaded.
      *
      * @param context The application context.
      * @throws IOException If the model file is not found or cannot be loaded.
      */
     public FaceVerifier(Context context) throws IOException {
+        this(context, 0);
+    }
+
+    /**
+     * Like {@link #FaceVerifier(Context)}, but never uses more than maxThreads interpreter
+     * threads, e.g. while the device is hot or low on battery.
+     *
+     * @param maxThreads The thread cap, or 0 for the tuned count.
+     */
+    public FaceVerifier(Context context, int maxThreads) throws IOException {
+        AssetManager assetManager = context.getAssets();
+        String modelName = hasAsset(assetManager, QUANTIZED_MODEL_FILE) ? QUANTIZED_MODEL_FILE : MODEL_FILE;
+        MappedByteBuffer model = loadModelFile(assetManager, modelName);
+        // Thread count and XNNPACK are calibrated once per device; the first load is slower.
+        InferenceTuner.Config config = InferenceTuner.getInstance(context).getConfig(modelName, model);
+        if (maxThreads > 0 && config.numThreads > maxThreads) {
+            config = new InferenceTuner.Config(config.useXnnpack, maxThreads);
+        }
         Interpreter.Options options = new Interpreter.Options();
-        options.setNumThreads(4); // Improve performance with multiple threads
-        this.tflite = new Interpreter(loadModelFile(context.getAssets()), options);
+        config.applyTo(options);
+        this.tflite = new Interpreter(model, options);
+        Log.d(TAG, "Interpreter created for " + modelName + " with " + config);
+
+        Tensor input = tflite.getInputTensor(0);
+        Tensor output = tflite.getOutputTensor(0);
+        int[] inputShape = input.shape(); // [batch, height, width, channels]
+        int[] outputShape = output.shape(); // [batch, EMBEDDING_SIZE]
+        if (inputShape.length != 4 || inputShape[1] != FACE_INPUT_SIZE || inputShape[2] != FACE_INPUT_SIZE
+                || inputShape[3] != CHANNELS || outputShape.length != 2 || outputShape[1] != EMBEDDING_SIZE) {
+            tflite.close();
+            throw new IOException("Unexpected face model geometry: input " + Arrays.toString(inputShape)
+                    + ", output " + Arrays.toString(outputShape) + "; expected [n, " + FACE_INPUT_SIZE + ", "
+                    + FACE_INPUT_SIZE + ", " + CHANNELS + "] -> [n, " + EMBEDDING_SIZE + "]");
+        }
+        this.modelBatchSize = inputShape[0];
+        this.inputHeight = inputShape[1];
+        this.inputWidth = inputShape[2];
+        this.slotBytes = inputWidth * inputHeight * CHANNELS * input.dataType().byteSize();
+
+        this.outputRowBytes = EMBEDDING_SIZE * output.dataType().byteSize();
+        this.runner = new InferenceRunner(tflite::runForMultipleInputsOutputs, EMBEDDING_SIZE, outputRowBytes);
+        if (isQuantized(output.dataType())) {
+            runner.setOutputQuantization(output.quantizationParams().getScale(),
+                    output.quantizationParams().getZeroPoint(), output.dataType() == DataType.INT8);
+        }
+
+        this.currentBatchSize = modelBatchSize;
+        this.context = new InferenceContext(inputWidth, inputHeight, modelBatchSize, slotBytes, outputRowBytes);
+        if (isQuantized(input.dataType())) {
+            // Preprocess straight to bytes in the input tensor's quantized domain.
+            this.context.yuvConverter.setQuantization(input.quantizationParams().getScale(),
+                    input.quantizationParams().getZeroPoint(), input.dataType() == DataType.INT8);
+        }
+        Log.d(TAG, "Model input " + input.dataType() + " " + Arrays.toString(inputShape)
+                + ", output " + output.dataType() + " " + Arrays.toString(output.shape()));
+    }
+
+    /**
+     * Frees the interpreter. Must be called on the thread the verifier is confined to;
+     * the verifier cannot be used afterwards.
+     */
+    public void close() {
+        context.checkThread();
+        if (!closed) {
+            closed = true;
+            tflite.close();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return true if the quantized model variant is loaded.
+     */
+    public boolean isQuantized() {
+        return context.yuvConverter.isQuantized();
+    }
+
+    /**
+     * Creates an empty batch that holds up to the given number of faces.
+     *
+     * @param capacity Maximum number of faces; at least 1.
+     */
+    public FaceBatch newBatch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Batch capacity must be at least 1: " + capacity);
+        }
+        return new FaceBatch(capacity);
+    }
+
+    /**
+     * Generates a facial embedding directly from a camera frame.
+     * The face is cropped and resized from the YUV planes into the model input,
+     * with no JPEG round trip and no intermediate Bitmap.
+     *
+     * @param imageProxy The open YUV_420_888 camera frame.
+     * @param faceRect   The face bounding box reported by ML Kit (upright coordinates).
+     * @return A float array of size 192, or null if the crop is outside the frame.
+     */
+    public float[] getFaceEmbedding(ImageProxy imageProxy, Rect faceRect) {
+        float[] embedding = new float[EMBEDDING_SIZE];
+        return getFaceEmbeddingInto(imageProxy, faceRect, embedding) ? embedding : null;
+    }
+
+    /**
+     * Allocation-free variant of {@link #getFaceEmbedding(ImageProxy, Rect)}.
+     *
+     * @param out Receives the 192-value embedding.
+     * @return true if the embedding was written, false if the crop is outside the frame.
+     */
+    public boolean getFaceEmbeddingInto(ImageProxy imageProxy, Rect faceRect, float[] out) {
+        context.checkThread();
+        context.binding.inputBuffer.clear();
+        if (!ImageUtils.cropToTensor(imageProxy, faceRect, context.yuvConverter, context.binding.inputBuffer)) {
+            return false;
+        }
+        runInference(out);
+        return true;
     }
 
     /**
@@ -54,20 +355,104 @@ public class FaceVerifier {
      * @return A float array of size 192 representing the facial embedding.
      */
     public float[] getFaceEmbedding(Bitmap bitmap) {
-        // 1. Pre-process the image: resize and convert to ByteBuffer
-        ByteBuffer inputBuffer = preprocessImage(bitmap);
+        float[] embedding = new float[EMBEDDING_SIZE];
+        getFaceEmbeddingInto(bitmap, embedding);
+        return embedding;
+    }
 
-        // --- FIX START: Correct the output buffer shape ---
-        // The crash log shows the model outputs a shape of [2, 192].
-        // We must prepare a Java object with the exact same shape to receive the data.
-        float[][] outputEmbedding = new float[2][EMBEDDING_SIZE];
-        // --- FIX END ---
+    /**
+     * Allocation-free variant of {@link #getFaceEmbedding(Bitmap)}.
+     *
+     * @param bitmap The input image, which should contain a cropped face.
+     * @param out    Receives the 192-value embedding.
+     */
+    public void getFaceEmbeddingInto(Bitmap bitmap, float[] out) {
+        context.checkThread();
+        context.binding.inputBuffer.clear();
+        preprocessImage(bitmap, context.binding.inputBuffer);
+        runInference(out);
+    }
 
-        // 3. Run inference with the TFLite model
-        tflite.run(inputBuffer, outputEmbedding);
+    /**
+     * Embeds every face in the batch with as few interpreter invocations as possible:
+     * one, with the input resized to the batch's face count, or, for models whose batch
+     * dimension is fixed, one per native-size chunk.
+     *
+     * Resizing reallocates the interpreter's tensors, so alternating between batches of
+     * different sizes and single faces is slower than sticking to one batch size.
+     *
+     * @param batch The faces to embed. It is left untouched; clear() it to reuse it.
+     * @param out   Receives one 192-value embedding per face, in the order they were added.
+     *              Must have at least batch.size() rows.
+     * @return The number of embeddings written, i.e. batch.size().
+     */
+    public int getFaceEmbeddings(FaceBatch batch, float[][] out) {
+        context.checkThread();
+        int faces = batch.size();
+        if (faces == 0) {
+            return 0;
+        }
+
+        if (canResizeBatch && faces != modelBatchSize) {
+            try {
+                ensureBatchSize(faces);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                Log.w(TAG, "Model does not accept a batch of " + faces + "; running in chunks of " + modelBatchSize, e);
+                canResizeBatch = false;
+                restoreModelBatchSize();
+            }
+        }
 
-        // 4. Return the first embedding vector. The second is for a flipped image and can be ignored.
-        return outputEmbedding[0];
+        if (canResizeBatch || faces == modelBatchSize) {
+            runner.run(batch.bindingForSize(faces), out, 0, faces);
+        } else {
+            ensureBatchSize(modelBatchSize);
+            for (int first = 0, chunk = 0; first < faces; first += modelBatchSize, chunk++) {
+                runner.run(batch.bindingForChunk(chunk), out, first, Math.min(modelBatchSize, faces - first));
+            }
+        }
+        return faces;
+    }
+
+    /**
+     * Convenience wrapper that embeds a list of cropped face bitmaps in one batch.
+     *
+     * @return One embedding per bitmap, in the same order.
+     */
+    public float[][] getFaceEmbeddings(List<Bitmap> faceBitmaps) {
+        float[][] embeddings = new float[faceBitmaps.size()][EMBEDDING_SIZE];
+        if (faceBitmaps.isEmpty()) {
+            return embeddings;
+        }
+        FaceBatch batch = newBatch(faceBitmaps.size());
+        for (Bitmap faceBitmap : faceBitmaps) {
+            batch.add(faceBitmap);
+        }
+        getFaceEmbeddings(batch, embeddings);
+        return embeddings;
+    }
+
+    /**
+     * Runs the model on the prepared slot 0 and copies its embedding.
+     */
+    private void runInference(float[] out) {
+        ensureBatchSize(modelBatchSize);
+        runner.run(context.binding, out);
+    }
+
+    private void ensureBatchSize(int batchSize) {
+        if (batchSize == currentBatchSize) {
+            return;
+        }
+        tflite.resizeInput(0, new int[]{batchSize, inputHeight, inputWidth, CHANNELS});
+        tflite.allocateTensors();
+        currentBatchSize = batchSize;
+    }
+
+    private void restoreModelBatchSize() {
+        tflite.resizeInput(0, new int[]{modelBatchSize, inputHeight, inputWidth, CHANNELS});
+        tflite.allocateTensors();
+        currentBatchSize = modelBatchSize;
     }
 
     /**
@@ -83,63 +468,77 @@ public class FaceVerifier {
         if (emb1 == null || emb2 == null || emb1.length != EMBEDDING_SIZE || emb2.length != EMBEDDING_SIZE) {
             return -1.0; // Invalid input
         }
+        return EmbeddingMath.cosineSimilarity(emb1, emb2, EMBEDDING_SIZE);
+    }
 
-        double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-
-        for (int i = 0; i < EMBEDDING_SIZE; i++) {
-            dotProduct += emb1[i] * emb2[i];
-            normA += emb1[i] * emb1[i];
-            normB += emb2[i] * emb2[i];
-        }
-
-        if (normA == 0.0 || normB == 0.0) {
-            return 0.0;
+    /**
+     * Fast path of {@link #calculateSimilarity(float[], float[])} for a reference face that is
+     * compared with many live faces: the template is already unit length, so only the live
+     * embedding's norm is computed, in the same pass as the dot product.
+     *
+     * @param template  The reference face.
+     * @param embedding The live embedding.
+     * @return The cosine similarity score.
+     */
+    public double calculateSimilarity(FaceTemplate template, float[] embedding) {
+        if (template == null || embedding == null || template.getDimensions() != EMBEDDING_SIZE
+                || embedding.length != EMBEDDING_SIZE) {
+            return -1.0; // Invalid input
         }
-
-        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+        return template.similarity(embedding);
     }
 
-
     /**
      * Memory-maps the TFLite model file from the assets folder.
      */
-    private MappedByteBuffer loadModelFile(AssetManager assetManager) throws IOException {
-        AssetFileDescriptor fileDescriptor = assetManager.openFd(MODEL_FILE);
-        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
-        FileChannel fileChannel = inputStream.getChannel();
-        long startOffset = fileDescriptor.getStartOffset();
-        long declaredLength = fileDescriptor.getDeclaredLength();
-        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+    private MappedByteBuffer loadModelFile(AssetManager assetManager, String fileName) throws IOException {
+        // The mapping stays valid after the descriptor, stream and channel are closed.
+        try (AssetFileDescriptor fileDescriptor = assetManager.openFd(fileName);
+             FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
+             FileChannel fileChannel = inputStream.getChannel()) {
+            long startOffset = fileDescriptor.getStartOffset();
+            long declaredLength = fileDescriptor.getDeclaredLength();
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+        }
+    }
+
+    private static boolean hasAsset(AssetManager assetManager, String fileName) throws IOException {
+        String[] files = assetManager.list("");
+        return files != null && Arrays.asList(files).contains(fileName);
+    }
+
+    private static boolean isQuantized(DataType type) {
+        return type == DataType.UINT8 || type == DataType.INT8;
     }
 
     /**
-     * Pre-processes the input bitmap to match the model's requirements.
-     * - Resizes the image to 112x224.
-     * - Normalizes pixel values to be between -1 and 1.
-     * - Converts the image data into a ByteBuffer.
+     * Pre-processes the input bitmap into one slot of an input buffer, starting at its current position.
+     * - Resizes the image to the model's input size by drawing it into a reusable bitmap.
+     * - Normalizes pixel values to be between -1 and 1, or quantizes them for a quantized model.
      */
-    private ByteBuffer preprocessImage(Bitmap bitmap) {
-        Bitmap resizedBitmap = Bitmap.createScaledBitmap(bitmap, INPUT_IMAGE_WIDTH, INPUT_IMAGE_HEIGHT, true);
-        
-        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(INPUT_IMAGE_WIDTH * INPUT_IMAGE_HEIGHT * 3 * BYTES_PER_CHANNEL);
-        byteBuffer.order(ByteOrder.nativeOrder());
-
-        int[] intValues = new int[INPUT_IMAGE_WIDTH * INPUT_IMAGE_HEIGHT];
-        
-        resizedBitmap.getPixels(intValues, 0, resizedBitmap.getWidth(), 0, 0, resizedBitmap.getWidth(), resizedBitmap.getHeight());
+    private void preprocessImage(Bitmap bitmap, ByteBuffer byteBuffer) {
+        InferenceContext ctx = context;
+        ctx.scaledCanvas.drawBitmap(bitmap, null, ctx.scaledBounds, ctx.scalePaint);
+        ctx.scaledBitmap.getPixels(ctx.pixels, 0, inputWidth, 0, 0, inputWidth, inputHeight);
 
         int pixel = 0;
-        for (int i = 0; i < INPUT_IMAGE_HEIGHT; ++i) {
-            for (int j = 0; j < INPUT_IMAGE_WIDTH; ++j) {
-                final int val = intValues[pixel++];
-                // Normalize the pixel values from [0, 255] to [-1, 1] as required by many face models.
-                byteBuffer.putFloat((((val >> 16) & 0xFF) - 127.5f) / 128.0f);
-                byteBuffer.putFloat((((val >> 8) & 0xFF) - 127.5f) / 128.0f);
-                byteBuffer.putFloat(((val & 0xFF) - 127.5f) / 128.0f);
+        for (int i = 0; i < inputHeight; ++i) {
+            for (int j = 0; j < inputWidth; ++j) {
+                final int val = ctx.pixels[pixel++];
+                // Same per-channel encoding as the YUV path, so both produce identical tensors.
+                ctx.yuvConverter.putChannel(byteBuffer, (val >> 16) & 0xFF);
+                ctx.yuvConverter.putChannel(byteBuffer, (val >> 8) & 0xFF);
+                ctx.yuvConverter.putChannel(byteBuffer, val & 0xFF);
             }
         }
-        return byteBuffer;
     }
-}
\ No newline at end of file
+
+    private static ByteBuffer view(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        ByteBuffer view = duplicate.slice();
+        view.order(ByteOrder.nativeOrder());
+        return view;
+    }
+}
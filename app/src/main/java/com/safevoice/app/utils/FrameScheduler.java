@@ -0,0 +1,187 @@
+package com.safevoice.app.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decides which camera frames get analyzed, so analysis stays within a CPU budget.
+ *
+ * The latency of the gated stage (detection, from analyze() until its results are handled)
+ * is tracked as a moving average. A frame is only admitted once at least
+ * averageLatency / cpuBudget has passed since the last admitted frame: with a budget of 0.5,
+ * analysis is busy at most half of the time, whatever the device or the camera frame rate.
+ * Frames that arrive sooner are dropped.
+ *
+ * Latencies of other stages (e.g. inference) can be recorded for reporting only.
+ * Counters are reported as processed and dropped frames per second, together with the
+ * average latency of every stage, once per reporting interval.
+ *
+ * All methods are thread-safe. Times are System.nanoTime() values.
+ * This class has no Android dependencies.
+ */
+public class FrameScheduler {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long REPORT_INTERVAL_NANOS = 5 * NANOS_PER_SECOND;
+    // Weight of the newest sample in the latency moving averages.
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    /**
+     * Frame rates and stage latencies over one reporting interval.
+     */
+    public static final class Stats {
+        public final double processedFps;
+        public final double droppedFps;
+        // Average latency per stage, in milliseconds, in the order stages were first seen.
+        public final Map<String, Double> stageLatencyMillis;
+
+        Stats(double processedFps, double droppedFps, Map<String, Double> stageLatencyMillis) {
+            this.processedFps = processedFps;
+            this.droppedFps = droppedFps;
+            this.stageLatencyMillis = stageLatencyMillis;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(String.format(Locale.US,
+                    "processed %.1f fps, dropped %.1f fps", processedFps, droppedFps));
+            for (Map.Entry<String, Double> stage : stageLatencyMillis.entrySet()) {
+                builder.append(String.format(Locale.US, ", %s %.1f ms", stage.getKey(), stage.getValue()));
+            }
+            return builder.toString();
+        }
+    }
+
+    private double cpuBudget;
+
+    private double gatedLatencyNanos = 0;
+    private long lastAdmittedNanos = Long.MIN_VALUE;
+    private final Map<String, Double> stageLatencyNanos = new LinkedHashMap<>();
+
+    private long windowStartNanos = Long.MIN_VALUE;
+    private int processedInWindow = 0;
+    private int droppedInWindow = 0;
+    private Stats lastStats;
+
+    /**
+     * @param cpuBudget Fraction of wall time the gated stage may be busy, in (0, 1].
+     */
+    public FrameScheduler(double cpuBudget) {
+        setCpuBudget(cpuBudget);
+    }
+
+    /**
+     * Changes the budget, e.g. to analyze fewer frames while the device is hot. Applies from
+     * the next frame; the measured latencies are kept.
+     *
+     * @param cpuBudget Fraction of wall time the gated stage may be busy, in (0, 1].
+     */
+    public synchronized void setCpuBudget(double cpuBudget) {
+        if (cpuBudget <= 0 || cpuBudget > 1) {
+            throw new IllegalArgumentException("CPU budget must be in (0, 1]: " + cpuBudget);
+        }
+        this.cpuBudget = cpuBudget;
+    }
+
+    /**
+     * Called when a frame arrives. Returns whether to analyze it; a false return counts as a drop.
+     */
+    public synchronized boolean shouldProcess(long nowNanos) {
+        startWindowIfNeeded(nowNanos);
+        long minInterval = (long) (gatedLatencyNanos / cpuBudget);
+        if (lastAdmittedNanos != Long.MIN_VALUE && nowNanos - lastAdmittedNanos < minInterval) {
+            droppedInWindow++;
+            return false;
+        }
+        lastAdmittedNanos = nowNanos;
+        return true;
+    }
+
+    /**
+     * Called when the gated stage has finished with an admitted frame.
+     *
+     * @param stage      Name used in the reports, e.g. "detect_id".
+     * @param startNanos The time passed to {@link #shouldProcess(long)} for this frame.
+     */
+    public synchronized void onFrameProcessed(String stage, long startNanos, long endNanos) {
+        long latency = endNanos - startNanos;
+        gatedLatencyNanos = smooth(gatedLatencyNanos, latency);
+        recordLatency(stage, latency);
+        processedInWindow++;
+    }
+
+    /**
+     * Records the latency of a stage that is not gated, for reporting only.
+     */
+    public synchronized void recordStageLatency(String stage, long latencyNanos) {
+        recordLatency(stage, latencyNanos);
+    }
+
+    /**
+     * Counts a frame that was admitted but dropped later, e.g. because a downstream queue was full.
+     */
+    public synchronized void recordDropped() {
+        droppedInWindow++;
+    }
+
+    /**
+     * Closes the current reporting interval if it has run its course.
+     *
+     * @return The interval's stats, or null if the interval is still running.
+     */
+    public synchronized Stats pollStats(long nowNanos) {
+        startWindowIfNeeded(nowNanos);
+        long elapsed = nowNanos - windowStartNanos;
+        if (elapsed < REPORT_INTERVAL_NANOS) {
+            return null;
+        }
+        double seconds = (double) elapsed / NANOS_PER_SECOND;
+        Map<String, Double> latencies = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> stage : stageLatencyNanos.entrySet()) {
+            latencies.put(stage.getKey(), stage.getValue() / 1_000_000.0);
+        }
+        lastStats = new Stats(processedInWindow / seconds, droppedInWindow / seconds,
+                Collections.unmodifiableMap(latencies));
+        windowStartNanos = nowNanos;
+        processedInWindow = 0;
+        droppedInWindow = 0;
+        return lastStats;
+    }
+
+    /**
+     * @return The stats of the last completed reporting interval, or null if none has completed yet.
+     */
+    public synchronized Stats getLastStats() {
+        return lastStats;
+    }
+
+    /**
+     * Forgets all latencies and counters. Called when the analyzed stage changes,
+     * since its cost is unrelated to the previous stage's.
+     */
+    public synchronized void reset() {
+        gatedLatencyNanos = 0;
+        lastAdmittedNanos = Long.MIN_VALUE;
+        stageLatencyNanos.clear();
+        windowStartNanos = Long.MIN_VALUE;
+        processedInWindow = 0;
+        droppedInWindow = 0;
+    }
+
+    private void recordLatency(String stage, long latencyNanos) {
+        Double previous = stageLatencyNanos.get(stage);
+        stageLatencyNanos.put(stage, previous == null ? latencyNanos : smooth(previous, latencyNanos));
+    }
+
+    private void startWindowIfNeeded(long nowNanos) {
+        if (windowStartNanos == Long.MIN_VALUE) {
+            windowStartNanos = nowNanos;
+        }
+    }
+
+    private static double smooth(double average, long sample) {
+        return (average == 0) ? sample : average + LATENCY_SMOOTHING * (sample - average);
+    }
+}
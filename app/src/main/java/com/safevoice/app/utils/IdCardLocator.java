@@ -0,0 +1,509 @@
+package com.safevoice.app.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds an ID card in the luma plane of a camera frame and rectifies it, so OCR and face
+ * detection only see the card instead of the whole frame.
+ *
+ * Detection works on a small downsampled copy of the search region (the on-screen guide box
+ * plus a margin): for each side of the card, the outermost strong luma edge in the outer band
+ * of the region is found along every column (or row), and a line is fitted through those points
+ * robustly, which discards stray edges from text printed on the card or the background. The four
+ * lines are intersected into a quad, and the quad is rejected unless it is convex, roughly
+ * rectangular and covers a good part of the region. When no card is found, the guide box
+ * itself is used.
+ *
+ * {@link #rectify} warps the quad into an upright card-shaped NV21 image (luma only, neutral
+ * chroma), which removes perspective skew and shrinks the OCR input to a fixed size.
+ *
+ * All coordinates are upright, i.e. after rotating the frame by its rotation degrees, which
+ * is the space ML Kit reports results in. Buffers are allocated once and reused, so instances
+ * are not thread-safe. This class has no Android dependencies.
+ */
+public class IdCardLocator {
+
+    // ID-1 cards (ISO/IEC 7810) are 85.60 x 53.98 mm.
+    private static final float CARD_ASPECT = 85.60f / 53.98f;
+
+    private static final int GRID_WIDTH = 160;
+    // Share of the region, from each border inward, searched for that side's edge.
+    private static final float EDGE_BAND = 0.4f;
+    // Share of columns (rows) that must contribute an edge point for a side to count.
+    private static final float MIN_SIDE_SUPPORT = 0.4f;
+    private static final float OUTLIER_DISTANCE = 1.5f;
+    private static final int RANSAC_HYPOTHESES = 24;
+    private static final float MIN_AREA_SHARE = 0.25f;
+    private static final float MAX_SIDE_RATIO = 1.5f;
+    private static final int MIN_EDGE_STRENGTH = 24;
+
+    /**
+     * A card outline: four corners in upright frame coordinates, in the order
+     * top-left, top-right, bottom-right, bottom-left.
+     */
+    public static final class Quad {
+        public final float[] points = new float[8];
+        // True if the quad is the detected card, false if it is just the search prior.
+        public boolean detected;
+
+        void set(int corner, float x, float y) {
+            points[corner * 2] = x;
+            points[corner * 2 + 1] = y;
+        }
+    }
+
+    private final int rectifiedLongSide;
+    private final int rectifiedShortSide;
+    private final byte[] rectified;
+    private int rectifiedWidth;
+    private int rectifiedHeight;
+
+    // Downsampled luma and the per-side edge points, reused between frames.
+    private int[] grid = new int[0];
+    private final float[] points = new float[GRID_WIDTH * 2 * 2];
+    private final float[] corners = new float[4 * 2];
+    private final float[] line = new float[4 * 2];
+
+    // Homography of the last rectification: unit square to upright frame coordinates.
+    private final float[] homography = new float[8];
+
+    // Affine map from upright to sensor coordinates of the current frame.
+    private float ax, bx, cx, ay, by, cy;
+
+    /**
+     * @param rectifiedLongSide Length, in pixels, of the rectified card's long side.
+     *                          The short side follows from the ID-1 aspect ratio.
+     */
+    public IdCardLocator(int rectifiedLongSide) {
+        this.rectifiedLongSide = rectifiedLongSide;
+        this.rectifiedShortSide = Math.round(rectifiedLongSide / CARD_ASPECT);
+        // NV21: a full-size luma plane followed by interleaved chroma at quarter size.
+        this.rectified = new byte[rectifiedLongSide * rectifiedShortSide * 3 / 2];
+    }
+
+    /**
+     * Looks for the card inside the prior region, expanded by a margin.
+     *
+     * @param priorLeft Left edge of the guide box in upright frame coordinates (and so on).
+     * @param out       Receives the card outline, or the prior rectangle if no card was found.
+     * @return true if a card was detected.
+     */
+    public boolean locate(ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                          int frameWidth, int frameHeight, int rotationDegrees,
+                          float priorLeft, float priorTop, float priorRight, float priorBottom,
+                          Quad out) {
+        setFrame(frameWidth, frameHeight, rotationDegrees);
+        boolean swapped = (rotationDegrees == 90 || rotationDegrees == 270);
+        int uprightWidth = swapped ? frameHeight : frameWidth;
+        int uprightHeight = swapped ? frameWidth : frameHeight;
+
+        out.detected = false;
+        out.set(0, priorLeft, priorTop);
+        out.set(1, priorRight, priorTop);
+        out.set(2, priorRight, priorBottom);
+        out.set(3, priorLeft, priorBottom);
+
+        // Search a margin around the prior, since the card rarely sits exactly in the box.
+        float marginX = (priorRight - priorLeft) * 0.1f;
+        float marginY = (priorBottom - priorTop) * 0.1f;
+        float left = Math.max(0, priorLeft - marginX);
+        float top = Math.max(0, priorTop - marginY);
+        float right = Math.min(uprightWidth, priorRight + marginX);
+        float bottom = Math.min(uprightHeight, priorBottom + marginY);
+        if (right - left < 16 || bottom - top < 16) {
+            return false;
+        }
+
+        float step = (right - left) / GRID_WIDTH;
+        int gridHeight = Math.max(8, Math.min(GRID_WIDTH * 2, Math.round((bottom - top) / step)));
+        if (grid.length < GRID_WIDTH * gridHeight) {
+            grid = new int[GRID_WIDTH * gridHeight];
+        }
+        int yBase = yPlane.position();
+        for (int r = 0; r < gridHeight; r++) {
+            float uy = top + (r + 0.5f) * step;
+            for (int c = 0; c < GRID_WIDTH; c++) {
+                float ux = left + (c + 0.5f) * step;
+                int sx = clamp((int) (ax * ux + bx * uy + cx), frameWidth - 1);
+                int sy = clamp((int) (ay * ux + by * uy + cy), frameHeight - 1);
+                grid[r * GRID_WIDTH + c] = yPlane.get(yBase + sy * yRowStride + sx * yPixelStride) & 0xFF;
+            }
+        }
+
+        // Lines are stored as (slope, intercept): rows as a function of column for top/bottom,
+        // columns as a function of row for left/right.
+        if (!fitSide(gridHeight, true, false, 0)
+                || !fitSide(gridHeight, true, true, 1)
+                || !fitSide(gridHeight, false, false, 2)
+                || !fitSide(gridHeight, false, true, 3)) {
+            return false;
+        }
+
+        // top-left, top-right, bottom-right, bottom-left
+        intersect(0, 2, corners, 0);
+        intersect(0, 3, corners, 2);
+        intersect(1, 3, corners, 4);
+        intersect(1, 2, corners, 6);
+        if (!isPlausible(corners, GRID_WIDTH, gridHeight)) {
+            return false;
+        }
+
+        for (int i = 0; i < 4; i++) {
+            out.set(i, left + (corners[i * 2] + 0.5f) * step, top + (corners[i * 2 + 1] + 0.5f) * step);
+        }
+        out.detected = true;
+        return true;
+    }
+
+    /**
+     * Warps the quad into an upright card image, with the long side horizontal unless the card
+     * is held upright. Reuses an internal buffer, so the result is only valid until the next call.
+     *
+     * @return The rectified card as NV21 bytes; see {@link #getRectifiedWidth()} and
+     * {@link #getRectifiedHeight()} for its size.
+     */
+    public byte[] rectify(ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                          int frameWidth, int frameHeight, int rotationDegrees, Quad quad) {
+        setFrame(frameWidth, frameHeight, rotationDegrees);
+        float[] p = quad.points;
+        float widthEstimate = distance(p, 0, 1) + distance(p, 3, 2);
+        float heightEstimate = distance(p, 0, 3) + distance(p, 1, 2);
+        boolean portrait = heightEstimate > widthEstimate;
+        rectifiedWidth = portrait ? rectifiedShortSide : rectifiedLongSide;
+        rectifiedHeight = portrait ? rectifiedLongSide : rectifiedShortSide;
+        computeHomography(p);
+
+        // The homography's numerators and denominator are linear in u, so step them along each
+        // row and fold the upright-to-sensor map in, leaving one division per pixel.
+        float[] h = homography;
+        float du = 1f / rectifiedWidth;
+        float sxU = ax * h[0] + bx * h[3] + cx * h[6];
+        float syU = ay * h[0] + by * h[3] + cy * h[6];
+        int yBase = yPlane.position();
+        int maxX = frameWidth - 1;
+        int maxY = frameHeight - 1;
+        int index = 0;
+        for (int oy = 0; oy < rectifiedHeight; oy++) {
+            float v = (oy + 0.5f) / rectifiedHeight;
+            float u = 0.5f * du;
+            // Sensor x * w, sensor y * w and w at the row's first pixel.
+            float numeratorX = (ax * h[0] + bx * h[3]) * u + (ax * h[1] + bx * h[4]) * v + ax * h[2] + bx * h[5]
+                    + cx * (h[6] * u + h[7] * v + 1f);
+            float numeratorY = (ay * h[0] + by * h[3]) * u + (ay * h[1] + by * h[4]) * v + ay * h[2] + by * h[5]
+                    + cy * (h[6] * u + h[7] * v + 1f);
+            float w = h[6] * u + h[7] * v + 1f;
+            float stepX = sxU * du;
+            float stepY = syU * du;
+            float stepW = h[6] * du;
+            for (int ox = 0; ox < rectifiedWidth; ox++) {
+                float inverse = 1f / w;
+                float sx = numeratorX * inverse;
+                float sy = numeratorY * inverse;
+                numeratorX += stepX;
+                numeratorY += stepY;
+                w += stepW;
+
+                int x0 = (int) sx;
+                int y0 = (int) sy;
+                float fx = sx - x0;
+                float fy = sy - y0;
+                if (x0 < 0 || y0 < 0 || x0 >= maxX || y0 >= maxY) {
+                    // Off the frame edge: clamp and skip the blend.
+                    x0 = clamp(x0, maxX);
+                    y0 = clamp(y0, maxY);
+                    rectified[index++] = yPlane.get(yBase + y0 * yRowStride + x0 * yPixelStride);
+                    continue;
+                }
+
+                int offset = yBase + y0 * yRowStride + x0 * yPixelStride;
+                int p00 = yPlane.get(offset) & 0xFF;
+                int p01 = yPlane.get(offset + yPixelStride) & 0xFF;
+                int p10 = yPlane.get(offset + yRowStride) & 0xFF;
+                int p11 = yPlane.get(offset + yRowStride + yPixelStride) & 0xFF;
+                float topValue = p00 + (p01 - p00) * fx;
+                float bottomValue = p10 + (p11 - p10) * fx;
+                rectified[index++] = (byte) (topValue + (bottomValue - topValue) * fy + 0.5f);
+            }
+        }
+        // Neutral chroma: OCR and face detection only need luma.
+        int chromaEnd = rectifiedWidth * rectifiedHeight * 3 / 2;
+        for (int i = index; i < chromaEnd; i++) {
+            rectified[i] = (byte) 128;
+        }
+        return rectified;
+    }
+
+    public int getRectifiedWidth() {
+        return rectifiedWidth;
+    }
+
+    public int getRectifiedHeight() {
+        return rectifiedHeight;
+    }
+
+    /**
+     * Maps a point of the last rectified image back to upright frame coordinates,
+     * e.g. to crop a face found on the rectified card from the full-colour frame.
+     *
+     * @param out Receives x and y.
+     */
+    public void mapToFrame(float x, float y, float[] out) {
+        float[] h = homography;
+        float u = x / rectifiedWidth;
+        float v = y / rectifiedHeight;
+        float w = h[6] * u + h[7] * v + 1f;
+        out[0] = (h[0] * u + h[1] * v + h[2]) / w;
+        out[1] = (h[3] * u + h[4] * v + h[5]) / w;
+    }
+
+    /**
+     * Maps a rectangle on a preview that scales the frame to fill it (center-crop, as
+     * PreviewView's default FILL_CENTER does) into upright frame coordinates.
+     *
+     * @param out Receives left, top, right and bottom.
+     */
+    public static void viewRectToFrame(float viewWidth, float viewHeight,
+                                       float left, float top, float right, float bottom,
+                                       int uprightWidth, int uprightHeight, float[] out) {
+        float scale = Math.max(viewWidth / uprightWidth, viewHeight / uprightHeight);
+        float offsetX = (uprightWidth * scale - viewWidth) / 2f;
+        float offsetY = (uprightHeight * scale - viewHeight) / 2f;
+        out[0] = Math.max(0, (left + offsetX) / scale);
+        out[1] = Math.max(0, (top + offsetY) / scale);
+        out[2] = Math.min(uprightWidth, (right + offsetX) / scale);
+        out[3] = Math.min(uprightHeight, (bottom + offsetY) / scale);
+    }
+
+    private void setFrame(int frameWidth, int frameHeight, int rotationDegrees) {
+        int maxX = frameWidth - 1;
+        int maxY = frameHeight - 1;
+        switch (rotationDegrees) {
+            case 90:
+                ax = 0; bx = 1; cx = 0;
+                ay = -1; by = 0; cy = maxY;
+                break;
+            case 180:
+                ax = -1; bx = 0; cx = maxX;
+                ay = 0; by = -1; cy = maxY;
+                break;
+            case 270:
+                ax = 0; bx = -1; cx = maxX;
+                ay = 1; by = 0; cy = 0;
+                break;
+            default:
+                ax = 1; bx = 0; cx = 0;
+                ay = 0; by = 1; cy = 0;
+                break;
+        }
+    }
+
+    /**
+     * Collects one edge point along every column (horizontal sides) or row (vertical sides)
+     * in the side's band, then fits a line through them into line[side].
+     *
+     * Scanning from the region border inward, the first edge at least half as strong as the
+     * strongest one in the band is taken: the card border is the outermost strong edge, while
+     * printed text and photo edges lie further in.
+     */
+    private boolean fitSide(int gridHeight, boolean horizontal, boolean far, int side) {
+        int across = horizontal ? GRID_WIDTH : gridHeight;  // positions along the side
+        int depth = horizontal ? gridHeight : GRID_WIDTH;   // positions into the region
+        int band = Math.max(3, (int) (depth * EDGE_BAND));
+        int first = (int) (across * 0.1f);
+        int last = (int) (across * 0.9f);
+
+        int count = 0;
+        for (int a = first; a < last; a++) {
+            int strongest = 0;
+            for (int k = 1; k < band; k++) {
+                strongest = Math.max(strongest, edgeStrength(horizontal, a, far ? depth - 1 - k : k));
+            }
+            if (strongest < MIN_EDGE_STRENGTH) {
+                continue;
+            }
+            for (int k = 1; k < band; k++) {
+                int d = far ? depth - 1 - k : k;
+                if (edgeStrength(horizontal, a, d) * 2 >= strongest) {
+                    points[count * 2] = a;
+                    points[count * 2 + 1] = d;
+                    count++;
+                    break;
+                }
+            }
+        }
+        int minimum = (int) ((last - first) * MIN_SIDE_SUPPORT);
+        if (count < minimum) {
+            return false;
+        }
+
+        // Small deterministic RANSAC: try lines through pairs of points half the side apart
+        // and keep the one most points agree with, so stray edges cannot drag the fit.
+        int half = count / 2;
+        int bestInliers = 0;
+        float bestSlope = 0f;
+        float bestIntercept = 0f;
+        int hypotheses = Math.min(RANSAC_HYPOTHESES, half);
+        for (int h = 0; h < hypotheses; h++) {
+            int i = h * half / hypotheses;
+            int j = i + half;
+            float da = points[j * 2] - points[i * 2];
+            if (da == 0f) {
+                continue;
+            }
+            float slope = (points[j * 2 + 1] - points[i * 2 + 1]) / da;
+            float intercept = points[i * 2 + 1] - slope * points[i * 2];
+            int inliers = countInliers(count, slope, intercept);
+            if (inliers > bestInliers) {
+                bestInliers = inliers;
+                bestSlope = slope;
+                bestIntercept = intercept;
+            }
+        }
+        if (bestInliers < minimum) {
+            return false;
+        }
+
+        // Refine with a least-squares fit over the inliers only.
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            float a = points[i * 2];
+            float d = points[i * 2 + 1];
+            if (Math.abs(bestSlope * a + bestIntercept - d) <= OUTLIER_DISTANCE) {
+                points[kept * 2] = a;
+                points[kept * 2 + 1] = d;
+                kept++;
+            }
+        }
+        return fitLine(points, kept, side);
+    }
+
+    private int edgeStrength(boolean horizontal, int a, int d) {
+        int before = horizontal ? grid[(d - 1) * GRID_WIDTH + a] : grid[a * GRID_WIDTH + d - 1];
+        int after = horizontal ? grid[(d + 1) * GRID_WIDTH + a] : grid[a * GRID_WIDTH + d + 1];
+        return Math.abs(after - before);
+    }
+
+    private int countInliers(int count, float slope, float intercept) {
+        int inliers = 0;
+        for (int i = 0; i < count; i++) {
+            if (Math.abs(slope * points[i * 2] + intercept - points[i * 2 + 1]) <= OUTLIER_DISTANCE) {
+                inliers++;
+            }
+        }
+        return inliers;
+    }
+
+    /**
+     * Least-squares fit of d = slope * a + intercept.
+     */
+    private boolean fitLine(float[] points, int count, int side) {
+        if (count < 2) {
+            return false;
+        }
+        double sumA = 0, sumD = 0, sumAA = 0, sumAD = 0;
+        for (int i = 0; i < count; i++) {
+            double a = points[i * 2];
+            double d = points[i * 2 + 1];
+            sumA += a;
+            sumD += d;
+            sumAA += a * a;
+            sumAD += a * d;
+        }
+        double denominator = count * sumAA - sumA * sumA;
+        if (denominator == 0) {
+            return false;
+        }
+        double slope = (count * sumAD - sumA * sumD) / denominator;
+        line[side * 2] = (float) slope;
+        line[side * 2 + 1] = (float) ((sumD - slope * sumA) / count);
+        return true;
+    }
+
+    /**
+     * Intersects a horizontal side (row = s * col + t) with a vertical side (col = s * row + t).
+     */
+    private void intersect(int horizontalSide, int verticalSide, float[] out, int offset) {
+        float sh = line[horizontalSide * 2];
+        float th = line[horizontalSide * 2 + 1];
+        float sv = line[verticalSide * 2];
+        float tv = line[verticalSide * 2 + 1];
+        float row = (sh * tv + th) / (1f - sh * sv);
+        out[offset] = sv * row + tv;
+        out[offset + 1] = row;
+    }
+
+    private static boolean isPlausible(float[] c, int width, int height) {
+        for (int i = 0; i < 4; i++) {
+            float x = c[i * 2];
+            float y = c[i * 2 + 1];
+            if (Float.isNaN(x) || Float.isNaN(y) || x < -2 || y < -2 || x > width + 1 || y > height + 1) {
+                return false;
+            }
+        }
+        // Convex, with the corners in clockwise order: every turn has the same sign.
+        for (int i = 0; i < 4; i++) {
+            int j = (i + 1) % 4;
+            int k = (i + 2) % 4;
+            float cross = (c[j * 2] - c[i * 2]) * (c[k * 2 + 1] - c[j * 2 + 1])
+                    - (c[j * 2 + 1] - c[i * 2 + 1]) * (c[k * 2] - c[j * 2]);
+            if (cross <= 0) {
+                return false;
+            }
+        }
+        float area = 0;
+        for (int i = 0; i < 4; i++) {
+            int j = (i + 1) % 4;
+            area += c[i * 2] * c[j * 2 + 1] - c[j * 2] * c[i * 2 + 1];
+        }
+        if (Math.abs(area) / 2f < MIN_AREA_SHARE * width * height) {
+            return false;
+        }
+        // Opposite sides of a card seen roughly head-on have similar lengths.
+        return ratio(distance(c, 0, 1), distance(c, 3, 2)) <= MAX_SIDE_RATIO
+                && ratio(distance(c, 0, 3), distance(c, 1, 2)) <= MAX_SIDE_RATIO;
+    }
+
+    /**
+     * Square-to-quad projective mapping (Heckbert): (0,0), (1,0), (1,1), (0,1) map to the
+     * quad's top-left, top-right, bottom-right and bottom-left corners.
+     */
+    private void computeHomography(float[] p) {
+        float x0 = p[0], y0 = p[1], x1 = p[2], y1 = p[3];
+        float x2 = p[4], y2 = p[5], x3 = p[6], y3 = p[7];
+        float dx3 = x0 - x1 + x2 - x3;
+        float dy3 = y0 - y1 + y2 - y3;
+        float g = 0f;
+        float h = 0f;
+        if (dx3 != 0f || dy3 != 0f) {
+            float dx1 = x1 - x2;
+            float dx2 = x3 - x2;
+            float dy1 = y1 - y2;
+            float dy2 = y3 - y2;
+            float determinant = dx1 * dy2 - dx2 * dy1;
+            g = (dx3 * dy2 - dx2 * dy3) / determinant;
+            h = (dx1 * dy3 - dx3 * dy1) / determinant;
+        }
+        homography[0] = x1 - x0 + g * x1;
+        homography[1] = x3 - x0 + h * x3;
+        homography[2] = x0;
+        homography[3] = y1 - y0 + g * y1;
+        homography[4] = y3 - y0 + h * y3;
+        homography[5] = y0;
+        homography[6] = g;
+        homography[7] = h;
+    }
+
+    private static float distance(float[] p, int i, int j) {
+        float dx = p[i * 2] - p[j * 2];
+        float dy = p[i * 2 + 1] - p[j * 2 + 1];
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static float ratio(float a, float b) {
+        return Math.max(a, b) / Math.max(1e-3f, Math.min(a, b));
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+}
@@ -0,0 +1,467 @@
+package com.safevoice.app.utils;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts identity fields from the OCR text of ID documents and settles on values across frames.
+ *
+ * Every frame's lines are run through a fixed set of document templates, each with its own
+ * precompiled patterns:
+ * - ICAO 9303 machine readable zones (TD1 ID cards, TD2, TD3 passports), with check digits.
+ *   A zone whose check digits all verify is the strongest evidence there is for the fields
+ *   they cover; its name, which no check digit covers, counts like a labelled one.
+ * - Labelled fields ("Name:", "Surname" / "Given names", and the numbered "1." / "2." fields
+ *   of EU driving licences).
+ * - A fallback that takes a line of two or three capitalized words, as the original
+ *   extractor did, minus common document words such as "REPUBLIC" or "IDENTITY".
+ *
+ * Each template votes for the values it found with a weight that reflects how reliable it is.
+ * A field is settled once its leading value has enough weight and is clearly ahead of the
+ * runner-up, so callers can stop running OCR as soon as that happens rather than trusting the
+ * first plausible line. Instances are not thread-safe. This class has no Android dependencies.
+ */
+public class IdFieldExtractor {
+
+    public static final String FIELD_NAME = "name";
+    public static final String FIELD_DOCUMENT_NUMBER = "document_number";
+    public static final String FIELD_DATE_OF_BIRTH = "date_of_birth";   // YYMMDD, as in the MRZ
+    public static final String FIELD_EXPIRY_DATE = "expiry_date";       // YYMMDD, as in the MRZ
+
+    // Vote weights per kind of evidence.
+    static final int WEIGHT_MRZ_VERIFIED = 4;
+    static final int WEIGHT_MRZ_UNVERIFIED = 1;
+    // The name field has no check digit: a verified zone vouches for its numbers and dates, not
+    // for the OCR of its name, so the name needs a second agreeing frame to settle.
+    static final int WEIGHT_MRZ_VERIFIED_NAME = 2;
+    static final int WEIGHT_LABELLED = 2;
+    static final int WEIGHT_HEURISTIC = 1;
+
+    // A value is settled at this weight if it leads the runner-up by at least LEAD_MARGIN.
+    private static final int SETTLE_WEIGHT = 4;
+    private static final int LEAD_MARGIN = 3;
+
+    private static final Pattern MRZ_CHARS = Pattern.compile("^[A-Z0-9<]+$");
+    // Labels may carry a translation, as in "Surname / Nom".
+    private static final String LABEL_END = "\\b(?:\\s*/\\s*\\p{L}+)?\\s*[:.]?\\s*(.*)$";
+    private static final Pattern LABELLED_NAME = Pattern.compile(
+            "^(?:FULL\\s+)?NAME" + LABEL_END, Pattern.CASE_INSENSITIVE);
+    private static final Pattern LABELLED_SURNAME = Pattern.compile(
+            "^(?:SURNAME|LAST\\s+NAME|FAMILY\\s+NAME)" + LABEL_END, Pattern.CASE_INSENSITIVE);
+    private static final Pattern LABELLED_GIVEN_NAMES = Pattern.compile(
+            "^(?:GIVEN\\s+NAMES?|FIRST\\s+NAMES?|FORENAMES?)" + LABEL_END, Pattern.CASE_INSENSITIVE);
+    private static final Pattern LICENCE_SURNAME = Pattern.compile("^1\\s*[.,]\\s*(.+)$");
+    private static final Pattern LICENCE_GIVEN_NAMES = Pattern.compile("^2\\s*[.,]\\s*(.+)$");
+    private static final Pattern PERSON_NAME = Pattern.compile("^(?:[A-Z][A-Za-z'-]*\\.? ?){2,3}$");
+    private static final Pattern NAME_VALUE = Pattern.compile("^[\\p{L}][\\p{L}'. -]{1,40}$");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    // Words printed on most documents that the capitalized-words fallback would mistake for names.
+    private static final Set<String> DOCUMENT_WORDS = new HashSet<>(Arrays.asList(
+            "REPUBLIC", "REPUBLIQUE", "IDENTITY", "IDENTITE", "CARD", "NATIONAL", "GOVERNMENT",
+            "PASSPORT", "DRIVING", "DRIVER", "DRIVERS", "LICENCE", "LICENSE", "PERMIT", "STATE",
+            "KINGDOM", "UNITED", "FEDERAL", "MINISTRY", "DATE", "BIRTH", "EXPIRY", "SEX", "NATIONALITY",
+            "SIGNATURE", "ISSUED", "RESIDENCE", "AUTHORITY", "OF", "THE"));
+
+    private static final int[] CHECK_WEIGHTS = {7, 3, 1};
+
+    /**
+     * The fields found in a single frame, with the weight each value votes with.
+     */
+    public static final class FrameFields {
+        final Map<String, String> values = new HashMap<>();
+        final Map<String, Integer> weights = new HashMap<>();
+
+        /**
+         * Keeps the more reliable of two values found for the same field.
+         */
+        void offer(String field, String value, int weight) {
+            Integer current = weights.get(field);
+            if (current == null || weight > current) {
+                values.put(field, value);
+                weights.put(field, weight);
+            }
+        }
+
+        @Nullable
+        public String get(String field) {
+            return values.get(field);
+        }
+
+        public int getWeight(String field) {
+            Integer weight = weights.get(field);
+            return weight == null ? 0 : weight;
+        }
+    }
+
+    /**
+     * One way of reading fields off a kind of document.
+     */
+    interface Template {
+        void extract(List<String> lines, FrameFields out);
+    }
+
+    private static final List<Template> TEMPLATES = Collections.unmodifiableList(Arrays.<Template>asList(
+            new MrzTemplate(), new LabelledTemplate(), new CapitalizedNameTemplate()));
+
+    // Accumulated weight per field, per normalized value.
+    private final Map<String, Map<String, Integer>> tallies = new HashMap<>();
+    private int framesSeen = 0;
+
+    /**
+     * Extracts the fields of one frame and adds them to the tallies.
+     *
+     * @param lines The OCR text lines of the frame, in reading order.
+     * @return The fields found in this frame alone.
+     */
+    public FrameFields addFrame(List<String> lines) {
+        FrameFields fields = extract(lines);
+        framesSeen++;
+        for (Map.Entry<String, String> entry : fields.values.entrySet()) {
+            Map<String, Integer> tally = tallies.get(entry.getKey());
+            if (tally == null) {
+                tally = new HashMap<>();
+                tallies.put(entry.getKey(), tally);
+            }
+            Integer previous = tally.get(entry.getValue());
+            int weight = fields.getWeight(entry.getKey());
+            tally.put(entry.getValue(), previous == null ? weight : previous + weight);
+        }
+        return fields;
+    }
+
+    /**
+     * Reads the fields of a single frame, without voting.
+     */
+    public static FrameFields extract(List<String> lines) {
+        FrameFields fields = new FrameFields();
+        for (Template template : TEMPLATES) {
+            template.extract(lines, fields);
+        }
+        return fields;
+    }
+
+    /**
+     * @return The value with the most weight so far, or null if the field was never seen.
+     */
+    @Nullable
+    public String getLeader(String field) {
+        Map<String, Integer> tally = tallies.get(field);
+        if (tally == null) {
+            return null;
+        }
+        String leader = null;
+        int best = 0;
+        for (Map.Entry<String, Integer> entry : tally.entrySet()) {
+            if (entry.getValue() > best) {
+                best = entry.getValue();
+                leader = entry.getKey();
+            }
+        }
+        return leader;
+    }
+
+    /**
+     * @return The leading value once it clearly leads, otherwise null.
+     */
+    @Nullable
+    public String getSettled(String field) {
+        Map<String, Integer> tally = tallies.get(field);
+        if (tally == null) {
+            return null;
+        }
+        String leader = null;
+        int best = 0;
+        int runnerUp = 0;
+        for (Map.Entry<String, Integer> entry : tally.entrySet()) {
+            int weight = entry.getValue();
+            if (weight > best) {
+                runnerUp = best;
+                best = weight;
+                leader = entry.getKey();
+            } else if (weight > runnerUp) {
+                runnerUp = weight;
+            }
+        }
+        return (best >= SETTLE_WEIGHT && best - runnerUp >= LEAD_MARGIN) ? leader : null;
+    }
+
+    public int getFramesSeen() {
+        return framesSeen;
+    }
+
+    public void reset() {
+        tallies.clear();
+        framesSeen = 0;
+    }
+
+    /**
+     * Turns an upper-case name into display form: "ANNA MARIA ERIKSSON" becomes "Anna Maria Eriksson".
+     */
+    public static String toDisplayName(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        boolean startOfWord = true;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            builder.append(startOfWord ? Character.toUpperCase(c) : Character.toLowerCase(c));
+            startOfWord = (c == ' ' || c == '-' || c == '\'');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Normalizes a name for voting: upper case, single spaces, no stray punctuation at the ends.
+     */
+    static String normalizeName(String name) {
+        String cleaned = WHITESPACE.matcher(name.trim()).replaceAll(" ").toUpperCase(Locale.ROOT);
+        int end = cleaned.length();
+        while (end > 0 && (cleaned.charAt(end - 1) == '.' || cleaned.charAt(end - 1) == ',')) {
+            end--;
+        }
+        return cleaned.substring(0, end);
+    }
+
+    // --- Templates ---
+
+    /**
+     * ICAO 9303 machine readable zones: TD1 (3 x 30), TD2 (2 x 36) and TD3 (2 x 44).
+     */
+    static final class MrzTemplate implements Template {
+        @Override
+        public void extract(List<String> lines, FrameFields out) {
+            List<String> mrz = new ArrayList<>(3);
+            for (String line : lines) {
+                String candidate = cleanMrzLine(line);
+                if (candidate != null) {
+                    mrz.add(candidate);
+                }
+            }
+            for (int i = 0; i < mrz.size(); i++) {
+                int length = mrz.get(i).length();
+                if (length == 30 && i + 2 < mrz.size()
+                        && mrz.get(i + 1).length() == 30 && mrz.get(i + 2).length() == 30) {
+                    parseTd1(mrz.get(i), mrz.get(i + 1), mrz.get(i + 2), out);
+                    return;
+                }
+                if ((length == 36 || length == 44) && i + 1 < mrz.size() && mrz.get(i + 1).length() == length) {
+                    parseTwoLine(mrz.get(i), mrz.get(i + 1), out);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Strips spaces and common OCR slips, and returns the line if it can be an MRZ line.
+         */
+        @Nullable
+        static String cleanMrzLine(String line) {
+            if (line.length() < 28) {
+                return null;
+            }
+            StringBuilder builder = new StringBuilder(line.length());
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == ' ') {
+                    continue;
+                }
+                // OCR often reads the filler '<' as a guillemet.
+                builder.append(c == '\u00AB' ? '<' : Character.toUpperCase(c));
+            }
+            String cleaned = builder.toString();
+            int length = cleaned.length();
+            if ((length != 30 && length != 36 && length != 44) || cleaned.indexOf('<') < 0) {
+                return null;
+            }
+            return MRZ_CHARS.matcher(cleaned).matches() ? cleaned : null;
+        }
+
+        private static void parseTd1(String line1, String line2, String line3, FrameFields out) {
+            String documentNumber = line1.substring(5, 14);
+            String birth = digits(line2.substring(0, 6));
+            String expiry = digits(line2.substring(8, 14));
+            boolean verified = checks(documentNumber, line1.charAt(14))
+                    && checks(birth, line2.charAt(6))
+                    && checks(expiry, line2.charAt(14))
+                    && checks(line1.substring(5, 30) + birth + line2.charAt(6) + expiry + line2.charAt(14)
+                    + line2.substring(18, 29), line2.charAt(29));
+            offerAll(out, mrzName(line3), documentNumber, birth, expiry, verified);
+        }
+
+        private static void parseTwoLine(String line1, String line2, FrameFields out) {
+            int length = line2.length();
+            String documentNumber = line2.substring(0, 9);
+            String birth = digits(line2.substring(13, 19));
+            String expiry = digits(line2.substring(21, 27));
+            boolean verified = checks(documentNumber, line2.charAt(9))
+                    && checks(birth, line2.charAt(19))
+                    && checks(expiry, line2.charAt(27))
+                    && checks(line2.substring(0, 10) + birth + line2.charAt(19) + expiry
+                    + line2.substring(27, length - 1), line2.charAt(length - 1));
+            offerAll(out, mrzName(line1.substring(5)), documentNumber, birth, expiry, verified);
+        }
+
+        private static void offerAll(FrameFields out, @Nullable String name, String documentNumber,
+                                     String birth, String expiry, boolean verified) {
+            int weight = verified ? WEIGHT_MRZ_VERIFIED : WEIGHT_MRZ_UNVERIFIED;
+            if (name != null) {
+                out.offer(FIELD_NAME, name, verified ? WEIGHT_MRZ_VERIFIED_NAME : WEIGHT_MRZ_UNVERIFIED);
+            }
+            out.offer(FIELD_DOCUMENT_NUMBER, trimFiller(documentNumber), weight);
+            out.offer(FIELD_DATE_OF_BIRTH, birth, weight);
+            out.offer(FIELD_EXPIRY_DATE, expiry, weight);
+        }
+
+        /**
+         * "ERIKSSON<<ANNA<MARIA<<<<" becomes "ANNA MARIA ERIKSSON".
+         */
+        @Nullable
+        static String mrzName(String field) {
+            String trimmed = trimFiller(field);
+            int separator = trimmed.indexOf("<<");
+            String surname = (separator < 0 ? trimmed : trimmed.substring(0, separator)).replace('<', ' ').trim();
+            String given = (separator < 0 ? "" : trimmed.substring(separator + 2)).replace('<', ' ').trim();
+            if (surname.isEmpty() || hasDigit(surname) || hasDigit(given)) {
+                return null;
+            }
+            return normalizeName(given.isEmpty() ? surname : given + " " + surname);
+        }
+
+        private static String trimFiller(String value) {
+            int end = value.length();
+            while (end > 0 && value.charAt(end - 1) == '<') {
+                end--;
+            }
+            return value.substring(0, end);
+        }
+
+        /**
+         * Date fields are all digits, so letters there are OCR slips.
+         */
+        private static String digits(String value) {
+            char[] chars = value.toCharArray();
+            for (int i = 0; i < chars.length; i++) {
+                switch (chars[i]) {
+                    case 'O': case 'D': case 'Q': chars[i] = '0'; break;
+                    case 'I': case 'L': chars[i] = '1'; break;
+                    case 'Z': chars[i] = '2'; break;
+                    case 'S': chars[i] = '5'; break;
+                    case 'B': chars[i] = '8'; break;
+                    default: break;
+                }
+            }
+            return new String(chars);
+        }
+
+        private static boolean checks(String value, char checkDigit) {
+            return checkDigit(value) == mrzValue(digits(String.valueOf(checkDigit)).charAt(0));
+        }
+
+        /**
+         * ICAO 9303 check digit: character values weighted 7, 3, 1 repeating, modulo 10.
+         */
+        static int checkDigit(String value) {
+            int sum = 0;
+            for (int i = 0; i < value.length(); i++) {
+                sum += mrzValue(value.charAt(i)) * CHECK_WEIGHTS[i % 3];
+            }
+            return sum % 10;
+        }
+
+        private static int mrzValue(char c) {
+            if (c >= '0' && c <= '9') {
+                return c - '0';
+            }
+            if (c >= 'A' && c <= 'Z') {
+                return c - 'A' + 10;
+            }
+            return 0; // '<' filler
+        }
+    }
+
+    /**
+     * Fields introduced by a printed label, on the same line or the next one.
+     */
+    static final class LabelledTemplate implements Template {
+        @Override
+        public void extract(List<String> lines, FrameFields out) {
+            String surname = null;
+            String given = null;
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i).trim();
+                Matcher matcher;
+                if ((matcher = LABELLED_NAME.matcher(line)).matches()) {
+                    String value = valueOrNextLine(matcher.group(1), lines, i);
+                    if (value != null) {
+                        out.offer(FIELD_NAME, normalizeName(value), WEIGHT_LABELLED);
+                    }
+                } else if ((matcher = LABELLED_SURNAME.matcher(line)).matches()
+                        || (matcher = LICENCE_SURNAME.matcher(line)).matches()) {
+                    surname = valueOrNextLine(matcher.group(1), lines, i);
+                } else if ((matcher = LABELLED_GIVEN_NAMES.matcher(line)).matches()
+                        || (matcher = LICENCE_GIVEN_NAMES.matcher(line)).matches()) {
+                    given = valueOrNextLine(matcher.group(1), lines, i);
+                }
+            }
+            if (surname != null && given != null) {
+                out.offer(FIELD_NAME, normalizeName(given + " " + surname), WEIGHT_LABELLED);
+            }
+        }
+
+        @Nullable
+        private static String valueOrNextLine(String sameLine, List<String> lines, int index) {
+            String value = sameLine.trim();
+            if (value.isEmpty() && index + 1 < lines.size()) {
+                value = lines.get(index + 1).trim();
+            }
+            return (NAME_VALUE.matcher(value).matches() && !hasDigit(value)) ? value : null;
+        }
+    }
+
+    /**
+     * The original heuristic: a short line of two or three capitalized words.
+     */
+    static final class CapitalizedNameTemplate implements Template {
+        @Override
+        public void extract(List<String> lines, FrameFields out) {
+            for (String line : lines) {
+                String trimmed = line.trim();
+                if (trimmed.length() >= 30 || hasDigit(trimmed) || !PERSON_NAME.matcher(trimmed).matches()) {
+                    continue;
+                }
+                if (!containsDocumentWord(trimmed)) {
+                    out.offer(FIELD_NAME, normalizeName(trimmed), WEIGHT_HEURISTIC);
+                    return;
+                }
+            }
+        }
+
+        private static boolean containsDocumentWord(String line) {
+            for (String word : WHITESPACE.split(line.toUpperCase(Locale.ROOT))) {
+                if (DOCUMENT_WORDS.contains(word.replace(".", ""))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static boolean hasDigit(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.isDigit(value.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -20,6 +20,53 @@ public class ImageUtils {
     // Private constructor to prevent instantiation of this utility class.
     private ImageUtils() {}
 
+    /**
+     * Crops a face straight from the YUV planes of a camera frame into a model input tensor.
+     * Unlike {@link #cropAndConvert}, this reads only the pixels inside the crop, honours the
+     * plane strides and the frame rotation, and skips the JPEG encode/decode and the Bitmap.
+     *
+     * @param imageProxy The YUV_420_888 frame from the camera. It must still be open.
+     * @param cropRect   The face bounding box in upright (rotated) coordinates, as ML Kit reports it.
+     * @param converter  A reusable converter whose size matches the model input.
+     * @param output     The model input buffer (native order). The tensor is written at its
+     *                   current position, which lets callers fill one slot of a batch.
+     * @return true if the tensor was written, false if the frame or crop is unusable.
+     */
+    public static boolean cropToTensor(ImageProxy imageProxy, Rect cropRect,
+                                       YuvTensorConverter converter, ByteBuffer output) {
+        if (imageProxy == null || imageProxy.getFormat() != ImageFormat.YUV_420_888) {
+            return false;
+        }
+        ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+        if (planes.length < 3) {
+            return false;
+        }
+
+        int width = imageProxy.getWidth();
+        int height = imageProxy.getHeight();
+        int rotation = imageProxy.getImageInfo().getRotationDegrees();
+        boolean swapped = (rotation == 90 || rotation == 270);
+        int uprightWidth = swapped ? height : width;
+        int uprightHeight = swapped ? width : height;
+
+        // Clip to the upright frame without allocating a new Rect.
+        int left = Math.max(cropRect.left, 0);
+        int top = Math.max(cropRect.top, 0);
+        int right = Math.min(cropRect.right, uprightWidth);
+        int bottom = Math.min(cropRect.bottom, uprightHeight);
+        if (right <= left || bottom <= top) {
+            return false;
+        }
+
+        converter.convert(
+                planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                width, height, rotation,
+                left, top, right - left, bottom - top,
+                output);
+        return true;
+    }
+
     // --- THIS IS THE NEW, SAFE METHOD THAT FIXES THE CRASH ---
     /**
      * EFFICIENTLY crops the raw YUV image data and converts ONLY the cropped region to a Bitmap.
@@ -0,0 +1,118 @@
+package com.safevoice.app.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * FaceVerifier's per-call inference step, kept free of Android and TFLite types so it can
+ * be exercised on the JVM: rewinds a preallocated {@link Binding}, runs the model on it,
+ * and copies the embeddings into caller-owned arrays, dequantizing them if needed.
+ * Nothing is allocated per call. Confined to the inference thread, like FaceVerifier.
+ */
+final class InferenceRunner {
+
+    /**
+     * Runs the model on a binding's buffers; Interpreter::runForMultipleInputsOutputs in the app.
+     */
+    interface Model {
+        void run(Object[] inputs, Map<Integer, Object> outputs);
+    }
+
+    /**
+     * The buffers for one interpreter invocation, plus the holders
+     * runForMultipleInputsOutputs takes; run() would allocate these per call.
+     */
+    static final class Binding {
+        final ByteBuffer inputBuffer;
+        final ByteBuffer outputBuffer;
+        final FloatBuffer outputFloats;
+        final Object[] inputs;
+        final Map<Integer, Object> outputs = new HashMap<>();
+
+        Binding(ByteBuffer inputBuffer, ByteBuffer outputBuffer) {
+            this.inputBuffer = inputBuffer;
+            this.outputBuffer = outputBuffer;
+            this.outputFloats = outputBuffer.asFloatBuffer();
+            this.inputs = new Object[]{inputBuffer};
+            this.outputs.put(0, outputBuffer);
+        }
+    }
+
+    private final Model model;
+    private final int embeddingSize;
+    private final int outputRowBytes;
+
+    // Output dequantization; only used when the output tensor is UINT8 or INT8.
+    private boolean quantizedOutput;
+    private boolean signedOutput;
+    private float outputScale;
+    private int outputZeroPoint;
+
+    /**
+     * @param outputRowBytes The size of one output row: embeddingSize floats, or bytes if quantized.
+     */
+    InferenceRunner(Model model, int embeddingSize, int outputRowBytes) {
+        this.model = model;
+        this.embeddingSize = embeddingSize;
+        this.outputRowBytes = outputRowBytes;
+    }
+
+    /**
+     * Dequantizes output rows with the output tensor's parameters, instead of reading them as floats.
+     */
+    void setOutputQuantization(float scale, int zeroPoint, boolean signed) {
+        this.quantizedOutput = true;
+        this.outputScale = scale;
+        this.outputZeroPoint = zeroPoint;
+        this.signedOutput = signed;
+    }
+
+    /**
+     * Runs one invocation and copies the first embedding into out.
+     */
+    void run(Binding binding, float[] out) {
+        invoke(binding);
+        readEmbedding(binding, 0, out);
+    }
+
+    /**
+     * Runs one invocation and copies the first 'rows' embeddings into out[first...].
+     */
+    void run(Binding binding, float[][] out, int first, int rows) {
+        invoke(binding);
+        for (int i = 0; i < rows; i++) {
+            readEmbedding(binding, i, out[first + i]);
+        }
+    }
+
+    private void invoke(Binding binding) {
+        binding.inputBuffer.rewind();
+        binding.outputBuffer.rewind();
+        model.run(binding.inputs, binding.outputs);
+    }
+
+    /**
+     * Copies one output row into out, dequantizing it if the model is quantized.
+     */
+    private void readEmbedding(Binding binding, int row, float[] out) {
+        if (quantizedOutput) {
+            EmbeddingMath.dequantize(binding.outputBuffer, row * outputRowBytes, embeddingSize,
+                    outputScale, outputZeroPoint, signedOutput, out);
+        } else {
+            binding.outputFloats.position(row * embeddingSize);
+            binding.outputFloats.get(out, 0, embeddingSize);
+        }
+    }
+
+    /**
+     * A direct buffer in native order, as the Interpreter reads and writes tensors.
+     */
+    static ByteBuffer allocate(int bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+}
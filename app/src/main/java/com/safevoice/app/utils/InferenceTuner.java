@@ -0,0 +1,322 @@
+package com.safevoice.app.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A Singleton that picks the fastest CPU configuration for a TFLite model on this device.
+ *
+ * The first time a model is loaded, every combination of XNNPACK on/off and 1..N threads
+ * is timed on synthetic input, and the fastest one is stored in SharedPreferences.
+ * Later loads read the stored choice and skip the calibration. The stored choice is keyed
+ * by the device build fingerprint, so an OS update triggers a new calibration.
+ *
+ * The latencies measured by the last calibration are kept as well, for diagnostics.
+ */
+public class InferenceTuner {
+
+    private static final String TAG = "InferenceTuner";
+    private static final String PREFS_NAME = "SafeVoiceInferencePrefs";
+    private static final String KEY_CONFIG_PREFIX = "config_";
+    private static final String KEY_MEASUREMENTS_PREFIX = "measurements_";
+
+    // More threads than this rarely helps a small model and makes calibration slow.
+    private static final int MAX_THREADS = 8;
+    private static final int WARMUP_RUNS = 2;
+    private static final int TIMED_RUNS = 5;
+
+    /**
+     * One CPU execution configuration.
+     */
+    public static final class Config {
+        public final boolean useXnnpack;
+        public final int numThreads;
+
+        public Config(boolean useXnnpack, int numThreads) {
+            this.useXnnpack = useXnnpack;
+            this.numThreads = numThreads;
+        }
+
+        public void applyTo(Interpreter.Options options) {
+            options.setUseXNNPACK(useXnnpack);
+            options.setNumThreads(numThreads);
+        }
+
+        String encode() {
+            return (useXnnpack ? "1" : "0") + ":" + numThreads;
+        }
+
+        static Config decode(String value) {
+            if (value == null) {
+                return null;
+            }
+            String[] parts = value.split(":");
+            if (parts.length != 2) {
+                return null;
+            }
+            try {
+                return new Config("1".equals(parts[0]), Integer.parseInt(parts[1]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "xnnpack=" + (useXnnpack ? "on" : "off") + ", threads=" + numThreads;
+        }
+    }
+
+    /**
+     * The median latency of one configuration during calibration.
+     */
+    public static final class Measurement {
+        public final Config config;
+        public final double medianMillis;
+
+        Measurement(Config config, double medianMillis) {
+            this.config = config;
+            this.medianMillis = medianMillis;
+        }
+
+        @Override
+        public String toString() {
+            return config + ": " + String.format(Locale.US, "%.2f ms", medianMillis);
+        }
+    }
+
+    private static InferenceTuner instance;
+    private final SharedPreferences sharedPreferences;
+    // Measurements per model, loaded from disk or produced by a calibration in this process.
+    private final Map<String, List<Measurement>> measurementsByModel = new HashMap<>();
+
+    // Private constructor to enforce the Singleton pattern.
+    private InferenceTuner(Context context) {
+        sharedPreferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized InferenceTuner getInstance(Context context) {
+        if (instance == null) {
+            instance = new InferenceTuner(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the stored configuration for the model, calibrating first if there is none.
+     * Calibration takes a few hundred milliseconds to a few seconds, so call this off the UI thread.
+     *
+     * @param modelName A stable name for the model, e.g. its asset file name.
+     * @param model     The model, as passed to the Interpreter constructor.
+     */
+    public synchronized Config getConfig(String modelName, ByteBuffer model) {
+        String key = storageKey(modelName);
+        Config stored = Config.decode(sharedPreferences.getString(KEY_CONFIG_PREFIX + key, null));
+        if (stored != null) {
+            return stored;
+        }
+        return calibrate(modelName, model);
+    }
+
+    /**
+     * Times every configuration on synthetic input, stores the fastest and returns it.
+     */
+    public synchronized Config calibrate(String modelName, ByteBuffer model) {
+        List<Measurement> measurements = new ArrayList<>();
+        int maxThreads = Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
+        for (boolean useXnnpack : new boolean[]{true, false}) {
+            for (int threads = 1; threads <= maxThreads; threads++) {
+                Config config = new Config(useXnnpack, threads);
+                try {
+                    measurements.add(new Measurement(config, measure(model, config)));
+                } catch (RuntimeException e) {
+                    // e.g. an op XNNPACK cannot handle on this device; just leave the config out.
+                    Log.w(TAG, "Could not run " + modelName + " with " + config, e);
+                }
+            }
+        }
+
+        Config best = new Config(true, Math.min(4, maxThreads));
+        double bestMillis = Double.MAX_VALUE;
+        for (Measurement measurement : measurements) {
+            Log.d(TAG, modelName + " " + measurement);
+            if (measurement.medianMillis < bestMillis) {
+                bestMillis = measurement.medianMillis;
+                best = measurement.config;
+            }
+        }
+        Log.i(TAG, "Fastest configuration for " + modelName + ": " + best);
+
+        String key = storageKey(modelName);
+        sharedPreferences.edit()
+                .putString(KEY_CONFIG_PREFIX + key, best.encode())
+                .putString(KEY_MEASUREMENTS_PREFIX + key, encodeMeasurements(measurements))
+                .apply();
+        measurementsByModel.put(key, Collections.unmodifiableList(measurements));
+        return best;
+    }
+
+    /**
+     * @return The latencies measured by the last calibration of the model on this device,
+     * or an empty list if it has never been calibrated.
+     */
+    public synchronized List<Measurement> getMeasurements(String modelName) {
+        String key = storageKey(modelName);
+        List<Measurement> measurements = measurementsByModel.get(key);
+        if (measurements == null) {
+            measurements = Collections.unmodifiableList(
+                    decodeMeasurements(sharedPreferences.getString(KEY_MEASUREMENTS_PREFIX + key, null)));
+            measurementsByModel.put(key, measurements);
+        }
+        return measurements;
+    }
+
+    /**
+     * Forgets every stored choice, so each model is calibrated again on its next load.
+     */
+    public synchronized void reset() {
+        sharedPreferences.edit().clear().apply();
+        measurementsByModel.clear();
+    }
+
+    /**
+     * Runs the model a few times with the given configuration and returns the median latency,
+     * at the batch of one face that the camera path runs.
+     */
+    private static double measure(ByteBuffer model, Config config) {
+        Interpreter.Options options = new Interpreter.Options();
+        config.applyTo(options);
+        Interpreter interpreter = new Interpreter(model, options);
+        try {
+            resizeToSingleFace(interpreter);
+            ByteBuffer input = syntheticInput(interpreter.getInputTensor(0));
+            ByteBuffer output = ByteBuffer.allocateDirect(interpreter.getOutputTensor(0).numBytes());
+            output.order(ByteOrder.nativeOrder());
+            Object[] inputs = new Object[]{input};
+            Map<Integer, Object> outputs = new HashMap<>();
+            outputs.put(0, output);
+
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                runOnce(interpreter, inputs, outputs, input, output);
+            }
+            long[] timings = new long[TIMED_RUNS];
+            for (int i = 0; i < TIMED_RUNS; i++) {
+                long start = System.nanoTime();
+                runOnce(interpreter, inputs, outputs, input, output);
+                timings[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(timings);
+            return timings[TIMED_RUNS / 2] / 1_000_000.0;
+        } finally {
+            interpreter.close();
+        }
+    }
+
+    /**
+     * Resizes the input to a batch of one, as FaceVerifier does for a single face. A model that
+     * refuses is timed at its own batch size, which is what FaceVerifier then falls back to.
+     */
+    private static void resizeToSingleFace(Interpreter interpreter) {
+        int[] shape = interpreter.getInputTensor(0).shape();
+        if (shape.length == 0 || shape[0] == 1) {
+            return;
+        }
+        int[] singleFace = shape.clone();
+        singleFace[0] = 1;
+        try {
+            interpreter.resizeInput(0, singleFace);
+            interpreter.allocateTensors();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Log.w(TAG, "Timing at batch " + shape[0] + "; model does not accept a batch of 1.", e);
+            interpreter.resizeInput(0, shape);
+            interpreter.allocateTensors();
+        }
+    }
+
+    private static void runOnce(Interpreter interpreter, Object[] inputs, Map<Integer, Object> outputs,
+                                ByteBuffer input, ByteBuffer output) {
+        input.rewind();
+        output.rewind();
+        interpreter.runForMultipleInputsOutputs(inputs, outputs);
+    }
+
+    /**
+     * Fills an input tensor with noise in the model's value range. Real face crops are not
+     * needed: the model does the same work for any input, but all-zero input can hit fast paths.
+     */
+    private static ByteBuffer syntheticInput(Tensor tensor) {
+        ByteBuffer input = ByteBuffer.allocateDirect(tensor.numBytes());
+        input.order(ByteOrder.nativeOrder());
+        Random random = new Random(42);
+        if (tensor.dataType() == DataType.FLOAT32) {
+            while (input.remaining() >= 4) {
+                input.putFloat(random.nextFloat() * 2f - 1f);
+            }
+        } else {
+            byte[] bytes = new byte[input.capacity()];
+            random.nextBytes(bytes);
+            input.put(bytes);
+        }
+        input.rewind();
+        return input;
+    }
+
+    private static String storageKey(String modelName) {
+        return modelName + "@" + Build.FINGERPRINT;
+    }
+
+    private static String encodeMeasurements(List<Measurement> measurements) {
+        JSONArray array = new JSONArray();
+        try {
+            for (Measurement measurement : measurements) {
+                JSONObject json = new JSONObject();
+                json.put("config", measurement.config.encode());
+                json.put("medianMillis", measurement.medianMillis);
+                array.put(json);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Error encoding measurements", e);
+        }
+        return array.toString();
+    }
+
+    private static List<Measurement> decodeMeasurements(String value) {
+        List<Measurement> measurements = new ArrayList<>();
+        if (value == null) {
+            return measurements;
+        }
+        try {
+            JSONArray array = new JSONArray(value);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject json = array.getJSONObject(i);
+                Config config = Config.decode(json.getString("config"));
+                if (config != null) {
+                    measurements.add(new Measurement(config, json.getDouble("medianMillis")));
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Error parsing stored measurements", e);
+        }
+        return measurements;
+    }
+}
@@ -0,0 +1,162 @@
+package com.safevoice.app.utils;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Decides whether the live face belongs to a present person rather than a photo, by asking for
+ * a randomly chosen action and watching for it in the face signals ML Kit reports every frame:
+ * - BLINK: both eyes open, then closed, then open again;
+ * - TURN_LEFT / TURN_RIGHT: the head goes from facing the camera to turned the asked way.
+ * A printed or on-screen photo keeps its eye-open probability and head pose, so it cannot
+ * answer; because the action is random, neither can a clip recorded for a different one.
+ *
+ * Each step must follow the previous one within WINDOW_NANOS, i.e. the whole action has to fit
+ * a short sliding window. The window is kept as the time each phase was last seen, so a frame
+ * costs a few comparisons, whatever the frame rate. If the action is not seen within
+ * CHALLENGE_TIMEOUT_NANOS of the first face, the check fails.
+ *
+ * Not thread-safe. Times are System.nanoTime() values. This class has no Android dependencies.
+ */
+public class LivenessChecker {
+
+    public enum Challenge {
+        BLINK,
+        TURN_LEFT,
+        TURN_RIGHT
+    }
+
+    public enum Decision {
+        PENDING,
+        LIVE,
+        FAILED
+    }
+
+    // Eye-open probability of both eyes; the gap between them keeps noise from counting as a blink.
+    private static final float EYES_OPEN = 0.7f;
+    private static final float EYES_CLOSED = 0.3f;
+    // Head yaw, in degrees: facing the camera, and turned far enough to count.
+    private static final float FRONTAL_YAW = 10f;
+    private static final float TURNED_YAW = 25f;
+    private static final long WINDOW_NANOS = 1_500_000_000L;
+    private static final long CHALLENGE_TIMEOUT_NANOS = 8_000_000_000L;
+
+    private final Random random;
+    private Challenge challenge;
+    private Decision decision;
+    private long startNanos;
+    private int frames;
+    // Last time each phase of the action was seen, or -1.
+    private long lastRestNanos;     // Eyes open, or head facing the camera.
+    private long lastActionNanos;   // Eyes closed after a rest; unused for turns.
+    private long decisionNanos;
+
+    /**
+     * @param random Source of the challenges; a SecureRandom in production, so they cannot be predicted.
+     */
+    public LivenessChecker(Random random) {
+        this.random = random;
+        reset();
+    }
+
+    /**
+     * Starts over with a new random challenge. The timeout counts from the next face.
+     *
+     * @return The new challenge, to be shown to the user.
+     */
+    public Challenge reset() {
+        Challenge[] challenges = Challenge.values();
+        challenge = challenges[random.nextInt(challenges.length)];
+        decision = Decision.PENDING;
+        startNanos = -1;
+        frames = 0;
+        lastRestNanos = -1;
+        lastActionNanos = -1;
+        decisionNanos = -1;
+        return challenge;
+    }
+
+    public Challenge getChallenge() {
+        return challenge;
+    }
+
+    public Decision getDecision() {
+        return decision;
+    }
+
+    /**
+     * Adds the signals of the face in one frame.
+     *
+     * @param yaw          Head Euler angle Y, in degrees. ML Kit reports it positive when the face
+     *                     looks to the camera's right, which is the person's left.
+     * @param leftEyeOpen  Eye-open probability, or NaN if ML Kit did not classify it.
+     * @param rightEyeOpen Eye-open probability, or NaN if ML Kit did not classify it.
+     * @return The decision so far; once decided, further frames are ignored.
+     */
+    public Decision update(long nowNanos, float yaw, float leftEyeOpen, float rightEyeOpen) {
+        if (decision != Decision.PENDING) {
+            return decision;
+        }
+        if (startNanos < 0) {
+            startNanos = nowNanos;
+        }
+        frames++;
+
+        boolean done;
+        if (challenge == Challenge.BLINK) {
+            done = updateBlink(nowNanos, leftEyeOpen, rightEyeOpen);
+        } else {
+            done = updateTurn(nowNanos, challenge == Challenge.TURN_LEFT ? yaw : -yaw);
+        }
+        if (done) {
+            decide(Decision.LIVE, nowNanos);
+        } else if (nowNanos - startNanos >= CHALLENGE_TIMEOUT_NANOS) {
+            decide(Decision.FAILED, nowNanos);
+        }
+        return decision;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s %s after %d frames in %.0f ms", challenge, decision, frames,
+                decision == Decision.PENDING ? -1.0 : (decisionNanos - startNanos) / 1_000_000.0);
+    }
+
+    private boolean updateBlink(long nowNanos, float leftEyeOpen, float rightEyeOpen) {
+        if (Float.isNaN(leftEyeOpen) || Float.isNaN(rightEyeOpen)) {
+            return false;
+        }
+        if (Math.min(leftEyeOpen, rightEyeOpen) >= EYES_OPEN) {
+            // Open again shortly after closing completes the blink.
+            if (lastActionNanos >= 0 && nowNanos - lastActionNanos <= WINDOW_NANOS) {
+                return true;
+            }
+            lastActionNanos = -1;
+            lastRestNanos = nowNanos;
+        } else if (Math.max(leftEyeOpen, rightEyeOpen) <= EYES_CLOSED) {
+            // Only a closing that follows open eyes counts; eyes that start closed prove nothing.
+            if (lastRestNanos >= 0 && nowNanos - lastRestNanos <= WINDOW_NANOS) {
+                lastActionNanos = nowNanos;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param turn Yaw signed so that positive is the asked direction.
+     */
+    private boolean updateTurn(long nowNanos, float turn) {
+        if (Math.abs(turn) <= FRONTAL_YAW) {
+            lastRestNanos = nowNanos;
+        } else if (turn >= TURNED_YAW) {
+            // A face that was never seen frontal may be a photo held at an angle.
+            return lastRestNanos >= 0 && nowNanos - lastRestNanos <= WINDOW_NANOS;
+        }
+        return false;
+    }
+
+    private void decide(Decision decision, long nowNanos) {
+        this.decision = decision;
+        decisionNanos = nowNanos;
+    }
+}
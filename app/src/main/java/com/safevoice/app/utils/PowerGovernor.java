@@ -0,0 +1,181 @@
+package com.safevoice.app.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Singleton that watches the device's thermal status and battery and tells the camera
+ * pipeline and the voice service how hard they may work, using {@link PowerPolicy}.
+ *
+ * It only watches while someone listens: the first {@link #addListener(Listener)} registers for
+ * thermal status changes (API 29 and up), battery changes and battery saver changes, and the
+ * last {@link #removeListener(Listener)} unregisters. On older devices only the battery counts.
+ * Every level change is logged with its reason. Listeners are called on the main thread.
+ */
+public class PowerGovernor {
+
+    private static final String TAG = "PowerGovernor";
+
+    /**
+     * Receives the level to apply. Called on the main thread.
+     */
+    public interface Listener {
+        void onPowerLevelChanged(PowerPolicy.Level level);
+    }
+
+    private static PowerGovernor instance;
+    private final Context appContext;
+    private final PowerManager powerManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final PowerPolicy policy = new PowerPolicy();
+    private final List<Listener> listeners = new ArrayList<>();
+
+    // Main thread only.
+    private int thermalStatus = PowerPolicy.THERMAL_NONE;
+    private int batteryPercent = PowerPolicy.BATTERY_UNKNOWN;
+    private boolean charging = false;
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+                readBattery(intent);
+            }
+            evaluate();
+        }
+    };
+
+    private boolean recoveryCheckPosted = false;
+    private final Runnable recoveryCheck = () -> {
+        recoveryCheckPosted = false;
+        evaluate();
+    };
+
+    // Private constructor to enforce the Singleton pattern.
+    private PowerGovernor(Context context) {
+        appContext = context.getApplicationContext();
+        powerManager = (PowerManager) appContext.getSystemService(Context.POWER_SERVICE);
+    }
+
+    /**
+     * Gets the single instance of the PowerGovernor.
+     *
+     * @param context Any context; only the application context is kept.
+     * @return The singleton instance of PowerGovernor.
+     */
+    public static synchronized PowerGovernor getInstance(Context context) {
+        if (instance == null) {
+            instance = new PowerGovernor(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Starts delivering levels to the listener, beginning with the current one before this
+     * returns. Call on the main thread.
+     */
+    public void addListener(Listener listener) {
+        if (listeners.contains(listener)) {
+            return;
+        }
+        listeners.add(listener);
+        if (listeners.size() == 1) {
+            startWatching();
+        }
+        listener.onPowerLevelChanged(policy.getLevel());
+    }
+
+    /**
+     * Stops delivering levels to the listener. Call on the main thread.
+     */
+    public void removeListener(Listener listener) {
+        if (listeners.remove(listener) && listeners.isEmpty()) {
+            stopWatching();
+        }
+    }
+
+    /**
+     * @return The level currently in force. Call on the main thread.
+     */
+    public PowerPolicy.Level getLevel() {
+        return policy.getLevel();
+    }
+
+    private void startWatching() {
+        // Start from the current conditions alone, not the hysteresis of the last session.
+        policy.reset();
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        // ACTION_BATTERY_CHANGED is sticky, so the current state comes back right away.
+        Intent battery = appContext.registerReceiver(batteryReceiver, filter);
+        if (battery != null) {
+            readBattery(battery);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            thermalStatus = powerManager.getCurrentThermalStatus();
+            thermalListener = status -> {
+                thermalStatus = status;
+                evaluate();
+            };
+            powerManager.addThermalStatusListener(appContext.getMainExecutor(), thermalListener);
+        }
+        evaluate();
+    }
+
+    private void stopWatching() {
+        appContext.unregisterReceiver(batteryReceiver);
+        if (thermalListener != null) {
+            powerManager.removeThermalStatusListener(thermalListener);
+            thermalListener = null;
+        }
+        mainHandler.removeCallbacks(recoveryCheck);
+        recoveryCheckPosted = false;
+    }
+
+    private void readBattery(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        batteryPercent = level >= 0 && scale > 0 ? level * 100 / scale : PowerPolicy.BATTERY_UNKNOWN;
+        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        charging = status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+    }
+
+    private void evaluate() {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        PowerPolicy.Level previous = policy.getLevel();
+        PowerPolicy.Level level = policy.update(thermalStatus, batteryPercent, charging,
+                powerManager.isPowerSaveMode(), System.nanoTime());
+
+        // Conditions that improved without further events still need to lift the level.
+        if (policy.isRecoveryPending() && !recoveryCheckPosted) {
+            recoveryCheckPosted = mainHandler.postDelayed(recoveryCheck,
+                    TimeUnit.NANOSECONDS.toMillis(PowerPolicy.RECOVERY_HOLD_NANOS));
+        }
+        if (level == previous) {
+            return;
+        }
+        Log.i(TAG, "Power level " + previous + " -> " + level + " (" + policy.getReason() + "): "
+                + "inference thread cap " + (level.maxInferenceThreads > 0 ? level.maxInferenceThreads : "none")
+                + ", resolution x" + level.resolutionScale
+                + ", CPU budget x" + level.cpuBudgetFactor + ", busy recognizer restart delay "
+                + level.listenRestartDelayMillis + " ms");
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onPowerLevelChanged(level);
+        }
+    }
+}
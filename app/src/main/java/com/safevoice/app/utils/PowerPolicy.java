@@ -0,0 +1,149 @@
+package com.safevoice.app.utils;
+
+import java.util.Locale;
+
+/**
+ * Decides how hard the app may work from the device's thermal status and battery.
+ *
+ * The result is a {@link Level}, which carries the settings consumers apply: the inference
+ * thread cap, the camera analysis resolution, the share of time frame analysis may be busy,
+ * and the pause before the voice service listens again when the recognizer is busy.
+ *
+ * The level follows the worst condition:
+ * - thermal status MODERATE gives REDUCED, SEVERE or worse gives MINIMAL;
+ * - on battery, at most REDUCED_BATTERY percent gives REDUCED and at most MINIMAL_BATTERY gives
+ *   MINIMAL; battery saver gives at least REDUCED. A charging device is never limited by its battery.
+ * Worse conditions apply at once. Better ones must last RECOVERY_HOLD_NANOS before the level
+ * goes back up, and only one level at a time, so the camera and model are not rebuilt every
+ * time the temperature hovers around a threshold. Battery thresholds have a hysteresis band
+ * for the same reason; it follows the level the battery alone calls for, so a hot device
+ * does not widen it.
+ *
+ * Not thread-safe. Times are System.nanoTime() values. This class has no Android dependencies.
+ */
+public class PowerPolicy {
+
+    // Same values as PowerManager.THERMAL_STATUS_*.
+    public static final int THERMAL_NONE = 0;
+    public static final int THERMAL_LIGHT = 1;
+    public static final int THERMAL_MODERATE = 2;
+    public static final int THERMAL_SEVERE = 3;
+
+    public static final int BATTERY_UNKNOWN = -1;
+
+    private static final int REDUCED_BATTERY = 30;
+    private static final int MINIMAL_BATTERY = 15;
+    // Percentage points the battery has to climb back above a threshold before it stops applying.
+    private static final int BATTERY_HYSTERESIS = 5;
+
+    public static final long RECOVERY_HOLD_NANOS = 30_000_000_000L;
+
+    public enum Level {
+        //          threads  resolution  CPU budget  listen restart delay
+        FULL(       0,       1.0f,       1.0,        0),
+        REDUCED(    2,       0.75f,      0.6,        0),
+        MINIMAL(    1,       0.5f,       0.3,        1000);
+
+        /** Cap on interpreter threads; 0 keeps the count tuned for the device. */
+        public final int maxInferenceThreads;
+        /** Factor on the camera analysis resolution, per side. */
+        public final float resolutionScale;
+        /** Factor on the share of time frame analysis may be busy, which sets the analyzed frame rate. */
+        public final double cpuBudgetFactor;
+        /** Pause before listening again after ERROR_RECOGNIZER_BUSY; other errors restart at once. */
+        public final long listenRestartDelayMillis;
+
+        Level(int maxInferenceThreads, float resolutionScale, double cpuBudgetFactor, long listenRestartDelayMillis) {
+            this.maxInferenceThreads = maxInferenceThreads;
+            this.resolutionScale = resolutionScale;
+            this.cpuBudgetFactor = cpuBudgetFactor;
+            this.listenRestartDelayMillis = listenRestartDelayMillis;
+        }
+    }
+
+    private Level level = Level.FULL;
+    // What the battery alone called for at the last update, before battery saver.
+    private Level batteryLevel = Level.FULL;
+    private String reason = "no constraints";
+    // When conditions last became better than the current level, or -1 while they are not.
+    private long betterSinceNanos = -1;
+
+    /**
+     * Re-evaluates the level from the current conditions.
+     *
+     * @param thermalStatus  PowerManager.THERMAL_STATUS_* value; THERMAL_NONE if unknown.
+     * @param batteryPercent 0-100, or BATTERY_UNKNOWN.
+     * @param charging       Whether the device is plugged in.
+     * @param powerSave      Whether battery saver is on.
+     * @return The level to apply now.
+     */
+    public Level update(int thermalStatus, int batteryPercent, boolean charging, boolean powerSave, long nowNanos) {
+        Level thermal = thermalStatus >= THERMAL_SEVERE ? Level.MINIMAL
+                : thermalStatus == THERMAL_MODERATE ? Level.REDUCED : Level.FULL;
+        Level battery = Level.FULL;
+        if (!charging && batteryPercent != BATTERY_UNKNOWN) {
+            // Thresholds already crossed stay in force until the battery clears the band.
+            if (batteryPercent <= MINIMAL_BATTERY + (batteryLevel == Level.MINIMAL ? BATTERY_HYSTERESIS : 0)) {
+                battery = Level.MINIMAL;
+            } else if (batteryPercent <= REDUCED_BATTERY + (batteryLevel != Level.FULL ? BATTERY_HYSTERESIS : 0)) {
+                battery = Level.REDUCED;
+            }
+        }
+        batteryLevel = battery;
+        if (powerSave && battery == Level.FULL) {
+            battery = Level.REDUCED;
+        }
+        Level target = worse(thermal, battery);
+        String targetReason = String.format(Locale.US, "thermal status %d, battery %s%s%s", thermalStatus,
+                batteryPercent == BATTERY_UNKNOWN ? "unknown" : batteryPercent + "%",
+                charging ? ", charging" : "", powerSave ? ", battery saver" : "");
+
+        if (target.ordinal() >= level.ordinal()) {
+            betterSinceNanos = -1;
+            level = target;
+            reason = targetReason;
+        } else if (betterSinceNanos < 0) {
+            betterSinceNanos = nowNanos;
+        } else if (nowNanos - betterSinceNanos >= RECOVERY_HOLD_NANOS) {
+            level = Level.values()[level.ordinal() - 1];
+            reason = targetReason + ", recovered";
+            // Another step up needs another hold.
+            betterSinceNanos = target.ordinal() < level.ordinal() ? nowNanos : -1;
+        }
+        return level;
+    }
+
+    /**
+     * Forgets the level, the battery band and any pending recovery, e.g. when watching resumes
+     * after a pause: conditions from before it say nothing about now.
+     */
+    public void reset() {
+        level = Level.FULL;
+        batteryLevel = Level.FULL;
+        reason = "no constraints";
+        betterSinceNanos = -1;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * @return Why the current level applies, for the log.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return Whether conditions are better than the current level, i.e. another update after
+     *         RECOVERY_HOLD_NANOS may raise it even if nothing else changes.
+     */
+    public boolean isRecoveryPending() {
+        return betterSinceNanos >= 0;
+    }
+
+    private static Level worse(Level a, Level b) {
+        return a.ordinal() >= b.ordinal() ? a : b;
+    }
+}
@@ -0,0 +1,145 @@
+package com.safevoice.app.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the voice trigger phrase in recognizer output.
+ *
+ * Matching ignores case and treats any run of spaces and punctuation as one separator, so
+ * "Help, help!" and "HELP   help" match "help help" just like the plain form. The phrase may
+ * appear anywhere in the text, but only as whole words: "help helpful" and "whelp help" do
+ * not match.
+ *
+ * Recognizers report several alternatives for every utterance and the service listens without
+ * pause, so this runs all the time. It scans the text in place instead of lower-casing a copy,
+ * so it allocates nothing per call, and only compares in full where the first character of the
+ * phrase occurs. Case folding is per character and does not depend on the default locale; the
+ * first character of a match must be the phrase's own first character in lower or upper case.
+ * This class has no Android dependencies and is immutable.
+ */
+public final class TriggerPhraseMatcher {
+
+    /** The phrase the voice service listens for. */
+    public static final String DEFAULT_PHRASE = "help help";
+
+    private final char[][] words;
+    // Both cases of the first character, where a match can start.
+    private final char firstLower;
+    private final char firstUpper;
+
+    /**
+     * @param phrase The trigger phrase; words are separated by spaces or punctuation.
+     * @throws IllegalArgumentException If the phrase has no letters or digits.
+     */
+    public TriggerPhraseMatcher(String phrase) {
+        List<char[]> parsed = new ArrayList<>();
+        int i = 0;
+        while (i < phrase.length()) {
+            while (i < phrase.length() && !isWordChar(phrase.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < phrase.length() && isWordChar(phrase.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                char[] word = new char[i - start];
+                for (int j = 0; j < word.length; j++) {
+                    word[j] = fold(phrase.charAt(start + j));
+                }
+                parsed.add(word);
+            }
+        }
+        if (parsed.isEmpty()) {
+            throw new IllegalArgumentException("Trigger phrase has no words: \"" + phrase + "\"");
+        }
+        words = parsed.toArray(new char[0][]);
+        firstLower = words[0][0];
+        firstUpper = Character.toUpperCase(firstLower);
+    }
+
+    /**
+     * @return Whether the phrase occurs in the text.
+     */
+    public boolean matches(String text) {
+        // Candidates are found with indexOf, which the VM vectorizes, for both cases of the
+        // first character; only those are compared in full.
+        int lower = text.indexOf(firstLower);
+        int upper = (firstUpper != firstLower) ? text.indexOf(firstUpper) : -1;
+        while (lower >= 0 || upper >= 0) {
+            boolean lowerFirst = upper < 0 || (lower >= 0 && lower < upper);
+            int start = lowerFirst ? lower : upper;
+            if (matchesAt(text, start)) {
+                return true;
+            }
+            if (lowerFirst) {
+                lower = text.indexOf(firstLower, start + 1);
+            } else {
+                upper = text.indexOf(firstUpper, start + 1);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether any of the alternatives contains the phrase; false for null.
+     */
+    public boolean matchesAny(List<String> alternatives) {
+        if (alternatives == null) {
+            return false;
+        }
+        for (int i = 0; i < alternatives.size(); i++) {
+            String alternative = alternatives.get(i);
+            if (alternative != null && matches(alternative)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesAt(String text, int start) {
+        int length = text.length();
+        if (start > 0 && isWordChar(text.charAt(start - 1))) {
+            return false;
+        }
+        int position = start;
+        for (int w = 0; w < words.length; w++) {
+            if (w > 0) {
+                // Between words: at least one separator, however many there are.
+                int separatorStart = position;
+                while (position < length && !isWordChar(text.charAt(position))) {
+                    position++;
+                }
+                if (position == separatorStart) {
+                    return false;
+                }
+            }
+            char[] word = words[w];
+            if (position + word.length > length) {
+                return false;
+            }
+            for (int i = 0; i < word.length; i++) {
+                if (fold(text.charAt(position + i)) != word[i]) {
+                    return false;
+                }
+            }
+            position += word.length;
+        }
+        return position == length || !isWordChar(text.charAt(position));
+    }
+
+    private static boolean isWordChar(char c) {
+        if (c < 0x80) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+        }
+        return Character.isLetterOrDigit(c);
+    }
+
+    private static char fold(char c) {
+        if (c < 0x80) {
+            return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
@@ -0,0 +1,333 @@
+package com.safevoice.app.utils;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+import com.google.mlkit.vision.text.TextRecognition;
+import com.google.mlkit.vision.text.TextRecognizer;
+import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Singleton that shares the identity verification models across screens: the face
+ * embedding interpreter, the ML Kit text recognizer and face detector, and the thread
+ * all face inference runs on.
+ *
+ * There are two face detectors: a plain one for the face on the ID card, and one for the live
+ * face that also classifies eyes as open or closed, which the liveness check needs.
+ *
+ * Everything is created lazily, on first use. Screens hold a reference with
+ * {@link #acquire()} / {@link #release()} for as long as they use the models. When memory
+ * runs low, {@link #onTrimMemory(int)} closes everything nobody holds; if a screen still
+ * holds a reference, the release waits until it lets go. The next use recreates what is needed.
+ *
+ * FaceVerifier is confined to one thread, so the registry owns that thread: a single worker
+ * with a bounded queue, where submissions beyond the queue are rejected. The verifier is
+ * closed on that thread too, so closing never races an inference.
+ *
+ * {@link #setInferenceThreadCap(int)} limits the verifier's interpreter threads. The
+ * interpreter cannot change its thread count, so a loaded verifier is closed between two
+ * inferences and the next {@link #getFaceVerifier()} loads one with the new cap. Users must
+ * therefore get the verifier again for each inference rather than keep it.
+ */
+public class VisionModelRegistry {
+
+    private static final String TAG = "VisionModelRegistry";
+    public static final int INFERENCE_QUEUE_CAPACITY = 1;  // Tasks waiting for the model; more are rejected.
+    private static final int WARM_UP_FACE_SIZE = 112;
+    private static final int WARM_UP_FRAME_WIDTH = 640;
+    private static final int WARM_UP_FRAME_HEIGHT = 480;
+
+    private static VisionModelRegistry instance;
+    private final Context appContext;
+    private final ThreadPoolExecutor inferenceExecutor;
+
+    // Guarded by 'this'. Never held while a model is being loaded.
+    private FaceVerifier faceVerifier;
+    private TextRecognizer textRecognizer;
+    private FaceDetector faceDetector;
+    private FaceDetector liveFaceDetector;
+    private int references = 0;
+    private int inferenceThreadCap = 0;
+    private boolean reloadPending = false;
+    private boolean releasePending = false;
+    private boolean warmUpStarted = false;
+
+    // Private constructor to enforce the Singleton pattern.
+    private VisionModelRegistry(Context context) {
+        appContext = context.getApplicationContext();
+        inferenceExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(INFERENCE_QUEUE_CAPACITY)) {
+            @Override
+            protected void afterExecute(Runnable task, Throwable error) {
+                super.afterExecute(task, error);
+                releaseIfPending();
+            }
+        };
+    }
+
+    /**
+     * Gets the single instance of the VisionModelRegistry.
+     *
+     * @param context Any context; only the application context is kept.
+     * @return The singleton instance of VisionModelRegistry.
+     */
+    public static synchronized VisionModelRegistry getInstance(Context context) {
+        if (instance == null) {
+            instance = new VisionModelRegistry(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Registers a user of the models. Models it gets stay open until it calls {@link #release()}.
+     */
+    public synchronized void acquire() {
+        references++;
+    }
+
+    /**
+     * Unregisters a user. Its models must not be used afterwards.
+     */
+    public void release() {
+        boolean scheduleRelease;
+        synchronized (this) {
+            if (references == 0) {
+                throw new IllegalStateException("release() without acquire()");
+            }
+            references--;
+            scheduleRelease = releasePending && references == 0;
+        }
+        if (scheduleRelease) {
+            scheduleRelease();
+        }
+    }
+
+    /**
+     * The thread all FaceVerifier calls must run on. Owned by the registry; never shut it down.
+     */
+    public ThreadPoolExecutor getInferenceExecutor() {
+        return inferenceExecutor;
+    }
+
+    /**
+     * Returns the shared FaceVerifier, loading it on first use. The first load on a device
+     * also calibrates the interpreter, so never call this on the UI thread.
+     *
+     * @throws IOException If the model file cannot be loaded.
+     */
+    public FaceVerifier getFaceVerifier() throws IOException {
+        synchronized (this) {
+            if (faceVerifier != null) {
+                return faceVerifier;
+            }
+        }
+        int threadCap;
+        synchronized (this) {
+            threadCap = inferenceThreadCap;
+        }
+        FaceVerifier loaded = new FaceVerifier(appContext, threadCap);
+        synchronized (this) {
+            if (faceVerifier == null && threadCap == inferenceThreadCap) {
+                faceVerifier = loaded;
+                return loaded;
+            }
+        }
+        // Another thread loaded it first, or the cap changed meanwhile; this copy was never used.
+        loaded.close();
+        return getFaceVerifier();
+    }
+
+    /**
+     * Caps the face verifier's interpreter threads; 0 removes the cap. A loaded verifier is
+     * replaced after the inference in progress, if any.
+     */
+    public void setInferenceThreadCap(int maxThreads) {
+        synchronized (this) {
+            if (maxThreads == inferenceThreadCap) {
+                return;
+            }
+            inferenceThreadCap = maxThreads;
+            if (faceVerifier == null) {
+                return;
+            }
+            reloadPending = true;
+        }
+        Log.d(TAG, "Inference thread cap " + maxThreads + ": reloading the face verifier");
+        scheduleRelease();
+    }
+
+    public synchronized TextRecognizer getTextRecognizer() {
+        if (textRecognizer == null) {
+            textRecognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
+        }
+        return textRecognizer;
+    }
+
+    /**
+     * Returns the shared face detector: fast mode, with tracking so faces keep their id across frames.
+     */
+    public synchronized FaceDetector getFaceDetector() {
+        if (faceDetector == null) {
+            FaceDetectorOptions options = new FaceDetectorOptions.Builder()
+                    .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+                    .enableTracking()
+                    .build();
+            faceDetector = FaceDetection.getClient(options);
+        }
+        return faceDetector;
+    }
+
+    /**
+     * Returns the shared detector for live faces: like {@link #getFaceDetector()}, but it also
+     * reports eye-open probabilities.
+     */
+    public synchronized FaceDetector getLiveFaceDetector() {
+        if (liveFaceDetector == null) {
+            FaceDetectorOptions options = new FaceDetectorOptions.Builder()
+                    .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+                    .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_ALL)
+                    .enableTracking()
+                    .build();
+            liveFaceDetector = FaceDetection.getClient(options);
+        }
+        return liveFaceDetector;
+    }
+
+    /**
+     * Loads all models and runs each once on blank input, in the background, so the
+     * verification screen does not pay for loading, calibration or first-run setup.
+     * Does nothing if a warm-up already ran since the models were last released.
+     */
+    public void warmUp() {
+        synchronized (this) {
+            if (warmUpStarted) {
+                return;
+            }
+            warmUpStarted = true;
+        }
+        try {
+            inferenceExecutor.execute(this::runWarmUp);
+        } catch (RejectedExecutionException e) {
+            // The inference thread is busy, so the models are already in use.
+            synchronized (this) {
+                warmUpStarted = false;
+            }
+        }
+    }
+
+    /**
+     * Called from Application.onTrimMemory. Releases the models once nobody holds them.
+     */
+    public void onTrimMemory(int level) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return;
+        }
+        boolean scheduleRelease;
+        synchronized (this) {
+            if (faceVerifier == null && textRecognizer == null && faceDetector == null && liveFaceDetector == null) {
+                return;
+            }
+            releasePending = true;
+            scheduleRelease = references == 0;
+        }
+        Log.d(TAG, "Trim memory level " + level + (scheduleRelease ? ": releasing models" : ": release deferred"));
+        if (scheduleRelease) {
+            scheduleRelease();
+        }
+    }
+
+    private void runWarmUp() {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            Bitmap face = Bitmap.createBitmap(WARM_UP_FACE_SIZE, WARM_UP_FACE_SIZE, Bitmap.Config.ARGB_8888);
+            getFaceVerifier().getFaceEmbedding(face);
+            face.recycle();
+
+            byte[] blank = new byte[WARM_UP_FRAME_WIDTH * WARM_UP_FRAME_HEIGHT * 3 / 2];
+            InputImage frame = InputImage.fromByteArray(blank, WARM_UP_FRAME_WIDTH, WARM_UP_FRAME_HEIGHT, 0,
+                    InputImage.IMAGE_FORMAT_NV21);
+            Tasks.await(getFaceDetector().process(frame));
+            Tasks.await(getLiveFaceDetector().process(frame));
+            Tasks.await(getTextRecognizer().process(frame));
+            Log.d(TAG, "Models warmed up in " + (SystemClock.elapsedRealtime() - start) + " ms");
+        } catch (IOException | ExecutionException e) {
+            Log.w(TAG, "Model warm-up failed.", e);
+            synchronized (this) {
+                warmUpStarted = false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the inference thread to run {@link #releaseIfPending()}. If its queue is full,
+     * the queued task does it when it finishes.
+     */
+    private void scheduleRelease() {
+        try {
+            inferenceExecutor.execute(() -> { });
+        } catch (RejectedExecutionException e) {
+            // Handled by afterExecute of the task ahead in the queue.
+        }
+    }
+
+    /**
+     * Runs on the inference thread after every task.
+     */
+    private void releaseIfPending() {
+        FaceVerifier verifier;
+        TextRecognizer recognizer = null;
+        FaceDetector detector = null;
+        FaceDetector liveDetector = null;
+        boolean releaseAll;
+        synchronized (this) {
+            releaseAll = releasePending && references == 0;
+            if (!releaseAll && !reloadPending) {
+                return;
+            }
+            reloadPending = false;
+            verifier = faceVerifier;
+            faceVerifier = null;
+            if (releaseAll) {
+                releasePending = false;
+                warmUpStarted = false;
+                recognizer = textRecognizer;
+                detector = faceDetector;
+                liveDetector = liveFaceDetector;
+                textRecognizer = null;
+                faceDetector = null;
+                liveFaceDetector = null;
+            }
+        }
+        if (verifier != null) {
+            verifier.close();
+        }
+        if (recognizer != null) {
+            recognizer.close();
+        }
+        if (detector != null) {
+            detector.close();
+        }
+        if (liveDetector != null) {
+            liveDetector.close();
+        }
+        // After a reload only the verifier went; the next getFaceVerifier() applies the new cap.
+        Log.d(TAG, releaseAll ? "Models released." : "Face verifier closed for reload.");
+    }
+}
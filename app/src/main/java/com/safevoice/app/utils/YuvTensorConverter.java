@@ -0,0 +1,232 @@
+package com.safevoice.app.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts a crop of a YUV_420_888 camera frame straight into a normalized float tensor.
+ *
+ * Only the pixels inside the crop are read, honouring each plane's row and pixel strides,
+ * so it works for both planar (I420) and semi-planar (NV12/NV21) layouts without copying
+ * the planes. Luma is sampled bilinearly, chroma with nearest neighbour (it is half
+ * resolution anyway), and each output pixel is written as three floats in R, G, B order,
+ * normalized from [0, 255] to [-1, 1] the same way as FaceVerifier's bitmap path.
+ *
+ * For quantized models, {@link #setQuantization(float, int, boolean)} switches the output to
+ * one byte per channel: the normalized value is quantized with the input tensor's scale and
+ * zero point, so the tensor is a quarter of the size and needs no float math downstream.
+ *
+ * The sampling tables are allocated once per instance, so a converter that is reused for
+ * every frame produces no garbage. Instances are not thread-safe.
+ * This class has no Android dependencies.
+ */
+public class YuvTensorConverter {
+
+    private final int outWidth;
+    private final int outHeight;
+
+    // Per output column and row: the two source coordinates to blend and the weight of the second.
+    private final int[] colLow;
+    private final int[] colHigh;
+    private final float[] colWeight;
+    private final int[] rowLow;
+    private final int[] rowHigh;
+    private final float[] rowWeight;
+
+    // Quantized output: q = round(pixel * quantMultiplier + quantOffset), clamped to [quantMin, quantMax].
+    private boolean quantized = false;
+    private float quantMultiplier;
+    private float quantOffset;
+    private int quantMin;
+    private int quantMax;
+
+    /**
+     * @param outWidth  Width of the tensor, in pixels.
+     * @param outHeight Height of the tensor, in pixels.
+     */
+    public YuvTensorConverter(int outWidth, int outHeight) {
+        this.outWidth = outWidth;
+        this.outHeight = outHeight;
+        colLow = new int[outWidth];
+        colHigh = new int[outWidth];
+        colWeight = new float[outWidth];
+        rowLow = new int[outHeight];
+        rowHigh = new int[outHeight];
+        rowWeight = new float[outHeight];
+    }
+
+    public int getOutWidth() {
+        return outWidth;
+    }
+
+    public int getOutHeight() {
+        return outHeight;
+    }
+
+    /**
+     * Makes the converter write one quantized byte per channel instead of a float.
+     *
+     * @param scale     The input tensor's quantization scale.
+     * @param zeroPoint The input tensor's zero point.
+     * @param signed    true for INT8 tensors, false for UINT8.
+     */
+    public void setQuantization(float scale, int zeroPoint, boolean signed) {
+        // Fold the [-1, 1] normalization into the quantization: ((p - 127.5) / 128) / scale + zeroPoint.
+        quantMultiplier = 1f / (128f * scale);
+        quantOffset = zeroPoint - 127.5f * quantMultiplier;
+        quantMin = signed ? -128 : 0;
+        quantMax = signed ? 127 : 255;
+        quantized = true;
+    }
+
+    public boolean isQuantized() {
+        return quantized;
+    }
+
+    /**
+     * @return The size of one output tensor, in bytes.
+     */
+    public int getOutputBytes() {
+        return outWidth * outHeight * 3 * (quantized ? 1 : 4);
+    }
+
+    /**
+     * Writes one channel, given as a pixel value in [0, 255], in this converter's output format.
+     * Shared with FaceVerifier's bitmap path so both produce identical tensors.
+     */
+    public void putChannel(ByteBuffer output, float value) {
+        if (quantized) {
+            // Round half up without Math.round; the bias keeps the cast's truncation away from zero.
+            int q = (int) (value * quantMultiplier + quantOffset + 256.5f) - 256;
+            output.put((byte) (q < quantMin ? quantMin : (q > quantMax ? quantMax : q)));
+        } else {
+            output.putFloat((value - 127.5f) / 128.0f);
+        }
+    }
+
+    /**
+     * Writes the crop into the output buffer at its current position.
+     *
+     * The crop rectangle is given in upright coordinates, i.e. after rotating the frame by
+     * rotationDegrees, which is the coordinate space ML Kit reports bounding boxes in.
+     * It must already be clipped to the upright frame.
+     *
+     * @param yPlane          Luma plane.
+     * @param yRowStride      Bytes between luma rows.
+     * @param yPixelStride    Bytes between luma pixels (normally 1).
+     * @param uPlane          Cb plane.
+     * @param vPlane          Cr plane.
+     * @param uvRowStride     Bytes between chroma rows.
+     * @param uvPixelStride   Bytes between chroma pixels (1 for planar, 2 for semi-planar).
+     * @param frameWidth      Width of the frame as delivered by the sensor.
+     * @param frameHeight     Height of the frame as delivered by the sensor.
+     * @param rotationDegrees Clockwise rotation that makes the frame upright: 0, 90, 180 or 270.
+     * @param cropLeft        Left edge of the crop in upright coordinates.
+     * @param cropTop         Top edge of the crop in upright coordinates.
+     * @param cropWidth       Width of the crop in upright coordinates.
+     * @param cropHeight      Height of the crop in upright coordinates.
+     * @param output          Destination; must be in native byte order with room for
+     *                        {@link #getOutputBytes()} bytes.
+     */
+    public void convert(ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                        ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                        int frameWidth, int frameHeight, int rotationDegrees,
+                        int cropLeft, int cropTop, int cropWidth, int cropHeight,
+                        ByteBuffer output) {
+        // For 90/270 the upright x axis runs along the sensor's y axis and vice versa.
+        boolean swapAxes = (rotationDegrees == 90 || rotationDegrees == 270);
+        // Whether the sensor coordinate runs backwards along the upright x / y axis.
+        boolean flipCols = (rotationDegrees == 180 || rotationDegrees == 90);
+        boolean flipRows = (rotationDegrees == 180 || rotationDegrees == 270);
+        int colLimit = swapAxes ? frameHeight : frameWidth;
+        int rowLimit = swapAxes ? frameWidth : frameHeight;
+
+        fillTable(colLow, colHigh, colWeight, cropLeft, cropWidth, outWidth, colLimit, flipCols);
+        fillTable(rowLow, rowHigh, rowWeight, cropTop, cropHeight, outHeight, rowLimit, flipRows);
+
+        int uBase = uPlane.position();
+        int vBase = vPlane.position();
+        int yBase = yPlane.position();
+
+        for (int oy = 0; oy < outHeight; oy++) {
+            int r0 = rowLow[oy];
+            int r1 = rowHigh[oy];
+            float rw = rowWeight[oy];
+            int rNear = (rw < 0.5f) ? r0 : r1;
+
+            for (int ox = 0; ox < outWidth; ox++) {
+                int c0 = colLow[ox];
+                int c1 = colHigh[ox];
+                float cw = colWeight[ox];
+                int cNear = (cw < 0.5f) ? c0 : c1;
+
+                // Map the upright (column, row) pair back onto sensor (x, y).
+                int x0, x1, y0, y1, xNear, yNear;
+                float wx, wy;
+                if (swapAxes) {
+                    x0 = r0; x1 = r1; wx = rw; xNear = rNear;
+                    y0 = c0; y1 = c1; wy = cw; yNear = cNear;
+                } else {
+                    x0 = c0; x1 = c1; wx = cw; xNear = cNear;
+                    y0 = r0; y1 = r1; wy = rw; yNear = rNear;
+                }
+
+                int row0 = yBase + y0 * yRowStride;
+                int row1 = yBase + y1 * yRowStride;
+                int p00 = yPlane.get(row0 + x0 * yPixelStride) & 0xFF;
+                int p01 = yPlane.get(row0 + x1 * yPixelStride) & 0xFF;
+                int p10 = yPlane.get(row1 + x0 * yPixelStride) & 0xFF;
+                int p11 = yPlane.get(row1 + x1 * yPixelStride) & 0xFF;
+                float top = p00 + (p01 - p00) * wx;
+                float bottom = p10 + (p11 - p10) * wx;
+                float luma = top + (bottom - top) * wy;
+
+                int uvIndex = (yNear >> 1) * uvRowStride + (xNear >> 1) * uvPixelStride;
+                float cb = (uPlane.get(uBase + uvIndex) & 0xFF) - 128f;
+                float cr = (vPlane.get(vBase + uvIndex) & 0xFF) - 128f;
+
+                // Full-range BT.601, as produced by camera YUV_420_888 frames.
+                float red = clamp(luma + 1.402f * cr);
+                float green = clamp(luma - 0.344136f * cb - 0.714136f * cr);
+                float blue = clamp(luma + 1.772f * cb);
+
+                putChannel(output, red);
+                putChannel(output, green);
+                putChannel(output, blue);
+            }
+        }
+    }
+
+    /**
+     * Precomputes, for every output index, which two source coordinates to blend.
+     * Uses pixel-centre alignment, like Bitmap.createScaledBitmap with filtering.
+     */
+    private static void fillTable(int[] low, int[] high, float[] weight,
+                                  int cropStart, int cropLength, int outLength, int limit, boolean flip) {
+        float scale = (float) cropLength / outLength;
+        int max = limit - 1;
+        for (int i = 0; i < outLength; i++) {
+            float src = cropStart + (i + 0.5f) * scale - 0.5f;
+            if (src < 0) {
+                src = 0;
+            } else if (src > max) {
+                src = max;
+            }
+            int a = (int) src;
+            int b = Math.min(a + 1, max);
+            float w = src - a;
+            if (flip) {
+                // Counting from the far edge: the blend order reverses too.
+                low[i] = max - a;
+                high[i] = max - b;
+            } else {
+                low[i] = a;
+                high[i] = b;
+            }
+            weight[i] = w;
+        }
+    }
+
+    private static float clamp(float value) {
+        return (value < 0f) ? 0f : (value > 255f ? 255f : value);
+    }
+}
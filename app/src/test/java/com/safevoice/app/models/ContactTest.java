@@ -0,0 +1,29 @@
+package com.safevoice.app.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ContactTest {
+
+    @Test
+    public void normalizesToDigitsWithLeadingPlus() {
+        assertEquals("+15550109999", Contact.normalizePhoneNumber("+1 (555) 010-9999"));
+        assertEquals("5550109999", Contact.normalizePhoneNumber("555.010.9999 ext"));
+        assertEquals("15550109999", Contact.normalizePhoneNumber("1+555 010 9999"));
+        assertNull(Contact.normalizePhoneNumber("12"));
+        assertNull(Contact.normalizePhoneNumber(null));
+    }
+
+    @Test
+    public void numberKeyIgnoresFormattingAndName() {
+        assertEquals(new Contact("Ana", "+1 (555) 010-9999").getNumberKey(),
+                new Contact("Ana G.", "+15550109999").getNumberKey());
+        assertNotEquals(new Contact("Ana", "+15550109999").getNumberKey(),
+                new Contact("Ana", "5550109999").getNumberKey());
+        // Too short to normalize: the number as entered, trimmed.
+        assertEquals("11", new Contact("Short", " 11 ").getNumberKey());
+    }
+}
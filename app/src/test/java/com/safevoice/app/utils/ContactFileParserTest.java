@@ -0,0 +1,143 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.safevoice.app.models.Contact;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ContactFileParserTest {
+
+    @Test
+    public void detectsFormatFromFirstNonEmptyLine() throws IOException {
+        assertEquals(ContactFileParser.Format.VCARD, parser("\n\uFEFFbegin:vcard\nEND:VCARD\n").getFormat());
+        assertEquals(ContactFileParser.Format.CSV, parser("Name,Phone\n").getFormat());
+        assertEquals(ContactFileParser.Format.CSV, parser("").getFormat());
+    }
+
+    @Test
+    public void readsVCardsAndPrefersMobileNumbers() throws IOException {
+        List<Contact> contacts = readAll(
+                "BEGIN:VCARD\n"
+                        + "VERSION:3.0\n"
+                        + "N:Garc\u00EDa;Ana;;;\n"
+                        + "FN:Ana Garc\u00EDa\n"
+                        + "TEL;TYPE=WORK:+1 555 000 0000\n"
+                        + "item1.TEL;TYPE=CELL:+1 555 010 9999\n"
+                        + "END:VCARD\n"
+                        + "BEGIN:VCARD\n"
+                        + "N:Okafor;Chidi;;;\n"
+                        + "TEL:tel:+15550101\n"
+                        + "END:VCARD\n");
+
+        assertEquals(2, contacts.size());
+        assertEquals(new Contact("Ana Garc\u00EDa", "+1 555 010 9999"), contacts.get(0));
+        // Without FN, the structured name is used.
+        assertEquals(new Contact("Chidi Okafor", "+15550101"), contacts.get(1));
+    }
+
+    @Test
+    public void unfoldsContinuationLinesAndUnescapesValues() throws IOException {
+        List<Contact> contacts = readAll(
+                "BEGIN:VCARD\r\n"
+                        + "FN:Smith\\, John\r\n"
+                        + "  Junior\r\n"
+                        + "TEL:+1555\r\n"
+                        + "\t0102\r\n"
+                        + "END:VCARD\r\n");
+
+        assertEquals(1, contacts.size());
+        assertEquals(new Contact("Smith, John Junior", "+15550102"), contacts.get(0));
+    }
+
+    @Test
+    public void skipsIncompleteVCards() throws IOException {
+        List<Contact> contacts = readAll(
+                "BEGIN:VCARD\nFN:No Number\nEND:VCARD\n"
+                        + "BEGIN:VCARD\nTEL:+15550103\nEND:VCARD\n"
+                        + "BEGIN:VCARD\nFN:Complete\nTEL:+15550104\nEND:VCARD\n");
+
+        assertEquals(1, contacts.size());
+        assertEquals("Complete", contacts.get(0).getName());
+    }
+
+    @Test
+    public void readsCsvColumnsByHeader() throws IOException {
+        List<Contact> contacts = readAll(
+                "Email,Mobile Phone,Full Name\n"
+                        + "ana@example.org,+1 555 010 9999,Ana Garc\u00EDa\n"
+                        + "chidi@example.org,,Chidi Okafor\n");
+
+        assertEquals(1, contacts.size());
+        assertEquals(new Contact("Ana Garc\u00EDa", "+1 555 010 9999"), contacts.get(0));
+    }
+
+    @Test
+    public void joinsFirstAndLastNameColumns() throws IOException {
+        List<Contact> contacts = readAll("First Name,Last Name,Phone\nAna,Garc\u00EDa,+15550109999\n");
+
+        assertEquals(new Contact("Ana Garc\u00EDa", "+15550109999"), contacts.get(0));
+    }
+
+    @Test
+    public void treatsHeaderlessCsvAsNameThenPhone() throws IOException {
+        List<Contact> contacts = readAll("Ana,+15550109999\r\n\r\nChidi,+15550101");
+
+        assertEquals(2, contacts.size());
+        assertEquals(new Contact("Ana", "+15550109999"), contacts.get(0));
+        assertEquals(new Contact("Chidi", "+15550101"), contacts.get(1));
+    }
+
+    @Test
+    public void stripsByteOrderMarkFromCsv() throws IOException {
+        List<Contact> headerless = readAll("\uFEFFAna,+15550109999\n");
+        List<Contact> quoted = readAll("\uFEFF\"Smith, John\",+15550101\n");
+        List<Contact> withHeader = readAll("\uFEFFName,Phone\nAna,+15550109999\n");
+
+        assertEquals(new Contact("Ana", "+15550109999"), headerless.get(0));
+        assertEquals(new Contact("Smith, John", "+15550101"), quoted.get(0));
+        assertEquals(1, withHeader.size());
+        assertEquals(new Contact("Ana", "+15550109999"), withHeader.get(0));
+    }
+
+    @Test
+    public void handlesQuotedCsvFields() throws IOException {
+        List<Contact> contacts = readAll(
+                "Name,Phone\n"
+                        + "\"Smith, John \"\"Jack\"\"\",+15550101\n"
+                        + "\"Two\nLines\",+15550102\n");
+
+        assertEquals(2, contacts.size());
+        assertEquals("Smith, John \"Jack\"", contacts.get(0).getName());
+        assertEquals("Two\nLines", contacts.get(1).getName());
+    }
+
+    @Test
+    public void returnsNullAtEndOfFile() throws IOException {
+        ContactFileParser parser = parser("Ana,+15550109999\n");
+        parser.next();
+        assertNull(parser.next());
+        assertNull(parser.next());
+    }
+
+    private static ContactFileParser parser(String content) throws IOException {
+        return new ContactFileParser(new StringReader(content));
+    }
+
+    private static List<Contact> readAll(String content) throws IOException {
+        List<Contact> contacts = new ArrayList<>();
+        try (ContactFileParser parser = parser(content)) {
+            Contact contact;
+            while ((contact = parser.next()) != null) {
+                contacts.add(contact);
+            }
+        }
+        return contacts;
+    }
+}
@@ -0,0 +1,55 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import com.safevoice.app.models.Contact;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ContactImporterTest {
+
+    @Test
+    public void dropsKnownAndRepeatedNumbersAndNormalizesTheRest() throws IOException {
+        List<Contact> existing = Collections.singletonList(new Contact("Primary", "+1 (555) 010-0000"));
+        ContactFileParser parser = new ContactFileParser(new StringReader(
+                "Name,Phone\n"
+                        + "Already Saved,+15550100000\n"
+                        + "  Ana  ,+1 (555) 010-9999\n"
+                        + "Ana Again,+1 555 010 9999\n"
+                        + "No Digits,n/a\n"
+                        + "Chidi,+15550101\n"));
+        List<List<Contact>> batches = new ArrayList<>();
+
+        ContactImporter.Result result = new ContactImporter(existing, 10).run(parser, batches::add);
+
+        assertEquals(5, result.parsed);
+        assertEquals(2, result.imported);
+        assertEquals(2, result.duplicates);
+        assertEquals(1, result.invalid);
+        assertEquals(1, batches.size());
+        assertEquals(Arrays.asList(new Contact("Ana", "+15550109999"), new Contact("Chidi", "+15550101")),
+                batches.get(0));
+    }
+
+    @Test
+    public void handsContactsOverInBatches() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            csv.append("Contact ").append(i).append(",+1555010").append(i).append('\n');
+        }
+        List<Integer> batchSizes = new ArrayList<>();
+
+        ContactImporter.Result result = new ContactImporter(Collections.<Contact>emptyList(), 3)
+                .run(new ContactFileParser(new StringReader(csv.toString())), batch -> batchSizes.add(batch.size()));
+
+        assertEquals(7, result.imported);
+        assertEquals(Arrays.asList(3, 3, 1), batchSizes);
+    }
+}
@@ -0,0 +1,95 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.safevoice.app.models.Contact;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ContactSearchIndexTest {
+
+    private final Contact john = new Contact("John Smith", "+1 (555) 010-0100");
+    private final Contact maryJane = new Contact("Mary-Jane Watson", "+1 555 020 0200");
+    private final Contact obrien = new Contact("Sean O'Brien", "+44 20 7946 0958");
+    private final Contact jose = new Contact("Jos\u00E9 Garc\u00EDa", "911");
+
+    private ContactSearchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new ContactSearchIndex();
+        index.setContacts(Arrays.asList(john, maryJane, obrien, jose));
+    }
+
+    @Test
+    public void matchesNameWordPrefixesInAnyOrder() {
+        assertEquals(Collections.singletonList(john), index.search("jo sm"));
+        assertEquals(Collections.singletonList(john), index.search("SMITH john"));
+        assertEquals(Arrays.asList(john, jose), index.search("jo"));
+        assertEquals(Collections.singletonList(jose), index.search("jos\u00E9 gar"));
+    }
+
+    @Test
+    public void splitsQueryTermsLikeNames() {
+        assertEquals(Collections.singletonList(maryJane), index.search("mary-jane"));
+        assertEquals(Collections.singletonList(maryJane), index.search("mary-ja"));
+        assertEquals(Collections.singletonList(obrien), index.search("o'brien"));
+        assertEquals(Collections.singletonList(obrien), index.search("O\u2019Bri"));
+    }
+
+    @Test
+    public void matchesDigitRunsAnywhereInTheNumber() {
+        assertEquals(Collections.singletonList(john), index.search("0100"));
+        assertEquals(Arrays.asList(john, maryJane), index.search("555-0"));
+        assertEquals(Collections.singletonList(obrien), index.search("7946 0958"));
+        assertEquals(Collections.singletonList(jose), index.search("91"));
+    }
+
+    @Test
+    public void combinesNameAndNumberTerms() {
+        assertEquals(Collections.singletonList(maryJane), index.search("watson 0200"));
+        assertTrue(index.search("watson 0100").isEmpty());
+    }
+
+    @Test
+    public void blankOrUnmatchedQueriesFindNothing() {
+        assertTrue(index.search("   ").isEmpty());
+        assertTrue(index.search("-").isEmpty());
+        assertTrue(index.search("zed").isEmpty());
+        assertTrue(index.search("12345678").isEmpty());
+    }
+
+    @Test
+    public void setContactsAppliesOnlyTheDifferences() {
+        Contact renamed = new Contact("Johnny Smith", john.getPhoneNumber());
+        index.setContacts(Arrays.asList(renamed, maryJane));
+
+        assertEquals(2, index.size());
+        assertEquals(Collections.singletonList(renamed), index.search("johnny"));
+        assertTrue(index.search("o'brien").isEmpty());
+        assertTrue(index.search("7946").isEmpty());
+        // The edited contact keeps its place at the top of the list.
+        assertEquals(Arrays.asList(renamed, maryJane), index.search("555"));
+    }
+
+    @Test
+    public void resultsFollowTheCurrentListOrder() {
+        index.setContacts(Arrays.asList(jose, obrien, maryJane, john));
+
+        assertEquals(Arrays.asList(jose, john), index.search("jo"));
+        assertEquals(Arrays.asList(maryJane, john), index.search("555-0"));
+    }
+
+    @Test
+    public void contactsAddedOneByOneComeLast() {
+        Contact joan = new Contact("Joan Smith", "+1 555 030 0300");
+        index.add(joan);
+
+        assertEquals(Arrays.asList(john, jose, joan), index.search("jo"));
+    }
+}
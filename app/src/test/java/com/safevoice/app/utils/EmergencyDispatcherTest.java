@@ -0,0 +1,170 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.safevoice.app.models.Contact;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs the dispatcher against recording fakes: every call, text and completion is appended to
+ * one event log, so the tests can check order as well as content. The timer and the location
+ * source only answer when a test tells them to.
+ */
+public class EmergencyDispatcherTest {
+
+    private static final String USER_NAME = "Test User";
+    private static final Contact PRIMARY = new Contact("Primary", "+15550100");
+    private static final List<Contact> PRIORITY = Arrays.asList(
+            new Contact("First", "+15550101"),
+            new Contact("Second", "+15550102"),
+            new Contact("Third", "+15550103"));
+    private static final EmergencyDispatcher.Position HERE = new EmergencyDispatcher.Position(48.85, 2.35);
+
+    private final List<String> events = new ArrayList<>();
+    private final List<String> messages = new ArrayList<>();
+    private final List<Runnable> timerTasks = new ArrayList<>();
+    private final List<Long> timerDelays = new ArrayList<>();
+    private final List<EmergencyDispatcher.LocationCallback> locationRequests = new ArrayList<>();
+
+    private final EmergencyDispatcher.CallSink callSink = number -> events.add("call " + number);
+    private final EmergencyDispatcher.SmsSink smsSink = (number, message) -> {
+        events.add("text " + number);
+        messages.add(message);
+    };
+    private final EmergencyDispatcher.Timer timer = (task, delayMillis) -> {
+        timerTasks.add(task);
+        timerDelays.add(delayMillis);
+    };
+    private final EmergencyDispatcher.LocationSource pendingLocation = locationRequests::add;
+    private final Runnable onComplete = () -> events.add("complete");
+
+    private EmergencyDispatcher dispatcher(EmergencyDispatcher.LocationSource locationSource) {
+        return new EmergencyDispatcher(locationSource, callSink, smsSink, timer);
+    }
+
+    private void answerLocation(EmergencyDispatcher.Position position) {
+        assertEquals(1, locationRequests.size());
+        locationRequests.get(0).onLocation(position);
+    }
+
+    private void fireTimeout() {
+        assertEquals(Collections.singletonList(EmergencyDispatcher.LOCATION_TIMEOUT_MILLIS), timerDelays);
+        timerTasks.get(0).run();
+    }
+
+    private static List<String> textsToAllPriorityContacts() {
+        return Arrays.asList("text +15550101", "text +15550102", "text +15550103");
+    }
+
+    @Test
+    public void callGoesOutBeforeTextsEvenWithASynchronousLocation() {
+        dispatcher(callback -> callback.onLocation(HERE)).dispatch(PRIMARY, PRIORITY, USER_NAME, true, onComplete);
+
+        assertEquals("call +15550100", events.get(0));
+        assertEquals(textsToAllPriorityContacts(), events.subList(1, 4));
+        assertEquals("complete", events.get(4));
+    }
+
+    @Test
+    public void everyContactIsTextedOnceWithTheLocation() {
+        dispatcher(pendingLocation).dispatch(PRIMARY, PRIORITY, USER_NAME, true, onComplete);
+        assertEquals(Collections.singletonList("call +15550100"), events);
+
+        answerLocation(HERE);
+        fireTimeout();
+
+        assertEquals(5, events.size());
+        assertEquals(textsToAllPriorityContacts(), events.subList(1, 4));
+        assertEquals("complete", events.get(4));
+        for (String message : messages) {
+            assertEquals(EmergencyDispatcher.buildMessage(USER_NAME, HERE), message);
+            assertTrue(message.contains("https://maps.google.com/?q=48.85,2.35"));
+        }
+    }
+
+    @Test
+    public void timeoutSendsTheTextsWithoutALocation() {
+        dispatcher(pendingLocation).dispatch(PRIMARY, PRIORITY, USER_NAME, true, onComplete);
+
+        fireTimeout();
+
+        assertEquals(textsToAllPriorityContacts(), events.subList(1, 4));
+        assertEquals("complete", events.get(4));
+        for (String message : messages) {
+            assertEquals(EmergencyDispatcher.buildMessage(USER_NAME, null), message);
+            assertFalse(message.contains("maps.google.com"));
+        }
+    }
+
+    @Test
+    public void lateLocationIsIgnored() {
+        dispatcher(pendingLocation).dispatch(PRIMARY, PRIORITY, USER_NAME, true, onComplete);
+        fireTimeout();
+        List<String> afterTimeout = new ArrayList<>(events);
+
+        answerLocation(HERE);
+
+        assertEquals(afterTimeout, events);
+        assertEquals(3, messages.size());
+    }
+
+    @Test
+    public void unknownLocationSendsTheTextsAtOnce() {
+        dispatcher(pendingLocation).dispatch(PRIMARY, PRIORITY, USER_NAME, true, onComplete);
+
+        answerLocation(null);
+
+        assertEquals(textsToAllPriorityContacts(), events.subList(1, 4));
+        assertEquals(EmergencyDispatcher.buildMessage(USER_NAME, null), messages.get(0));
+    }
+
+    @Test
+    public void offlineMakesOnlyTheCall() {
+        dispatcher(pendingLocation).dispatch(PRIMARY, PRIORITY, USER_NAME, false, onComplete);
+
+        assertEquals(Arrays.asList("call +15550100", "complete"), events);
+        assertTrue(locationRequests.isEmpty());
+        assertTrue(timerTasks.isEmpty());
+    }
+
+    @Test
+    public void contactsWithoutANumberAreSkipped() {
+        List<Contact> contacts = Arrays.asList(new Contact("No number", ""), PRIORITY.get(0));
+
+        dispatcher(pendingLocation).dispatch(new Contact("No number", ""), contacts, USER_NAME, true, onComplete);
+        answerLocation(HERE);
+
+        assertEquals(Arrays.asList("text +15550101", "complete"), events);
+    }
+
+    @Test
+    public void noTextsToSendCompletesAfterTheCall() {
+        dispatcher(pendingLocation).dispatch(PRIMARY, Collections.<Contact>emptyList(), USER_NAME, true, onComplete);
+
+        assertEquals(Arrays.asList("call +15550100", "complete"), events);
+        assertTrue(locationRequests.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void runsOneSequence() {
+        EmergencyDispatcher dispatcher = dispatcher(pendingLocation);
+        dispatcher.dispatch(PRIMARY, PRIORITY, USER_NAME, false, onComplete);
+        dispatcher.dispatch(PRIMARY, PRIORITY, USER_NAME, false, onComplete);
+    }
+
+    @Test
+    public void messageNamesTheUser() {
+        String message = EmergencyDispatcher.buildMessage(USER_NAME, null);
+
+        assertTrue(message.startsWith("EMERGENCY: "));
+        assertTrue(message.contains(USER_NAME));
+    }
+}
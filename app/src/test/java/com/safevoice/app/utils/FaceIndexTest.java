@@ -0,0 +1,229 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+public class FaceIndexTest {
+
+    private static final int DIMENSIONS = 64;
+    private static final int PEOPLE = 16;
+    private static final int SHOTS_PER_PERSON = 8;
+    // Per-value noise of one shot around the person's face, relative to unit-scale values.
+    private static final float NOISE = 0.3f;
+    // Worst int8 error on a score; the class documents about 0.002.
+    private static final float INT8_TOLERANCE = 0.01f;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(42);
+    private final float[][] faces = new float[PEOPLE][];
+
+    private FaceIndex enrolled(boolean int8) {
+        FaceIndex index = new FaceIndex(DIMENSIONS, int8);
+        for (int person = 0; person < PEOPLE; person++) {
+            faces[person] = gaussian();
+            for (int shot = 0; shot < SHOTS_PER_PERSON; shot++) {
+                index.add(shotOf(person), label(person));
+            }
+        }
+        return index;
+    }
+
+    @Test
+    public void exhaustiveSearchFindsThePerson() {
+        for (boolean int8 : new boolean[] {false, true}) {
+            FaceIndex index = enrolled(int8);
+
+            for (int person = 0; person < PEOPLE; person++) {
+                List<FaceIndex.Match> matches = index.search(shotOf(person), 3, 0);
+                assertEquals(3, matches.size());
+                for (FaceIndex.Match match : matches) {
+                    assertEquals(label(person), match.label);
+                }
+                assertTrue(matches.get(0).similarity >= matches.get(2).similarity);
+            }
+        }
+    }
+
+    @Test
+    public void storedRowsAreUnitLength() {
+        FaceIndex floats = new FaceIndex(DIMENSIONS, false);
+        FaceIndex int8 = new FaceIndex(DIMENSIONS, true);
+        float[] face = gaussian();
+        scale(face, 7f);
+        floats.add(face, "A");
+        int8.add(face, "A");
+
+        assertEquals(1f, floats.search(face, 1, 0).get(0).similarity, 1e-5f);
+        assertEquals(1f, int8.search(face, 1, 0).get(0).similarity, INT8_TOLERANCE);
+    }
+
+    @Test
+    public void addsTemplatesUnderTheirLabel() {
+        FaceIndex index = new FaceIndex(DIMENSIONS, false);
+        float[] face = gaussian();
+        index.add(gaussian(), "Someone else");
+        index.add(FaceTemplate.fromEmbedding(face, "user", false));
+
+        FaceIndex.Match best = index.search(face, 1, 0).get(0);
+
+        assertEquals("user", best.label);
+        assertEquals(1, best.row);
+        assertEquals(1f, best.similarity, 1e-5f);
+    }
+
+    @Test
+    public void rejectsWrongLengthAndZeroEmbeddings() {
+        FaceIndex index = new FaceIndex(DIMENSIONS, false);
+        try {
+            index.add(new float[DIMENSIONS - 1], "short");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // Expected.
+        }
+        try {
+            index.add(new float[DIMENSIONS], "zero");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // Expected.
+        }
+        assertEquals(0, index.size());
+        assertTrue(index.search(gaussian(), 1, 0).isEmpty());
+    }
+
+    @Test
+    public void clusteredSearchAgreesWithExhaustiveSearch() {
+        for (boolean int8 : new boolean[] {false, true}) {
+            FaceIndex index = enrolled(int8);
+            index.cluster(PEOPLE / 2, 10, new Random(1));
+            assertEquals(PEOPLE / 2, index.getClusterCount());
+            assertEquals(PEOPLE * SHOTS_PER_PERSON, index.size());
+
+            for (int person = 0; person < PEOPLE; person++) {
+                float[] probe = shotOf(person);
+                FaceIndex.Match exhaustive = index.search(probe, 1, 0).get(0);
+                FaceIndex.Match probed = index.search(probe, 1, 2).get(0);
+                assertEquals(label(person), exhaustive.label);
+                assertEquals(exhaustive.row, probed.row);
+            }
+        }
+    }
+
+    @Test
+    public void rowsAddedAfterClusteringAreSearched() {
+        FaceIndex index = enrolled(false);
+        index.cluster(4, 10, new Random(1));
+        float[] newcomer = gaussian();
+
+        index.add(newcomer, "Newcomer");
+
+        assertEquals("Newcomer", index.search(newcomer, 1, 1).get(0).label);
+    }
+
+    @Test
+    public void saveAndLoadRoundTrip() throws IOException {
+        for (boolean int8 : new boolean[] {false, true}) {
+            FaceIndex index = enrolled(int8);
+            index.cluster(4, 10, new Random(1));
+            float[] newcomer = gaussian();
+            index.add(newcomer, "Newcomer \u00C5sa");
+            File file = folder.newFile();
+
+            index.save(file);
+            FaceIndex loaded = FaceIndex.load(file);
+
+            assertEquals(index.size(), loaded.size());
+            assertEquals(DIMENSIONS, loaded.getDimensions());
+            assertEquals(int8, loaded.isInt8());
+            assertEquals(4, loaded.getClusterCount());
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+            for (int person = 0; person < PEOPLE; person++) {
+                float[] probe = shotOf(person);
+                FaceIndex.Match before = index.search(probe, 1, 0).get(0);
+                FaceIndex.Match after = loaded.search(probe, 1, 2).get(0);
+                assertEquals(before.label, after.label);
+                assertEquals(before.similarity, after.similarity, 1e-6f);
+            }
+            // The overflow row was written into its cluster's range.
+            assertEquals("Newcomer \u00C5sa", loaded.search(newcomer, 1, 1).get(0).label);
+
+            // The first add copies the mapping to memory; the file is left as it was.
+            float[] late = gaussian();
+            loaded.add(late, "Late");
+            assertEquals("Late", loaded.search(late, 1, 0).get(0).label);
+            assertEquals(index.size(), FaceIndex.load(file).size());
+        }
+    }
+
+    @Test
+    public void loadRejectsOtherFiles() throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[64]);
+        }
+        try {
+            FaceIndex.load(file);
+            fail();
+        } catch (IOException expected) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void loadRejectsTruncatedFiles() throws IOException {
+        FaceIndex index = enrolled(false);
+        File file = folder.newFile();
+        index.save(file);
+        File truncated = folder.newFile();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        try (FileOutputStream out = new FileOutputStream(truncated)) {
+            out.write(bytes, 0, bytes.length / 2);
+        }
+        try {
+            FaceIndex.load(truncated);
+            fail();
+        } catch (IOException expected) {
+            // Expected.
+        }
+    }
+
+    private float[] shotOf(int person) {
+        float[] shot = gaussian();
+        for (int i = 0; i < DIMENSIONS; i++) {
+            shot[i] = faces[person][i] + NOISE * shot[i];
+        }
+        return shot;
+    }
+
+    private float[] gaussian() {
+        float[] values = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            values[i] = (float) random.nextGaussian();
+        }
+        return values;
+    }
+
+    private static void scale(float[] values, float factor) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] *= factor;
+        }
+    }
+
+    private static String label(int person) {
+        return "Person " + person;
+    }
+}
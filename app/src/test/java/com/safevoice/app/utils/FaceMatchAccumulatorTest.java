@@ -0,0 +1,98 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FaceMatchAccumulatorTest {
+
+    private static final double THRESHOLD = 0.6;
+    private static final long MILLIS = 1_000_000L;
+    private static final long BUDGET_NANOS = 2000 * MILLIS;
+
+    private static FaceMatchAccumulator started() {
+        FaceMatchAccumulator accumulator = new FaceMatchAccumulator(THRESHOLD, 2, 10, BUDGET_NANOS);
+        accumulator.start(0);
+        return accumulator;
+    }
+
+    @Test
+    public void clearMatchIsDecidedInMinFrames() {
+        FaceMatchAccumulator accumulator = started();
+
+        assertEquals(FaceMatchAccumulator.Decision.PENDING, accumulator.add(0.9, 100 * MILLIS));
+        assertEquals(FaceMatchAccumulator.Decision.MATCH, accumulator.add(0.88, 200 * MILLIS));
+        assertEquals(2, accumulator.getFramesUsed());
+        assertEquals(200.0, accumulator.getMillisToDecision(), 1e-9);
+    }
+
+    @Test
+    public void clearMismatchIsDecidedInMinFrames() {
+        FaceMatchAccumulator accumulator = started();
+        accumulator.add(0.2, 100 * MILLIS);
+
+        assertEquals(FaceMatchAccumulator.Decision.NO_MATCH, accumulator.add(0.25, 200 * MILLIS));
+    }
+
+    @Test
+    public void disagreeingFramesKeepTheDecisionOpen() {
+        FaceMatchAccumulator accumulator = started();
+        accumulator.add(0.95, 100 * MILLIS);
+
+        assertEquals(FaceMatchAccumulator.Decision.PENDING, accumulator.add(0.45, 200 * MILLIS));
+        assertEquals(0.7, accumulator.getAggregateSimilarity(), 1e-9);
+        assertEquals(-1.0, accumulator.getMillisToDecision(), 1e-9);
+    }
+
+    @Test
+    public void borderlineMeanDecidesAtTheFrameBudget() {
+        FaceMatchAccumulator accumulator = started();
+        for (int frame = 1; frame < 10; frame++) {
+            assertEquals(FaceMatchAccumulator.Decision.PENDING, accumulator.add(0.62, frame * MILLIS));
+        }
+
+        assertEquals(FaceMatchAccumulator.Decision.MATCH, accumulator.add(0.62, 10 * MILLIS));
+        assertEquals(10, accumulator.getFramesUsed());
+    }
+
+    @Test
+    public void borderlineMeanDecidesAtTheTimeBudget() {
+        FaceMatchAccumulator accumulator = started();
+        accumulator.add(0.59, 100 * MILLIS);
+        accumulator.add(0.58, 200 * MILLIS);
+
+        assertEquals(FaceMatchAccumulator.Decision.NO_MATCH, accumulator.add(0.59, BUDGET_NANOS));
+        assertEquals(2000.0, accumulator.getMillisToDecision(), 1e-9);
+    }
+
+    @Test
+    public void scoresAfterTheDecisionAreIgnored() {
+        FaceMatchAccumulator accumulator = started();
+        accumulator.add(0.9, 100 * MILLIS);
+        accumulator.add(0.9, 200 * MILLIS);
+
+        assertEquals(FaceMatchAccumulator.Decision.MATCH, accumulator.add(0.0, 300 * MILLIS));
+        assertEquals(2, accumulator.getFramesUsed());
+        assertEquals(0.9, accumulator.getAggregateSimilarity(), 1e-9);
+    }
+
+    @Test
+    public void startResetsTheDecision() {
+        FaceMatchAccumulator accumulator = started();
+        accumulator.add(0.9, 100 * MILLIS);
+        accumulator.add(0.9, 200 * MILLIS);
+
+        accumulator.start(5000 * MILLIS);
+
+        assertEquals(FaceMatchAccumulator.Decision.PENDING, accumulator.getDecision());
+        assertEquals(0, accumulator.getFramesUsed());
+        accumulator.add(0.1, 5100 * MILLIS);
+        assertEquals(FaceMatchAccumulator.Decision.NO_MATCH, accumulator.add(0.1, 5200 * MILLIS));
+        assertEquals(200.0, accumulator.getMillisToDecision(), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFrameBudgetBelowMinFrames() {
+        new FaceMatchAccumulator(THRESHOLD, 3, 2, BUDGET_NANOS);
+    }
+}
@@ -0,0 +1,176 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class FaceQualityGateTest {
+
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+    private static final int ROW_STRIDE = 704;
+    private static final int FLAT = 128;
+
+    private final FaceQualityGate gate = new FaceQualityGate();
+    private final FaceQualityGate.Quality quality = new FaceQualityGate.Quality();
+
+    @Test
+    public void sharpWellLitFacePasses() {
+        ByteBuffer frame = frame(0, 200, 100, 360, 260, Fill.NOISE);
+
+        assertTrue(evaluate(frame, 0, 200, 100, 360, 260, 0, 0));
+        assertEquals(FaceQualityGate.Verdict.PASS, quality.verdict);
+        assertEquals(160, quality.faceSize);
+    }
+
+    @Test
+    public void faceSizeThresholdIsEightyPixels() {
+        ByteBuffer frame = frame(0, 200, 100, 360, 260, Fill.NOISE);
+
+        assertTrue(evaluate(frame, 0, 200, 100, 280, 260, 0, 0));
+        assertFalse(evaluate(frame, 0, 200, 100, 279, 260, 0, 0));
+        assertEquals(FaceQualityGate.Verdict.TOO_SMALL, quality.verdict);
+        assertEquals(79, quality.faceSize);
+        // Later checks are skipped.
+        assertTrue(Float.isNaN(quality.sharpness));
+    }
+
+    @Test
+    public void yawAndRollThresholdsAreTwentyDegreesEitherWay() {
+        ByteBuffer frame = frame(0, 200, 100, 360, 260, Fill.NOISE);
+
+        assertTrue(evaluate(frame, 0, 200, 100, 360, 260, 20f, 0));
+        assertTrue(evaluate(frame, 0, 200, 100, 360, 260, -20f, 0));
+        assertTrue(evaluate(frame, 0, 200, 100, 360, 260, 0, 20f));
+        assertFalse(evaluate(frame, 0, 200, 100, 360, 260, 20.5f, 0));
+        assertEquals(FaceQualityGate.Verdict.BAD_POSE, quality.verdict);
+        assertFalse(evaluate(frame, 0, 200, 100, 360, 260, -25f, 0));
+        assertEquals(FaceQualityGate.Verdict.BAD_POSE, quality.verdict);
+        assertFalse(evaluate(frame, 0, 200, 100, 360, 260, 0, -21f));
+        assertEquals(FaceQualityGate.Verdict.BAD_POSE, quality.verdict);
+        assertTrue(Float.isNaN(quality.brightness));
+    }
+
+    @Test
+    public void smoothFaceIsBlurry() {
+        // Plenty of contrast, but no detail at grid resolution.
+        ByteBuffer frame = frame(0, 200, 100, 360, 260, Fill.GRADIENT);
+
+        assertFalse(evaluate(frame, 0, 200, 100, 360, 260, 0, 0));
+        assertEquals(FaceQualityGate.Verdict.BLURRY, quality.verdict);
+        assertTrue(quality.contrast > 15f);
+        assertTrue(quality.sharpness < 30f);
+    }
+
+    @Test
+    public void exposureIsCheckedBeforeSharpness() {
+        assertVerdict(Fill.DARK, FaceQualityGate.Verdict.TOO_DARK);
+        assertVerdict(Fill.BRIGHT, FaceQualityGate.Verdict.TOO_BRIGHT);
+        assertVerdict(Fill.FLAT, FaceQualityGate.Verdict.LOW_CONTRAST);
+    }
+
+    @Test
+    public void faceBoxIsMappedOntoTheSensorForEveryRotation() {
+        // Off-centre and not square, so a wrong mapping samples the flat background instead.
+        int left = 60;
+        int top = 40;
+        int right = 200;
+        int bottom = 230;
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            ByteBuffer frame = frame(rotation, left, top, right, bottom, Fill.NOISE);
+
+            assertTrue("rotation " + rotation, evaluate(frame, rotation, left, top, right, bottom, 0, 0));
+            assertFalse("rotation " + rotation + " read as " + ((rotation + 180) % 360),
+                    evaluate(frame, (rotation + 180) % 360, left, top, right, bottom, 0, 0));
+            assertEquals(FaceQualityGate.Verdict.LOW_CONTRAST, quality.verdict);
+        }
+    }
+
+    @Test
+    public void summaryCountsVerdictsSinceTheLastPoll() {
+        assertNull(gate.pollSummary());
+        ByteBuffer frame = frame(0, 200, 100, 360, 260, Fill.NOISE);
+        evaluate(frame, 0, 200, 100, 360, 260, 0, 0);
+        evaluate(frame, 0, 200, 100, 360, 260, 45f, 0);
+        evaluate(frame, 0, 200, 100, 360, 260, 45f, 0);
+
+        String summary = gate.pollSummary();
+        assertTrue(summary, summary.startsWith("PASS 1, BAD_POSE 2; size p10/p50/p90"));
+        assertNull(gate.pollSummary());
+    }
+
+    private void assertVerdict(Fill fill, FaceQualityGate.Verdict expected) {
+        ByteBuffer frame = frame(0, 200, 100, 360, 260, fill);
+        assertFalse(evaluate(frame, 0, 200, 100, 360, 260, 0, 0));
+        assertEquals(expected, quality.verdict);
+    }
+
+    private boolean evaluate(ByteBuffer frame, int rotation, int left, int top, int right, int bottom,
+                             float yaw, float roll) {
+        return gate.evaluate(frame, ROW_STRIDE, 1, FRAME_WIDTH, FRAME_HEIGHT, rotation,
+                left, top, right, bottom, yaw, roll, quality);
+    }
+
+    private enum Fill {
+        NOISE, GRADIENT, DARK, BRIGHT, FLAT
+    }
+
+    /**
+     * A flat grey frame with the face box, given in upright coordinates, filled in.
+     */
+    private static ByteBuffer frame(int rotation, int left, int top, int right, int bottom, Fill fill) {
+        ByteBuffer frame = ByteBuffer.allocate(ROW_STRIDE * FRAME_HEIGHT);
+        for (int y = 0; y < FRAME_HEIGHT; y++) {
+            for (int x = 0; x < FRAME_WIDTH; x++) {
+                frame.put(y * ROW_STRIDE + x, (byte) FLAT);
+            }
+        }
+        Random random = new Random(7);
+        for (int v = top; v < bottom; v++) {
+            for (int u = left; u < right; u++) {
+                int value;
+                switch (fill) {
+                    case NOISE:
+                        value = 60 + random.nextInt(131);
+                        break;
+                    case GRADIENT:
+                        value = 60 + 130 * (u - left) / (right - left);
+                        break;
+                    case DARK:
+                        value = 20;
+                        break;
+                    case BRIGHT:
+                        value = 240;
+                        break;
+                    default:
+                        value = FLAT;
+                        break;
+                }
+                frame.put(sensorOffset(rotation, u, v), (byte) value);
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Where an upright pixel comes from in a sensor frame turned clockwise by rotation.
+     */
+    private static int sensorOffset(int rotation, int u, int v) {
+        switch (rotation) {
+            case 90:
+                return (FRAME_HEIGHT - 1 - u) * ROW_STRIDE + v;
+            case 180:
+                return (FRAME_HEIGHT - 1 - v) * ROW_STRIDE + FRAME_WIDTH - 1 - u;
+            case 270:
+                return u * ROW_STRIDE + FRAME_WIDTH - 1 - v;
+            default:
+                return v * ROW_STRIDE + u;
+        }
+    }
+}
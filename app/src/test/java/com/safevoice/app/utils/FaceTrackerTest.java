@@ -0,0 +1,144 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FaceTrackerTest {
+
+    private static final int ID = 7;
+    private static final int OTHER_ID = 8;
+    private static final float[] EMBEDDING = {0.6f, 0.8f};
+
+    private final FaceTracker tracker = new FaceTracker();
+
+    private FaceTracker.Track observe(int trackingId, int left) {
+        tracker.nextFrame();
+        return tracker.observe(trackingId, left, 100, left + 200, 300);
+    }
+
+    private FaceTracker.Track observeAndCompute(int trackingId, int left) {
+        FaceTracker.Track track = observe(trackingId, left);
+        track.markComputed(left, 100, left + 200, 300, FaceQualityGate.Verdict.PASS);
+        track.setEmbedding(EMBEDDING);
+        return track;
+    }
+
+    @Test
+    public void newFaceIsComputed() {
+        FaceTracker.Track track = observe(ID, 100);
+
+        assertTrue(track.needsRecompute());
+        assertEquals(ID, track.trackingId);
+        assertNull(track.getEmbedding());
+    }
+
+    @Test
+    public void stillFaceIsSkippedThenRefreshed() {
+        observeAndCompute(ID, 100);
+
+        for (int i = 0; i < 3; i++) {
+            // One pixel of jitter per frame stays well above the still overlap.
+            FaceTracker.Track track = observe(ID, 101);
+            assertFalse("frame " + i, track.needsRecompute());
+            assertSame(EMBEDDING, track.getEmbedding());
+            assertEquals(FaceQualityGate.Verdict.PASS, track.getVerdict());
+        }
+        // After three skips the face is recomputed even though it has not moved.
+        assertTrue(observe(ID, 101).needsRecompute());
+    }
+
+    @Test
+    public void movedFaceIsRecomputed() {
+        observeAndCompute(ID, 100);
+
+        // A 20 px shift of a 200 px box leaves an overlap of 180 / 220, below 0.9.
+        assertTrue(observe(ID, 120).needsRecompute());
+    }
+
+    @Test
+    public void faceIsNotStillUntilItWasComputed() {
+        observe(ID, 100);
+
+        assertTrue(observe(ID, 100).needsRecompute());
+    }
+
+    @Test
+    public void newTrackingIdGetsAFreshTrack() {
+        FaceTracker.Track first = observeAndCompute(ID, 100);
+
+        // Same place, but ML Kit handed out a new id: nothing carries over from the old face.
+        FaceTracker.Track handedOff = observe(OTHER_ID, 100);
+        assertNotSame(first, handedOff);
+        assertEquals(OTHER_ID, handedOff.trackingId);
+        assertTrue(handedOff.needsRecompute());
+        assertNull(handedOff.getEmbedding());
+        assertNull(handedOff.getVerdict());
+
+        // The old track is kept while it may come back.
+        FaceTracker.Track back = observe(ID, 100);
+        assertSame(first, back);
+        assertFalse(back.needsRecompute());
+        assertSame(EMBEDDING, back.getEmbedding());
+    }
+
+    @Test
+    public void lostTrackIsKeptForThirtyFrames() {
+        FaceTracker.Track track = observeAndCompute(ID, 100);
+        for (int i = 0; i < 29; i++) {
+            tracker.nextFrame();
+        }
+
+        // Seen again on the 30th frame after it was last seen.
+        assertSame(track, observe(ID, 100));
+    }
+
+    @Test
+    public void lostTrackIsForgottenAfterThirtyFrames() {
+        FaceTracker.Track track = observeAndCompute(ID, 100);
+        for (int i = 0; i < 30; i++) {
+            tracker.nextFrame();
+        }
+
+        FaceTracker.Track reacquired = observe(ID, 100);
+        assertNotSame(track, reacquired);
+        assertTrue(reacquired.needsRecompute());
+        assertNull(reacquired.getEmbedding());
+    }
+
+    @Test
+    public void untrackedFacesAreAlwaysComputed() {
+        FaceTracker.Track first = observe(FaceTracker.NO_TRACKING_ID, 100);
+        first.markComputed(100, 100, 300, 300, FaceQualityGate.Verdict.PASS);
+        first.setEmbedding(EMBEDDING);
+
+        FaceTracker.Track second = observe(FaceTracker.NO_TRACKING_ID, 100);
+        assertNotSame(first, second);
+        assertTrue(second.needsRecompute());
+        assertNull(second.getEmbedding());
+    }
+
+    @Test
+    public void resetForgetsAllTracks() {
+        FaceTracker.Track track = observeAndCompute(ID, 100);
+
+        tracker.reset();
+
+        FaceTracker.Track fresh = observe(ID, 100);
+        assertNotSame(track, fresh);
+        assertTrue(fresh.needsRecompute());
+    }
+
+    @Test
+    public void intersectionOverUnion() {
+        assertEquals(1f, FaceTracker.intersectionOverUnion(0, 0, 10, 10, 0, 0, 10, 10), 0f);
+        assertEquals(50f / 150f, FaceTracker.intersectionOverUnion(0, 0, 10, 10, 5, 0, 15, 10), 1e-6f);
+        assertEquals(0f, FaceTracker.intersectionOverUnion(0, 0, 10, 10, 10, 0, 20, 10), 0f);
+        assertEquals(0f, FaceTracker.intersectionOverUnion(0, 0, 0, 0, 0, 0, 0, 0), 0f);
+    }
+}
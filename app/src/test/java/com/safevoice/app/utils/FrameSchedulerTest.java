@@ -0,0 +1,154 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class FrameSchedulerTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long FRAME_INTERVAL = 10 * MS;
+    private static final String STAGE = "detect";
+
+    private final FrameScheduler scheduler = new FrameScheduler(0.5);
+    private long now = 0;
+
+    /**
+     * Feeds frames every FRAME_INTERVAL; every admitted frame takes latency to process.
+     *
+     * @return How many of the frames were admitted.
+     */
+    private int feed(int frames, long latency) {
+        int admitted = 0;
+        for (int i = 0; i < frames; i++) {
+            if (scheduler.shouldProcess(now)) {
+                scheduler.onFrameProcessed(STAGE, now, now + latency);
+                admitted++;
+            }
+            now += FRAME_INTERVAL;
+        }
+        return admitted;
+    }
+
+    @Test
+    public void admitsEveryFrameUntilALatencyIsKnown() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(scheduler.shouldProcess(i * FRAME_INTERVAL));
+        }
+    }
+
+    @Test
+    public void skipsFramesToStayWithinTheBudget() {
+        // 20 ms of work at a budget of 0.5 allows one frame per 40 ms: every fourth frame.
+        assertEquals(25, feed(100, 20 * MS));
+    }
+
+    @Test
+    public void slowerStageAdmitsFewerFrames() {
+        feed(100, 20 * MS);
+        // Let the moving average settle on the new latency first.
+        feed(500, 50 * MS);
+
+        // 50 ms of work at a budget of 0.5: one frame per 100 ms, every tenth frame.
+        int admitted = feed(500, 50 * MS);
+        assertTrue(admitted + " admitted", admitted >= 49 && admitted <= 51);
+    }
+
+    @Test
+    public void fasterStageAdmitsMoreFramesAgain() {
+        feed(100, 50 * MS);
+        feed(500, 5 * MS);
+
+        // 5 ms at 0.5 is one frame per 10 ms: every frame.
+        assertEquals(100, feed(100, 5 * MS));
+    }
+
+    @Test
+    public void smallerBudgetAdmitsFewerFrames() {
+        feed(100, 20 * MS);
+        scheduler.setCpuBudget(0.25);
+
+        // 20 ms at 0.25 allows one frame per 80 ms: every eighth frame.
+        int admitted = feed(400, 20 * MS);
+        assertEquals(50, admitted);
+    }
+
+    @Test
+    public void droppedFramesAreReportedPerSecond() {
+        feed(500, 20 * MS);
+
+        FrameScheduler.Stats stats = scheduler.pollStats(now);
+        assertNotNull(stats);
+        assertEquals(25.0, stats.processedFps, 1e-9);
+        assertEquals(75.0, stats.droppedFps, 1e-9);
+        assertEquals(20.0, stats.stageLatencyMillis.get(STAGE), 1e-9);
+    }
+
+    @Test
+    public void framesRejectedDownstreamCountAsDropped() {
+        assertTrue(scheduler.shouldProcess(0));
+        // The inference queue was full, so the admitted frame never reached the gated stage.
+        scheduler.recordDropped();
+
+        FrameScheduler.Stats stats = scheduler.pollStats(5000 * MS);
+        assertEquals(0.0, stats.processedFps, 1e-9);
+        assertEquals(0.2, stats.droppedFps, 1e-9);
+    }
+
+    @Test
+    public void statsWaitForTheReportingInterval() {
+        feed(100, 20 * MS);
+
+        assertNull(scheduler.pollStats(now));
+        assertNull(scheduler.getLastStats());
+        feed(400, 20 * MS);
+        FrameScheduler.Stats stats = scheduler.pollStats(now);
+        assertNotNull(stats);
+        assertSame(stats, scheduler.getLastStats());
+        // A new interval starts with fresh counters.
+        assertNull(scheduler.pollStats(now + 1));
+    }
+
+    @Test
+    public void stagesAreReportedInTheOrderFirstSeen() {
+        scheduler.shouldProcess(0);
+        scheduler.onFrameProcessed("detect_id", 0, 10 * MS);
+        scheduler.recordStageLatency("inference", 30 * MS);
+        scheduler.recordStageLatency("inference", 40 * MS);
+
+        FrameScheduler.Stats stats = scheduler.pollStats(5000 * MS);
+        assertEquals(Arrays.asList("detect_id", "inference"), new ArrayList<>(stats.stageLatencyMillis.keySet()));
+        // Moving average: 30 + 0.2 * (40 - 30).
+        assertEquals(32.0, stats.stageLatencyMillis.get("inference"), 1e-9);
+    }
+
+    @Test
+    public void resetForgetsTheLatency() {
+        scheduler.shouldProcess(0);
+        scheduler.onFrameProcessed(STAGE, 0, 100 * MS);
+        assertFalse(scheduler.shouldProcess(10 * MS));
+
+        scheduler.reset();
+
+        assertTrue(scheduler.shouldProcess(20 * MS));
+        assertTrue(scheduler.shouldProcess(30 * MS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAZeroBudget() {
+        scheduler.setCpuBudget(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsABudgetAboveOne() {
+        new FrameScheduler(1.5);
+    }
+}
@@ -0,0 +1,172 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Locates a synthetic card drawn at a known position: a bright card with dark text lines
+ * on a darker background, in a 640x480 sensor frame with row padding.
+ */
+public class IdCardLocatorTest {
+
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+    private static final int ROW_STRIDE = 672;
+    private static final int BACKGROUND = 50;
+    private static final int CARD = 210;
+    private static final int TEXT = 30;
+    // The grid is about 3 frame pixels per cell here; corners must land within a cell or so.
+    private static final float CORNER_TOLERANCE = 4f;
+
+    private final IdCardLocator locator = new IdCardLocator(400);
+    private final IdCardLocator.Quad quad = new IdCardLocator.Quad();
+
+    @Test
+    public void findsCardCornersUpright() {
+        // Upright is 640x480; a landscape card 340 x 214, slightly off the guide box.
+        float[] card = {160, 130, 500, 130, 500, 344, 160, 344};
+        ByteBuffer frame = drawCard(0, card);
+
+        assertTrue(locate(frame, 0, 150, 120, 490, 340));
+        assertCorners(card);
+    }
+
+    @Test
+    public void findsCardCornersInAFrameRotatedBy90() {
+        // Upright is 480x640, so the sensor frame holds the card on its side. Off-centre,
+        // so a mirrored mapping would move it.
+        float[] card = {40, 210, 380, 210, 380, 424, 40, 424};
+        ByteBuffer frame = drawCard(90, card);
+
+        assertTrue(locate(frame, 90, 30, 200, 390, 430));
+        assertCorners(card);
+    }
+
+    @Test
+    public void findsATiltedCard() {
+        float[] card = {170, 120, 490, 140, 480, 350, 160, 330};
+        ByteBuffer frame = drawCard(0, card);
+
+        assertTrue(locate(frame, 0, 150, 120, 490, 340));
+        assertCorners(card);
+    }
+
+    @Test
+    public void fallsBackToTheGuideBoxWithoutACard() {
+        ByteBuffer frame = drawCard(0, null);
+
+        assertFalse(locate(frame, 0, 150, 120, 490, 340));
+        assertFalse(quad.detected);
+        assertArrayEquals(new float[] {150, 120, 490, 120, 490, 340, 150, 340}, quad.points, 0f);
+    }
+
+    @Test
+    public void fallsBackWhenOnlyTextIsInTheBox() {
+        // A card much larger than the search region: only its text lines are visible.
+        float[] card = {0, 0, 640, 0, 640, 480, 0, 480};
+        ByteBuffer frame = drawCard(0, card);
+
+        assertFalse(locate(frame, 0, 150, 120, 490, 340));
+        assertFalse(quad.detected);
+    }
+
+    @Test
+    public void rectifiesTheFoundCardToCardSize() {
+        float[] card = {160, 130, 500, 130, 500, 344, 160, 344};
+        ByteBuffer frame = drawCard(0, card);
+        assertTrue(locate(frame, 0, 150, 120, 490, 340));
+
+        byte[] rectified = locator.rectify(frame, ROW_STRIDE, 1, FRAME_WIDTH, FRAME_HEIGHT, 0, quad);
+
+        assertEquals(400, locator.getRectifiedWidth());
+        assertEquals(252, locator.getRectifiedHeight());
+        // Away from the text lines, the rectified image is all card.
+        assertEquals(CARD, rectified[10 * 400 + 10] & 0xFF, 2);
+        assertEquals(CARD, rectified[241 * 400 + 389] & 0xFF, 2);
+        float[] topLeft = new float[2];
+        locator.mapToFrame(0, 0, topLeft);
+        assertEquals(quad.points[0], topLeft[0], 1e-3f);
+        assertEquals(quad.points[1], topLeft[1], 1e-3f);
+    }
+
+    private boolean locate(ByteBuffer frame, int rotation, float left, float top, float right, float bottom) {
+        return locator.locate(frame, ROW_STRIDE, 1, FRAME_WIDTH, FRAME_HEIGHT, rotation,
+                left, top, right, bottom, quad);
+    }
+
+    private void assertCorners(float[] expected) {
+        assertTrue(quad.detected);
+        for (int i = 0; i < 8; i++) {
+            assertEquals("corner " + (i / 2) + (i % 2 == 0 ? " x" : " y"),
+                    expected[i], quad.points[i], CORNER_TOLERANCE);
+        }
+    }
+
+    /**
+     * Draws the card, given by its upright corners (top-left first, clockwise), into a sensor
+     * frame turned by rotation. Text lines run across the card's middle; null draws no card.
+     */
+    private static ByteBuffer drawCard(int rotation, float[] card) {
+        boolean swap = rotation == 90 || rotation == 270;
+        int uprightWidth = swap ? FRAME_HEIGHT : FRAME_WIDTH;
+        int uprightHeight = swap ? FRAME_WIDTH : FRAME_HEIGHT;
+        ByteBuffer frame = ByteBuffer.allocate(ROW_STRIDE * FRAME_HEIGHT);
+        for (int v = 0; v < uprightHeight; v++) {
+            for (int u = 0; u < uprightWidth; u++) {
+                int value = BACKGROUND;
+                if (card != null && inside(card, u + 0.5f, v + 0.5f)) {
+                    value = isText(card, u + 0.5f, v + 0.5f) ? TEXT : CARD;
+                }
+                int sx;
+                int sy;
+                if (rotation == 90) {
+                    sx = v;
+                    sy = FRAME_HEIGHT - 1 - u;
+                } else {
+                    sx = u;
+                    sy = v;
+                }
+                frame.put(sy * ROW_STRIDE + sx, (byte) value);
+            }
+        }
+        return frame;
+    }
+
+    private static boolean inside(float[] quad, float x, float y) {
+        for (int i = 0; i < 4; i++) {
+            int j = (i + 1) % 4;
+            float cross = (quad[j * 2] - quad[i * 2]) * (y - quad[i * 2 + 1])
+                    - (quad[j * 2 + 1] - quad[i * 2 + 1]) * (x - quad[i * 2]);
+            if (cross < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Four 4-pixel text lines between 35% and 70% of the card's height, inset from its sides.
+     */
+    private static boolean isText(float[] card, float x, float y) {
+        float top = (card[1] + card[3]) / 2;
+        float bottom = (card[5] + card[7]) / 2;
+        float left = (card[0] + card[6]) / 2;
+        float right = (card[2] + card[4]) / 2;
+        if (x < left + 0.3f * (right - left) || x > right - 0.1f * (right - left)) {
+            return false;
+        }
+        for (int line = 0; line < 4; line++) {
+            float lineTop = top + (0.35f + line * 0.1f) * (bottom - top);
+            if (y >= lineTop && y < lineTop + 4) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,175 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The MRZ samples are the specimen documents of ICAO 9303 parts 4 to 6.
+ */
+public class IdFieldExtractorTest {
+
+    private static final List<String> TD3 = Arrays.asList(
+            "PASSPORT",
+            "P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<",
+            "L898902C36UTO7408122F1204159ZE184226B<<<<<10");
+    private static final List<String> TD2 = Arrays.asList(
+            "I<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<",
+            "D231458907UTO7408122F1204159<<<<<<<6");
+    private static final List<String> TD1 = Arrays.asList(
+            "I<UTOD231458907<<<<<<<<<<<<<<<",
+            "7408122F1204159UTO<<<<<<<<<<<6",
+            "ERIKSSON<<ANNA<MARIA<<<<<<<<<<");
+
+    @Test
+    public void computesIcaoCheckDigits() {
+        assertEquals(6, IdFieldExtractor.MrzTemplate.checkDigit("L898902C3"));
+        assertEquals(2, IdFieldExtractor.MrzTemplate.checkDigit("740812"));
+        assertEquals(9, IdFieldExtractor.MrzTemplate.checkDigit("120415"));
+        assertEquals(7, IdFieldExtractor.MrzTemplate.checkDigit("D23145890"));
+        assertEquals(0, IdFieldExtractor.MrzTemplate.checkDigit("<<<<<<"));
+    }
+
+    @Test
+    public void readsVerifiedPassportZone() {
+        IdFieldExtractor.FrameFields fields = IdFieldExtractor.extract(TD3);
+
+        assertEquals("ANNA MARIA ERIKSSON", fields.get(IdFieldExtractor.FIELD_NAME));
+        assertEquals("L898902C3", fields.get(IdFieldExtractor.FIELD_DOCUMENT_NUMBER));
+        assertEquals("740812", fields.get(IdFieldExtractor.FIELD_DATE_OF_BIRTH));
+        assertEquals("120415", fields.get(IdFieldExtractor.FIELD_EXPIRY_DATE));
+        assertEquals(IdFieldExtractor.WEIGHT_MRZ_VERIFIED, fields.getWeight(IdFieldExtractor.FIELD_DOCUMENT_NUMBER));
+    }
+
+    @Test
+    public void readsVerifiedTd1AndTd2Zones() {
+        for (List<String> zone : Arrays.asList(TD1, TD2)) {
+            IdFieldExtractor.FrameFields fields = IdFieldExtractor.extract(zone);
+
+            assertEquals("ANNA MARIA ERIKSSON", fields.get(IdFieldExtractor.FIELD_NAME));
+            assertEquals("D23145890", fields.get(IdFieldExtractor.FIELD_DOCUMENT_NUMBER));
+            assertEquals("740812", fields.get(IdFieldExtractor.FIELD_DATE_OF_BIRTH));
+            assertEquals("120415", fields.get(IdFieldExtractor.FIELD_EXPIRY_DATE));
+            assertEquals(IdFieldExtractor.WEIGHT_MRZ_VERIFIED_NAME, fields.getWeight(IdFieldExtractor.FIELD_NAME));
+        }
+    }
+
+    @Test
+    public void toleratesSpacesGuillemetsAndLettersInDates() {
+        IdFieldExtractor.FrameFields fields = IdFieldExtractor.extract(Arrays.asList(
+                "P\u00ABUTOERIKSSON\u00AB\u00ABANNA\u00ABMARIA\u00AB\u00AB\u00AB\u00AB\u00AB\u00AB\u00AB\u00AB\u00AB\u00AB\u00AB\u00AB\u00AB\u00AB\u00AB\u00AB\u00AB\u00AB\u00AB",
+                "L898902C3 6 UTO 74O8122 F 12O4159 ZE184226B<<<<<10"));
+
+        assertEquals("740812", fields.get(IdFieldExtractor.FIELD_DATE_OF_BIRTH));
+        assertEquals("120415", fields.get(IdFieldExtractor.FIELD_EXPIRY_DATE));
+        assertEquals(IdFieldExtractor.WEIGHT_MRZ_VERIFIED_NAME, fields.getWeight(IdFieldExtractor.FIELD_NAME));
+    }
+
+    @Test
+    public void failedFieldCheckDigitDowngradesTheZone() {
+        IdFieldExtractor.FrameFields fields = IdFieldExtractor.extract(Arrays.asList(
+                TD3.get(1), "L898902C35UTO7408122F1204159ZE184226B<<<<<10"));
+
+        assertEquals("L898902C3", fields.get(IdFieldExtractor.FIELD_DOCUMENT_NUMBER));
+        assertEquals(IdFieldExtractor.WEIGHT_MRZ_UNVERIFIED, fields.getWeight(IdFieldExtractor.FIELD_DOCUMENT_NUMBER));
+    }
+
+    @Test
+    public void compositeCheckCoversTheOptionalData() {
+        // Every field check digit still verifies; only the composite over the whole line fails.
+        IdFieldExtractor.FrameFields passport = IdFieldExtractor.extract(Arrays.asList(
+                TD3.get(1), "L898902C36UTO7408122F1204159ZE184226C<<<<<10"));
+        IdFieldExtractor.FrameFields idCard = IdFieldExtractor.extract(Arrays.asList(
+                "I<UTOD231458907<<<<<<<<<<<<<<<", "7408122F1204159UTO<<<<<<<<<<<5", TD1.get(2)));
+
+        assertEquals(IdFieldExtractor.WEIGHT_MRZ_UNVERIFIED, passport.getWeight(IdFieldExtractor.FIELD_NAME));
+        assertEquals(IdFieldExtractor.WEIGHT_MRZ_UNVERIFIED, idCard.getWeight(IdFieldExtractor.FIELD_NAME));
+    }
+
+    @Test
+    public void readsLabelledNames() {
+        IdFieldExtractor.FrameFields card = IdFieldExtractor.extract(Arrays.asList(
+                "REPUBLIC OF UTOPIA", "Surname / Nom", "Eriksson", "Given names: Anna Maria"));
+        IdFieldExtractor.FrameFields licence = IdFieldExtractor.extract(Arrays.asList(
+                "DRIVING LICENCE", "1. ERIKSSON", "2. ANNA MARIA", "3. 12.08.1974 UTOPIA"));
+
+        assertEquals("ANNA MARIA ERIKSSON", card.get(IdFieldExtractor.FIELD_NAME));
+        assertEquals(IdFieldExtractor.WEIGHT_LABELLED, card.getWeight(IdFieldExtractor.FIELD_NAME));
+        assertEquals("ANNA MARIA ERIKSSON", licence.get(IdFieldExtractor.FIELD_NAME));
+    }
+
+    @Test
+    public void capitalizedFallbackSkipsDocumentWords() {
+        IdFieldExtractor.FrameFields fields = IdFieldExtractor.extract(Arrays.asList(
+                "Republic Of Utopia", "Identity Card", "Anna Eriksson", "Utopia City"));
+
+        assertEquals("ANNA ERIKSSON", fields.get(IdFieldExtractor.FIELD_NAME));
+        assertEquals(IdFieldExtractor.WEIGHT_HEURISTIC, fields.getWeight(IdFieldExtractor.FIELD_NAME));
+    }
+
+    @Test
+    public void verifiedZoneSettlesItsCheckedFieldsInOneFrame() {
+        IdFieldExtractor extractor = new IdFieldExtractor();
+        extractor.addFrame(TD3);
+
+        assertEquals("L898902C3", extractor.getSettled(IdFieldExtractor.FIELD_DOCUMENT_NUMBER));
+        assertEquals("740812", extractor.getSettled(IdFieldExtractor.FIELD_DATE_OF_BIRTH));
+        assertEquals("120415", extractor.getSettled(IdFieldExtractor.FIELD_EXPIRY_DATE));
+        // No check digit covers the name, so one frame is not enough for it.
+        assertEquals("ANNA MARIA ERIKSSON", extractor.getLeader(IdFieldExtractor.FIELD_NAME));
+        assertNull(extractor.getSettled(IdFieldExtractor.FIELD_NAME));
+    }
+
+    @Test
+    public void verifiedZoneNameSettlesOnASecondAgreeingFrame() {
+        IdFieldExtractor extractor = new IdFieldExtractor();
+        extractor.addFrame(TD3);
+        extractor.addFrame(TD3);
+
+        assertEquals("ANNA MARIA ERIKSSON", extractor.getSettled(IdFieldExtractor.FIELD_NAME));
+    }
+
+    @Test
+    public void verifiedZoneNameMisreadInOneFrameDoesNotSettle() {
+        IdFieldExtractor extractor = new IdFieldExtractor();
+        // Check digits still verify: the misread is in the name line, which they do not cover.
+        extractor.addFrame(Arrays.asList(
+                "P<UTOERIKSSEN<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<", TD3.get(2)));
+        extractor.addFrame(TD3);
+
+        assertEquals("L898902C3", extractor.getSettled(IdFieldExtractor.FIELD_DOCUMENT_NUMBER));
+        assertNull(extractor.getSettled(IdFieldExtractor.FIELD_NAME));
+    }
+
+    @Test
+    public void weakEvidenceNeedsAClearLead() {
+        IdFieldExtractor extractor = new IdFieldExtractor();
+        List<String> anna = Arrays.asList("Anna Eriksson");
+        List<String> misread = Arrays.asList("Anna Erikssen");
+
+        extractor.addFrame(anna);
+        extractor.addFrame(misread);
+        extractor.addFrame(anna);
+        extractor.addFrame(anna);
+        // 3 against 1: the leader is known but does not lead by enough yet.
+        assertEquals("ANNA ERIKSSON", extractor.getLeader(IdFieldExtractor.FIELD_NAME));
+        assertNull(extractor.getSettled(IdFieldExtractor.FIELD_NAME));
+
+        extractor.addFrame(anna);
+        assertEquals("ANNA ERIKSSON", extractor.getSettled(IdFieldExtractor.FIELD_NAME));
+        assertEquals(5, extractor.getFramesSeen());
+
+        extractor.reset();
+        assertNull(extractor.getLeader(IdFieldExtractor.FIELD_NAME));
+        assertEquals(0, extractor.getFramesSeen());
+    }
+
+    @Test
+    public void displayNameCapitalizesEachWord() {
+        assertEquals("Anna-Maria O'Neil Eriksson", IdFieldExtractor.toDisplayName("ANNA-MARIA O'NEIL ERIKSSON"));
+    }
+}
@@ -0,0 +1,118 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class LivenessCheckerTest {
+
+    private static final long MILLIS = 1_000_000L;
+    private static final float NOT_CLASSIFIED = Float.NaN;
+
+    /**
+     * A checker whose random source always picks the given challenge.
+     */
+    private static LivenessChecker checkerFor(final LivenessChecker.Challenge challenge) {
+        LivenessChecker checker = new LivenessChecker(new Random() {
+            @Override
+            public int nextInt(int bound) {
+                return challenge.ordinal();
+            }
+        });
+        assertEquals(challenge, checker.getChallenge());
+        return checker;
+    }
+
+    private static LivenessChecker.Decision eyes(LivenessChecker checker, long millis, float open) {
+        return checker.update(millis * MILLIS, 0f, open, open);
+    }
+
+    private static LivenessChecker.Decision yaw(LivenessChecker checker, long millis, float yaw) {
+        return checker.update(millis * MILLIS, yaw, 0.9f, 0.9f);
+    }
+
+    @Test
+    public void blinkIsOpenClosedOpen() {
+        LivenessChecker checker = checkerFor(LivenessChecker.Challenge.BLINK);
+
+        assertEquals(LivenessChecker.Decision.PENDING, eyes(checker, 0, 0.95f));
+        assertEquals(LivenessChecker.Decision.PENDING, eyes(checker, 100, 0.1f));
+        assertEquals(LivenessChecker.Decision.LIVE, eyes(checker, 200, 0.9f));
+    }
+
+    @Test
+    public void eyesThatStartClosedDoNotCountAsBlink() {
+        LivenessChecker checker = checkerFor(LivenessChecker.Challenge.BLINK);
+
+        eyes(checker, 0, 0.1f);
+        assertEquals(LivenessChecker.Decision.PENDING, eyes(checker, 100, 0.9f));
+    }
+
+    @Test
+    public void halfClosedEyesAndUnclassifiedFramesAreIgnored() {
+        LivenessChecker checker = checkerFor(LivenessChecker.Challenge.BLINK);
+
+        eyes(checker, 0, 0.9f);
+        eyes(checker, 100, 0.5f);
+        assertEquals(LivenessChecker.Decision.PENDING, eyes(checker, 200, 0.9f));
+        checker.update(300 * MILLIS, 0f, NOT_CLASSIFIED, 0.1f);
+        assertEquals(LivenessChecker.Decision.PENDING, eyes(checker, 400, 0.9f));
+    }
+
+    @Test
+    public void blinkMustFitTheWindow() {
+        LivenessChecker checker = checkerFor(LivenessChecker.Challenge.BLINK);
+
+        eyes(checker, 0, 0.9f);
+        eyes(checker, 2000, 0.1f);
+        assertEquals(LivenessChecker.Decision.PENDING, eyes(checker, 2100, 0.9f));
+    }
+
+    @Test
+    public void turnMustStartFacingTheCamera() {
+        LivenessChecker checker = checkerFor(LivenessChecker.Challenge.TURN_LEFT);
+
+        // Held at an angle from the start, like a tilted photo.
+        assertEquals(LivenessChecker.Decision.PENDING, yaw(checker, 0, 30f));
+        assertEquals(LivenessChecker.Decision.PENDING, yaw(checker, 100, 2f));
+        assertEquals(LivenessChecker.Decision.LIVE, yaw(checker, 400, 30f));
+    }
+
+    @Test
+    public void turnMustGoTheAskedWay() {
+        LivenessChecker left = checkerFor(LivenessChecker.Challenge.TURN_LEFT);
+        LivenessChecker right = checkerFor(LivenessChecker.Challenge.TURN_RIGHT);
+
+        yaw(left, 0, 0f);
+        yaw(right, 0, 0f);
+
+        assertEquals(LivenessChecker.Decision.PENDING, yaw(left, 300, -30f));
+        assertEquals(LivenessChecker.Decision.LIVE, yaw(right, 300, -30f));
+    }
+
+    @Test
+    public void stillFaceFailsAfterTheTimeoutFromTheFirstFace() {
+        LivenessChecker checker = checkerFor(LivenessChecker.Challenge.BLINK);
+
+        eyes(checker, 10_000, 0.9f);
+        assertEquals(LivenessChecker.Decision.PENDING, eyes(checker, 17_900, 0.9f));
+        assertEquals(LivenessChecker.Decision.FAILED, eyes(checker, 18_000, 0.9f));
+        // Decided: a late blink changes nothing.
+        eyes(checker, 18_100, 0.1f);
+        assertEquals(LivenessChecker.Decision.FAILED, eyes(checker, 18_200, 0.9f));
+    }
+
+    @Test
+    public void resetStartsANewChallenge() {
+        LivenessChecker checker = checkerFor(LivenessChecker.Challenge.TURN_RIGHT);
+        yaw(checker, 0, 0f);
+        yaw(checker, 100, -30f);
+
+        assertEquals(LivenessChecker.Challenge.TURN_RIGHT, checker.reset());
+        assertEquals(LivenessChecker.Decision.PENDING, checker.getDecision());
+        // The timeout restarts with the next face.
+        assertEquals(LivenessChecker.Decision.PENDING, yaw(checker, 20_000, 0f));
+    }
+}
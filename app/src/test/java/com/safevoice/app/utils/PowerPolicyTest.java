@@ -0,0 +1,130 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PowerPolicyTest {
+
+    private static final long HOLD = PowerPolicy.RECOVERY_HOLD_NANOS;
+    private static final int FULL_BATTERY = 100;
+
+    private final PowerPolicy policy = new PowerPolicy();
+
+    private PowerPolicy.Level thermal(int status, long nowNanos) {
+        return policy.update(status, FULL_BATTERY, false, false, nowNanos);
+    }
+
+    private PowerPolicy.Level battery(int percent, long nowNanos) {
+        return policy.update(PowerPolicy.THERMAL_NONE, percent, false, false, nowNanos);
+    }
+
+    @Test
+    public void startsUnconstrained() {
+        assertEquals(PowerPolicy.Level.FULL, policy.getLevel());
+        assertEquals(PowerPolicy.Level.FULL, thermal(PowerPolicy.THERMAL_LIGHT, 0));
+        assertEquals(PowerPolicy.Level.FULL, battery(PowerPolicy.BATTERY_UNKNOWN, 0));
+    }
+
+    @Test
+    public void heatLowersTheLevelAtOnce() {
+        assertEquals(PowerPolicy.Level.REDUCED, thermal(PowerPolicy.THERMAL_MODERATE, 0));
+        assertEquals(PowerPolicy.Level.MINIMAL, thermal(PowerPolicy.THERMAL_SEVERE, 1));
+        assertFalse(policy.isRecoveryPending());
+    }
+
+    @Test
+    public void recoveryWaitsAndGoesUpOneLevelPerHold() {
+        thermal(PowerPolicy.THERMAL_SEVERE, 0);
+
+        assertEquals(PowerPolicy.Level.MINIMAL, thermal(PowerPolicy.THERMAL_NONE, 1));
+        assertTrue(policy.isRecoveryPending());
+        assertEquals(PowerPolicy.Level.MINIMAL, thermal(PowerPolicy.THERMAL_NONE, HOLD));
+        assertEquals(PowerPolicy.Level.REDUCED, thermal(PowerPolicy.THERMAL_NONE, 1 + HOLD));
+        assertTrue(policy.isRecoveryPending());
+        assertEquals(PowerPolicy.Level.FULL, thermal(PowerPolicy.THERMAL_NONE, 1 + 2 * HOLD));
+        assertFalse(policy.isRecoveryPending());
+    }
+
+    @Test
+    public void relapseDuringTheHoldRestartsIt() {
+        thermal(PowerPolicy.THERMAL_MODERATE, 0);
+        thermal(PowerPolicy.THERMAL_NONE, 1);
+        thermal(PowerPolicy.THERMAL_MODERATE, HOLD / 2);
+        thermal(PowerPolicy.THERMAL_NONE, HOLD);
+
+        assertEquals(PowerPolicy.Level.REDUCED, thermal(PowerPolicy.THERMAL_NONE, HOLD + HOLD / 2));
+        assertEquals(PowerPolicy.Level.FULL, thermal(PowerPolicy.THERMAL_NONE, 2 * HOLD));
+    }
+
+    @Test
+    public void lowBatteryLowersTheLevelUnlessCharging() {
+        assertEquals(PowerPolicy.Level.FULL, battery(31, 0));
+        assertEquals(PowerPolicy.Level.REDUCED, battery(30, 1));
+        assertEquals(PowerPolicy.Level.MINIMAL, battery(15, 2));
+
+        policy.update(PowerPolicy.THERMAL_NONE, 15, true, false, 3);
+        assertTrue(policy.isRecoveryPending());
+    }
+
+    @Test
+    public void batterySaverGivesAtLeastReduced() {
+        assertEquals(PowerPolicy.Level.REDUCED,
+                policy.update(PowerPolicy.THERMAL_NONE, FULL_BATTERY, true, true, 0));
+        assertEquals(PowerPolicy.Level.MINIMAL,
+                policy.update(PowerPolicy.THERMAL_NONE, 10, false, true, 1));
+    }
+
+    @Test
+    public void batteryMustClearTheHysteresisBand() {
+        battery(14, 0);
+
+        // Back above 15%, but within the band: still a minimal battery.
+        battery(18, 1);
+        assertEquals(PowerPolicy.Level.MINIMAL, battery(20, 1 + HOLD));
+        assertFalse(policy.isRecoveryPending());
+
+        // Clear of the band, but within the reduced threshold's band.
+        battery(21, 2 + HOLD);
+        assertEquals(PowerPolicy.Level.REDUCED, battery(35, 2 + 2 * HOLD));
+        assertFalse(policy.isRecoveryPending());
+
+        battery(36, 3 + 2 * HOLD);
+        assertEquals(PowerPolicy.Level.FULL, battery(36, 3 + 3 * HOLD));
+    }
+
+    @Test
+    public void heatDoesNotWidenTheBatteryBand() {
+        // A device that is only hot, with the battery in the band above the reduced threshold.
+        policy.update(PowerPolicy.THERMAL_MODERATE, 33, false, false, 0);
+        assertEquals(PowerPolicy.Level.REDUCED, policy.getLevel());
+
+        // Once it cools down, the battery never crossed its threshold and does not hold the level.
+        battery(33, 1);
+        assertEquals(PowerPolicy.Level.FULL, battery(33, 1 + HOLD));
+    }
+
+    @Test
+    public void resetForgetsTheLevelBandAndPendingRecovery() {
+        battery(14, 0);
+        battery(21, 1);
+        assertTrue(policy.isRecoveryPending());
+
+        policy.reset();
+
+        assertEquals(PowerPolicy.Level.FULL, policy.getLevel());
+        assertFalse(policy.isRecoveryPending());
+        assertEquals("no constraints", policy.getReason());
+        // 33% is within the reduced band only for a battery that crossed 30% since the reset.
+        assertEquals(PowerPolicy.Level.FULL, battery(33, 2));
+    }
+
+    @Test
+    public void onlyMinimalPausesABusyRecognizer() {
+        assertEquals(0, PowerPolicy.Level.FULL.listenRestartDelayMillis);
+        assertEquals(0, PowerPolicy.Level.REDUCED.listenRestartDelayMillis);
+        assertTrue(PowerPolicy.Level.MINIMAL.listenRestartDelayMillis > 0);
+    }
+}
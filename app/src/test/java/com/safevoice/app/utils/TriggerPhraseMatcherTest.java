@@ -0,0 +1,92 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+public class TriggerPhraseMatcherTest {
+
+    private final TriggerPhraseMatcher matcher = new TriggerPhraseMatcher(TriggerPhraseMatcher.DEFAULT_PHRASE);
+
+    @Test
+    public void matchesThePlainPhrase() {
+        assertTrue(matcher.matches("help help"));
+        assertTrue(matcher.matches("please help help me"));
+        assertTrue(matcher.matches("help help help"));
+    }
+
+    @Test
+    public void ignoresCase() {
+        assertTrue(matcher.matches("Help help"));
+        assertTrue(matcher.matches("HELP HELP"));
+        assertTrue(matcher.matches("hElP HeLp"));
+    }
+
+    @Test
+    public void treatsPunctuationAndSpacingAsOneSeparator() {
+        assertTrue(matcher.matches("help, help"));
+        assertTrue(matcher.matches("Help! Help!"));
+        assertTrue(matcher.matches("HELP   help"));
+        assertTrue(matcher.matches("help-help"));
+        assertTrue(matcher.matches("...help... help?"));
+    }
+
+    @Test
+    public void needsASeparatorBetweenWords() {
+        assertFalse(matcher.matches("helphelp"));
+    }
+
+    @Test
+    public void doesNotMatchPartsOfWords() {
+        assertFalse(matcher.matches("help helpful"));
+        assertFalse(matcher.matches("that was helpful help"));
+        assertFalse(matcher.matches("whelp help"));
+        assertFalse(matcher.matches("help helper"));
+        assertFalse(matcher.matches("help help2"));
+        // A whole-word match later in the text still counts.
+        assertTrue(matcher.matches("helpful people, help help"));
+    }
+
+    @Test
+    public void doesNotMatchOtherSpeech() {
+        assertFalse(matcher.matches(""));
+        assertFalse(matcher.matches("help"));
+        assertFalse(matcher.matches("help me carry these bags"));
+        assertFalse(matcher.matches("help yourself"));
+        assertFalse(matcher.matches("help is on the way, help me"));
+        assertFalse(matcher.matches("hello hello"));
+    }
+
+    @Test
+    public void foldsCaseWithoutTheDefaultLocale() {
+        Locale previous = Locale.getDefault();
+        // In Turkish, "I".toLowerCase() is a dotless i, so a lower-cased "HILFE" is not "hilfe".
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            TriggerPhraseMatcher hilfe = new TriggerPhraseMatcher("hilfe hilfe");
+            assertTrue(hilfe.matches("HILFE HILFE"));
+            assertTrue(hilfe.matches("Hilfe, hilfe!"));
+        } finally {
+            Locale.setDefault(previous);
+        }
+        assertTrue(new TriggerPhraseMatcher("\u00E0 l'aide").matches("\u00C0 L'AIDE"));
+    }
+
+    @Test
+    public void checksEveryAlternative() {
+        assertTrue(matcher.matchesAny(Arrays.asList("hello hello", null, "Help! Help!")));
+        assertFalse(matcher.matchesAny(Arrays.asList("hello hello", "help yourself")));
+        assertFalse(matcher.matchesAny(Collections.<String>emptyList()));
+        assertFalse(matcher.matchesAny(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAPhraseWithoutWords() {
+        new TriggerPhraseMatcher(" !? ");
+    }
+}
@@ -0,0 +1,374 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+
+/**
+ * FaceVerifier's per-frame work on camera frames, on the JVM: cropping a YUV frame into a
+ * preallocated, native-order tensor buffer, then running it through FaceVerifier's
+ * {@link InferenceRunner} and reading the embedding into a caller-owned array. The Interpreter
+ * cannot be loaded here, so a stand-in model writes a known output.
+ */
+public class YuvTensorConverterTest {
+
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+    private static final int TENSOR_SIZE = 112;
+    private static final int EMBEDDING_SIZE = FaceVerifier.EMBEDDING_SIZE;
+
+    // Far below one tensor (150 KB); leaves room for the allocation counter's own overhead.
+    private static final long ALLOCATION_SLACK_BYTES = 4096;
+    private static final int CALLS = 500;
+
+    // Output of the patterned test: small, and not square, so rows and columns cannot be swapped.
+    private static final int PATTERN_OUT_WIDTH = 24;
+    private static final int PATTERN_OUT_HEIGHT = 20;
+    // Gradients with different slopes on each plane and axis, so any misplaced sample changes the colour.
+    private static final Pattern PATTERN = new Pattern() {
+        @Override
+        public int luma(int x, int y) {
+            return 16 + (x * 3 + y * 7) % 224;
+        }
+
+        @Override
+        public int cb(int cx, int cy) {
+            return 64 + (cx * 5 + cy * 2) % 128;
+        }
+
+        @Override
+        public int cr(int cx, int cy) {
+            return 64 + (cx + cy * 9) % 128;
+        }
+    };
+
+    @Test
+    public void grayFrameGivesMidGrayTensor() {
+        Frame frame = new Frame(128, 128, 128, 2);
+        YuvTensorConverter converter = new YuvTensorConverter(TENSOR_SIZE, TENSOR_SIZE);
+        ByteBuffer tensor = allocate(converter.getOutputBytes());
+
+        frame.convert(converter, 0, tensor);
+
+        assertEquals(converter.getOutputBytes(), tensor.position());
+        tensor.flip();
+        for (int i = 0; i < TENSOR_SIZE * TENSOR_SIZE * 3; i++) {
+            assertEquals(0.5f / 128f, tensor.getFloat(), 1e-6f);
+        }
+    }
+
+    @Test
+    public void quantizedOutputUsesOneBytePerChannel() {
+        Frame frame = new Frame(255, 128, 128, 1);
+        YuvTensorConverter converter = new YuvTensorConverter(TENSOR_SIZE, TENSOR_SIZE);
+        // Scale 1/128 and zero point 128 map [-1, 1] onto [0, 256), so white is 255.
+        converter.setQuantization(1f / 128f, 128, false);
+        ByteBuffer tensor = allocate(converter.getOutputBytes());
+
+        frame.convert(converter, 90, tensor);
+
+        assertEquals(TENSOR_SIZE * TENSOR_SIZE * 3, tensor.position());
+        for (int i = 0; i < tensor.position(); i++) {
+            assertEquals(255, tensor.get(i) & 0xFF);
+        }
+    }
+
+    @Test
+    public void patternedCropMatchesReferenceForEveryRotationAndLayout() {
+        for (int uvPixelStride = 1; uvPixelStride <= 2; uvPixelStride++) {
+            Frame frame = new Frame(PATTERN, uvPixelStride);
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                boolean swap = rotation == 90 || rotation == 270;
+                int uprightWidth = swap ? FRAME_HEIGHT : FRAME_WIDTH;
+                int uprightHeight = swap ? FRAME_WIDTH : FRAME_HEIGHT;
+                // Off centre, not square and not a whole multiple of the output, so every
+                // output pixel blends neighbours with its own weights.
+                int left = uprightWidth / 8;
+                int top = uprightHeight / 5;
+                int width = uprightWidth / 3 + 1;
+                int height = uprightHeight / 2 - 3;
+                YuvTensorConverter converter = new YuvTensorConverter(PATTERN_OUT_WIDTH, PATTERN_OUT_HEIGHT);
+                ByteBuffer tensor = allocate(converter.getOutputBytes());
+
+                frame.convert(converter, rotation, left, top, width, height, tensor);
+
+                for (int oy = 0; oy < PATTERN_OUT_HEIGHT; oy++) {
+                    for (int ox = 0; ox < PATTERN_OUT_WIDTH; ox++) {
+                        float[] expected = referencePixel(frame, rotation, left, top, width, height, ox, oy);
+                        int offset = ((oy * PATTERN_OUT_WIDTH) + ox) * 3 * 4;
+                        for (int channel = 0; channel < 3; channel++) {
+                            assertEquals("rotation " + rotation + ", uv pixel stride " + uvPixelStride
+                                            + ", pixel (" + ox + ", " + oy + "), channel " + channel,
+                                    (expected[channel] - 127.5f) / 128f, tensor.getFloat(offset + channel * 4), 1e-4f);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cropAndReadbackAllocateNothingPerCall() {
+        com.sun.management.ThreadMXBean threads = allocationCounter();
+        Frame frame = new Frame(90, 110, 150, 2);
+        YuvTensorConverter converter = new YuvTensorConverter(TENSOR_SIZE, TENSOR_SIZE);
+        // Built the way FaceVerifier's InferenceContext builds its single-slot binding.
+        InferenceRunner runner = new InferenceRunner(FloatModel.INSTANCE, EMBEDDING_SIZE, EMBEDDING_SIZE * 4);
+        InferenceRunner.Binding binding = new InferenceRunner.Binding(
+                InferenceRunner.allocate(converter.getOutputBytes()), InferenceRunner.allocate(EMBEDDING_SIZE * 4));
+        float[] embedding = new float[EMBEDDING_SIZE];
+
+        // Warm up, so class loading and compilation are not counted.
+        for (int i = 0; i < CALLS; i++) {
+            cropAndEmbed(frame, converter, runner, binding, i, embedding);
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < CALLS; i++) {
+            cropAndEmbed(frame, converter, runner, binding, i, embedding);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        assertTrue(allocated + " bytes allocated in " + CALLS + " calls", allocated < ALLOCATION_SLACK_BYTES);
+        for (int i = 0; i < EMBEDDING_SIZE; i++) {
+            assertEquals(i * 0.25f, embedding[i], 0f);
+        }
+    }
+
+    @Test
+    public void quantizedCropAndDequantizeAllocateNothingPerCall() {
+        com.sun.management.ThreadMXBean threads = allocationCounter();
+        Frame frame = new Frame(90, 110, 150, 1);
+        YuvTensorConverter converter = new YuvTensorConverter(TENSOR_SIZE, TENSOR_SIZE);
+        converter.setQuantization(0.0078125f, 128, false);
+        InferenceRunner runner = new InferenceRunner(QuantizedModel.INSTANCE, EMBEDDING_SIZE, EMBEDDING_SIZE);
+        runner.setOutputQuantization(0.05f, 3, false);
+        InferenceRunner.Binding binding = new InferenceRunner.Binding(
+                InferenceRunner.allocate(converter.getOutputBytes()), InferenceRunner.allocate(EMBEDDING_SIZE));
+        float[] embedding = new float[EMBEDDING_SIZE];
+
+        for (int i = 0; i < CALLS; i++) {
+            cropAndEmbed(frame, converter, runner, binding, i, embedding);
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < CALLS; i++) {
+            cropAndEmbed(frame, converter, runner, binding, i, embedding);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        assertTrue(allocated + " bytes allocated in " + CALLS + " calls", allocated < ALLOCATION_SLACK_BYTES);
+        for (int i = 0; i < EMBEDDING_SIZE; i++) {
+            assertEquals((i - 3) * 0.05f, embedding[i], 1e-6f);
+        }
+    }
+
+    /**
+     * What the converter should produce for one output pixel, worked out directly on the upright
+     * image: bilinear luma around the pixel centre, nearest chroma, full-range BT.601.
+     */
+    private static float[] referencePixel(Frame frame, int rotation, int left, int top, int width, int height,
+                                          int ox, int oy) {
+        boolean swap = rotation == 90 || rotation == 270;
+        int uprightWidth = swap ? FRAME_HEIGHT : FRAME_WIDTH;
+        int uprightHeight = swap ? FRAME_WIDTH : FRAME_HEIGHT;
+        float u = clampTo(left + (ox + 0.5f) * width / PATTERN_OUT_WIDTH - 0.5f, uprightWidth - 1);
+        float v = clampTo(top + (oy + 0.5f) * height / PATTERN_OUT_HEIGHT - 0.5f, uprightHeight - 1);
+        int u0 = (int) u;
+        int v0 = (int) v;
+        int u1 = Math.min(u0 + 1, uprightWidth - 1);
+        int v1 = Math.min(v0 + 1, uprightHeight - 1);
+        float wu = u - u0;
+        float wv = v - v0;
+
+        float luma = (1 - wv) * ((1 - wu) * uprightLuma(frame, rotation, u0, v0) + wu * uprightLuma(frame, rotation, u1, v0))
+                + wv * ((1 - wu) * uprightLuma(frame, rotation, u0, v1) + wu * uprightLuma(frame, rotation, u1, v1));
+        int[] sensor = toSensor(rotation, wu < 0.5f ? u0 : u1, wv < 0.5f ? v0 : v1);
+        float cb = PATTERN.cb(sensor[0] / 2, sensor[1] / 2) - 128f;
+        float cr = PATTERN.cr(sensor[0] / 2, sensor[1] / 2) - 128f;
+        return new float[] {
+                clampTo(luma + 1.402f * cr, 255),
+                clampTo(luma - 0.344136f * cb - 0.714136f * cr, 255),
+                clampTo(luma + 1.772f * cb, 255)
+        };
+    }
+
+    private static int uprightLuma(Frame frame, int rotation, int u, int v) {
+        int[] sensor = toSensor(rotation, u, v);
+        return PATTERN.luma(sensor[0], sensor[1]);
+    }
+
+    /**
+     * Where an upright pixel comes from on the sensor, for a frame turned clockwise by rotation.
+     */
+    private static int[] toSensor(int rotation, int u, int v) {
+        switch (rotation) {
+            case 90:
+                return new int[] {v, FRAME_HEIGHT - 1 - u};
+            case 180:
+                return new int[] {FRAME_WIDTH - 1 - u, FRAME_HEIGHT - 1 - v};
+            case 270:
+                return new int[] {FRAME_WIDTH - 1 - v, u};
+            default:
+                return new int[] {u, v};
+        }
+    }
+
+    private static float clampTo(float value, float max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+
+    /**
+     * What FaceVerifier.getFaceEmbeddingInto does with a camera frame, minus the ImageProxy.
+     */
+    private static void cropAndEmbed(Frame frame, YuvTensorConverter converter, InferenceRunner runner,
+                                     InferenceRunner.Binding binding, int call, float[] embedding) {
+        binding.inputBuffer.clear();
+        frame.convert(converter, (call % 4) * 90, binding.inputBuffer);
+        runner.run(binding, embedding);
+    }
+
+    /**
+     * Stands in for a float model: checks the whole input was written, then outputs i / 4 in row i.
+     */
+    private enum FloatModel implements InferenceRunner.Model {
+        INSTANCE;
+
+        @Override
+        public void run(Object[] inputs, Map<Integer, Object> outputs) {
+            assertEquals(0, ((ByteBuffer) inputs[0]).position());
+            ByteBuffer output = (ByteBuffer) outputs.get(0);
+            for (int i = 0; i < EMBEDDING_SIZE; i++) {
+                output.putFloat(i * 4, i * 0.25f);
+            }
+        }
+    }
+
+    /**
+     * Stands in for a uint8 model: outputs the byte i in row i.
+     */
+    private enum QuantizedModel implements InferenceRunner.Model {
+        INSTANCE;
+
+        @Override
+        public void run(Object[] inputs, Map<Integer, Object> outputs) {
+            assertEquals(0, ((ByteBuffer) inputs[0]).position());
+            ByteBuffer output = (ByteBuffer) outputs.get(0);
+            for (int i = 0; i < EMBEDDING_SIZE; i++) {
+                output.put(i, (byte) i);
+            }
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Sample values of a frame: luma per sensor pixel, chroma per 2x2 block.
+     */
+    private interface Pattern {
+        int luma(int x, int y);
+
+        int cb(int cx, int cy);
+
+        int cr(int cx, int cy);
+    }
+
+    private static Pattern uniform(final int luma, final int cb, final int cr) {
+        return new Pattern() {
+            @Override
+            public int luma(int x, int y) {
+                return luma;
+            }
+
+            @Override
+            public int cb(int cx, int cy) {
+                return cb;
+            }
+
+            @Override
+            public int cr(int cx, int cy) {
+                return cr;
+            }
+        };
+    }
+
+    /**
+     * A YUV_420_888 frame, planar (uvPixelStride 1) or semi-planar (2), with padded rows like
+     * camera buffers have. Padding and the bytes between chroma samples hold PADDING, so reading
+     * them with a wrong stride shows up in the output.
+     */
+    private static final class Frame {
+        static final int PADDING = 0xEE;
+
+        final ByteBuffer y;
+        final ByteBuffer u;
+        final ByteBuffer v;
+        final int yRowStride = FRAME_WIDTH + 32;
+        final int uvRowStride;
+        final int uvPixelStride;
+
+        Frame(int luma, int cb, int cr, int uvPixelStride) {
+            this(uniform(luma, cb, cr), uvPixelStride);
+        }
+
+        Frame(Pattern pattern, int uvPixelStride) {
+            this.uvPixelStride = uvPixelStride;
+            this.uvRowStride = FRAME_WIDTH / 2 * uvPixelStride + 32;
+            y = filled(yRowStride * FRAME_HEIGHT);
+            u = filled(uvRowStride * FRAME_HEIGHT / 2);
+            v = filled(uvRowStride * FRAME_HEIGHT / 2);
+            for (int row = 0; row < FRAME_HEIGHT; row++) {
+                for (int col = 0; col < FRAME_WIDTH; col++) {
+                    y.put(row * yRowStride + col, (byte) pattern.luma(col, row));
+                }
+            }
+            for (int row = 0; row < FRAME_HEIGHT / 2; row++) {
+                for (int col = 0; col < FRAME_WIDTH / 2; col++) {
+                    u.put(row * uvRowStride + col * uvPixelStride, (byte) pattern.cb(col, row));
+                    v.put(row * uvRowStride + col * uvPixelStride, (byte) pattern.cr(col, row));
+                }
+            }
+        }
+
+        /**
+         * Converts the centre half of the upright frame.
+         */
+        void convert(YuvTensorConverter converter, int rotationDegrees, ByteBuffer output) {
+            boolean swap = rotationDegrees == 90 || rotationDegrees == 270;
+            int uprightWidth = swap ? FRAME_HEIGHT : FRAME_WIDTH;
+            int uprightHeight = swap ? FRAME_WIDTH : FRAME_HEIGHT;
+            convert(converter, rotationDegrees,
+                    uprightWidth / 4, uprightHeight / 4, uprightWidth / 2, uprightHeight / 2, output);
+        }
+
+        void convert(YuvTensorConverter converter, int rotationDegrees,
+                     int left, int top, int width, int height, ByteBuffer output) {
+            converter.convert(y, yRowStride, 1, u, v, uvRowStride, uvPixelStride,
+                    FRAME_WIDTH, FRAME_HEIGHT, rotationDegrees, left, top, width, height, output);
+        }
+
+        private static ByteBuffer filled(int bytes) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes);
+            for (int i = 0; i < bytes; i++) {
+                buffer.put(i, (byte) PADDING);
+            }
+            return buffer;
+        }
+    }
+}
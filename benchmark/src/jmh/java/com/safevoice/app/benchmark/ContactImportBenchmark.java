@@ -0,0 +1,113 @@
+package com.safevoice.app.benchmark;
+
+import com.safevoice.app.models.Contact;
+import com.safevoice.app.utils.ContactFileParser;
+import com.safevoice.app.utils.ContactImporter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams a synthetic 50k-record contact file through the parser and importer, and persists
+ * the result the way the Settings import does: the new contacts are collected, then the whole
+ * priority list is serialized with Contact.toJSONArrayString and written to a file once, as
+ * ContactsManager writes it to SharedPreferences.
+ *
+ * The fork runs with a deliberately small heap: the file itself never has to fit in memory,
+ * only the contacts that end up in the priority list, so the benchmark completing at all is
+ * the memory check. Run with "-prof gc" to see the allocation rate per record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx32m"})
+public class ContactImportBenchmark {
+
+    private static final int RECORDS = 50_000;
+    // Every 20th record repeats an earlier number to exercise de-duplication.
+    private static final int DUPLICATE_EVERY = 20;
+
+    @Param({"VCARD", "CSV"})
+    public String format;
+
+    private File file;
+    private File prefsFile;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        file = File.createTempFile("contacts-bench", format.equals("VCARD") ? ".vcf" : ".csv");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            if (format.equals("CSV")) {
+                out.write("Name,Phone,Email\n");
+            }
+            for (int i = 0; i < RECORDS; i++) {
+                int numberIndex = (i % DUPLICATE_EVERY == DUPLICATE_EVERY - 1) ? i / 2 : i;
+                String name = "Staff Member " + i;
+                String phone = String.format("+1 (555) %03d-%04d", numberIndex / 10000, numberIndex % 10000);
+                if (format.equals("CSV")) {
+                    out.write("\"" + name + "\"," + phone + ",staff" + i + "@example.org\n");
+                } else {
+                    out.write("BEGIN:VCARD\nVERSION:3.0\n");
+                    out.write("N:Member " + i + ";Staff;;;\n");
+                    out.write("FN:" + name + "\n");
+                    out.write("TEL;TYPE=WORK:+1 555 000 0000\n");
+                    out.write("TEL;TYPE=CELL:" + phone + "\n");
+                    out.write("END:VCARD\n");
+                }
+            }
+        }
+        prefsFile = File.createTempFile("contacts-bench", ".json");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() {
+        if (file != null) {
+            file.delete();
+        }
+        if (prefsFile != null) {
+            prefsFile.delete();
+        }
+    }
+
+    @Benchmark
+    public ContactImporter.Result importFile() throws IOException {
+        final List<Contact> pending = new ArrayList<>();
+        ContactImporter.Result result;
+        try (ContactFileParser parser = new ContactFileParser(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            ContactImporter importer = new ContactImporter(new ArrayList<Contact>(), ContactImporter.DEFAULT_BATCH_SIZE);
+            result = importer.run(parser, new ContactImporter.BatchSink() {
+                @Override
+                public void writeBatch(List<Contact> batch) {
+                    pending.addAll(batch);
+                }
+            });
+        }
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(prefsFile), StandardCharsets.UTF_8)) {
+            out.write(Contact.toJSONArrayString(pending));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,78 @@
+package com.safevoice.app.benchmark;
+
+import com.safevoice.app.models.Contact;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes and reads the priority contact list in the JSON form ContactsManager stores in
+ * SharedPreferences, for lists of 1, 10 and 100 contacts.
+ *
+ * The contacts are generated with a fixed seed and include non-ASCII names and characters
+ * JSON has to escape. Setup fails if a round trip does not give back the same list.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContactJsonBenchmark {
+
+    private static final String[] FIRST_NAMES = {
+            "Anna", "Jos\u00E9", "Mei", "Oluwaseun", "Priya", "S\u00F8ren", "Zo\u00EB", "\"Doc\""
+    };
+    private static final String[] LAST_NAMES = {
+            "Garc\u00EDa", "M\u00FCller", "O'Brien", "Nakamura", "Okafor", "Smith/Jones"
+    };
+
+    @Param({"1", "10", "100"})
+    public int contacts;
+
+    private List<Contact> list;
+    private String json;
+
+    @Setup
+    public void setUp() throws JSONException {
+        Random random = new Random(42);
+        list = new ArrayList<>(contacts);
+        for (int i = 0; i < contacts; i++) {
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                    + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            String phone = String.format(Locale.US, "+1 (%03d) %03d-%04d",
+                    random.nextInt(1000), random.nextInt(1000), random.nextInt(10000));
+            list.add(new Contact(name, phone));
+        }
+        json = Contact.toJSONArrayString(list);
+        if (!Contact.listFromJSONArrayString(json).equals(list)) {
+            throw new IllegalStateException("Contact JSON round trip changed the list.");
+        }
+        System.out.println(contacts + " contacts: " + json.length() + " chars of JSON");
+    }
+
+    @Benchmark
+    public String write() {
+        return Contact.toJSONArrayString(list);
+    }
+
+    @Benchmark
+    public List<Contact> read() throws JSONException {
+        return Contact.listFromJSONArrayString(json);
+    }
+
+    @Benchmark
+    public List<Contact> roundTrip() throws JSONException {
+        return Contact.listFromJSONArrayString(Contact.toJSONArrayString(list));
+    }
+}
@@ -0,0 +1,415 @@
+package com.safevoice.app.benchmark;
+
+import com.safevoice.app.models.Contact;
+import com.safevoice.app.utils.EmergencyDispatcher;
+import com.safevoice.app.utils.TriggerPhraseMatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Simulates the emergency pipeline, from the recognizer hearing the trigger to the alerts going
+ * out, thousands of times on a virtual clock, without a phone, a SIM or GPS.
+ *
+ * Each run is one listening session of the voice service: scripted recognizer results of
+ * everyday speech, some of it close to the trigger, until one carries the trigger phrase. The
+ * results go through the service's TriggerPhraseMatcher; a match starts the emergency service
+ * after a simulated start-up delay, which runs the production EmergencyDispatcher against:
+ * - a simulated location provider: log-normal latency around a configurable median, answering
+ *   "unknown" for some runs and never answering for others;
+ * - recording call and SMS sinks, which note what was sent to whom, and when.
+ *
+ * Every run is checked: no speech other than the trigger fires it, the primary contact is
+ * called exactly once and before any text, every priority contact gets exactly one text, within
+ * the location timeout, with a map link exactly when the location arrived in time, and the
+ * service is told to stop exactly once, after the last alert. A failed check stops the
+ * simulation with the run's seed. At the end, the trigger-to-call and trigger-to-text latency
+ * distributions are printed; that report is what the simulation is for. The dispatcher's
+ * guarantees are unit-tested case by case in the app module's EmergencyDispatcherTest, and the
+ * checks here guard them under randomized timing.
+ *
+ * Runs are reproducible: run i uses seed + i. Arguments are key=value pairs, see Config; e.g.
+ * "triggers=20000 locationMedianMs=4000 locationLostRate=0.1".
+ */
+public final class EmergencyPipelineSimulation {
+
+    private static final String USER_NAME = "Test User";
+    private static final Contact PRIMARY = new Contact("Primary", "+15550100");
+    private static final List<Contact> PRIORITY = Arrays.asList(
+            new Contact("First", "+15550101"),
+            new Contact("Second", "+15550102"),
+            new Contact("Third", "+15550103"));
+
+    private static final String[] EVERYDAY_SPEECH = {
+            "what time is it", "can you hear me", "help me carry these bags", "hello hello",
+            "help is on the way", "i need help with my homework", "hell of a day",
+            "call me when you get there", "okay", "the bus is late again", "help yourself"
+    };
+    private static final String[] TRIGGERS = {
+            "help help", "Help help", "HELP HELP", "help, help", "Help! Help!", "please help help me"
+    };
+
+    /**
+     * Simulation parameters. Times are in milliseconds of virtual time.
+     */
+    static final class Config {
+        int triggers = 5000;
+        long seed = 42;
+        int maxUtterancesBeforeTrigger = 10;
+        long utteranceMinMs = 1000;
+        long utteranceMaxMs = 4000;
+        long recognizerMinMs = 100;     // From the end of speech to the results.
+        long recognizerMaxMs = 400;
+        long serviceStartMinMs = 30;    // From the trigger to EmergencyHandlerService running.
+        long serviceStartMaxMs = 150;
+        double locationMedianMs = 1500;
+        double locationSigma = 0.8;     // Of the log-normal latency.
+        double locationFailureRate = 0.05;   // Answers "unknown".
+        double locationLostRate = 0.02;      // Never answers.
+        double offlineRate = 0.05;
+
+        static Config parse(String[] args) {
+            Config config = new Config();
+            for (String arg : args) {
+                String[] pair = arg.split("=", 2);
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("Expected key=value: " + arg);
+                }
+                String value = pair[1];
+                switch (pair[0]) {
+                    case "triggers": config.triggers = Integer.parseInt(value); break;
+                    case "seed": config.seed = Long.parseLong(value); break;
+                    case "serviceStartMinMs": config.serviceStartMinMs = Long.parseLong(value); break;
+                    case "serviceStartMaxMs": config.serviceStartMaxMs = Long.parseLong(value); break;
+                    case "locationMedianMs": config.locationMedianMs = Double.parseDouble(value); break;
+                    case "locationSigma": config.locationSigma = Double.parseDouble(value); break;
+                    case "locationFailureRate": config.locationFailureRate = Double.parseDouble(value); break;
+                    case "locationLostRate": config.locationLostRate = Double.parseDouble(value); break;
+                    case "offlineRate": config.offlineRate = Double.parseDouble(value); break;
+                    default: throw new IllegalArgumentException("Unknown parameter: " + pair[0]);
+                }
+            }
+            return config;
+        }
+    }
+
+    /**
+     * A single-threaded event loop on virtual time; also the dispatcher's timer.
+     */
+    static final class VirtualClock implements EmergencyDispatcher.Timer {
+
+        private static final class Event {
+            final long time;
+            final long sequence;
+            final Runnable task;
+
+            Event(long time, long sequence, Runnable task) {
+                this.time = time;
+                this.sequence = sequence;
+                this.task = task;
+            }
+        }
+
+        private final PriorityQueue<Event> queue = new PriorityQueue<>((a, b) ->
+                a.time != b.time ? Long.compare(a.time, b.time) : Long.compare(a.sequence, b.sequence));
+        private long now = 0;
+        private long sequence = 0;
+
+        long now() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            queue.add(new Event(now + delayMillis, sequence++, task));
+        }
+
+        void runUntilIdle() {
+            while (!queue.isEmpty()) {
+                Event event = queue.poll();
+                now = event.time;
+                event.task.run();
+            }
+        }
+    }
+
+    /**
+     * What a recording sink saw: when, to whom, and the text (null for calls).
+     */
+    static final class Record {
+        final long time;
+        final String phoneNumber;
+        final String message;
+
+        Record(long time, String phoneNumber, String message) {
+            this.time = time;
+            this.phoneNumber = phoneNumber;
+            this.message = message;
+        }
+    }
+
+    static final class RecordingCallSink implements EmergencyDispatcher.CallSink {
+        private final VirtualClock clock;
+        final List<Record> calls = new ArrayList<>();
+
+        RecordingCallSink(VirtualClock clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public void call(String phoneNumber) {
+            calls.add(new Record(clock.now(), phoneNumber, null));
+        }
+    }
+
+    static final class RecordingSmsSink implements EmergencyDispatcher.SmsSink {
+        private final VirtualClock clock;
+        final List<Record> texts = new ArrayList<>();
+
+        RecordingSmsSink(VirtualClock clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public void send(String phoneNumber, String message) {
+            texts.add(new Record(clock.now(), phoneNumber, message));
+        }
+    }
+
+    /**
+     * Answers after a log-normal delay, with "unknown" or never, as configured.
+     */
+    static final class SimulatedLocationSource implements EmergencyDispatcher.LocationSource {
+        private final VirtualClock clock;
+        private final long latencyMs;
+        private final boolean fails;
+        private final boolean lost;
+        // When the answer was delivered, or -1.
+        long answeredAt = -1;
+        boolean answeredWithPosition = false;
+
+        SimulatedLocationSource(VirtualClock clock, Config config, Random random) {
+            this.clock = clock;
+            this.latencyMs = Math.round(config.locationMedianMs * Math.exp(config.locationSigma * random.nextGaussian()));
+            double outcome = random.nextDouble();
+            this.lost = outcome < config.locationLostRate;
+            this.fails = !lost && outcome < config.locationLostRate + config.locationFailureRate;
+        }
+
+        @Override
+        public void getCurrentLocation(EmergencyDispatcher.LocationCallback callback) {
+            if (lost) {
+                return;
+            }
+            clock.schedule(() -> {
+                answeredAt = clock.now();
+                answeredWithPosition = !fails;
+                callback.onLocation(fails ? null : new EmergencyDispatcher.Position(52.52, 13.405));
+            }, latencyMs);
+        }
+    }
+
+    private final Config config;
+    private final TriggerPhraseMatcher matcher = new TriggerPhraseMatcher(TriggerPhraseMatcher.DEFAULT_PHRASE);
+
+    private final long[] toCall;
+    private final long[] toTexts;
+    private int textedRuns = 0;
+    private int utterances = 0;
+    private int timeouts = 0;
+    private int withoutLocation = 0;
+    private int offline = 0;
+
+    EmergencyPipelineSimulation(Config config) {
+        this.config = config;
+        toCall = new long[config.triggers];
+        toTexts = new long[config.triggers];
+    }
+
+    public static void main(String[] args) {
+        Config config = Config.parse(args);
+        EmergencyPipelineSimulation simulation = new EmergencyPipelineSimulation(config);
+        long start = System.nanoTime();
+        for (int i = 0; i < config.triggers; i++) {
+            simulation.run(i);
+        }
+        long wallMillis = (System.nanoTime() - start) / 1_000_000;
+        simulation.report(wallMillis);
+    }
+
+    /**
+     * One listening session that ends with the trigger, and the emergency sequence it starts.
+     */
+    void run(int index) {
+        long seed = config.seed + index;
+        Random random = new Random(seed);
+        VirtualClock clock = new VirtualClock();
+        RecordingCallSink callSink = new RecordingCallSink(clock);
+        RecordingSmsSink smsSink = new RecordingSmsSink(clock);
+        SimulatedLocationSource location = new SimulatedLocationSource(clock, config, random);
+        boolean online = random.nextDouble() >= config.offlineRate;
+        long[] triggeredAt = {-1};
+        long[] dispatchedAt = {-1};
+        int[] completions = {0};
+        long[] completedAt = {-1};
+
+        // The recognizer's results, one utterance after the other, as the service receives them.
+        int before = random.nextInt(config.maxUtterancesBeforeTrigger + 1);
+        long time = 0;
+        for (int u = 0; u <= before; u++) {
+            boolean trigger = (u == before);
+            List<String> alternatives = scriptedResult(random, trigger);
+            time += uniform(random, config.utteranceMinMs, config.utteranceMaxMs)
+                    + uniform(random, config.recognizerMinMs, config.recognizerMaxMs);
+            long serviceStart = uniform(random, config.serviceStartMinMs, config.serviceStartMaxMs);
+            clock.schedule(() -> {
+                if (triggeredAt[0] >= 0) {
+                    // The voice service stops itself after the trigger.
+                    return;
+                }
+                boolean heard = matcher.matchesAny(alternatives);
+                if (heard != trigger) {
+                    fail(seed, (trigger ? "Missed trigger: " : "False trigger: ") + alternatives);
+                }
+                if (!heard) {
+                    return;
+                }
+                triggeredAt[0] = clock.now();
+                clock.schedule(() -> {
+                    dispatchedAt[0] = clock.now();
+                    new EmergencyDispatcher(location, callSink, smsSink, clock).dispatch(PRIMARY, PRIORITY, USER_NAME,
+                            online, () -> {
+                                completions[0]++;
+                                completedAt[0] = clock.now();
+                            });
+                }, serviceStart);
+            }, time);
+            utterances++;
+        }
+        clock.runUntilIdle();
+
+        check(seed, index, online, location, callSink, smsSink, triggeredAt[0], dispatchedAt[0],
+                completions[0], completedAt[0]);
+    }
+
+    private void check(long seed, int index, boolean online, SimulatedLocationSource location,
+                       RecordingCallSink callSink, RecordingSmsSink smsSink, long triggeredAt, long dispatchedAt,
+                       int completions, long completedAt) {
+        if (triggeredAt < 0 || dispatchedAt < 0) {
+            fail(seed, "Emergency sequence never started.");
+        }
+        if (callSink.calls.size() != 1 || !callSink.calls.get(0).phoneNumber.equals(PRIMARY.getPhoneNumber())) {
+            fail(seed, "Expected one call to the primary contact, got " + callSink.calls.size());
+        }
+        long callAt = callSink.calls.get(0).time;
+        toCall[index] = callAt - triggeredAt;
+
+        if (!online) {
+            offline++;
+            if (!smsSink.texts.isEmpty()) {
+                fail(seed, "Texts sent while offline.");
+            }
+        } else {
+            if (smsSink.texts.size() != PRIORITY.size()) {
+                fail(seed, "Expected " + PRIORITY.size() + " texts, got " + smsSink.texts.size());
+            }
+            Set<String> numbers = new HashSet<>();
+            long textsAt = 0;
+            // The timeout is scheduled before the location is requested, so on a tie it goes first.
+            boolean answeredInTime = location.answeredAt >= 0
+                    && location.answeredAt - dispatchedAt < EmergencyDispatcher.LOCATION_TIMEOUT_MILLIS;
+            boolean locationInTime = answeredInTime && location.answeredWithPosition;
+            for (Record text : smsSink.texts) {
+                numbers.add(text.phoneNumber);
+                if (text.time < callAt) {
+                    fail(seed, "Text to " + text.phoneNumber + " sent before the call.");
+                }
+                if (text.time - dispatchedAt > EmergencyDispatcher.LOCATION_TIMEOUT_MILLIS) {
+                    fail(seed, "Text sent " + (text.time - dispatchedAt) + " ms after dispatch.");
+                }
+                if (text.message.contains("maps.google.com") != locationInTime) {
+                    fail(seed, "Map link " + (locationInTime ? "missing" : "unexpected") + " in: " + text.message);
+                }
+                textsAt = Math.max(textsAt, text.time);
+            }
+            for (Contact contact : PRIORITY) {
+                if (!numbers.contains(contact.getPhoneNumber())) {
+                    fail(seed, "No text to " + contact.getPhoneNumber());
+                }
+            }
+            toTexts[textedRuns++] = textsAt - triggeredAt;
+            if (!answeredInTime) {
+                timeouts++;
+            } else if (!locationInTime) {
+                withoutLocation++;
+            }
+        }
+        if (completions != 1) {
+            fail(seed, "Service told to stop " + completions + " times.");
+        }
+        long lastAlert = callAt;
+        for (Record text : smsSink.texts) {
+            lastAlert = Math.max(lastAlert, text.time);
+        }
+        if (completedAt < lastAlert) {
+            fail(seed, "Service told to stop before the last alert.");
+        }
+    }
+
+    private void report(long wallMillis) {
+        System.out.printf(Locale.US, "%d triggers after %d utterances simulated in %d ms (seed %d)%n",
+                config.triggers, utterances, wallMillis, config.seed);
+        System.out.printf(Locale.US, "Location: median %.0f ms, sigma %.2f, %.1f%% unknown, %.1f%% lost; %.1f%% offline%n",
+                config.locationMedianMs, config.locationSigma, 100 * config.locationFailureRate,
+                100 * config.locationLostRate, 100 * config.offlineRate);
+        System.out.println("All ordering and timing checks passed.");
+        System.out.printf(Locale.US, "%-16s %8s %8s %8s %8s %8s %8s%n", "latency (ms)", "runs", "p50", "p90", "p99", "p99.9", "max");
+        printDistribution("trigger->call", toCall, config.triggers);
+        printDistribution("trigger->texts", toTexts, textedRuns);
+        System.out.printf(Locale.US, "Texts sent on timeout: %d, without location: %d, offline runs (call only): %d%n",
+                timeouts, withoutLocation, offline);
+    }
+
+    private static void printDistribution(String name, long[] values, int count) {
+        if (count == 0) {
+            System.out.printf(Locale.US, "%-16s %8d%n", name, 0);
+            return;
+        }
+        long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        System.out.printf(Locale.US, "%-16s %8d %8d %8d %8d %8d %8d%n", name, count,
+                percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+                percentile(sorted, 0.999), sorted[count - 1]);
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static List<String> scriptedResult(Random random, boolean trigger) {
+        int count = 3 + random.nextInt(3);
+        List<String> alternatives = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            alternatives.add(EVERYDAY_SPEECH[random.nextInt(EVERYDAY_SPEECH.length)]);
+        }
+        if (trigger) {
+            alternatives.set(random.nextInt(count), TRIGGERS[random.nextInt(TRIGGERS.length)]);
+        }
+        return alternatives;
+    }
+
+    private static long uniform(Random random, long min, long max) {
+        return min + (long) (random.nextDouble() * (max - min));
+    }
+
+    private static void fail(long seed, String message) {
+        throw new AssertionError("Run with seed " + seed + ": " + message);
+    }
+}
@@ -0,0 +1,152 @@
+package com.safevoice.app.benchmark;
+
+import com.safevoice.app.utils.FaceIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a best-match search in the 1:N face index at 100, 10k and 100k enrolled
+ * embeddings, with float32 and int8 rows:
+ * - exhaustive: every row is scored;
+ * - clustered: about sqrt(N) clusters, of which the best PROBE_SHARE are scanned;
+ * - mapped: exhaustive, on the same index saved and memory-mapped back.
+ *
+ * The synthetic enrolled set has ENROLMENTS_PER_PERSON noisy embeddings per person, and each
+ * query is a fresh noisy embedding of an enrolled person. The setup prints the clustered search's
+ * recall (how often it returns the same person as the exhaustive search) and the file size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FaceIndexBenchmark {
+
+    private static final int EMBEDDING_SIZE = 192;
+    private static final int ENROLMENTS_PER_PERSON = 4;
+    private static final float NOISE = 0.5f;
+    private static final int QUERIES = 256;
+    private static final int RECALL_QUERIES = 200;
+    private static final int KMEANS_ITERATIONS = 8;
+    private static final int PROBE_SHARE = 8;   // Scan 1/8th of the clusters.
+
+    @Param({"100", "10000", "100000"})
+    public int entries;
+
+    @Param({"float32", "int8"})
+    public String storage;
+
+    private FaceIndex exhaustive;
+    private FaceIndex clustered;
+    private FaceIndex mapped;
+    private File file;
+    private int probes;
+    private float[][] queries;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        boolean int8 = "int8".equals(storage);
+        int people = entries / ENROLMENTS_PER_PERSON;
+        float[][] bases = new float[people][];
+        exhaustive = new FaceIndex(EMBEDDING_SIZE, int8);
+        clustered = new FaceIndex(EMBEDDING_SIZE, int8);
+        for (int person = 0; person < people; person++) {
+            bases[person] = randomEmbedding(random);
+            for (int i = 0; i < ENROLMENTS_PER_PERSON; i++) {
+                float[] embedding = correlated(bases[person], random);
+                exhaustive.add(embedding, "person " + person);
+                clustered.add(embedding, "person " + person);
+            }
+        }
+        queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = correlated(bases[random.nextInt(people)], random);
+        }
+
+        int clusters = Math.max(2, (int) Math.round(Math.sqrt(entries)));
+        probes = Math.max(1, clusters / PROBE_SHARE);
+        long start = System.nanoTime();
+        clustered.cluster(clusters, KMEANS_ITERATIONS, random);
+        System.out.println(clusters + " clusters built in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        printRecall(random, bases);
+
+        file = File.createTempFile("face_index", ".bin");
+        exhaustive.save(file);
+        mapped = FaceIndex.load(file);
+        System.out.println("Index file: " + file.length() + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public List<FaceIndex.Match> exhaustive() {
+        return exhaustive.search(nextQuery(), 1, 0);
+    }
+
+    @Benchmark
+    public List<FaceIndex.Match> clustered() {
+        return clustered.search(nextQuery(), 1, probes);
+    }
+
+    @Benchmark
+    public List<FaceIndex.Match> mapped() {
+        return mapped.search(nextQuery(), 1, 0);
+    }
+
+    private float[] nextQuery() {
+        next = (next + 1) % QUERIES;
+        return queries[next];
+    }
+
+    private void printRecall(Random random, float[][] bases) {
+        int found = 0;
+        int correctPerson = 0;
+        for (int i = 0; i < RECALL_QUERIES; i++) {
+            int person = random.nextInt(bases.length);
+            float[] query = correlated(bases[person], random);
+            String expected = exhaustive.search(query, 1, 0).get(0).label;
+            String actual = clustered.search(query, 1, probes).get(0).label;
+            if (expected.equals(actual)) {
+                found++;
+            }
+            if (expected.equals("person " + person)) {
+                correctPerson++;
+            }
+        }
+        System.out.println("Clustered recall@1: " + found + "/" + RECALL_QUERIES + " with " + probes
+                + " probes; exhaustive finds the right person " + correctPerson + "/" + RECALL_QUERIES);
+    }
+
+    private static float[] randomEmbedding(Random random) {
+        float[] embedding = new float[EMBEDDING_SIZE];
+        for (int i = 0; i < EMBEDDING_SIZE; i++) {
+            embedding[i] = (float) random.nextGaussian();
+        }
+        return embedding;
+    }
+
+    private static float[] correlated(float[] base, Random random) {
+        float[] embedding = new float[EMBEDDING_SIZE];
+        for (int i = 0; i < EMBEDDING_SIZE; i++) {
+            embedding[i] = base[i] + NOISE * (float) random.nextGaussian();
+        }
+        return embedding;
+    }
+}
@@ -0,0 +1,113 @@
+package com.safevoice.app.benchmark;
+
+import com.safevoice.app.utils.EmbeddingMath;
+import com.safevoice.app.utils.FaceTemplate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One face comparison, in the forms FaceVerifier.calculateSimilarity can take:
+ * - rawCosine: two raw embeddings, both norms computed every time (the old path);
+ * - templateToLive: a stored FaceTemplate against a raw live embedding (the path used now);
+ * - templateToTemplate: two templates, a plain dot product of unit vectors;
+ * - int8: two templates' int8 copies, in integer arithmetic.
+ *
+ * The pairs are drawn with a fixed seed: noisy copies of the same random embedding. Setup
+ * prints the largest difference from rawCosine for each form and fails if the int8 form
+ * leaves EmbeddingMath.QUANTIZED_SIMILARITY_TOLERANCE.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FaceTemplateBenchmark {
+
+    private static final int EMBEDDING_SIZE = 192;
+    private static final int PAIRS = 256;
+    private static final float NOISE = 0.5f;
+
+    private float[][] stored;
+    private float[][] live;
+    private FaceTemplate[] storedTemplates;
+    private FaceTemplate[] liveTemplates;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        stored = new float[PAIRS][];
+        live = new float[PAIRS][];
+        storedTemplates = new FaceTemplate[PAIRS];
+        liveTemplates = new FaceTemplate[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            float[] base = new float[EMBEDDING_SIZE];
+            for (int d = 0; d < EMBEDDING_SIZE; d++) {
+                base[d] = (float) random.nextGaussian();
+            }
+            stored[i] = correlated(base, random);
+            live[i] = correlated(base, random);
+            storedTemplates[i] = FaceTemplate.fromEmbedding(stored[i], "", true);
+            liveTemplates[i] = FaceTemplate.fromEmbedding(live[i], "", true);
+        }
+
+        double worstTemplate = 0;
+        double worstUnit = 0;
+        double worstInt8 = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            double expected = EmbeddingMath.cosineSimilarity(stored[i], live[i], EMBEDDING_SIZE);
+            worstTemplate = Math.max(worstTemplate, Math.abs(storedTemplates[i].similarity(live[i]) - expected));
+            worstUnit = Math.max(worstUnit, Math.abs(storedTemplates[i].similarity(liveTemplates[i]) - expected));
+            worstInt8 = Math.max(worstInt8, Math.abs(storedTemplates[i].similarityInt8(liveTemplates[i]) - expected));
+        }
+        System.out.printf("Largest difference from rawCosine: templateToLive %.2e, templateToTemplate %.2e, int8 %.2e%n",
+                worstTemplate, worstUnit, worstInt8);
+        if (worstInt8 > EmbeddingMath.QUANTIZED_SIMILARITY_TOLERANCE) {
+            throw new IllegalStateException("int8 similarity off by " + worstInt8);
+        }
+    }
+
+    @Benchmark
+    public double rawCosine() {
+        int i = nextPair();
+        return EmbeddingMath.cosineSimilarity(stored[i], live[i], EMBEDDING_SIZE);
+    }
+
+    @Benchmark
+    public double templateToLive() {
+        int i = nextPair();
+        return storedTemplates[i].similarity(live[i]);
+    }
+
+    @Benchmark
+    public double templateToTemplate() {
+        int i = nextPair();
+        return storedTemplates[i].similarity(liveTemplates[i]);
+    }
+
+    @Benchmark
+    public double int8() {
+        int i = nextPair();
+        return storedTemplates[i].similarityInt8(liveTemplates[i]);
+    }
+
+    private int nextPair() {
+        next = (next + 1) % PAIRS;
+        return next;
+    }
+
+    private static float[] correlated(float[] base, Random random) {
+        float[] embedding = new float[EMBEDDING_SIZE];
+        for (int i = 0; i < EMBEDDING_SIZE; i++) {
+            embedding[i] = base[i] + NOISE * (float) random.nextGaussian();
+        }
+        return embedding;
+    }
+}
@@ -0,0 +1,138 @@
+package com.safevoice.app.benchmark;
+
+import com.safevoice.app.utils.IdFieldExtractor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays recorded OCR frames of specimen documents (ocr_frames.txt) through the ID field
+ * extractor, and through the line regex it replaced, which returned the first line of two or
+ * three capitalized words.
+ *
+ * Setup fails if the extractor does not settle on the expected name, and prints how many
+ * frames it needed and what the old regex would have returned.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IdFieldExtractionBenchmark {
+
+    private static final String FRAMES_RESOURCE = "/ocr_frames.txt";
+    private static final String LEGACY_NAME_REGEX = "([A-Z][a-zA-Z]*[.]?[ ]?){2,3}";
+
+    @Param({"id_card", "passport", "licence"})
+    public String document;
+
+    private final List<List<String>> frames = new ArrayList<>();
+    private final IdFieldExtractor extractor = new IdFieldExtractor();
+
+    @Setup(Level.Trial)
+    public void loadFrames() throws IOException {
+        String expected = readDocument();
+        String settled = settle();
+        System.out.println(document + ": settled on \"" + settled + "\" after " + extractor.getFramesSeen()
+                + " of " + frames.size() + " frames; the old regex returned \"" + legacyFirstMatch() + "\"");
+        if (!expected.equals(settled)) {
+            throw new IllegalStateException(document + ": expected " + expected + " but settled on " + settled);
+        }
+    }
+
+    /**
+     * Votes frame by frame until the name settles, as the KYC analyzer does.
+     */
+    @Benchmark
+    public String settle() {
+        extractor.reset();
+        for (List<String> frame : frames) {
+            extractor.addFrame(frame);
+            String name = extractor.getSettled(IdFieldExtractor.FIELD_NAME);
+            if (name != null) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Single-frame extraction over every frame, without voting.
+     */
+    @Benchmark
+    public int extractEveryFrame() {
+        int found = 0;
+        for (List<String> frame : frames) {
+            if (IdFieldExtractor.extract(frame).get(IdFieldExtractor.FIELD_NAME) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * The replaced extractor: the first matching line of the first frame that has one.
+     */
+    @Benchmark
+    public String legacyFirstMatch() {
+        for (List<String> frame : frames) {
+            for (String line : frame) {
+                if (line.matches(LEGACY_NAME_REGEX) && !line.matches(".*[0-9].*") && line.length() < 30) {
+                    return line;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads this document's frames and returns the name it should settle on.
+     */
+    private String readDocument() throws IOException {
+        frames.clear();
+        String expected = null;
+        InputStream in = IdFieldExtractionBenchmark.class.getResourceAsStream(FRAMES_RESOURCE);
+        if (in == null) {
+            throw new IOException("Missing resource " + FRAMES_RESOURCE);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            boolean inDocument = false;
+            List<String> frame = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("## ")) {
+                    String[] header = line.substring(3).split(" ", 2);
+                    inDocument = header[0].equals(document);
+                    if (inDocument) {
+                        expected = header[1];
+                    }
+                } else if (!inDocument || line.isEmpty() || line.startsWith("# ")) {
+                    continue;
+                } else if (line.equals("--")) {
+                    frames.add(frame);
+                    frame = new ArrayList<>();
+                } else {
+                    frame.add(line);
+                }
+            }
+        }
+        if (expected == null || frames.isEmpty()) {
+            throw new IOException("No frames for " + document + " in " + FRAMES_RESOURCE);
+        }
+        return expected;
+    }
+}
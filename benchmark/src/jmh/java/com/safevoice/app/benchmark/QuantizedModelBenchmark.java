@@ -0,0 +1,163 @@
+package com.safevoice.app.benchmark;
+
+import com.safevoice.app.utils.EmbeddingMath;
+import com.safevoice.app.utils.YuvTensorConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Java-side cost of the float32 and uint8 face model paths: preprocessing a
+ * 640x480 frame crop into the input tensor, and turning an output row into a
+ * similarity score (dequantizing first for uint8). The interpreter itself is not
+ * included; TFLite has no desktop JVM build.
+ *
+ * The setup also checks the accuracy side: embeddings are quantized the way a uint8
+ * model's output would be, and similarity scores must stay within
+ * {@link EmbeddingMath#QUANTIZED_SIMILARITY_TOLERANCE} of the float scores. Only the
+ * output rounding is simulated, not a real int8 model's weights and activations, so this
+ * does not validate the tolerance for an actual quantized asset. The input tensor size
+ * for each path is printed, since that is the memory that differs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QuantizedModelBenchmark {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int OUT_SIZE = 112;
+    private static final int EMBEDDING_SIZE = 192;
+    private static final int PAIRS = 1000;
+
+    // Typical quantization of a [-1, 1] input and of an embedding output.
+    private static final float INPUT_SCALE = 1f / 128f;
+    private static final int INPUT_ZERO_POINT = 128;
+    private static final float OUTPUT_SCALE = 0.05f;
+    private static final int OUTPUT_ZERO_POINT = 128;
+
+    @Param({"float32", "uint8"})
+    public String precision;
+
+    private ByteBuffer yPlane;
+    private ByteBuffer uPlane;
+    private ByteBuffer vPlane;
+    private YuvTensorConverter converter;
+    private ByteBuffer tensor;
+
+    private float[] reference;
+    private float[] probe;
+    private ByteBuffer quantizedProbe;
+    private float[] scratch;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        yPlane = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        ByteBuffer chroma = ByteBuffer.allocateDirect(WIDTH * HEIGHT / 2);
+        for (int i = 0; i < yPlane.capacity(); i++) {
+            yPlane.put(i, (byte) random.nextInt(256));
+        }
+        for (int i = 0; i < chroma.capacity(); i++) {
+            chroma.put(i, (byte) random.nextInt(256));
+        }
+        uPlane = chroma.slice();
+        chroma.position(1);
+        vPlane = chroma.slice();
+
+        converter = new YuvTensorConverter(OUT_SIZE, OUT_SIZE);
+        if ("uint8".equals(precision)) {
+            converter.setQuantization(INPUT_SCALE, INPUT_ZERO_POINT, false);
+        }
+        tensor = ByteBuffer.allocateDirect(converter.getOutputBytes()).order(ByteOrder.nativeOrder());
+        System.out.println(precision + " input tensor: " + converter.getOutputBytes() + " bytes");
+
+        reference = randomEmbedding(random);
+        probe = correlated(reference, random, 0.5f);
+        quantizedProbe = ByteBuffer.allocateDirect(EMBEDDING_SIZE);
+        quantize(probe, quantizedProbe);
+        scratch = new float[EMBEDDING_SIZE];
+
+        checkTolerance(random);
+    }
+
+    @Benchmark
+    public ByteBuffer preprocess() {
+        tensor.rewind();
+        converter.convert(yPlane, WIDTH, 1, uPlane, vPlane, WIDTH, 2,
+                WIDTH, HEIGHT, 0, WIDTH / 3, HEIGHT / 4, WIDTH / 3, HEIGHT / 2, tensor);
+        return tensor;
+    }
+
+    @Benchmark
+    public double similarity() {
+        if ("uint8".equals(precision)) {
+            EmbeddingMath.dequantize(quantizedProbe, 0, EMBEDDING_SIZE,
+                    OUTPUT_SCALE, OUTPUT_ZERO_POINT, false, scratch);
+            return EmbeddingMath.cosineSimilarity(reference, scratch, EMBEDDING_SIZE);
+        }
+        return EmbeddingMath.cosineSimilarity(reference, probe, EMBEDDING_SIZE);
+    }
+
+    /**
+     * Fails the run if quantizing embeddings moves any similarity score by more than the tolerance.
+     */
+    private static void checkTolerance(Random random) {
+        ByteBuffer quantizedA = ByteBuffer.allocateDirect(EMBEDDING_SIZE);
+        ByteBuffer quantizedB = ByteBuffer.allocateDirect(EMBEDDING_SIZE);
+        float[] dequantizedA = new float[EMBEDDING_SIZE];
+        float[] dequantizedB = new float[EMBEDDING_SIZE];
+        double worst = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            float[] a = randomEmbedding(random);
+            // Mix of genuine-like (close) and impostor-like (far) pairs.
+            float[] b = correlated(a, random, random.nextFloat() * 2f);
+            quantize(a, quantizedA);
+            quantize(b, quantizedB);
+            EmbeddingMath.dequantize(quantizedA, 0, EMBEDDING_SIZE, OUTPUT_SCALE, OUTPUT_ZERO_POINT, false, dequantizedA);
+            EmbeddingMath.dequantize(quantizedB, 0, EMBEDDING_SIZE, OUTPUT_SCALE, OUTPUT_ZERO_POINT, false, dequantizedB);
+            double exact = EmbeddingMath.cosineSimilarity(a, b, EMBEDDING_SIZE);
+            double approximate = EmbeddingMath.cosineSimilarity(dequantizedA, dequantizedB, EMBEDDING_SIZE);
+            worst = Math.max(worst, Math.abs(exact - approximate));
+        }
+        System.out.println("Worst similarity drift from output quantization: " + worst);
+        if (worst > EmbeddingMath.QUANTIZED_SIMILARITY_TOLERANCE) {
+            throw new IllegalStateException("Quantized similarity drift " + worst + " exceeds "
+                    + EmbeddingMath.QUANTIZED_SIMILARITY_TOLERANCE);
+        }
+    }
+
+    private static float[] randomEmbedding(Random random) {
+        float[] embedding = new float[EMBEDDING_SIZE];
+        for (int i = 0; i < EMBEDDING_SIZE; i++) {
+            embedding[i] = (float) random.nextGaussian();
+        }
+        return embedding;
+    }
+
+    private static float[] correlated(float[] base, Random random, float noise) {
+        float[] embedding = new float[EMBEDDING_SIZE];
+        for (int i = 0; i < EMBEDDING_SIZE; i++) {
+            embedding[i] = base[i] + noise * (float) random.nextGaussian();
+        }
+        return embedding;
+    }
+
+    private static void quantize(float[] values, ByteBuffer out) {
+        for (int i = 0; i < values.length; i++) {
+            int q = Math.round(values[i] / OUTPUT_SCALE) + OUTPUT_ZERO_POINT;
+            out.put(i, (byte) Math.max(0, Math.min(255, q)));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.safevoice.app.benchmark;
+
+import com.safevoice.app.utils.TriggerPhraseMatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks one recognizer result (RESULT_ALTERNATIVES alternatives, as SpeechRecognizer
+ * reports them) for the trigger phrase, with the matcher and with the lower-case-and-contains
+ * check it replaced.
+ *
+ * The results are drawn with a fixed seed from everyday phrases, and one in TRIGGER_EVERY
+ * contains the trigger in some casing and punctuation. Setup fails if the matcher misses a
+ * result the old check caught (the sample has no partial-word hits such as "help helpful",
+ * which only the old check accepts), and prints how many more it catches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TriggerPhraseBenchmark {
+
+    private static final String TRIGGER_PHRASE = TriggerPhraseMatcher.DEFAULT_PHRASE;
+    private static final int RESULTS = 1024;
+    private static final int RESULT_ALTERNATIVES = 5;
+    private static final int TRIGGER_EVERY = 50;
+
+    private static final String[] PHRASES = {
+            "what time is it", "turn left at the next corner", "can you hear me",
+            "i will be home in twenty minutes", "help me carry these bags", "hello hello",
+            "let's get something to eat", "where did you park the car", "help is on the way",
+            "call me when you get there", "okay", "the bus is late again"
+    };
+    private static final String[] TRIGGERS = {
+            "help help", "Help help", "HELP HELP", "help, help", "Help! Help!", "please help help me"
+    };
+
+    private final TriggerPhraseMatcher matcher = new TriggerPhraseMatcher(TRIGGER_PHRASE);
+    private List<List<String>> results;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        results = new ArrayList<>(RESULTS);
+        for (int i = 0; i < RESULTS; i++) {
+            String[] alternatives = new String[RESULT_ALTERNATIVES];
+            for (int a = 0; a < RESULT_ALTERNATIVES; a++) {
+                alternatives[a] = PHRASES[random.nextInt(PHRASES.length)] + " "
+                        + PHRASES[random.nextInt(PHRASES.length)];
+            }
+            if (random.nextInt(TRIGGER_EVERY) == 0) {
+                alternatives[random.nextInt(RESULT_ALTERNATIVES)] = TRIGGERS[random.nextInt(TRIGGERS.length)];
+            }
+            results.add(Arrays.asList(alternatives));
+        }
+
+        int legacyHits = 0;
+        int hits = 0;
+        for (List<String> result : results) {
+            boolean legacy = legacyContains(result);
+            boolean matched = matcher.matchesAny(result);
+            if (legacy && !matched) {
+                throw new IllegalStateException("Matcher missed a trigger: " + result);
+            }
+            legacyHits += legacy ? 1 : 0;
+            hits += matched ? 1 : 0;
+        }
+        System.out.println("Triggers found in " + RESULTS + " results: " + hits + " (old check: " + legacyHits + ")");
+    }
+
+    @Benchmark
+    public boolean matcher() {
+        return matcher.matchesAny(nextResult());
+    }
+
+    @Benchmark
+    public boolean legacyLowerCaseContains() {
+        return legacyContains(nextResult());
+    }
+
+    private List<String> nextResult() {
+        next = (next + 1) % RESULTS;
+        return results.get(next);
+    }
+
+    private static boolean legacyContains(List<String> alternatives) {
+        for (String result : alternatives) {
+            if (result.toLowerCase().contains(TRIGGER_PHRASE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
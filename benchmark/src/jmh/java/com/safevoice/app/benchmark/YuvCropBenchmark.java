@@ -0,0 +1,146 @@
+package com.safevoice.app.benchmark;
+
+import com.safevoice.app.utils.YuvTensorConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crop-to-tensor on synthetic YUV_420_888 frames laid out like real camera output:
+ * padded luma rows and interleaved (pixel stride 2) chroma planes.
+ *
+ * "direct" is the production YuvTensorConverter path. "copyPlanes" reproduces the
+ * allocations of the old ImageUtils.cropAndConvert path (full NV21 copy, cropped ARGB
+ * array, scaled pixel array) minus the JPEG encode/decode, which is Android-only; on a
+ * device the old path is slower still. Run with "-prof gc" to see that the direct path
+ * allocates nothing per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YuvCropBenchmark {
+
+    private static final int OUT_WIDTH = 112;
+    private static final int OUT_HEIGHT = 224;
+
+    @Param({"640x480", "1280x720"})
+    public String resolution;
+
+    private int width;
+    private int height;
+    private int yRowStride;
+    private int uvRowStride;
+    private ByteBuffer yPlane;
+    private ByteBuffer uPlane;
+    private ByteBuffer vPlane;
+    private int cropLeft;
+    private int cropTop;
+    private int cropWidth;
+    private int cropHeight;
+
+    private YuvTensorConverter converter;
+    private ByteBuffer tensor;
+
+    @Setup
+    public void createFrame() {
+        String[] size = resolution.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        yRowStride = width + 64;
+        uvRowStride = width + 64;
+
+        Random random = new Random(42);
+        yPlane = ByteBuffer.allocateDirect(yRowStride * height);
+        ByteBuffer chroma = ByteBuffer.allocateDirect(uvRowStride * height / 2);
+        for (int i = 0; i < yPlane.capacity(); i++) {
+            yPlane.put(i, (byte) random.nextInt(256));
+        }
+        for (int i = 0; i < chroma.capacity(); i++) {
+            chroma.put(i, (byte) random.nextInt(256));
+        }
+        // Semi-planar: U and V are views of the same interleaved buffer, offset by one byte.
+        uPlane = chroma.slice();
+        chroma.position(1);
+        vPlane = chroma.slice();
+
+        // A face box covering roughly a third of the frame, as in a typical selfie.
+        cropWidth = width / 3;
+        cropHeight = height / 2;
+        cropLeft = width / 3;
+        cropTop = height / 4;
+
+        converter = new YuvTensorConverter(OUT_WIDTH, OUT_HEIGHT);
+        tensor = ByteBuffer.allocateDirect(OUT_WIDTH * OUT_HEIGHT * 3 * 4).order(ByteOrder.nativeOrder());
+    }
+
+    @Benchmark
+    public ByteBuffer direct() {
+        tensor.rewind();
+        converter.convert(yPlane, yRowStride, 1, uPlane, vPlane, uvRowStride, 2,
+                width, height, 0, cropLeft, cropTop, cropWidth, cropHeight, tensor);
+        return tensor;
+    }
+
+    @Benchmark
+    public ByteBuffer copyPlanes() {
+        // 1. Copy every plane into a fresh NV21 array (ignoring strides, as the old code did).
+        ByteBuffer y = yPlane.duplicate();
+        ByteBuffer u = uPlane.duplicate();
+        ByteBuffer v = vPlane.duplicate();
+        int ySize = y.remaining();
+        int uSize = u.remaining();
+        int vSize = v.remaining();
+        byte[] nv21 = new byte[ySize + uSize + vSize];
+        y.get(nv21, 0, ySize);
+        v.get(nv21, ySize, vSize);
+        u.get(nv21, ySize + vSize, uSize);
+
+        // 2. Convert the crop to an ARGB pixel array (stands in for the decoded Bitmap).
+        int[] argb = new int[cropWidth * cropHeight];
+        for (int j = 0; j < cropHeight; j++) {
+            for (int i = 0; i < cropWidth; i++) {
+                int x = cropLeft + i;
+                int yy = cropTop + j;
+                int luma = nv21[yy * width + x] & 0xFF;
+                int uvIndex = ySize + (yy >> 1) * width + (x & ~1);
+                int cr = (nv21[uvIndex] & 0xFF) - 128;
+                int cb = (nv21[uvIndex + 1] & 0xFF) - 128;
+                int r = clamp((int) (luma + 1.402f * cr));
+                int g = clamp((int) (luma - 0.344136f * cb - 0.714136f * cr));
+                int b = clamp((int) (luma + 1.772f * cb));
+                argb[j * cropWidth + i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+
+        // 3. Scale into a new pixel array and a new direct buffer, as preprocessImage did.
+        int[] scaled = new int[OUT_WIDTH * OUT_HEIGHT];
+        for (int j = 0; j < OUT_HEIGHT; j++) {
+            int sy = j * cropHeight / OUT_HEIGHT;
+            for (int i = 0; i < OUT_WIDTH; i++) {
+                scaled[j * OUT_WIDTH + i] = argb[sy * cropWidth + i * cropWidth / OUT_WIDTH];
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(OUT_WIDTH * OUT_HEIGHT * 3 * 4).order(ByteOrder.nativeOrder());
+        for (int pixel : scaled) {
+            buffer.putFloat((((pixel >> 16) & 0xFF) - 127.5f) / 128.0f);
+            buffer.putFloat((((pixel >> 8) & 0xFF) - 127.5f) / 128.0f);
+            buffer.putFloat(((pixel & 0xFF) - 127.5f) / 128.0f);
+        }
+        return buffer;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}